@@ -0,0 +1,211 @@
+package app;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import bench.Harness;
+import game.GameBoard;
+
+/**
+ * Benchmarks of the request handlers of LogicServer and of the message 
+ * queues between the server and the client handlers.  
+ */
+public class ServerBenchmarks {
+    
+    // the handlers of LogicServer are private, and stay so; they are called
+    // through method handles, which the JIT inlines like a direct call as 
+    // long as they are held in static final fields
+    private static final MethodHandle SETUP_PHASE = handler("handleRequestSetupPhase");
+    private static final MethodHandle MAIN_PHASE = handler("handleRequestMainPhase");
+    private static final MethodHandle DECLARATION_PHASE = handler("handleRequestDeclarationPhase");
+    
+    /**
+     * Adds the server benchmarks to a harness.  The server is never served;
+     * requests are handed straight to its handlers, and each reply is taken
+     * off the queue of the client, as its handler thread would.  
+     * @param harness harness to add the benchmarks to
+     * @throws IOException if the server socket cannot be opened
+     */
+    public static void addTo(Harness harness) throws IOException{
+        // port 0: any free port; no client ever connects
+        LogicServer server = new LogicServer(0, Arrays.asList(false, false, false, false));
+        ClientTransmitter client = transmitterOf(server).getClientTransmitter(0);
+        
+        harness.add("LogicServer.setup.view", () -> {
+            handle(SETUP_PHASE, server, "view", 0);
+            return release(client.listenServer());
+        });
+        harness.add("LogicServer.setup.help", () -> {
+            handle(SETUP_PHASE, server, "help", 0);
+            return release(client.listenServer());
+        });
+        harness.add("LogicServer.setup.invalid", () -> {
+            handle(SETUP_PHASE, server, "swap seven", 0);
+            return release(client.listenServer());
+        });
+        harness.add("LogicServer.main.view", () -> {
+            handle(MAIN_PHASE, server, "view", 0);
+            return release(client.listenServer());
+        });
+        harness.add("LogicServer.main.wrongState", () -> {
+            // every player is inactive, so no move is allowed
+            handle(MAIN_PHASE, server, "guess 1 2 3", 0);
+            return release(client.listenServer());
+        });
+        harness.add("LogicServer.declaration.wrongState", () -> {
+            handle(DECLARATION_PHASE, server, "declare 1 2 3", 0);
+            return release(client.listenServer());
+        });
+        
+        ServerTransmitter transmitter = new ServerTransmitter();
+        ClientTransmitter handler = transmitter.getClientTransmitter(1);
+        harness.add("ServerTransmitter.informClient", () -> {
+            transmitter.informClient(1, true, "Player 1 to pass.");
+            return release(handler.listenServer());
+        });
+        ClientTransmitter[] handlers = new ClientTransmitter[4];
+        for (int i = 0; i < 4; i++){
+            handlers[i] = transmitter.getClientTransmitter(i);
+        }
+        harness.add("ServerTransmitter.informAllClients", () -> {
+            transmitter.informAllClients(true, "Player 1 passed card 3!");
+            Message message = null;
+            for (int i = 0; i < 4; i++){
+                // encoded as the client handler would to relay it
+                message = handlers[i].listenServer();
+                message.getFrame();
+                release(message);
+            }
+            return message;
+        });
+        // listenClients holds back replies from then on, so it gets a 
+        // transmitter of its own
+        ServerTransmitter batching = new ServerTransmitter();
+        ClientTransmitter requester = batching.getClientTransmitter(1);
+        harness.add("ServerTransmitter.listenClients", () -> {
+            requester.informServer(true, "pass 3");
+            return release(batching.listenClients());
+        });
+        harness.add("ServerTransmitter.listenClients.batch", () -> {
+            // four requests arrive before the server looks, and the four
+            // replies go out in one chain
+            for (int i = 0; i < 4; i++){
+                requester.informServer(true, "view");
+            }
+            for (int i = 0; i < 4; i++){
+                Message request = batching.listenClients();
+                batching.informClient(request.getSender(), true, "board");
+                release(request);
+            }
+            batching.flushClients();
+            Message reply = null;
+            for (int i = 0; i < 4; i++){
+                reply = release(requester.listenServer());
+            }
+            return reply;
+        });
+        
+        Message message = new Message(Message.SERVER, 1, Message.Kind.EXTERNAL, "Player 1 to pass.");
+        MessageQueue<Message> linked = new MessageQueueLinked<>();
+        MessageQueue<Message> single = new MessageQueueSingleProducer<>(1024, WaitStrategy.PARK);
+        MessageQueue<Message> multi = new MessageQueueMultiProducer<>(1024, WaitStrategy.PARK);
+        harness.add("MessageQueue.linked", () -> {
+            linked.put(message);
+            return linked.take();
+        });
+        harness.add("MessageQueue.singleProducer", () -> {
+            single.put(message);
+            return single.take();
+        });
+        harness.add("MessageQueue.multiProducer", () -> {
+            multi.put(message);
+            return multi.take();
+        });
+        
+        // a board view as the text protocol and the binary protocol send it
+        GameBoard board = new GameBoard();
+        byte[] guess = {0, 3, 0x07, 0x13, 7};
+        harness.add("Frame.board.text", 
+                () -> new Frame(board.showPlayerViewOfBoard(0)));
+        harness.add("BinaryProtocol.board", 
+                () -> BinaryProtocol.board(board, 0));
+        harness.add("BinaryProtocol.decode", 
+                () -> BinaryProtocol.decode(guess, 2, 3));
+        
+        // a table saved after a move, into memory as SnapshotStore maps it
+        TableSnapshot snapshot = new TableSnapshot();
+        List<Boolean> humans = Arrays.asList(false, false, false, false);
+        TurnStateMachine turns = new TurnStateMachine();
+        turns.setState(2, TurnState.PASS);
+        String[] tokens = {"0123456789abcdef", "fedcba9876543210", "00000000000000ff", "8000000000000000"};
+        ByteBuffer saved = ByteBuffer.allocateDirect(TableSnapshot.SIZE);
+        harness.add("TableSnapshot.save", () -> {
+            snapshot.capture(1, 7, TableSnapshot.Phase.MAIN, -1, humans, turns, board, tokens);
+            saved.clear();
+            snapshot.write(saved, 1);
+            return saved;
+        });
+    }
+    
+    /**
+     * Releases a message, as its receiver would
+     * @param message a message
+     * @return the message
+     */
+    private static Message release(Message message){
+        message.release();
+        return message;
+    }
+    
+    /**
+     * Calls a request handler of a server
+     * @param handler one of the handlers above
+     * @param server server whose handler is called
+     * @param in request
+     * @param playerID 0-3, ID of the player who sent it
+     * @throws Exception if the handler fails
+     */
+    private static void handle(MethodHandle handler, LogicServer server, String in, int playerID) throws Exception{
+        try{
+            handler.invoke(server, in, playerID);
+        } catch (Exception | Error e){
+            throw e;
+        } catch (Throwable t){
+            throw new IllegalStateException(t);
+        }
+    }
+    
+    /**
+     * @param name name of a request handler of LogicServer
+     * @return a method handle calling it
+     */
+    private static MethodHandle handler(String name){
+        try{
+            Method method = LogicServer.class.getDeclaredMethod(name, String.class, int.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("LogicServer has no handler " + name, e);
+        }
+    }
+    
+    /**
+     * @param server a server
+     * @return the transmitter between the server and its client handlers
+     */
+    private static ServerTransmitter transmitterOf(LogicServer server){
+        try{
+            Field field = LogicServer.class.getDeclaredField("transmitter");
+            field.setAccessible(true);
+            return (ServerTransmitter) field.get(server);
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("LogicServer has no transmitter", e);
+        }
+    }
+}
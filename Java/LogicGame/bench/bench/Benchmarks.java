@@ -0,0 +1,137 @@
+package bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import app.ServerBenchmarks;
+
+/**
+ * Runs the benchmarks of LogicGame.
+ *
+ * Usage: java bench.Benchmarks [--warmup ms] [--time ms] [--iterations n]
+ *   [--forks n] [--filter name] [--out file]
+ *
+ * --warmup: how long each benchmark runs in each fork before it is measured
+ *   (default 1000)
+ * --time: how long each benchmark is measured in each fork (default 1000)
+ * --iterations: how many samples the measurement of a fork is split into
+ *   (default 5)
+ * --forks: how many fresh JVMs each benchmark runs in (default 3); 0 runs
+ *   everything in this JVM, which is quicker but not to be published
+ * --filter: only run benchmarks whose name contains this (default all)
+ * --out: also write the results to this file, e.g. to compare against
+ *   bench/results/baseline.txt
+ *
+ * A forked JVM is started with --fork-of and the name of its benchmark.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception{
+        long warmup = 1000;
+        long time = 1000;
+        int iterations = 5;
+        int forks = 3;
+        String filter = "";
+        String outFile = null;
+        String forkOf = null;
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+            case "--warmup":
+                warmup = Long.parseLong(args[++i]);
+                break;
+            case "--time":
+                time = Long.parseLong(args[++i]);
+                break;
+            case "--iterations":
+                iterations = Integer.parseInt(args[++i]);
+                break;
+            case "--forks":
+                forks = Integer.parseInt(args[++i]);
+                break;
+            case "--filter":
+                filter = args[++i];
+                break;
+            case "--out":
+                outFile = args[++i];
+                break;
+            case "--fork-of":
+                forkOf = args[++i];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        Harness harness = new Harness(warmup, time, iterations, forks);
+        GameBenchmarks.addTo(harness);
+        ServerBenchmarks.addTo(harness);
+
+        // the transmitters log every message to System.err
+        PrintStream err = System.err;
+        System.setErr(Harness.nullPrintStream());
+        if (forkOf != null){
+            try{
+                harness.runForked(forkOf, System.out);
+            } finally{
+                System.setErr(err);
+            }
+            // the server's socket is still open
+            System.exit(0);
+        }
+
+        PrintStream out = outFile == null ? System.out :
+            new PrintStream(new Tee(System.out, new FileOutputStream(outFile)), true);
+        out.println("# java " + System.getProperty("java.version")
+                + ", warmup " + warmup + " ms, time " + time + " ms in "
+                + iterations + " iterations, " + forks + " forks; +- is the "
+                + "standard deviation over all iterations");
+        try{
+            harness.run(filter, out);
+        } finally{
+            System.setErr(err);
+            out.flush();
+            if (outFile != null){
+                out.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Writes to two streams
+     */
+    private static class Tee extends OutputStream {
+        private final OutputStream console;
+        private final OutputStream file;
+
+        private Tee(OutputStream console, OutputStream file){
+            this.console = console;
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException{
+            console.write(b);
+            file.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException{
+            console.write(b, off, len);
+            file.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException{
+            console.flush();
+            file.flush();
+        }
+
+        @Override
+        public void close() throws IOException{
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Consumes the results of benchmark operations so that the JIT cannot prove
+ * them unused and drop the work that produced them, after the Blackhole of
+ * JMH.
+ *
+ * A result is compared against two volatile fields which no result can ever
+ * be equal to both of, so the comparison never succeeds, yet the JIT cannot
+ * know that and has to keep the result.  Comparing is cheap and does not
+ * write to shared memory; once in a great while the result is also stored,
+ * so that the JIT cannot reason from escape analysis that it never leaves
+ * the operation.
+ */
+public class Blackhole {
+
+    // every result is different from one of these; they are volatile, so
+    // the JIT has to read them and cannot tell they never change
+    private volatile Object left = new Object();
+    private volatile Object right = new Object();
+
+    // a result is stored about once every 2^TLR_BITS calls
+    private static final int TLR_BITS = 20;
+    private int tlrMask = 1;
+    private int tlr = ThreadLocalRandom.current().nextInt();
+    private Object stored;
+
+    /**
+     * Consumes a result
+     * @param result result of an operation, may be null
+     */
+    public void consume(Object result){
+        if (result == left & result == right){
+            // never happens; left and right are different objects
+            throw new IllegalStateException("Blackhole fell through");
+        }
+        int tlr = (this.tlr = this.tlr * 1664525 + 1013904223);
+        if ((tlr & tlrMask) == 0){
+            // rarely store the result, so that it escapes; the mask grows
+            // until stores happen once in about a million calls
+            stored = result;
+            tlrMask = (tlrMask << 1) + 1 & ((1 << TLR_BITS) - 1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import game.Card;
+import game.Deck;
+import game.GameBoard;
+import game.GameState;
+import game.GameState.State;
+import game.Hand;
+
+/**
+ * Benchmarks of the game package: card rendering, dealing, board creation, 
+ * board views and game state messages
+ */
+public class GameBenchmarks {
+    
+    /**
+     * Adds the game benchmarks to a harness
+     * @param harness harness to add the benchmarks to
+     */
+    public static void addTo(Harness harness){
+        Random random = new Random(24601);
+        
+        // inputs are read from arrays, which the JIT cannot treat as 
+        // constant, so it cannot fold a call into its result
+        Card card = new Card("S", 7);
+        int[] visibilities = {0b0001, 0b0101, 0b1111, 0b0100};
+        int[] next = {0};
+        harness.add("Card.printCard", 
+                () -> card.printCard(visibilities[next[0]++ & 3], 2));
+        
+        Deck deck = new Deck("Logic");
+        harness.add("Deck.shuffle", () -> {
+            deck.shuffle(random);
+            return deck;
+        });
+        harness.add("Deck.deal", () -> {
+            ArrayList<Hand> hands = new ArrayList<Hand>(4);
+            for (int i = 0; i < 4; i++){
+                hands.add(new Hand());
+            }
+            deck.deal(hands);
+            return hands;
+        });
+        harness.add("Deck.sortByRank", () -> {
+            deck.shuffle(random);
+            deck.sortByRank();
+            return deck;
+        });
+        
+        harness.add("GameBoard.new", () -> new GameBoard(random));
+        
+        GameBoard board = new GameBoard(random);
+        board.revealCardToPartner(2, 4);
+        board.revealCardToAll(1, 3);
+        harness.add("GameBoard.showPlayerViewOfBoard.cached", 
+                () -> board.showPlayerViewOfBoard(0));
+        // views are cached until a move changes them, so the cost of building
+        // a view is measured on fresh boards (subtract GameBoard.new)
+        harness.add("GameBoard.showPlayerViewOfBoard.cold", 
+                () -> new GameBoard(random).showPlayerViewOfBoard(0));
+        // the state published after each move is likewise built once per 
+        // change (subtract GameBoard.new from cold)
+        harness.add("GameBoard.getState.cached", () -> board.getState());
+        harness.add("GameBoard.getState.cold", () -> new GameBoard(random).getState());
+        
+        GameState gamestate = new GameState(Arrays.asList(false, true, false, true));
+        harness.add("GameState.getMessages", () -> {
+            gamestate.setState(State.TO_PASS, 1);
+            return gamestate.getMessages();
+        });
+        int[] guess = {2, 3, 7, 1};
+        harness.add("GameState.getMessages.guess", () -> {
+            gamestate.setState(State.GUESS, 1, guess);
+            return gamestate.getMessages();
+        });
+    }
+}
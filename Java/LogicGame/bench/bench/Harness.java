@@ -0,0 +1,304 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small microbenchmark harness.  Each benchmark is an operation that is run
+ * repeatedly for a warmup period, then for a number of measurement
+ * iterations, after which the average time per operation and the average
+ * number of bytes allocated per operation by the benchmark thread are
+ * reported.
+ *
+ * This is not JMH, which the project does not depend on, but it follows the
+ * rules JMH enforces that matter for the operations measured here:
+ * - every benchmark runs in a fresh JVM (a fork), several times, so that
+ *   the profile gathered while running one benchmark does not shape the
+ *   code compiled for the next, and so that differences between JVM runs
+ *   show up in the error instead of being mistaken for a speedup;
+ * - the result of every operation goes into a Blackhole, so the JIT cannot
+ *   drop the work that produced it;
+ * - the inputs of an operation must be read from memory the JIT cannot
+ *   treat as constant (see GameBenchmarks), so the work cannot be folded.
+ * Operations are timed in batches, which spreads the cost of reading the
+ * clock thin, but an operation of a few nanoseconds is still within the
+ * noise of the loop and the Blackhole around it.
+ */
+public class Harness {
+
+    /**
+     * An operation to be measured
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once
+         * @return any result of the operation, which is consumed by a
+         * Blackhole
+         * @throws Exception if the operation fails, which stops the benchmark
+         */
+        public Object run() throws Exception;
+    }
+
+    /**
+     * Immutable class.  Measurements of one benchmark over all of its forks
+     * and iterations.
+     */
+    public static class Result {
+        private final String name;
+        private final int samples;
+        private final double nanosPerOperation;
+        private final double nanosError;
+        private final double bytesPerOperation;
+
+        private Result(String name, List<double[]> iterations){
+            this.name = name;
+            this.samples = iterations.size();
+            double nanos = 0;
+            double bytes = 0;
+            for (double[] iteration : iterations){
+                nanos += iteration[0];
+                bytes += iteration[1];
+            }
+            this.nanosPerOperation = nanos / samples;
+            this.bytesPerOperation = bytes / samples;
+            double squares = 0;
+            for (double[] iteration : iterations){
+                squares += (iteration[0] - nanosPerOperation) * (iteration[0] - nanosPerOperation);
+            }
+            this.nanosError = samples > 1 ? Math.sqrt(squares / (samples - 1)) : Double.NaN;
+        }
+
+        public String getName(){
+            return name;
+        }
+
+        public double getNanosPerOperation(){
+            return nanosPerOperation;
+        }
+
+        /**
+         * @return standard deviation of the time per operation over all
+         * iterations of all forks
+         */
+        public double getNanosError(){
+            return nanosError;
+        }
+
+        /**
+         * @return bytes allocated per operation, or a negative number if
+         * this JVM cannot measure allocation
+         */
+        public double getBytesPerOperation(){
+            return bytesPerOperation;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%-48s %10.1f +- %7.1f ns/op %10.1f B/op %4d samples",
+                    name, nanosPerOperation, nanosError, bytesPerOperation, samples);
+        }
+    }
+
+    // operations run between two reads of the clock
+    private static final int BATCH = 64;
+
+    // a forked JVM reports each iteration on a line starting with this
+    private static final String ITERATION = "#iteration";
+
+    private final Blackhole blackhole = new Blackhole();
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int iterations;
+    private final int forks;
+    private final List<String> names = new ArrayList<>();
+    private final List<Operation> operations = new ArrayList<>();
+
+    /**
+     * Creates a harness
+     * @param warmupMillis how long each benchmark runs in each fork before
+     * being measured
+     * @param measureMillis how long each benchmark is measured in each fork
+     * @param iterations how many parts the measurement is split into
+     * @param forks how many fresh JVMs each benchmark runs in, or 0 to run
+     * every benchmark in this JVM (which is only good for trying things out)
+     */
+    public Harness(long warmupMillis, long measureMillis, int iterations, int forks){
+        if (iterations < 1 || forks < 0){
+            throw new IllegalArgumentException("Need at least one iteration and no negative forks");
+        }
+        this.warmupNanos = warmupMillis * 1000000;
+        this.measureNanos = measureMillis * 1000000;
+        this.iterations = iterations;
+        this.forks = forks;
+    }
+
+    /**
+     * Adds a benchmark
+     * @param name name of the benchmark, e.g. "Deck.shuffle"
+     * @param operation operation to be measured
+     */
+    public void add(String name, Operation operation){
+        names.add(name);
+        operations.add(operation);
+    }
+
+    /**
+     * Runs the benchmarks whose name contains a filter, printing each result
+     * as it is measured
+     * @param filter part of the name of the benchmarks to run ("" for all)
+     * @param out where results are printed
+     * @return the results
+     * @throws Exception if an operation or a fork fails
+     */
+    public List<Result> run(String filter, PrintStream out) throws Exception{
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++){
+            if (names.get(i).contains(filter)){
+                List<double[]> samples = new ArrayList<>();
+                if (forks == 0){
+                    samples.addAll(measure(operations.get(i)));
+                }
+                for (int fork = 0; fork < forks; fork++){
+                    samples.addAll(fork(names.get(i)));
+                }
+                Result result = new Result(names.get(i), samples);
+                out.println(result);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs one benchmark in this JVM and prints its iterations for the JVM
+     * that forked this one to read
+     * @param name exact name of the benchmark
+     * @param out where iterations are printed
+     * @throws Exception if the operation fails
+     */
+    public void runForked(String name, PrintStream out) throws Exception{
+        int i = names.indexOf(name);
+        if (i < 0){
+            throw new IllegalArgumentException("No benchmark " + name);
+        }
+        for (double[] iteration : measure(operations.get(i))){
+            out.println(ITERATION + " " + iteration[0] + " " + iteration[1]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Runs one benchmark in a fresh JVM, with the class path and the JVM
+     * options of this one
+     * @param name exact name of the benchmark
+     * @return time and bytes per operation of each iteration
+     * @throws Exception if the fork fails
+     */
+    private List<double[]> fork(String name) throws Exception{
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Benchmarks.class.getName());
+        command.add("--fork-of");
+        command.add(name);
+        command.add("--warmup");
+        command.add(Long.toString(warmupNanos / 1000000));
+        command.add("--time");
+        command.add(Long.toString(measureNanos / 1000000));
+        command.add("--iterations");
+        command.add(Integer.toString(iterations));
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+        List<double[]> samples = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))){
+            String line;
+            while ((line = in.readLine()) != null){
+                if (line.startsWith(ITERATION + " ")){
+                    String[] fields = line.split(" ");
+                    samples.add(new double[]{Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+                }
+            }
+        }
+        if (process.waitFor() != 0 || samples.size() != iterations){
+            throw new IllegalStateException("Fork of " + name + " failed with exit code " + process.exitValue());
+        }
+        return samples;
+    }
+
+    /**
+     * Warms an operation up, then measures it
+     * @param operation operation to measure
+     * @return time and bytes per operation of each iteration
+     * @throws Exception if the operation fails
+     */
+    private List<double[]> measure(Operation operation) throws Exception{
+        long end = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < end){
+            runBatch(operation);
+        }
+
+        List<double[]> samples = new ArrayList<>();
+        for (int i = 0; i < iterations; i++){
+            long count = 0;
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long elapsed;
+            do{
+                runBatch(operation);
+                count += BATCH;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < measureNanos / iterations);
+            long allocated = allocatedBytes() - allocatedBefore;
+            samples.add(new double[]{(double) elapsed / count,
+                    allocatedBefore < 0 ? -1 : (double) allocated / count});
+        }
+        return samples;
+    }
+
+    private void runBatch(Operation operation) throws Exception{
+        for (int i = 0; i < BATCH; i++){
+            blackhole.consume(operation.run());
+        }
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, or -1 if this
+     * JVM cannot tell
+     */
+    private static long allocatedBytes(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean){
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()){
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a PrintStream that discards everything, to keep console output
+     * of the code under test out of the measurements
+     */
+    public static PrintStream nullPrintStream(){
+        return new PrintStream(new OutputStream(){
+            @Override
+            public void write(int b){
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len){
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * Reads commands for whoever runs a server from its standard input, so
+ * that a running server can be looked into without restarting it.  Runs on
+ * a daemon thread of its own and stops when standard input is closed, e.g.
+ * when the server is started in the background.
+ *
+ * Commands:
+ * trace: writes the records of the message trace (see MessageTrace)
+ * help: lists the commands
+ */
+public class AdminConsole implements Runnable {
+
+    private final BufferedReader in;
+    private final PrintStream out;
+
+    /**
+     * Creates a console
+     * @param in where commands are read from
+     * @param out where answers are written
+     */
+    AdminConsole(InputStream in, PrintStream out){
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = out;
+    }
+
+    /**
+     * Starts a console reading standard input and answering on standard
+     * output
+     */
+    public static void start(){
+        Thread thread = new Thread(new AdminConsole(System.in, System.out), "admin-console");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run(){
+        try{
+            for (String line = in.readLine(); line != null; line = in.readLine()){
+                handle(line.trim());
+            }
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Carries out a command
+     * @param command a line of input, trimmed
+     */
+    void handle(String command){
+        switch (command){
+        case "":
+            break;
+        case "trace":
+            if (MessageTrace.LEVEL == MessageTrace.Level.OFF){
+                out.println("Tracing is off; start the server with "
+                        + "-Dlogic.trace=events or -Dlogic.trace=content.");
+            }
+            else{
+                MessageTrace.dump(out);
+            }
+            break;
+        default:
+            out.println("Commands: trace (write the message trace), help");
+        }
+        out.flush();
+    }
+
+}
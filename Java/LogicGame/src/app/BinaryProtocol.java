@@ -0,0 +1,261 @@
+package app;
+
+import game.GameBoard;
+import game.GameState;
+
+/**
+ * The binary protocol, a compact alternative to the text protocol for 
+ * machine clients.  A client switches to it by sending the line 
+ * "protocol binary"; from then on everything it sends and receives is a 
+ * frame: 
+ * 
+ *   [length: 2 bytes, big-endian] [opcode: 1 byte] [payload: length-1 bytes]
+ * 
+ * Client to server (the text command each is equivalent to in brackets):
+ *   0x01 VIEW                      [view]
+ *   0x02 HELP                      [help]
+ *   0x03 DONE                      [done]
+ *   0x04 SWAP  position            [swap position]
+ *   0x05 PASS  position            [pass position]
+ *   0x06 SHOW  position            [show position]
+ *   0x07 GUESS target<<4|position, rank       [guess target position rank]
+ *   0x08 DECLARE                   [declare]
+ *   0x09 DECLARE_CARD target<<4|position, rank [declare target position rank]
+ *   0x0A MODE_DELTA                [mode delta]
+ *   0x0B MODE_FULL                 [mode full]
+ *   0x0C SYNC  version (8 bytes)   [sync version]
+ * 
+ * Server to client: 
+ *   0x80 TEXT   UTF-8 text of a line of the text protocol
+ *   0x81 EVENT  state, player, position, target, rank, correct: the 
+ *               announcement of a GameState (state is the ordinal of 
+ *               GameState.State; fields that do not apply are 0)
+ *   0x82 BOARD  version (8 bytes), then for each of the 24 cards (owner 
+ *               0-3, position 0-5): code, viewers (see GameBoard.getCardView)
+ *   0x83 UPDATE from version (8 bytes), to version (8 bytes), count, then 
+ *               for each changed card: 6*owner+position, code, viewers
+ * 
+ * A client of the binary protocol is always in delta mode.  Frames are 
+ * decoded into the equivalent text command, so the server handles both 
+ * protocols the same way.  
+ */
+public class BinaryProtocol {
+    
+    /**
+     * The line a client sends to switch to the binary protocol
+     */
+    public static final String NEGOTIATION = "protocol binary";
+    
+    // longest frame accepted from a client, length prefix included
+    static final int MAX_FRAME = 1024;
+    
+    // client to server
+    static final int VIEW = 0x01;
+    static final int HELP = 0x02;
+    static final int DONE = 0x03;
+    static final int SWAP = 0x04;
+    static final int PASS = 0x05;
+    static final int SHOW = 0x06;
+    static final int GUESS = 0x07;
+    static final int DECLARE = 0x08;
+    static final int DECLARE_CARD = 0x09;
+    static final int MODE_DELTA = 0x0A;
+    static final int MODE_FULL = 0x0B;
+    static final int SYNC = 0x0C;
+    
+    // server to client
+    static final int TEXT = 0x80;
+    static final int EVENT = 0x81;
+    static final int BOARD = 0x82;
+    static final int UPDATE = 0x83;
+    
+    private static final int CARDS = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+    
+    // decoded frames that are not a valid command; rejected by CommandParser
+    private static final String INVALID = "?";
+    
+    private BinaryProtocol(){
+    }
+    
+    /**
+     * Decodes a frame from a client into the equivalent text command
+     * @param frame bytes of the frame, without length prefix
+     * @param offset index of the opcode in frame
+     * @param length length of the frame, without length prefix
+     * @return text command, or a line CommandParser rejects if the frame 
+     * is not a valid command
+     */
+    public static String decode(byte[] frame, int offset, int length){
+        if (length < 1){
+            return INVALID;
+        }
+        int op = frame[offset] & 0xFF;
+        int payload = length - 1;
+        int p = offset + 1;
+        switch (op){
+        case VIEW:
+            return payload == 0 ? "view" : INVALID;
+        case HELP:
+            return payload == 0 ? "help" : INVALID;
+        case DONE:
+            return payload == 0 ? "done" : INVALID;
+        case SWAP:
+            return payload == 1 ? "swap " + (frame[p] & 0xFF) : INVALID;
+        case PASS:
+            return payload == 1 ? "pass " + (frame[p] & 0xFF) : INVALID;
+        case SHOW:
+            return payload == 1 ? "show " + (frame[p] & 0xFF) : INVALID;
+        case GUESS:
+            return payload == 2 ? "guess " + card(frame, p) : INVALID;
+        case DECLARE:
+            return payload == 0 ? "declare" : INVALID;
+        case DECLARE_CARD:
+            return payload == 2 ? "declare " + card(frame, p) : INVALID;
+        case MODE_DELTA:
+            return payload == 0 ? "mode delta" : INVALID;
+        case MODE_FULL:
+            return payload == 0 ? "mode full" : INVALID;
+        case SYNC:
+            if (payload != 8){
+                return INVALID;
+            }
+            long version = 0;
+            for (int i = 0; i < 8; i++){
+                version = version << 8 | (frame[p + i] & 0xFF);
+            }
+            // a negative version is rejected by CommandParser
+            return "sync " + version;
+        default:
+            return INVALID;
+        }
+    }
+    
+    /**
+     * @return "[target] [position] [rank]" of a packed card argument
+     */
+    private static String card(byte[] frame, int p){
+        int packed = frame[p] & 0xFF;
+        return (packed >>> 4) + " " + (packed & 0xF) + " " + (frame[p + 1] & 0xFF);
+    }
+    
+    /**
+     * Turns a line of text into a TEXT frame
+     * @param line a line of the text protocol
+     * @return TEXT frame of the line
+     */
+    public static Frame text(Frame line){
+        if (line.isBinary()){
+            return line;
+        }
+        int length = line.contentLength();
+        byte[] bytes = start(TEXT, length);
+        System.arraycopy(line.bytes(), 0, bytes, 3, length);
+        return new Frame(line.getContent(), bytes);
+    }
+    
+    /**
+     * Encodes the announcement of a game state
+     * @param gamestate game state just set
+     * @return EVENT frame
+     */
+    public static Frame event(GameState gamestate){
+        GameState.State state = gamestate.getState();
+        byte[] bytes = start(EVENT, 6);
+        bytes[3] = (byte) state.ordinal();
+        switch (state){
+        case TO_PASS: case TO_SHOW: case TO_GUESS: case DECLARE:
+            bytes[4] = (byte) gamestate.getPlayerID();
+            break;
+        case PASS: case SHOW:
+            bytes[4] = (byte) gamestate.getPlayerID();
+            bytes[5] = (byte) gamestate.getPosition();
+            break;
+        case GUESS:
+            bytes[4] = (byte) gamestate.getPlayerID();
+            bytes[5] = (byte) gamestate.getPosition();
+            bytes[6] = (byte) gamestate.getGuessTarget();
+            bytes[7] = (byte) gamestate.getGuessRank();
+            bytes[8] = (byte) (gamestate.isGuessCorrect() ? 1 : 0);
+            break;
+        default:
+            break;
+        }
+        return new Frame("event", bytes);
+    }
+    
+    /**
+     * Encodes a player's whole view of the board
+     * @param board the board
+     * @param playerID 0-3, player whose view is encoded
+     * @return BOARD frame of the current version of the view
+     */
+    public static Frame board(GameBoard board, int playerID){
+        long version = board.getViewVersion(playerID);
+        byte[] bytes = start(BOARD, 8 + 2 * CARDS);
+        putLong(bytes, 3, version);
+        int p = 11;
+        for (int owner = 0; owner < GameBoard.NUM_PLAYERS; owner++){
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                int view = board.getCardView(playerID, owner, card);
+                bytes[p++] = (byte) view;
+                bytes[p++] = (byte) (view >>> 8);
+            }
+        }
+        return new Frame("board", bytes);
+    }
+    
+    /**
+     * Encodes the cards of a player's view that changed since a version
+     * @param board the board
+     * @param playerID 0-3, player whose view is encoded
+     * @param version version of the view the client has
+     * @return UPDATE frame, or null if nothing changed
+     */
+    public static Frame update(GameBoard board, int playerID, long version){
+        int changes = board.getViewChangesSince(playerID, version);
+        if (changes == 0){
+            return null;
+        }
+        int count = Integer.bitCount(changes);
+        long to = board.getViewVersion(playerID);
+        byte[] bytes = start(UPDATE, 17 + 3 * count);
+        putLong(bytes, 3, version);
+        putLong(bytes, 11, to);
+        bytes[19] = (byte) count;
+        int p = 20;
+        for (int rest = changes; rest != 0; rest &= rest - 1){
+            int i = Integer.numberOfTrailingZeros(rest);
+            int view = board.getCardView(playerID, i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE);
+            bytes[p++] = (byte) i;
+            bytes[p++] = (byte) view;
+            bytes[p++] = (byte) (view >>> 8);
+        }
+        return new Frame("update", bytes);
+    }
+    
+    /**
+     * Allocates a frame and fills in its length and opcode
+     * @param op opcode
+     * @param payload length of the payload
+     * @return frame, with payload from index 3
+     */
+    private static byte[] start(int op, int payload){
+        int length = payload + 1;
+        if (length > 0xFFFF){
+            throw new IllegalArgumentException("Frame too long: " + length);
+        }
+        byte[] bytes = new byte[2 + length];
+        bytes[0] = (byte) (length >>> 8);
+        bytes[1] = (byte) length;
+        bytes[2] = (byte) op;
+        return bytes;
+    }
+    
+    private static void putLong(byte[] bytes, int offset, long value){
+        for (int i = 7; i >= 0; i--){
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+    
+}
@@ -21,7 +21,18 @@ public class ClientHandlerThread implements Runnable{
     // Controls communication to/from server
     private final ClientTransmitter transmitter; 
     
-    private boolean gameIsOver = false; 
+    private volatile boolean gameIsOver = false; 
+    
+    // the client's session if it can come back after its connection drops
+    // (see ResumableChannel), or null
+    private final ResumableChannel session;
+    
+    // true once the client is gone for good
+    private boolean clientGone = false;
+    
+    // true once the client was disconnected for sending more requests than
+    // the server could take (only used by the thread forwarding its input)
+    private boolean flooded = false;
     
     
     /**
@@ -34,9 +45,36 @@ public class ClientHandlerThread implements Runnable{
      */
     public ClientHandlerThread(Socket socket,  
             int playerID, ClientTransmitter transmitter) throws IOException{
-        this.clientChannel = new TwoWayChannelSocket(socket);
+        this(new TwoWayChannelSocket(socket), playerID, transmitter);
+    }
+    
+    /**
+     * Constructs a ClientServerThread *serving a human player* who is already
+     * connected
+     * @param clientChannel channel through which client connects
+     * @param playerID number of player (0-3)
+     * @param transmitter the ClientTransmitter through which this thread
+     * informs / listens to the server  
+     */
+    public ClientHandlerThread(TwoWayChannel clientChannel,  
+            int playerID, ClientTransmitter transmitter){
+        this.clientChannel = clientChannel;
         this.playerID = playerID;
         this.transmitter = transmitter;
+        this.session = clientChannel instanceof ResumableChannel 
+                ? (ResumableChannel) clientChannel : null;
+        if (session != null){
+            // the server tells the other players
+            session.setListener(new ResumableChannel.Listener(){
+                public void lost() throws InterruptedException{
+                    transmitter.informServer(false, "Connection lost.");
+                }
+                public void resumed(boolean inSync) throws InterruptedException{
+                    transmitter.informServer(false, inSync 
+                            ? "Connection resumed." : "Connection resumed, out of sync.");
+                }
+            });
+        }
     }
     
     /**
@@ -51,9 +89,11 @@ public class ClientHandlerThread implements Runnable{
         this.clientChannel = AIChannel;
         this.playerID = playerID;
         this.transmitter = transmitter;
+        this.session = null;
         
         // creates and starts the AI player
-        new Thread(new LogicAI(playerID, AIChannel.getReverseChannel())).start();;
+        TaskLauncher.DEFAULT.launch(new LogicAI(playerID, AIChannel.getReverseChannel()), 
+                "ai-" + playerID);
     }
     
 
@@ -78,14 +118,27 @@ public class ClientHandlerThread implements Runnable{
 
     
     /**
-     * Asserts that a message is External and relays it to the client
+     * Asserts that a message is External, relays it to the client and
+     * releases it
      * @param message a message
-     * @param content expected content
      * @throws InterruptedException 
      */
     private void relayExternalMessage(Message message) throws InterruptedException{
         assert(message.isExternal());
-        clientChannel.send(message.getContent());
+        clientChannel.send(message.getFrame());
+        clientChannel.flush();
+        message.release();
+    }
+    
+    /**
+     * Waits for an Internal message from the server with a specified content
+     * @param content expected content
+     * @throws InterruptedException
+     */
+    private void awaitInternalMessage(String content) throws InterruptedException{
+        Message message = transmitter.listenServer();
+        Message.verifyInternalMessage(message, content);
+        message.release();
     }
 
     
@@ -98,8 +151,9 @@ public class ClientHandlerThread implements Runnable{
     private void handleConnection() throws IOException, InterruptedException {
         
         try {
-            handleConnectionPhase();
-            handleSetupPhase();
+            if (handleConnectionPhase()){
+                handleSetupPhase();
+            }
             handleMainAndDeclarePhase();            
         } finally {
             clientChannel.closeOut();
@@ -109,9 +163,11 @@ public class ClientHandlerThread implements Runnable{
     
     /**
      * Handles connection phase
+     * @return false if the game was restored after its setup phase (see
+     * TableSnapshot), so setup is skipped
      * @throws InterruptedException
      */
-    private void handleConnectionPhase() throws InterruptedException{
+    private boolean handleConnectionPhase() throws InterruptedException{
         clientChannel.send("Welcome to Logic! You are player #" + playerID + ".");
         clientChannel.send("Please wait for four players to arrive.");
 
@@ -120,8 +176,13 @@ public class ClientHandlerThread implements Runnable{
         // by calling threadControls[playerID].notify()
         transmitter.informServer(false, "Finished connecting.");
 
-        Message.verifyInternalMessage(transmitter.listenServer(), 
-                "Connection phase done.");
+        Message message = transmitter.listenServer();
+        boolean setup = !message.getContent().equals("Game resumed.");
+        if (setup){
+            Message.verifyInternalMessage(message, "Connection phase done.");
+        }
+        message.release();
+        return setup;
     }
     
     /**
@@ -139,21 +200,45 @@ public class ClientHandlerThread implements Runnable{
         // clients are shown only their own cards, and can request
         // swaps of adjacent cards.  
         
-        // this loop continues until client enters "done" 
+        // this loop continues until client enters "done", or is gone
+        boolean finished = false;
         for (String line = clientChannel.listen(); line != null; line = clientChannel.listen()) {
-            // Client handler sends request to server and receives response
-            if (line.equals("done")){
+            // Client handler sends requests to server and receives responses.
+            // Requests the client sent at once are passed on together, and 
+            // their responses (one per request) flushed together
+            int requests = 0;
+            boolean isDone = false;
+            for (; line != null; line = clientChannel.poll()){
+                if (line.equals("done")){
+                    isDone = true;
+                    break;
+                }
+                transmitter.informServer(true, line);
+                requests++;
+            }
+            for (; requests > 0; requests--){
+                Message message = transmitter.listenServer();
+                assert(message.isExternal());
+                clientChannel.send(message.getFrame());
+                message.release();
+            }
+            clientChannel.flush();
+            
+            if (isDone){
                 clientChannel.send("Yay! Wait for other players to finish setup...");
                 transmitter.informServer(false, "Finished setup.");
+                finished = true;
                 break;
             }
-            
-            transmitter.informServer(true, line);
-            relayExternalMessage(transmitter.listenServer());
+        }
+        if (!finished){
+            // its seat is played for it, with the cards as they are
+            clientGone = true;
+            transmitter.informServer(false, "Seat abandoned.");
+            transmitter.informServer(false, "Finished setup.");
         }
         
-        Message.verifyInternalMessage(transmitter.listenServer(), 
-                "Setup phase done.");
+        awaitInternalMessage("Setup phase done.");
 
     }
     
@@ -167,34 +252,108 @@ public class ClientHandlerThread implements Runnable{
         // and sending requests to main server happens 
         // asynchronously, so all clients receive updates
         // from server real-time
-        new Thread(new Runnable(){
+        
+        if (clientGone){
+            // nobody to relay to, but the server's messages are still taken
+            relayServerMessages();
+            return;
+        }
+        
+        if (clientChannel.forwardTo(line -> {
+                if (flooded){
+                    return;
+                }
+                if (line != null){
+                    if (!transmitter.offerServer(line)){
+                        // the channel's thread must not wait for the server
+                        dropFloodingClient();
+                    }
+                }
+                else if (!gameIsOver){
+                    // the client is gone for good
+                    transmitter.informServer(false, "Seat abandoned.");
+                }
+            })){
+            // the channel passes client input on to the main server by
+            // itself, so this thread only relays the server's messages
+            relayServerMessages();
+            gameIsOver = true;
+            clientChannel.forwardTo(null);
+            clientChannel.listen();
+            return;
+        }
+        
+        TaskLauncher.DEFAULT.launch(new Runnable(){
             public void run(){
                 try{
-                    for (Message message = transmitter.listenServer(); 
-                            message != null; 
-                            message = transmitter.listenServer()){
-                        if (message.isExternal()){
-                            clientChannel.send(message.getContent());                                
-                        }
-                        else{
-                            Message.verifyInternalMessage(message, "Disconnect.");
-                            clientChannel.send("Press enter to disconnect.");
-                            break;
-                        }
-                    }                        
+                    relayServerMessages();
                 }
                 catch(InterruptedException e){
                     e.printStackTrace();
                 }
                 gameIsOver = true;
             }
-        }).start();
+        }, "relay-" + playerID);
 
         // reads client input and sends to main server
         for (String line = clientChannel.listen(); line != null && !gameIsOver; 
                 line = clientChannel.listen()) {
             transmitter.informServer(true,line);
         }
+        if (!gameIsOver){
+            // the client is gone for good
+            transmitter.informServer(false, "Seat abandoned.");
+        }
+    }
+    
+    /**
+     * Disconnects a client whose requests pile up faster than the server
+     * takes them, and has its seat played for it.  Called from the thread 
+     * forwarding the client's input.  
+     * @throws InterruptedException
+     */
+    private void dropFloodingClient() throws InterruptedException{
+        flooded = true;
+        clientChannel.send("Too many requests; disconnecting.");
+        try{
+            clientChannel.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+        if (!gameIsOver){
+            transmitter.informServer(false, "Seat abandoned.");
+        }
+    }
+    
+    /**
+     * Relays messages from the main server to the client until the server
+     * disconnects.  Messages are flushed to the client whenever the server
+     * has nothing more queued, so a burst of messages (e.g. a move and the 
+     * board views following it) is written at once.  
+     * @throws InterruptedException
+     */
+    private void relayServerMessages() throws InterruptedException{
+        while (true){
+            Message message = transmitter.pollServer();
+            if (message == null){
+                clientChannel.flush();
+                message = transmitter.listenServer();
+            }
+            if (message.isExternal()){
+                clientChannel.send(message.getFrame());
+                message.release();
+            }
+            else{
+                Message.verifyInternalMessage(message, "Disconnect.");
+                message.release();
+                if (session != null){
+                    // the game is over, so there is nothing to come back to
+                    session.endSession();
+                }
+                clientChannel.send("Press enter to disconnect.");
+                break;
+            }
+        }
     }
     
 }
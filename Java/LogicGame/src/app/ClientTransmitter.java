@@ -1,33 +1,64 @@
 package app;
 
-import java.util.concurrent.BlockingQueue;
-
 /**
  * A class for a client handler thread to listen to and request information from 
  * a server thread
  */
 public class ClientTransmitter {
 
-    private final BlockingQueue<Message> fromServer;
-    private final BlockingQueue<Message> toServer;
+    private final MessageQueue<Message> fromServer;
+    private final MessageQueue<Message> toServer;
     private final int playerID; // in range 0-3
+    private final int traceID; // ID of the table's messages in the MessageTrace
+    
+    // rest of the last chain of messages taken from fromServer, or null
+    private Message chain = null;
+    
+    // requests to the server are taken from this.  Only one thread at a 
+    // time relays the client's requests, but internal messages may come 
+    // from others (see ResumableChannel.Listener), so they are not pooled.  
+    private final MessagePool pool = new MessagePool();
+    
+    // requests may fill at most this many slots of toServer, which the four
+    // handlers of a table share, so that there is always room for internal 
+    // messages
+    private final int requestLimit;
     
     /**
      * Constructs a ClientTransmitter for player playerID given playerID and 
-     * the necessary BlockingQueues
+     * the necessary MessageQueues
      * @param playerID ID of player
      * @param fromServer channel for communication from server to a ClientHandler
      * @param toServer channel for communication from a ClientHandler to a server
      */
-    public ClientTransmitter(int playerID, BlockingQueue<Message> fromServer, 
-            BlockingQueue<Message> toServer){
+    public ClientTransmitter(int playerID, MessageQueue<Message> fromServer, 
+            MessageQueue<Message> toServer){
+        this(playerID, fromServer, toServer, 0);
+    }
+    
+    /**
+     * Constructs a ClientTransmitter for player playerID given playerID and 
+     * the necessary MessageQueues
+     * @param playerID ID of player
+     * @param fromServer channel for communication from server to a ClientHandler
+     * @param toServer channel for communication from a ClientHandler to a server
+     * @param traceID ID under which messages received are recorded in the
+     * MessageTrace, to tell tables apart
+     */
+    public ClientTransmitter(int playerID, MessageQueue<Message> fromServer, 
+            MessageQueue<Message> toServer, int traceID){
         this.playerID = playerID;
+        this.traceID = traceID;
         this.fromServer = fromServer;
         this.toServer = toServer;
+        this.requestLimit = Math.max(1, toServer.capacity() / 2);
     }
     
     /**
-     * Send a message to the server   
+     * Send a message to the server.  Messages relayed from the client must
+     * be sent by one thread at a time, and wait while requests fill their
+     * share of the queue to the server (see offerServer); internal messages
+     * may be sent by any thread, and find room at once.  
      * @param isExternal true if message is relayed from client, false if 
      * message is between handler and server for maintaining gamestate
      * @param message a message to be sent to the server, 
@@ -35,20 +66,75 @@ public class ClientTransmitter {
      * @throws InterruptedException
      */
     public void informServer(boolean isExternal, String message) throws InterruptedException{
-        toServer.put(new Message("Client " + playerID,"Server",isExternal, message));
+        if (!isExternal){
+            toServer.put(new Message(playerID, Message.SERVER, Message.Kind.INTERNAL, message));
+            return;
+        }
+        for (int attempt = 0; !offerServer(message); attempt++){
+            if (Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            WaitStrategy.PARK.idle(attempt);
+        }
+    }
+    
+    /**
+     * Sends the server a message relayed from the client, unless requests 
+     * already fill their share of the queue to the server.  Never blocks, 
+     * so it can be called from a channel's thread (see TwoWayChannel.Handler).  
+     * Must be called by one thread at a time, like informServer.  
+     * @param message a request written in an appropriate protocol
+     * @return false if the server is behind and the message was not sent
+     */
+    public boolean offerServer(String message){
+        if (toServer.size() >= requestLimit){
+            return false;
+        }
+        // if internal messages took the rest of the room, the message is
+        // left to the garbage collector
+        return toServer.offer(pool.acquire(playerID, Message.SERVER, Message.Kind.EXTERNAL, message));
     }
     
     /**
      * Listens for a message from the server. Blocks until
      * a message is received.  
-     * @return message from server
+     * @return message from server, to be released (see Message.release) when
+     * the handler is done with it
      * @throws InterruptedException
      */
     public Message listenServer() throws InterruptedException{
-        Message message = fromServer.take();
-        System.err.println("Received:" + message.toString());
-        assert(message.getSender().equals("Server"));
-        assert(message.getRecipient().equals("Client "+playerID));
+        Message message = chain;
+        if (message == null){
+            message = fromServer.take();
+            Metrics.queueWait(Metrics.Queue.TO_CLIENT, message.getSentAt());
+        }
+        chain = message.next;
+        message.next = null;
+        MessageTrace.received(traceID, message);
+        assert(message.getSender() == Message.SERVER);
+        assert(message.getRecipient() == playerID);
+        return message;
+    }
+
+    /**
+     * Takes a message from the server if there is one.  Does not block.  
+     * @return message from server, to be released (see Message.release) when
+     * the handler is done with it, or null if there is none
+     */
+    public Message pollServer(){
+        Message message = chain;
+        if (message == null){
+            message = fromServer.poll();
+            if (message == null){
+                return null;
+            }
+            Metrics.queueWait(Metrics.Queue.TO_CLIENT, message.getSentAt());
+        }
+        chain = message.next;
+        message.next = null;
+        MessageTrace.received(traceID, message);
+        assert(message.getSender() == Message.SERVER);
+        assert(message.getRecipient() == playerID);
         return message;
     }
 
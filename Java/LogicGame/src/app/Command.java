@@ -0,0 +1,172 @@
+package app;
+
+/**
+ * Mutable class.  A client command decoded by CommandParser, e.g. 
+ * "guess 1 3 7" is op GUESS with target 1, position 3 and rank 7.  One
+ * Command is reused for every line a parser decodes.  
+ */
+public class Command {
+    
+    /**
+     * The commands of the text protocol
+     */
+    public enum Op {
+        VIEW,         // view
+        HELP,         // help
+        DONE,         // done
+        SWAP,         // swap [position]
+        PASS,         // pass [position]
+        SHOW,         // show [position]
+        GUESS,        // guess [target] [position] [rank]
+        DECLARE,      // declare
+        DECLARE_CARD, // declare [target] [position] [rank]
+        MODE_DELTA,   // mode delta
+        MODE_FULL,    // mode full
+        SYNC,         // sync [version]
+        PROTOCOL_BINARY // protocol binary (see BinaryProtocol)
+    }
+    
+    /**
+     * Why a line could not be decoded
+     */
+    public enum Error {
+        NONE("no error"),
+        EMPTY("empty command"),
+        UNKNOWN_COMMAND("unknown command"),
+        MISSING_ARGUMENT("missing argument"),
+        BAD_PLAYER("expected a player 0-3"),
+        BAD_POSITION("expected a card position 0-5"),
+        BAD_RANK("expected a rank 1-12"),
+        BAD_MODE("expected 'delta' or 'full'"),
+        BAD_VERSION("expected a version number"),
+        BAD_PROTOCOL("expected 'binary'"),
+        TRAILING_INPUT("unexpected input after command");
+        
+        private final String description;
+        
+        private Error(String description){
+            this.description = description;
+        }
+        
+        @Override
+        public String toString(){
+            return description;
+        }
+    }
+    
+    private Op op;
+    private int target;
+    private int position;
+    private int rank;
+    private long version;
+    private Error error = Error.NONE;
+    private int errorColumn;
+    
+    /**
+     * Clears this command before decoding a line into it
+     */
+    void reset(){
+        op = null;
+        target = -1;
+        position = -1;
+        rank = -1;
+        version = -1;
+        error = Error.NONE;
+        errorColumn = -1;
+    }
+    
+    void setOp(Op op){
+        this.op = op;
+    }
+    
+    void setTarget(int target){
+        this.target = target;
+    }
+    
+    void setPosition(int position){
+        this.position = position;
+    }
+    
+    void setRank(int rank){
+        this.rank = rank;
+    }
+    
+    void setVersion(long version){
+        this.version = version;
+    }
+    
+    /**
+     * Marks this command as invalid
+     * @param error why the line could not be decoded
+     * @param column 0-based index of the character at which decoding failed
+     */
+    void fail(Error error, int column){
+        this.op = null;
+        this.error = error;
+        this.errorColumn = column;
+    }
+    
+    /**
+     * @return true iff the line was decoded into a command
+     */
+    public boolean isValid(){
+        return error == Error.NONE;
+    }
+    
+    /**
+     * @return the command, or null if the line was invalid
+     */
+    public Op getOp(){
+        return op;
+    }
+    
+    /**
+     * @return player whose card is guessed or declared (0-3), or -1
+     */
+    public int getTarget(){
+        return target;
+    }
+    
+    /**
+     * @return position of the card swapped, passed, shown, guessed or declared (0-5), or -1
+     */
+    public int getPosition(){
+        return position;
+    }
+    
+    /**
+     * @return rank guessed or declared (1-12), or -1
+     */
+    public int getRank(){
+        return rank;
+    }
+    
+    /**
+     * @return view version of a sync command, or -1
+     */
+    public long getVersion(){
+        return version;
+    }
+    
+    /**
+     * @return why the line could not be decoded, or Error.NONE
+     */
+    public Error getError(){
+        return error;
+    }
+    
+    /**
+     * @return 0-based index of the character at which decoding failed, or -1
+     */
+    public int getErrorColumn(){
+        return errorColumn;
+    }
+    
+    /**
+     * Describes why the line could not be decoded, for the client
+     * @return e.g. "expected a card position 0-5 at column 6"
+     */
+    public String describeError(){
+        return error + " at column " + (errorColumn + 1);
+    }
+}
@@ -0,0 +1,313 @@
+package app;
+
+import java.nio.ByteBuffer;
+
+import app.Command.Error;
+import app.Command.Op;
+
+/**
+ * Decodes lines of the text protocol into Commands in a single pass, 
+ * without allocating.  Words are separated by single spaces, as in
+ * "guess 1 3 7".  Not thread-safe: each thread needs its own parser.  
+ */
+public class CommandParser {
+    
+    // lets a slice of a ByteBuffer be decoded like a line of text
+    private final ByteSlice slice = new ByteSlice();
+    
+    /**
+     * Decodes a line
+     * @param line a line sent by a client, without line terminator
+     * @param out command the line is decoded into
+     * @return true iff the line is a valid command; else out tells why not
+     */
+    public boolean parse(CharSequence line, Command out){
+        out.reset();
+        decode(line, out);
+        return out.isValid();
+    }
+    
+    /**
+     * Decodes a line held as ASCII bytes in a buffer
+     * @param buffer buffer containing the line; its position is not changed
+     * @param offset index in buffer of the first byte of the line
+     * @param length number of bytes in the line, without line terminator
+     * @param out command the line is decoded into
+     * @return true iff the line is a valid command; else out tells why not
+     */
+    public boolean parse(ByteBuffer buffer, int offset, int length, Command out){
+        slice.wrap(buffer, offset, length);
+        try{
+            return parse(slice, out);
+        } finally {
+            slice.wrap(null, 0, 0);
+        }
+    }
+    
+    private static void decode(CharSequence line, Command out){
+        int length = line.length();
+        if (length == 0){
+            out.fail(Error.EMPTY, 0);
+            return;
+        }
+        int wordEnd = 0;
+        while (wordEnd < length && line.charAt(wordEnd) != ' '){
+            wordEnd++;
+        }
+        
+        if (isWord(line, 0, wordEnd, "view")){
+            end(line, wordEnd, Op.VIEW, out);
+        }
+        else if (isWord(line, 0, wordEnd, "help")){
+            end(line, wordEnd, Op.HELP, out);
+        }
+        else if (isWord(line, 0, wordEnd, "done")){
+            end(line, wordEnd, Op.DONE, out);
+        }
+        else if (isWord(line, 0, wordEnd, "swap")){
+            decodePosition(line, wordEnd, Op.SWAP, out);
+        }
+        else if (isWord(line, 0, wordEnd, "pass")){
+            decodePosition(line, wordEnd, Op.PASS, out);
+        }
+        else if (isWord(line, 0, wordEnd, "show")){
+            decodePosition(line, wordEnd, Op.SHOW, out);
+        }
+        else if (isWord(line, 0, wordEnd, "guess")){
+            decodeCard(line, wordEnd, Op.GUESS, out);
+        }
+        else if (isWord(line, 0, wordEnd, "declare")){
+            if (wordEnd == length){
+                out.setOp(Op.DECLARE);
+            }
+            else{
+                decodeCard(line, wordEnd, Op.DECLARE_CARD, out);
+            }
+        }
+        else if (isWord(line, 0, wordEnd, "mode")){
+            decodeMode(line, wordEnd, out);
+        }
+        else if (isWord(line, 0, wordEnd, "sync")){
+            decodeVersion(line, wordEnd, out);
+        }
+        else if (isWord(line, 0, wordEnd, "protocol")){
+            decodeProtocol(line, wordEnd, out);
+        }
+        else{
+            out.fail(Error.UNKNOWN_COMMAND, 0);
+        }
+    }
+    
+    /**
+     * @return true iff line[start:end] is word
+     */
+    private static boolean isWord(CharSequence line, int start, int end, String word){
+        if (end - start != word.length()){
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++){
+            if (line.charAt(start + i) != word.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Accepts the command if the line ends at i
+     */
+    private static void end(CharSequence line, int i, Op op, Command out){
+        if (i != line.length()){
+            out.fail(Error.TRAILING_INPUT, i);
+            return;
+        }
+        out.setOp(op);
+    }
+    
+    /**
+     * Skips the space before an argument
+     * @return index of the argument, or -1 if there is none
+     */
+    private static int argument(CharSequence line, int i, Command out){
+        if (i + 1 >= line.length()){
+            out.fail(Error.MISSING_ARGUMENT, i);
+            return -1;
+        }
+        return i + 1;
+    }
+    
+    /**
+     * Reads a one-digit number in [min, max] at i, followed by a space or 
+     * the end of the line
+     * @return the number, or -1 if there is none
+     */
+    private static int digit(CharSequence line, int i, int min, int max, Error error, Command out){
+        int value = line.charAt(i) - '0';
+        if (value < min || value > max || (i + 1 < line.length() && line.charAt(i + 1) != ' ')){
+            out.fail(error, i);
+            return -1;
+        }
+        return value;
+    }
+    
+    /**
+     * Decodes "[op] [position]"
+     */
+    private static void decodePosition(CharSequence line, int i, Op op, Command out){
+        i = argument(line, i, out);
+        if (i < 0){
+            return;
+        }
+        int position = digit(line, i, 0, 5, Error.BAD_POSITION, out);
+        if (position < 0){
+            return;
+        }
+        out.setPosition(position);
+        end(line, i + 1, op, out);
+    }
+    
+    /**
+     * Decodes "[op] [target] [position] [rank]"
+     */
+    private static void decodeCard(CharSequence line, int i, Op op, Command out){
+        i = argument(line, i, out);
+        if (i < 0){
+            return;
+        }
+        int target = digit(line, i, 0, 3, Error.BAD_PLAYER, out);
+        if (target < 0){
+            return;
+        }
+        i = argument(line, i + 1, out);
+        if (i < 0){
+            return;
+        }
+        int position = digit(line, i, 0, 5, Error.BAD_POSITION, out);
+        if (position < 0){
+            return;
+        }
+        i = argument(line, i + 1, out);
+        if (i < 0){
+            return;
+        }
+        
+        // rank is 1-9 or 10-12, without leading zeros
+        int length = line.length();
+        int rank = line.charAt(i) - '0';
+        int rankEnd = i + 1;
+        if (rank == 1 && rankEnd < length && line.charAt(rankEnd) != ' '){
+            int second = line.charAt(rankEnd) - '0';
+            if (second < 0 || second > 2){
+                out.fail(Error.BAD_RANK, i);
+                return;
+            }
+            rank = 10 + second;
+            rankEnd++;
+        }
+        if (rank < 1 || rank > 12){
+            out.fail(Error.BAD_RANK, i);
+            return;
+        }
+        out.setTarget(target);
+        out.setPosition(position);
+        out.setRank(rank);
+        end(line, rankEnd, op, out);
+    }
+    
+    /**
+     * Decodes "mode delta" and "mode full"
+     */
+    private static void decodeMode(CharSequence line, int i, Command out){
+        i = argument(line, i, out);
+        if (i < 0){
+            return;
+        }
+        int length = line.length();
+        if (isWord(line, i, length, "delta")){
+            out.setOp(Op.MODE_DELTA);
+        }
+        else if (isWord(line, i, length, "full")){
+            out.setOp(Op.MODE_FULL);
+        }
+        else{
+            out.fail(Error.BAD_MODE, i);
+        }
+    }
+    
+    /**
+     * Decodes "protocol binary"
+     */
+    private static void decodeProtocol(CharSequence line, int i, Command out){
+        i = argument(line, i, out);
+        if (i < 0){
+            return;
+        }
+        if (isWord(line, i, line.length(), "binary")){
+            out.setOp(Op.PROTOCOL_BINARY);
+        }
+        else{
+            out.fail(Error.BAD_PROTOCOL, i);
+        }
+    }
+    
+    /**
+     * Decodes "sync [version]", where version has 1 to 18 digits
+     */
+    private static void decodeVersion(CharSequence line, int i, Command out){
+        i = argument(line, i, out);
+        if (i < 0){
+            return;
+        }
+        int length = line.length();
+        long version = 0;
+        for (int j = i; j < length; j++){
+            int digit = line.charAt(j) - '0';
+            if (digit < 0 || digit > 9 || j - i >= 18){
+                out.fail(Error.BAD_VERSION, j);
+                return;
+            }
+            version = 10 * version + digit;
+        }
+        out.setVersion(version);
+        out.setOp(Op.SYNC);
+    }
+    
+    /**
+     * A slice of a ByteBuffer of ASCII text, seen as a CharSequence
+     */
+    private static final class ByteSlice implements CharSequence {
+        private ByteBuffer buffer;
+        private int offset;
+        private int length;
+        
+        void wrap(ByteBuffer buffer, int offset, int length){
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length(){
+            return length;
+        }
+
+        @Override
+        public char charAt(int index){
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end){
+            return toString().substring(start, end);
+        }
+        
+        @Override
+        public String toString(){
+            StringBuilder text = new StringBuilder(length);
+            for (int i = 0; i < length; i++){
+                text.append(charAt(i));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package app;
+
+import java.io.IOException;
+
+/**
+ * A source of client connections for a LogicServer
+ */
+public interface ConnectionSource {
+
+    /**
+     * Waits for the next client to connect
+     * @return channel to the client
+     * @throws IOException if the source is broken
+     * @throws InterruptedException
+     */
+    public TwoWayChannel accept() throws IOException, InterruptedException;
+
+}
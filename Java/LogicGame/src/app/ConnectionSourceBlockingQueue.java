@@ -0,0 +1,26 @@
+package app;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A ConnectionSource of clients handed over by another thread, e.g. the 
+ * lobby of a LogicHost seating clients at a table
+ */
+public class ConnectionSourceBlockingQueue implements ConnectionSource {
+    private final BlockingQueue<TwoWayChannel> connections = new LinkedBlockingQueue<>();
+    
+    /**
+     * Hands over a client
+     * @param channel channel to the client, to be returned by accept()
+     */
+    public void offer(TwoWayChannel channel){
+        connections.add(channel);
+    }
+
+    @Override
+    public TwoWayChannel accept() throws InterruptedException {
+        return connections.take();
+    }
+    
+}
@@ -0,0 +1,21 @@
+package app;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * A ConnectionSource of clients connecting to a server socket
+ */
+public class ConnectionSourceSocket implements ConnectionSource {
+    private final ServerSocket serverSocket;
+    
+    public ConnectionSourceSocket(ServerSocket serverSocket){
+        this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public TwoWayChannel accept() throws IOException {
+        return new TwoWayChannelSocket(serverSocket.accept());
+    }
+    
+}
@@ -0,0 +1,97 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable class.  A line of text for clients, encoded once (UTF-8, ending 
+ * with the line separator) so that the same bytes can be queued for any 
+ * number of recipients and written by each of their channels as they are.  
+ * A frame can also be a frame of the binary protocol (see BinaryProtocol).  
+ */
+public class Frame {
+    
+    private static final byte[] LINE_SEPARATOR = 
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    
+    private final String content;
+    private final byte[] bytes;
+    private final boolean binary;
+    
+    /**
+     * Encodes a line
+     * @param content text of the line, without line separator
+     */
+    public Frame(String content){
+        this.content = content;
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        this.bytes = new byte[text.length + LINE_SEPARATOR.length];
+        System.arraycopy(text, 0, bytes, 0, text.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, text.length, LINE_SEPARATOR.length);
+        this.binary = false;
+    }
+    
+    /**
+     * Makes a frame of the binary protocol
+     * @param content description of the frame, for logs and for channels 
+     * that do not speak the binary protocol
+     * @param bytes the frame, length prefix included; not to be changed after
+     */
+    Frame(String content, byte[] bytes){
+        this.content = content;
+        this.bytes = bytes;
+        this.binary = true;
+    }
+    
+    /**
+     * @return text of the line, without line separator (for binary frames, 
+     * a description)
+     */
+    public String getContent(){
+        return content;
+    }
+    
+    /**
+     * @return true iff this is a frame of the binary protocol rather than 
+     * a line of text
+     */
+    public boolean isBinary(){
+        return binary;
+    }
+    
+    /**
+     * @return number of bytes of the encoded line
+     */
+    public int length(){
+        return bytes.length;
+    }
+    
+    /**
+     * @return number of bytes of the line, without line separator (for 
+     * binary frames, the whole frame)
+     */
+    int contentLength(){
+        return binary ? bytes.length : bytes.length - LINE_SEPARATOR.length;
+    }
+    
+    /**
+     * @return the encoded line, shared by every user of this frame; must not
+     * be changed
+     */
+    byte[] bytes(){
+        return bytes;
+    }
+    
+    /**
+     * @return a read-only buffer of the encoded line 
+     */
+    public ByteBuffer buffer(){
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+    
+    @Override
+    public String toString(){
+        return content;
+    }
+    
+}
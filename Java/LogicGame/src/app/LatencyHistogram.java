@@ -0,0 +1,119 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets on a log-linear
+ * scale as in HdrHistogram: values below SUB_BUCKETS have a bucket each, and
+ * every power of two above is split into SUB_BUCKETS buckets, so a value is
+ * known to within 1/SUB_BUCKETS (about 3%).  Values of MAX_NANOS (about 68
+ * seconds) or more are counted in the last bucket.
+ *
+ * Recording takes no lock and allocates nothing; any number of threads can
+ * record while another reads percentiles, which then reflect the values
+ * recorded so far, give or take the ones being recorded.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // values are kept below 2^36 ns, so there are 36 - SUB_BITS powers of
+    // two above the first SUB_BUCKETS values
+    static final long MAX_NANOS = (1L << 36) - 1;
+    private static final int BUCKETS = indexOf(MAX_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     * @param nanos the duration; negative durations count as 0
+     */
+    public void record(long nanos){
+        long value = Math.min(Math.max(nanos, 0), MAX_NANOS);
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+        for (long seen = max.get(); value > seen && !max.compareAndSet(seen, value); seen = max.get()){
+            // lost to a concurrent record; try again
+        }
+    }
+
+    /**
+     * @return bucket of a value, 0 <= value <= MAX_NANOS
+     */
+    private static int indexOf(long value){
+        if (value < SUB_BUCKETS){
+            return (int) value;
+        }
+        // value >> shift has the SUB_BITS + 1 top bits of value
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return largest value of a bucket
+     */
+    private static long highestOf(int index){
+        if (index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Gets the values at some quantiles from one reading of the buckets
+     * @param quantiles quantiles, in increasing order, each in [0, 1]
+     * @return values[i] is the value quantiles[i] of the values recorded
+     * fall at or below (to within the precision of the buckets), or 0 if
+     * none were recorded
+     */
+    public long[] getValuesAt(double... quantiles){
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] values = new long[quantiles.length];
+        long seen = 0;
+        int index = -1;
+        for (int q = 0; q < quantiles.length; q++){
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            while (seen < rank && index < BUCKETS - 1){
+                seen += snapshot[++index];
+            }
+            values[q] = total == 0 ? 0 : Math.min(highestOf(index), getMax());
+        }
+        return values;
+    }
+
+    /**
+     * @return number of values recorded
+     */
+    public long getCount(){
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return sum of the values recorded, in nanoseconds
+     */
+    public long getSum(){
+        return sum.get();
+    }
+
+    /**
+     * @return largest value recorded, in nanoseconds, or 0
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+}
@@ -0,0 +1,633 @@
+package app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A host for many games of Logic in one process.  Clients connect to a 
+ * single port, and a lobby seats them at tables in the order they arrive;
+ * each table is an independent LogicServer that starts as soon as its last
+ * human player is seated and is dropped when its game is over.  
+ * 
+ * Client sockets are served by a few NioReactor threads (system property
+ * logic.selectors, default up to 4), or with -Dlogic.transport=socket by
+ * blocking sockets and a reader thread per client as in LogicServer.  
+ * 
+ * Every client is given a session token when it is seated (see 
+ * SessionRegistry).  If its connection drops, it can connect again within 
+ * logic.session.grace seconds (default 60; 0 turns sessions off) and send 
+ * "resume TOKEN" as its first line to take its seat back; meanwhile the 
+ * table goes on, and up to logic.session.buffer frames (default 256) sent 
+ * to it are kept for it.  A client that does not come back is played for 
+ * (see StandIn).  
+ * 
+ * The state of every table is saved after each change in the default 
+ * SnapshotStore, with a token for each human player: its session token, or
+ * with sessions off a seat token of its own.  When the host starts, it 
+ * restores the tables left there by the host before it, and a player takes
+ * its seat back by connecting and sending "resume TOKEN" as its first line,
+ * within logic.resume.wait milliseconds (default 250); new clients are 
+ * never seated at a restored table.  With sessions on, the seats of a 
+ * restored table are away sessions, which are played for if their players 
+ * do not come back in time; with sessions off, a restored table waits for
+ * its players like a new one.  
+ * 
+ * Metrics of the tables are served on logic.metrics.port, if it is set 
+ * (see Metrics).  
+ * 
+ * Spectators connect to a second port (logic.spectator.port, default the 
+ * port after the players' one; -1 turns it off) and send "watch N" to watch
+ * table N (see SpectatorHub).  Spectators need the NIO transport.  
+ */
+public class LogicHost {
+    
+    private static final int DEFAULT_PORT = 24601;
+    
+    private static final boolean USE_NIO = 
+            !"socket".equals(System.getProperty("logic.transport", "nio"));
+    private static final int SELECTORS = Integer.getInteger("logic.selectors", 
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    
+    private static final int SESSION_GRACE_SECONDS = Integer.getInteger("logic.session.grace", 60);
+    private static final int SESSION_BUFFER_FRAMES = Integer.getInteger("logic.session.buffer", 256);
+    // how long a new client is given to send "resume TOKEN" before it is
+    // seated as a new player, while it may have a seat to take back
+    private static final int RESUME_WAIT_MILLIS = Integer.getInteger("logic.resume.wait", 250);
+    
+    // clients connect to this, and spectators to spectatorSocket, if it is
+    // not null
+    private final ServerSocket serverSocket;
+    private final ServerSocket spectatorSocket;
+    
+    // do the I/O of clients' sockets, unless USE_NIO is false; clients are 
+    // handed to them in turn
+    private final NioReactor[] reactors;
+    private int nextReactor = 0;
+    
+    // isAI.get(x) is true iff player x of every table is an AI
+    private final List<Boolean> isAI;
+    
+    // where tables are saved, or null if they are not
+    private final SnapshotStore snapshotStore = SnapshotStore.getDefault();
+    
+    // sessions of the clients, or null if dropped clients cannot come back
+    private final SessionRegistry sessions = SESSION_GRACE_SECONDS > 0 
+            ? new SessionRegistry(SESSION_GRACE_SECONDS * 1000L, SESSION_BUFFER_FRAMES) : null;
+    
+    /**
+     * A table waiting for players
+     */
+    private static final class Table {
+        final long id;
+        final ConnectionSourceBlockingQueue connections = new ConnectionSourceBlockingQueue();
+        int seatsLeft;
+        
+        // of a restored table, with sessions off: the players who took 
+        // their seats back, and the seat whose player the table takes next,
+        // since it takes them in the order of their seats
+        final TwoWayChannel[] returned = new TwoWayChannel[4];
+        int nextSeat = 0;
+        final boolean[] ai = new boolean[4];
+        
+        Table(long id, int seatsLeft, List<Boolean> isAI){
+            this.id = id;
+            this.seatsLeft = seatsLeft;
+            for (int player = 0; player < 4; player++){
+                ai[player] = isAI.get(player);
+            }
+        }
+    }
+    
+    /**
+     * A seat of a restored table, waiting for its player
+     */
+    private static final class RestoredSeat {
+        final Table table;
+        final int playerID;
+        
+        RestoredSeat(Table table, int playerID){
+            this.table = table;
+            this.playerID = playerID;
+        }
+    }
+    
+    // the table being filled; guarded by this
+    private Table formingTable = null;
+    
+    // free seats of restored tables, by seat token, with sessions off
+    private final ConcurrentHashMap<String, RestoredSeat> restoredSeats = new ConcurrentHashMap<>();
+    
+    // times out greetings (see Greeting)
+    private final ScheduledExecutorService greetingTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "greeting-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // spectators of the tables being played, by table ID
+    private final ConcurrentHashMap<Long, SpectatorHub> watchable = new ConcurrentHashMap<>();
+    
+    private static final String SPECTATOR_HELP = "Send 'tables' for the tables being played, "
+            + "'watch N' to watch table N, and 'leave' to stop watching.";
+    
+    private final AtomicLong tablesOpened = new AtomicLong();
+    private final AtomicLong tablesFinished = new AtomicLong();
+    private final AtomicInteger activeTables = new AtomicInteger();
+    
+    /**
+     * Make a LogicHost that listens for connections on a specified port
+     * @param port port number, requires 0 <= port <= 65535
+     * @param isAI list such that isAI.get(x) is true iff player x of each 
+     * table is an AI.  At least one player must be human.  
+     * @throws IOException if an error occurs opening the server socket
+     */
+    public LogicHost(int port, List<Boolean> isAI) throws IOException{
+        assert(isAI.size() == 4);
+        int humans = 0;
+        for (boolean ai : isAI){
+            if (!ai){
+                humans++;
+            }
+        }
+        if (humans == 0){
+            throw new IllegalArgumentException("A table needs at least one human player");
+        }
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        this.serverSocket = serverChannel.socket();
+        int spectatorPort = Integer.getInteger("logic.spectator.port", 
+                port != 0 ? serverSocket.getLocalPort() + 1 : 0);
+        if (USE_NIO && spectatorPort >= 0){
+            ServerSocketChannel spectatorChannel = ServerSocketChannel.open();
+            spectatorChannel.bind(new InetSocketAddress(spectatorPort));
+            this.spectatorSocket = spectatorChannel.socket();
+        }
+        else{
+            this.spectatorSocket = null;
+        }
+        this.reactors = new NioReactor[USE_NIO ? SELECTORS : 0];
+        for (int i = 0; i < reactors.length; i++){
+            reactors[i] = new NioReactor("selector-" + i);
+        }
+        this.isAI = isAI;
+    }
+    
+    /**
+     * Runs the lobby: accepts connections and seats them at tables.  
+     * Never returns unless an exception is thrown.  
+     * 
+     * @throws IOException if the server socket is broken
+     *                     (IOExceptions from individual clients and tables
+     *                     do *not* terminate serve())
+     * @throws InterruptedException
+     */
+    public void serve() throws IOException, InterruptedException{
+        Metrics.startEndpoint();
+        if (snapshotStore != null){
+            for (TableSnapshot snapshot : snapshotStore.restore()){
+                openTable(snapshot);
+            }
+        }
+        if (spectatorSocket != null){
+            TaskLauncher.DEFAULT.launch(new Runnable(){
+                public void run(){
+                    try{
+                        serveSpectators();
+                    } catch (IOException e){
+                        e.printStackTrace();
+                    } catch (InterruptedException e){
+                        e.printStackTrace();
+                    }
+                }
+            }, "spectator-lobby");
+        }
+        while (true){
+            Socket socket = serverSocket.accept();
+            TwoWayChannel channel;
+            NioReactor reactor = null;
+            try{
+                if (reactors.length > 0){
+                    reactor = reactors[nextReactor];
+                    channel = reactor.register(socket.getChannel());
+                    nextReactor = (nextReactor + 1) % reactors.length;
+                }
+                else{
+                    channel = new TwoWayChannelSocket(socket);
+                }
+            } catch (IOException e){
+                e.printStackTrace();
+                socket.close();
+                continue;
+            }
+            if (sessions == null && restoredSeats.isEmpty()){
+                seat(channel);
+            }
+            else if (reactor != null){
+                // the client may be coming back
+                new Greeting(channel, reactor).start();
+            }
+            else{
+                // a blocking socket needs a thread to read it anyway
+                TwoWayChannel client = channel;
+                TaskLauncher.DEFAULT.launch(new Runnable(){
+                    public void run(){
+                        try{
+                            greet(socket, client);
+                        } catch (IOException e){
+                            e.printStackTrace();
+                        } catch (InterruptedException e){
+                            e.printStackTrace();
+                        }
+                    }
+                }, "greeter");
+            }
+        }
+    }
+    
+    /**
+     * Greets a new client of a reactor, without a thread of its own: its 
+     * first line is handed to the greeting on the reactor thread, and if 
+     * none comes within RESUME_WAIT_MILLIS, the greeting timer hands the 
+     * timeout to the reactor thread too.  Whichever comes first decides 
+     * (see greet); later lines are left for the session or the table.  
+     * Only used by the 
+     * reactor thread, once started.  
+     */
+    private final class Greeting implements TwoWayChannel.Handler {
+        private final TwoWayChannel channel;
+        private final NioReactor reactor;
+        private ScheduledFuture<?> timeout;
+        private boolean decided = false;
+        
+        Greeting(TwoWayChannel channel, NioReactor reactor){
+            this.channel = channel;
+            this.reactor = reactor;
+        }
+        
+        void start(){
+            timeout = greetingTimer.schedule(() -> reactor.execute(this::timedOut), 
+                    RESUME_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            channel.forwardTo(this);
+        }
+        
+        @Override
+        public void handle(String message) throws InterruptedException{
+            if (decided){
+                return;
+            }
+            decided = true;
+            timeout.cancel(false);
+            // from here on, lines wait for the session or the table
+            channel.forwardTo(null);
+            try{
+                if (message == null){
+                    // gone before saying anything
+                    channel.close();
+                }
+                else{
+                    greet(channel, message);
+                }
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+        }
+        
+        private void timedOut(){
+            if (decided){
+                return;
+            }
+            decided = true;
+            channel.forwardTo(null);
+            try{
+                greet(channel, null);
+            } catch (IOException e){
+                e.printStackTrace();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Greets a new client of a blocking socket: waits up to 
+     * RESUME_WAIT_MILLIS for its first line (see greet).  A first line cut 
+     * off by the timeout is lost.  
+     * @param socket socket of the client
+     * @param channel channel to the client, reading socket
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void greet(Socket socket, TwoWayChannel channel) throws IOException, InterruptedException{
+        String line = null;
+        socket.setSoTimeout(RESUME_WAIT_MILLIS);
+        try{
+            line = channel.listen();
+            if (line == null){
+                // gone before saying anything
+                channel.close();
+                return;
+            }
+        } catch (SocketTimeoutException e){
+            // nothing to resume
+        } finally{
+            socket.setSoTimeout(0);
+        }
+        greet(channel, line);
+    }
+    
+    /**
+     * Hands a new client back its session, or its seat at a restored table,
+     * if its first line is "resume TOKEN"; or else seats it as a new player
+     * @param channel channel to the client
+     * @param line first line of the client, or null if it sent none in time
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void greet(TwoWayChannel channel, String line) throws IOException, InterruptedException{
+        if (line != null && line.startsWith("resume ")){
+            String token = line.substring("resume ".length()).trim();
+            if (sessions != null ? !sessions.resume(token, channel) : !reclaimSeat(token, channel)){
+                channel.send("No seat to resume for this token.");
+                channel.close();
+            }
+            return;
+        }
+        // the line, if any, is the new player's first request
+        seat(sessions != null ? sessions.open(channel, line)
+                : line != null ? new PushbackChannel(channel, line) : channel);
+    }
+    
+    /**
+     * Gives a client back its seat at a restored table, with sessions off.
+     * The table takes its players in the order of their seats, so a player 
+     * who comes back before those of the seats before it waits for them.  
+     * @param token seat token of the client
+     * @param channel channel to the client
+     * @return false if no free seat has the token
+     * @throws InterruptedException
+     */
+    private boolean reclaimSeat(String token, TwoWayChannel channel) throws InterruptedException{
+        RestoredSeat seat = restoredSeats.remove(token);
+        if (seat == null){
+            return false;
+        }
+        synchronized (this){
+            Table table = seat.table;
+            channel.send("Joining table " + table.id + ".");
+            table.returned[seat.playerID] = channel;
+            // hand over every player who is back, up to the first free seat
+            for (; table.nextSeat < 4 && table.seatsLeft > 0; table.nextSeat++){
+                if (table.ai[table.nextSeat]){
+                    continue;
+                }
+                if (table.returned[table.nextSeat] == null){
+                    break;
+                }
+                table.connections.offer(table.returned[table.nextSeat]);
+                table.returned[table.nextSeat] = null;
+                table.seatsLeft--;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Seats a client at the table being filled, or else at a new table
+     * @param channel channel to the client
+     * @throws InterruptedException
+     */
+    private synchronized void seat(TwoWayChannel channel) throws InterruptedException{
+        if (formingTable == null){
+            formingTable = openTable(null);
+        }
+        channel.send("Joining table " + formingTable.id + ".");
+        if (channel instanceof ResumableChannel){
+            String token = ((ResumableChannel) channel).getToken();
+            channel.send("Your session token is " + token + "; if your connection drops, "
+                    + "connect again and send 'resume " + token + "' within " 
+                    + SESSION_GRACE_SECONDS + " seconds" 
+                    + (snapshotStore != null ? ", or at any time if the server restarts." : "."));
+        }
+        formingTable.connections.offer(channel);
+        formingTable.seatsLeft--;
+        if (formingTable.seatsLeft == 0){
+            // table is full; its server has every connection it will accept
+            formingTable = null;
+        }
+    }
+    
+    /**
+     * Accepts spectators, who choose what to watch with their messages (see
+     * Spectator).  Returns only if the spectator socket is broken.  
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private void serveSpectators() throws IOException, InterruptedException{
+        int next = 0;
+        while (true){
+            Socket socket = spectatorSocket.accept();
+            TwoWayChannel channel;
+            try{
+                channel = reactors[next].register(socket.getChannel());
+                next = (next + 1) % reactors.length;
+            } catch (IOException e){
+                e.printStackTrace();
+                socket.close();
+                continue;
+            }
+            channel.send("Welcome, spectator! " + SPECTATOR_HELP);
+            channel.send(listTables());
+            channel.forwardTo(new Spectator(channel));
+        }
+    }
+    
+    /**
+     * @return the tables being played, as a line for spectators
+     */
+    private String listTables(){
+        TreeSet<Long> ids = new TreeSet<>(watchable.keySet());
+        if (ids.isEmpty()){
+            return "No tables are being played.";
+        }
+        StringBuilder tables = new StringBuilder("Tables:");
+        for (long id : ids){
+            tables.append(' ').append(id);
+        }
+        return tables.toString();
+    }
+    
+    /**
+     * Handles the messages of a spectator: "tables", "watch N" and "leave".
+     * Only used by the reactor thread of the spectator's channel.  
+     */
+    private final class Spectator implements TwoWayChannel.Handler {
+        private final TwoWayChannel channel;
+        // the spectators of the table being watched, or null
+        private SpectatorHub hub = null;
+        
+        Spectator(TwoWayChannel channel){
+            this.channel = channel;
+        }
+        
+        @Override
+        public void handle(String message) throws InterruptedException{
+            if (message == null){
+                // gone
+                leave();
+                return;
+            }
+            if (message.equals("tables")){
+                channel.send(listTables());
+            }
+            else if (message.equals("leave")){
+                leave();
+                channel.send("Stopped watching.");
+            }
+            else if (message.startsWith("watch ")){
+                SpectatorHub next = null;
+                String id = message.substring("watch ".length()).trim();
+                try{
+                    next = watchable.get(Long.parseLong(id));
+                } catch (NumberFormatException e){
+                    // no such table
+                }
+                if (next == null){
+                    channel.send("No table " + id + " is being played.");
+                    return;
+                }
+                leave();
+                channel.send("Watching table " + id + ".");
+                next.watch(channel);
+                hub = next;
+            }
+            else{
+                channel.send(SPECTATOR_HELP);
+            }
+        }
+        
+        private void leave(){
+            if (hub != null){
+                hub.unwatch(channel);
+                hub = null;
+            }
+        }
+    }
+    
+    /**
+     * Starts the server of a table, which waits for its players.  The seats
+     * of a restored table are given at once to the sessions of its players,
+     * who are away until they resume them (see SessionRegistry.restore); 
+     * with sessions off, they wait for the players who have their tokens 
+     * (see greet).  
+     * @param restored snapshot the table's game is restored from, or null 
+     * for a new game
+     * @return the table
+     */
+    private Table openTable(TableSnapshot restored){
+        SnapshotSink snapshots = snapshotStore == null ? SnapshotSink.NONE
+                : restored != null ? snapshotStore.reopen(restored) : snapshotStore.newTable();
+        List<Boolean> players = restored != null ? restored.getIsAI() : isAI;
+        int humans = 0;
+        for (boolean ai : players){
+            if (!ai){
+                humans++;
+            }
+        }
+        Table table = new Table(tablesOpened.incrementAndGet(), humans, players);
+        LogicServer server = restored != null 
+                ? new LogicServer(table.connections, restored, null, snapshots)
+                : new LogicServer(table.connections, isAI, null, snapshots);
+        activeTables.incrementAndGet();
+        watchable.put(table.id, server.getSpectators());
+        
+        TaskLauncher.DEFAULT.launch(new Runnable(){
+            public void run(){
+                try{
+                    server.serve();
+                } catch (IOException e){
+                    e.printStackTrace();
+                } catch (InterruptedException e){
+                    e.printStackTrace();
+                } finally{
+                    watchable.remove(table.id);
+                    activeTables.decrementAndGet();
+                    tablesFinished.incrementAndGet();
+                }
+            }
+        }, "table-" + table.id);
+        if (restored != null && sessions != null){
+            // each seat goes at once to its player's session, which is away
+            // until the player resumes it
+            for (int player = 0; player < 4; player++){
+                if (!players.get(player)){
+                    table.connections.offer(sessions.restore(restored.getToken(player)));
+                }
+            }
+            table.seatsLeft = 0;
+        }
+        else if (restored != null){
+            for (int player = 0; player < 4; player++){
+                if (!players.get(player) && restored.getToken(player) != null){
+                    restoredSeats.put(restored.getToken(player), new RestoredSeat(table, player));
+                }
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * @return number of tables that have been opened
+     */
+    public long getTablesOpened(){
+        return tablesOpened.get();
+    }
+    
+    /**
+     * @return number of tables whose game is over
+     */
+    public long getTablesFinished(){
+        return tablesFinished.get();
+    }
+    
+    /**
+     * @return number of tables waiting for players or playing
+     */
+    public int getActiveTables(){
+        return activeTables.get();
+    }
+    
+    /**
+     * Main
+     * @param args optional port number
+     */
+    public static void main(String[] args){
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        
+        // GO HERE TO SET WHICH PLAYERS ARE AI AND WHICH ARE HUMAN 
+        List<Boolean> isAI = Arrays.asList(false, false, false, false);
+        
+        AdminConsole.start();
+        try{
+            new LogicHost(port, isAI).serve();
+        } catch (IOException e){
+            throw new RuntimeException(e);
+        } catch (InterruptedException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -3,7 +3,7 @@ package app;
 import java.io.IOException;
 import java.util.*;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -11,6 +11,11 @@ import java.util.Set;
 
 import game.GameBoard;
 import game.GameState;
+import game.GameState.State;
+import history.EventLog;
+import history.GameEventSink;
+import app.Command.Op;
+import app.TurnStateMachine.Move;
 
 /**
  * A server for Logic
@@ -31,35 +36,83 @@ public class LogicServer {
     private static final int DEFAULT_PORT = 24601;
     private static final int MAX_PORT = 65535;
     
-    // clients connect to this
-    private final ServerSocket serverSocket;
+    // clients connect through this
+    private final ConnectionSource connections;
 
+    // spectators of the game, who are told what every player is told and 
+    // shown the public view of the board
+    private final SpectatorHub spectators = new SpectatorHub();
+    private long publishedViewVersion = -1;
+    
     // for transmitting information between server and client handlers
-    private final ServerTransmitter transmitter = new ServerTransmitter();
+    // (package-private for benchmarks)
+    final ServerTransmitter transmitter = new ServerTransmitter(spectators);
     
     // this stores all game data.  This server processes I/O and sends the 
     // appropriate instructions / retrieves the appropriate information from
     // gameBoard
-    private final GameBoard gameBoard = new GameBoard();
+    private final GameBoard gameBoard;
     
     private final List<Boolean> isAI;
     
-    // status.get(x) keeps track of status of player x.  Possible statuses are: 
-    // Inactive: not player's turn
-    // Pass: player's turn to pass
-    // Guess: player's turn to guess
-    // Show: player has to reveal a card
-    // Declare: player is declaring all cards
-    // IMPORTANT: to avoid situations where two players can potentially (for a
-    // short period of time) both be non-Inactive, when updating turns we always 
-    // change the currently-Pass/Guess/Show player to Inactive before changing the 
-    // next player to non-Inactive.  
-    private final List<String> status = Arrays.asList("Inactive","Inactive","Inactive","Inactive");
+    // turns.stateOf(x) keeps track of status of player x (see TurnState), and
+    // turns validates and applies the moves that change whose turn it is
+    private final TurnStateMachine turns = new TurnStateMachine();
+    
+    // deltaViews[x] is true iff player x asked for delta board updates 
+    // ("mode delta"): after each move such a player is sent only the cards
+    // that changed, as a line "update [from version] [to version] ...", and 
+    // full boards are sent only on request ("view"), when switching modes or
+    // after the player reports a version mismatch ("sync [version]"). 
+    private final boolean[] deltaViews = new boolean[4];
+    
+    // sentViewVersion[x] is the version of the board view last sent to
+    // delta player x, or -1 if none has been sent
+    private final long[] sentViewVersion = {-1, -1, -1, -1};
+    
+    // binaryClients[x] is true iff player x switched to the binary protocol
+    // ("protocol binary", see BinaryProtocol).  Such a player is always in
+    // delta mode, gets boards and updates as BOARD and UPDATE frames and game
+    // states as EVENT frames; everything else reaches it as TEXT frames.  
+    private final boolean[] binaryClients = new boolean[4];
+    private int binaryClientCount = 0;
     
     // generates messages for the client/AI
-    // first must set gamestate to be one of the valid states, then use gamestate.getMessages() to get ArrayList of messages to be distributed
+    // first must set gamestate to be one of the valid states, then use announceState() to distribute its messages
     private final GameState gamestate;
     
+    // log the game is recorded in, or null for the default log (see 
+    // EventLog.getDefault), and the sink its events go to once it is served
+    private final EventLog eventLog;
+    private GameEventSink events = GameEventSink.NONE;
+    
+    // phase of the game, ID of player who declares (set when declaration
+    // occurs), and where the state of the table is saved after every change
+    // so the game can be restored (see TableSnapshot).  restored is the 
+    // snapshot the game was restored from, or null for a new game.  
+    private TableSnapshot.Phase phase = TableSnapshot.Phase.SETUP;
+    private int declarer = -1;
+    private final SnapshotSink snapshots;
+    private final TableSnapshot snapshot = new TableSnapshot();
+    private final TableSnapshot restored;
+    
+    // seatTokens[x] is the token with which player x takes its seat back 
+    // once the table is restored, kept in the snapshots, or null if it has
+    // none (an AI, or a table that is not saved)
+    private final String[] seatTokens = new String[4];
+    private static final SecureRandom TOKENS = new SecureRandom();
+    
+    // standIns[x] is true iff player x left the game for good, and its 
+    // moves are made by StandIn
+    private final boolean[] standIns = new boolean[4];
+    
+    // when the current phase started (see Metrics.phase)
+    private long phaseStart = 0;
+    
+    // decodes client requests; only used by the main server thread
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+    
     
     /**
      * Make a LogicServer that listens for connections on a specified port.   
@@ -69,37 +122,338 @@ public class LogicServer {
      * @throws IOException if an error occurs opening the server socket
      */
     public LogicServer(int port, List<Boolean> isAI) throws IOException {
-        serverSocket = new ServerSocket(port);
+        this(new ConnectionSourceSocket(new ServerSocket(port)), isAI);
+    }
+    
+    /**
+     * Make a LogicServer that takes its clients from a ConnectionSource, e.g.
+     * one table of a LogicHost.  
+     * 
+     * @param connections source of the connections of the human players
+     * @param isAI list such that isAI.get(x) is true iff player x is an AI
+     */
+    public LogicServer(ConnectionSource connections, List<Boolean> isAI) {
+        this(connections, isAI, null);
+    }
+    
+    /**
+     * Make a LogicServer that takes its clients from a ConnectionSource, and
+     * records its game in a given event log.  
+     * 
+     * @param connections source of the connections of the human players
+     * @param isAI list such that isAI.get(x) is true iff player x is an AI
+     * @param eventLog log the game is recorded in, or null for the default 
+     * log (see EventLog.getDefault)
+     */
+    public LogicServer(ConnectionSource connections, List<Boolean> isAI, EventLog eventLog) {
+        this(connections, isAI, eventLog, SnapshotSink.NONE);
+    }
+    
+    /**
+     * Make a LogicServer that takes its clients from a ConnectionSource, 
+     * records its game in a given event log, and saves the state of its 
+     * table after every change.  
+     * 
+     * @param connections source of the connections of the human players
+     * @param isAI list such that isAI.get(x) is true iff player x is an AI
+     * @param eventLog log the game is recorded in, or null for the default 
+     * log (see EventLog.getDefault)
+     * @param snapshots where the state of the table is saved
+     */
+    public LogicServer(ConnectionSource connections, List<Boolean> isAI, EventLog eventLog, 
+            SnapshotSink snapshots) {
+        this.connections = connections;
         assert(isAI.size()==4);
         this.isAI = isAI;
+        this.eventLog = eventLog;
+        this.snapshots = snapshots;
+        this.restored = null;
+        gameBoard = new GameBoard();
+        gamestate = new GameState(isAI);
+    }
+    
+    /**
+     * Make a LogicServer that restores a game from a snapshot of its table.
+     * Once its players have connected again, the game goes on in the phase
+     * it was saved in; a game saved during setup starts its setup over, 
+     * with the swaps made so far.  The connections are taken in the order
+     * of the seats, so each must be the one of the player who had the 
+     * seat, e.g. the one that sent its seat token (see LogicHost).  
+     * 
+     * @param connections source of the connections of the human players
+     * @param restored snapshot of the table
+     * @param eventLog log the game goes on being recorded in, or null for 
+     * the default log (see EventLog.getDefault)
+     * @param snapshots where the state of the table is saved from now on
+     */
+    public LogicServer(ConnectionSource connections, TableSnapshot restored, EventLog eventLog, 
+            SnapshotSink snapshots) {
+        this.connections = connections;
+        this.isAI = restored.getIsAI();
+        this.eventLog = eventLog;
+        this.snapshots = snapshots;
+        this.restored = restored;
+        gameBoard = restored.getBoard();
         gamestate = new GameState(isAI);
+        phase = restored.getPhase();
+        declarer = restored.getDeclarer();
+        for (int player=0; player<4; player++){
+            turns.setState(player, restored.getTurnState(player));
+            seatTokens[player] = restored.getToken(player);
+        }
+        // kept until the players are back
+        snapshots.save(restored);
+    }
+    
+    /**
+     * Saves the state of the table
+     */
+    private void saveSnapshot(){
+        snapshot.capture(events.getGameID(), events.getEventCount(), phase, declarer, 
+                isAI, turns, gameBoard, seatTokens);
+        snapshots.save(snapshot);
     }
     
     /**
      * Sends all clients a message containing their latest 
-     * view of the board
+     * view of the board.  Clients in delta mode get only the changed cards,
+     * and nothing if their view did not change.  Spectators get the public
+     * view if it changed.  
      * @throws InterruptedException 
      */
     private void refreshAllClientsViews() throws InterruptedException{
+        if (gameBoard.getPublicViewVersion() != publishedViewVersion){
+            publishedViewVersion = gameBoard.getPublicViewVersion();
+            spectators.publishView(gameBoard.getState());
+        }
         for (int player=0; player<4; player++){
-            transmitter.informClient(player, true,
-                    gameBoard.showPlayerViewOfBoard(player));
+            if (!deltaViews[player]){
+                transmitter.informClient(player, true,
+                        gameBoard.showPlayerViewOfBoard(player));
+            }
+            else if (sentViewVersion[player] < 0){
+                sendBoardSnapshot(player);
+            }
+            else if (binaryClients[player]){
+                Frame update = BinaryProtocol.update(gameBoard, player, sentViewVersion[player]);
+                if (update != null){
+                    sentViewVersion[player] = gameBoard.getViewVersion(player);
+                    transmitter.informClient(player, update);
+                }
+            }
+            else{
+                String update = gameBoard.showPlayerViewDelta(player, sentViewVersion[player]);
+                if (update != null){
+                    sentViewVersion[player] = gameBoard.getViewVersion(player);
+                    transmitter.informClient(player, true, update);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sends a client its full view of the board.  Clients in delta mode get
+     * it preceded by a line "board [version]", and clients of the binary 
+     * protocol as a BOARD frame.  
+     * @param playerID 0-3
+     * @throws InterruptedException
+     */
+    private void sendBoardSnapshot(int playerID) throws InterruptedException{
+        if (binaryClients[playerID]){
+            sentViewVersion[playerID] = gameBoard.getViewVersion(playerID);
+            transmitter.informClient(playerID, BinaryProtocol.board(gameBoard, playerID));
+            return;
+        }
+        String board = gameBoard.showPlayerViewOfBoard(playerID);
+        if (deltaViews[playerID]){
+            long version = gameBoard.getViewVersion(playerID);
+            sentViewVersion[playerID] = version;
+            board = "board " + version + "\r\n" + board;
+        }
+        transmitter.informClient(playerID, true, board);
+    }
+    
+    /**
+     * Handles the board view requests that are valid in the main and 
+     * declaration phases: "view", "mode delta", "mode full", "sync [version]"
+     * and "protocol binary"
+     * @param command decoded client message
+     * @param playerID 0-3
+     * @return true if command was a view request and has been answered
+     * @throws InterruptedException
+     */
+    private boolean handleViewRequest(Command command, int playerID) throws InterruptedException{
+        switch (command.getOp()){
+        case VIEW:
+            sendBoardSnapshot(playerID);
+            return true;
+        case MODE_DELTA:
+            deltaViews[playerID] = true;
+            sendBoardSnapshot(playerID);
+            return true;
+        case MODE_FULL:
+            // clients of the binary protocol stay in delta mode
+            if (!binaryClients[playerID]){
+                deltaViews[playerID] = false;
+                sentViewVersion[playerID] = -1;
+            }
+            sendBoardSnapshot(playerID);
+            return true;
+        case PROTOCOL_BINARY:
+            switchToBinary(playerID);
+            sendBoardSnapshot(playerID);
+            return true;
+        case SYNC:
+            // a client that is behind or ahead of what was sent gets a full board
+            if (!deltaViews[playerID] || command.getVersion() != sentViewVersion[playerID]){
+                sendBoardSnapshot(playerID);
+            }
+            return true;
+        default:
+            return false;
+        }
+    }
+    
+    /**
+     * Marks a client as a client of the binary protocol; its channel has 
+     * already switched (see BinaryProtocol)
+     * @param playerID 0-3
+     */
+    private void switchToBinary(int playerID){
+        if (!binaryClients[playerID]){
+            binaryClients[playerID] = true;
+            binaryClientCount++;
+        }
+        deltaViews[playerID] = true;
+    }
+    
+    /**
+     * Announces the current game state to all clients: clients of the 
+     * binary protocol get an EVENT frame, others the message for their type
+     * of player.  Spectators get the message for human players, once the
+     * game has begun.  
+     * @throws InterruptedException
+     */
+    private void announceState() throws InterruptedException{
+        State state = gamestate.getState();
+        if (state != State.SETUP && state != State.BEGIN_GAME){
+            spectators.publish(new Frame(gamestate.getClientMessage()));
+        }
+        if (binaryClientCount == 0){
+            transmitter.informAllClients(true, gamestate.getMessages());
+        }
+        else{
+            transmitter.informAllClients(gamestate.getMessages(), binaryClients, 
+                    BinaryProtocol.event(gamestate));
+        }
+    }
+    
+    /**
+     * Sends a client its own cards, during the setup phase
+     * @param playerID 0-3
+     * @throws InterruptedException
+     */
+    private void sendOwnCards(int playerID) throws InterruptedException{
+        if (binaryClients[playerID]){
+            // only its own cards are visible to it yet
+            sendBoardSnapshot(playerID);
+        }
+        else{
+            transmitter.informClient(playerID, true, gameBoard.showPlayerOwnCards(playerID));
+        }
+    }
+    
+    /**
+     * Answers a move the player is not allowed to make in its turn state
+     * @param playerID 0-3
+     * @param playerState turn state of the player
+     * @param move the move, e.g. "pass"
+     * @throws InterruptedException
+     */
+    private void refuseMove(int playerID, TurnState playerState, String move) throws InterruptedException{
+        Metrics.invalidCommand();
+        transmitter.informClient(playerID, true, "Your state is: " + playerState 
+                + ". You cannot " + move + " right now.");
+    }
+    
+    /**
+     * Answers input that is not a valid request in the current phase with a
+     * help message, preceded by what is wrong with it if it could not be 
+     * decoded at all
+     * @param command decoded client message
+     * @param playerID 0-3
+     * @param helpMessage help message of the current phase
+     * @throws InterruptedException
+     */
+    private void rejectRequest(Command command, int playerID, String helpMessage) throws InterruptedException{
+        Metrics.invalidCommand();
+        if (command.isValid()){
+            transmitter.informClient(playerID, true, helpMessage);
+        }
+        else{
+            transmitter.informClient(playerID, true, "Invalid command: " 
+                    + command.describeError() + ". " + helpMessage);
         }
     }
     
     
     /**
      * Run the server, listening for client connections and handling them.
-     * Never returns unless an exception is thrown.
+     * Returns when the game is over.
      * 
-     * @throws IOException if the main server socket is broken
+     * @throws IOException if the connection source is broken
      *                     (IOExceptions from individual clients do *not* terminate serve())
      * @throws InterruptedException 
      */
     public void serve() throws IOException, InterruptedException {
-        serveConnectionPhase();        
-        serveSetupPhase();
-        serveMainAndDeclarationPhase();
+        EventLog log = eventLog != null ? eventLog : EventLog.getDefault();
+        if (log != null){
+            events = restored != null && restored.getGameID() >= 0
+                    ? log.resumeGame(restored.getGameID(), restored.getEventCount())
+                    : log.newGame();
+            Metrics.recordedIn(log);
+        }
+        Metrics.gameStarted(transmitter);
+        try{
+            phaseStart = Metrics.now();
+            serveConnectionPhase();
+            phaseStart = Metrics.phase(Metrics.Phase.CONNECTION, phaseStart);
+            if (phase == TableSnapshot.Phase.SETUP){
+                serveSetupPhase();
+                phaseStart = Metrics.phase(Metrics.Phase.SETUP, phaseStart);
+            }
+            if (isDeserted()){
+                endDesertedGame();
+            }
+            else{
+                serveMainAndDeclarationPhase();
+            }
+            // replies to the last requests are still held back
+            transmitter.flushClients();
+            snapshots.discard();
+            spectators.close();
+        } finally{
+            Metrics.gameFinished(transmitter);
+        }
+    }
+    
+    /**
+     * @return the spectators of the game
+     */
+    public SpectatorHub getSpectators(){
+        return spectators;
+    }
+    
+    /**
+     * @return a new seat token: 16 hex digits, not all 0, which stands for
+     * no token in a TableSnapshot
+     */
+    private static String newSeatToken(){
+        long token;
+        do{
+            token = TOKENS.nextLong();
+        } while (token == 0);
+        return String.format("%016x", token);
     }
     
     /**
@@ -114,17 +468,28 @@ public class LogicServer {
         // when a connection comes make a new thread that handles it
         while (numPlayers<4) {
             if(!isAI.get(numPlayers)){
-                // wait for a client to connect.  socket is the client's I/O socket
-                Socket socket = serverSocket.accept();
+                // wait for a client to connect
+                TwoWayChannel channel = connections.accept();
+                if (channel instanceof ResumableChannel){
+                    // the token of its session takes the seat back after a
+                    // restart too (see LogicHost)
+                    seatTokens[numPlayers] = ((ResumableChannel) channel).getToken();
+                }
+                else if (restored == null && snapshots != SnapshotSink.NONE){
+                    seatTokens[numPlayers] = newSeatToken();
+                    channel.send("Your seat token is " + seatTokens[numPlayers] 
+                            + "; if the server restarts, connect again and send 'resume " 
+                            + seatTokens[numPlayers] + "' to take your seat back.");
+                }
                 
                 // handle a connection
-                new Thread(new ClientHandlerThread(socket, numPlayers,
-                        transmitter.getClientTransmitter(numPlayers))).start();                
+                TaskLauncher.DEFAULT.launch(new ClientHandlerThread(channel, numPlayers,
+                        transmitter.getClientTransmitter(numPlayers)), "client-" + numPlayers);                
             }
             else{
                 // create an AI player
-                new Thread(new ClientHandlerThread(numPlayers, 
-                        transmitter.getClientTransmitter(numPlayers))).start();
+                TaskLauncher.DEFAULT.launch(new ClientHandlerThread(numPlayers, 
+                        transmitter.getClientTransmitter(numPlayers)), "client-" + numPlayers);
             }
             
             // Connected client thread will send back a message
@@ -133,13 +498,16 @@ public class LogicServer {
             // numbered correctly.  
             Message message = transmitter.listenClients();
             Message.verifyInternalMessage(message, "Finished connecting.");
-            assert(message.getSender().equals("Client "+numPlayers)); 
+            assert(message.getSender() == numPlayers); 
+            message.release();
             numPlayers++;
         }
         
         // all players connected!
         
-        transmitter.informAllClients(false,"Connection phase done.");
+        // a game restored after setup skips it
+        transmitter.informAllClients(false, phase == TableSnapshot.Phase.SETUP 
+                ? "Connection phase done." : "Game resumed.");
     }
 
     /**
@@ -147,12 +515,15 @@ public class LogicServer {
      * @throws InterruptedException
      */
     private void serveSetupPhase() throws InterruptedException{
-    	gamestate.setState("setup");
-        transmitter.informAllClients(true, gamestate.getMessages());
+        if (restored == null){
+            events.dealt(gameBoard);
+        }
+        saveSnapshot();
+    	gamestate.setState(State.SETUP);
+        announceState();
         
         for (int player=0; player<4; player++){
-            transmitter.informClient(player,true, 
-                    gameBoard.showPlayerOwnCards(player));
+            sendOwnCards(player);
         }
 
         
@@ -164,101 +535,375 @@ public class LogicServer {
         for (Message message = transmitter.listenClients(); message !=null; 
                 message = transmitter.listenClients()){
             
-            int senderID = Character.getNumericValue(message.getSender().charAt(7));
+            int senderID = message.getSender();
             String messageContent = message.getContent();
             if (message.isExternal()){
+                long sentAt = message.getSentAt();
+                message.release();
                 handleRequestSetupPhase(messageContent, senderID);                
+                recordRequest(Metrics.Phase.SETUP, sentAt);
+                saveSnapshot();
             }
-            else{
-                Message.verifyInternalMessage(message, "Finished setup.");
+            else if (messageContent.equals("Finished setup.")){
+                message.release();
                 isDone.add(senderID);
                 if (isDone.equals(players)){
                     break;
                 }
                 
             }
+            else{
+                message.release();
+                handleSessionMessage(messageContent, senderID);
+            }
         }
         transmitter.informAllClients(false,"Setup phase done.");
     }
     
+    /**
+     * Tells the players of a game restored after setup where it stands: 
+     * the instructions, their views of the board, and whose turn it is or 
+     * who is declaring
+     * @throws InterruptedException
+     */
+    private void resumeGame() throws InterruptedException{
+        transmitter.informAllClients(true, "Your game has been restored.");
+        gamestate.setState(State.BEGIN_GAME);
+        announceState();
+        refreshAllClientsViews();
+        
+        if (setTurnState()){
+            announceState();
+        }
+    }
+    
+    /**
+     * Sets gamestate to whose turn it is, or who is declaring, as it was
+     * last announced
+     * @return false if it is nobody's turn
+     */
+    private boolean setTurnState(){
+        if (phase == TableSnapshot.Phase.DECLARATION){
+            gamestate.setState(State.DECLARE, declarer);
+            return true;
+        }
+        for (int player=0; player<4; player++){
+            switch (turns.stateOf(player)){
+            case PASS:
+                gamestate.setState(State.TO_PASS, player);
+                return true;
+            case GUESS:
+                gamestate.setState(State.TO_GUESS, player);
+                return true;
+            case SHOW:
+                gamestate.setState(State.TO_SHOW, player);
+                return true;
+            default:
+                break;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Handles what a client handler reports about its client's connection
+     * (see ResumableChannel).  Outside the setup phase, the other players 
+     * are told; during setup nothing is sent, since every message of that
+     * phase answers a request.  
+     * @param content "Connection lost.", "Connection resumed.", "Connection
+     * resumed, out of sync." or "Seat abandoned."
+     * @param playerID 0-3
+     * @throws InterruptedException
+     */
+    private void handleSessionMessage(String content, int playerID) throws InterruptedException{
+        boolean announce = phase != TableSnapshot.Phase.SETUP;
+        switch (content){
+        case "Connection lost.":
+            if (announce){
+                informOtherClients(playerID, "Player " + playerID 
+                        + " lost their connection; waiting for them to come back.");
+            }
+            break;
+        case "Connection resumed.":
+        case "Connection resumed, out of sync.":
+            // a new connection starts in the text protocol, with full views
+            if (binaryClients[playerID]){
+                binaryClients[playerID] = false;
+                binaryClientCount--;
+            }
+            deltaViews[playerID] = false;
+            sentViewVersion[playerID] = -1;
+            if (announce){
+                informOtherClients(playerID, "Player " + playerID + " is back.");
+                if (content.equals("Connection resumed, out of sync.")){
+                    // what the player missed, condensed
+                    sendBoardSnapshot(playerID);
+                    if (setTurnState()){
+                        transmitter.informClient(playerID, true, gamestate.getMessages().get(playerID));
+                    }
+                }
+            }
+            break;
+        case "Seat abandoned.":
+            if (!standIns[playerID]){
+                standIns[playerID] = true;
+                if (announce){
+                    informOtherClients(playerID, "Player " + playerID 
+                            + " did not come back; their moves are made for them.");
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unexpected internal message: " + content);
+        }
+    }
+    
+    /**
+     * Sends a message to every client but one, and to the spectators
+     * @param playerID 0-3, the client left out
+     * @param message message
+     * @throws InterruptedException
+     */
+    private void informOtherClients(int playerID, String message) throws InterruptedException{
+        spectators.publish(new Frame(message));
+        for (int player=0; player<4; player++){
+            if (player != playerID){
+                transmitter.informClient(player, true, message);
+            }
+        }
+    }
+    
+    /**
+     * Makes the moves of the players who left (see StandIn), for as long as
+     * it is one of their turns in the main phase, or until one of them 
+     * declares
+     * @throws InterruptedException
+     */
+    private void playStandIns() throws InterruptedException{
+        while (true){
+            int mover = -1;
+            for (int player=0; player<4; player++){
+                if (turns.stateOf(player) != TurnState.INACTIVE){
+                    mover = player;
+                    break;
+                }
+            }
+            if (mover < 0 || !standIns[mover]){
+                return;
+            }
+            TurnState state = turns.stateOf(mover);
+            String move = StandIn.move(gameBoard, mover, state);
+            if (move.equals("declare")){
+                declare(mover);
+                return;
+            }
+            handleRequestMainPhase(move, mover);
+            if (turns.stateOf(mover) == state){
+                // the move was not accepted; never loop on it
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return true iff the game has human players, and every one of them 
+     * left for good; a game of AIs alone is never deserted
+     */
+    private boolean isDeserted(){
+        boolean hasHumans = false;
+        for (int player=0; player<4; player++){
+            if (!isAI.get(player)){
+                if (!standIns[player]){
+                    return false;
+                }
+                hasHumans = true;
+            }
+        }
+        return hasHumans;
+    }
+    
+    /**
+     * Ends a game every human player left, without a winner
+     * @throws InterruptedException
+     */
+    private void endDesertedGame() throws InterruptedException{
+        events.ended(-1);
+        transmitter.informAllClients(true, "Everyone has left; the game is over.");
+        transmitter.informAllClients(false, "Disconnect.");
+    }
+    
     /**
      * Serves main and declaration phase
      * @throws InterruptedException
      */
     private void serveMainAndDeclarationPhase() throws InterruptedException{
-        // ID of player who declares, to be set when declaration occurs
-        int declarer = -1;
+        if (phase != TableSnapshot.Phase.SETUP){
+            resumeGame();
+        }
+        else{
+            gamestate.setState(State.BEGIN_GAME);
+            announceState();
         
-        gamestate.setState("begingame");
-        transmitter.informAllClients(true, gamestate.getMessages());
-
-        refreshAllClientsViews();
+            refreshAllClientsViews();
         
         
-        // Starts the game.  Player 0 is first to guess, so 
-        // Player 2 passes first.  
-        status.set(2, "Pass");
-        gamestate.setState("toPass", 2);
-        transmitter.informAllClients(true, gamestate.getMessages());
+            // Starts the game.  Player 0 is first to guess, so 
+            // Player 2 passes first.  
+            phase = TableSnapshot.Phase.MAIN;
+            turns.setState(2, TurnState.PASS);
+            gamestate.setState(State.TO_PASS, 2);
+            announceState();
+        }
+        playStandIns();
+        saveSnapshot();
         
         // continually listens for and responds to clients' 
         // requests until someone declares
-        for (Message message = transmitter.listenClients(); message!=null; 
-                message = transmitter.listenClients()){
+        for (Message message = phase == TableSnapshot.Phase.MAIN ? transmitter.listenClients() : null; 
+                message!=null; message = transmitter.listenClients()){
             // parse requests
-            int senderID = Character.getNumericValue(message.getSender().charAt(7));
+            int senderID = message.getSender();
             String messageContent = message.getContent();
+            boolean isExternal = message.isExternal();
+            long sentAt = message.getSentAt();
+            message.release();
             
-            if (messageContent.equals("declare")){
-            	gamestate.setState("declare", senderID);
-                transmitter.informAllClients(true, gamestate.getMessages());
-                
-                // changes all other players to Inactive mode, and marks declarer in state Declare 
-                for (int i = 0; i < 4; i++) {
-                    status.set(i, "Inactive");
+            if (!isExternal){
+                handleSessionMessage(messageContent, senderID);
+                if (isDeserted()){
+                    endDesertedGame();
+                    return;
                 }
-                status.set(senderID, "Declare");
-                declarer = senderID;
-                
-                // refreshes board view so that all cards that declarer can see are visible to everyone
-                gameBoard.makePlayerGameViewPublic(declarer);
-                refreshAllClientsViews();
+            }
+            else if (messageContent.equals("declare")){
+                declare(senderID);
+                Metrics.request(Metrics.Phase.MAIN, Op.DECLARE, sentAt);
+                phaseStart = Metrics.phase(Metrics.Phase.MAIN, phaseStart);
+                break;
+            }
+            else{
+                handleRequestMainPhase(messageContent, senderID);
+                recordRequest(Metrics.Phase.MAIN, sentAt);
+            }
+            playStandIns();
+            saveSnapshot();
+            if (phase == TableSnapshot.Phase.DECLARATION){
+                // a stand-in declared
+                phaseStart = Metrics.phase(Metrics.Phase.MAIN, phaseStart);
                 break;
             }
-            
-            handleRequestMainPhase(messageContent, senderID);
         }
         
         // DECLARATION 
         
-        for (Message message = transmitter.listenClients(); message != null; 
+        boolean over = false;
+        if (standIns[declarer]){
+            playStandInDeclaration();
+            over = true;
+        }
+        for (Message message = over ? null : transmitter.listenClients(); message != null; 
                 message = transmitter.listenClients()) {
             // parse requests
-            int senderID = Character.getNumericValue(message.getSender().charAt(7));
+            int senderID = message.getSender();
             String messageContent = message.getContent();
+            boolean isExternal = message.isExternal();
+            long sentAt = message.getSentAt();
+            message.release();
             
-            // shouldContinue is false only if declarer declares wrong
-            boolean shouldContinue = handleRequestDeclarationPhase(messageContent, senderID);
-            
-            // if declarer declares wrong, declarer and partner lose
-            if (!shouldContinue) {
-                gameBoard.makeAllCardsPublic();
-                transmitter.informAllClients(true,"Here is a view of all players' cards:");
-                refreshAllClientsViews();
-                transmitter.informAllClients(true,"Players " + Integer.toString((declarer+1)%4) 
-                    + " and " + Integer.toString((declarer+3)%4) + " win!");
-                transmitter.informAllClients(false, "Disconnect.");
-                break;
+            // shouldContinue is false only if declarer declares wrong, or 
+            // leaves
+            boolean shouldContinue;
+            if (!isExternal){
+                handleSessionMessage(messageContent, senderID);
+                shouldContinue = !standIns[declarer];
+                if (!shouldContinue){
+                    transmitter.informAllClients(true, "Player " + declarer + " left while declaring.");
+                }
             }
-            
-            // if all cards have been declared correctly, declarer and partner win
-            if (!gameBoard.isMoreToDeclare()) {
-                transmitter.informAllClients(true,"Player " + declarer + " has declared all cards correctly."); 
-                transmitter.informAllClients(true,"Players " + Integer.toString(declarer) + " and " + Integer.toString((declarer+2)%4) + " win!");
-                transmitter.informAllClients(false, "Disconnect.");
+            else{
+                shouldContinue = handleRequestDeclarationPhase(messageContent, senderID);
+                recordRequest(Metrics.Phase.DECLARATION, sentAt);
+            }
+            saveSnapshot();
+            if (endDeclaration(shouldContinue)){
                 break;
             }
         }
+        Metrics.phase(Metrics.Phase.DECLARATION, phaseStart);
+    }
+    
+    /**
+     * Records the latency of the request just handled (see Metrics.request)
+     * @param phase phase it was handled in
+     * @param sentAt when its client handler sent it
+     */
+    private void recordRequest(Metrics.Phase phase, long sentAt){
+        Metrics.request(phase, command.isValid() ? command.getOp() : null, sentAt);
+    }
+    
+    /**
+     * Starts the declaration phase
+     * @param playerID 0-3, the declarer
+     * @throws InterruptedException
+     */
+    private void declare(int playerID) throws InterruptedException{
+        gamestate.setState(State.DECLARE, playerID);
+        announceState();
+        
+        // changes all other players to Inactive mode, and marks declarer in state Declare 
+        turns.apply(playerID, Move.DECLARE, true);
+        declarer = playerID;
+        events.declared(declarer);
+        Metrics.moved();
+        
+        // refreshes board view so that all cards that declarer can see are visible to everyone
+        gameBoard.makePlayerGameViewPublic(declarer);
+        phase = TableSnapshot.Phase.DECLARATION;
+        saveSnapshot();
+        refreshAllClientsViews();
+    }
+    
+    /**
+     * Makes the declarations of a stand-in that declared (see 
+     * StandIn.declaration), until the game is over
+     * @throws InterruptedException
+     */
+    private void playStandInDeclaration() throws InterruptedException{
+        boolean correct = true;
+        while (!endDeclaration(correct)){
+            correct = handleRequestDeclarationPhase(StandIn.declaration(gameBoard, declarer), declarer);
+            saveSnapshot();
+        }
+    }
+    
+    /**
+     * Ends the game if the declarer declared wrong, or declared every card
+     * @param correct false iff the declarer declared wrong, or left
+     * @return true iff the game is over
+     * @throws InterruptedException
+     */
+    private boolean endDeclaration(boolean correct) throws InterruptedException{
+        // if declarer declares wrong, declarer and partner lose
+        if (!correct) {
+            events.ended((declarer+1)%4);
+            gameBoard.makeAllCardsPublic();
+            transmitter.informAllClients(true,"Here is a view of all players' cards:");
+            refreshAllClientsViews();
+            transmitter.informAllClients(true,"Players " + Integer.toString((declarer+1)%4) 
+                + " and " + Integer.toString((declarer+3)%4) + " win!");
+            transmitter.informAllClients(false, "Disconnect.");
+            return true;
+        }
+        
+        // if all cards have been declared correctly, declarer and partner win
+        if (!gameBoard.isMoreToDeclare()) {
+            events.ended(declarer);
+            transmitter.informAllClients(true,"Player " + declarer + " has declared all cards correctly."); 
+            transmitter.informAllClients(true,"Players " + Integer.toString(declarer) + " and " + Integer.toString((declarer+2)%4) + " win!");
+            transmitter.informAllClients(false, "Disconnect.");
+            return true;
+        }
+        return false;
     }
     
 
@@ -275,30 +920,35 @@ public class LogicServer {
      * @throws InterruptedException 
      */
     private void handleRequestSetupPhase(String in, int playerID) throws InterruptedException{
-        String regex = "(view)|(help)|(swap [0-5])";
         String helpMessage = "Type 'view' to see your cards, "
                 + "'help' for help message, "
                 + "and 'swap x' to swap card x. "
                 + "Type 'done' to finish.";
-        if (!in.matches(regex)){
+        if (!parser.parse(in, command)){
             // invalid input
             // discard input and return help message
-            transmitter.informClient(playerID, true, helpMessage);
-        }
-        else if(in.equals("view")){
-            transmitter.informClient(playerID, true, gameBoard.showPlayerOwnCards(playerID));
+            rejectRequest(command, playerID, helpMessage);
+            return;
         }
-        else if(in.equals("help")){
+        switch (command.getOp()){
+        case VIEW:
+            sendOwnCards(playerID);
+            break;
+        case HELP:
             transmitter.informClient(playerID, true, helpMessage);
-        }
-        else if(in.matches("swap [0-5]")){
-            Integer position = Character.getNumericValue(in.charAt(5));
-            gameBoard.swapTwoEqualCards(playerID, position);
-            transmitter.informClient(playerID, true, gameBoard.showPlayerOwnCards(playerID));
-        }
-        else{
-            // should not get here
-            throw new UnsupportedOperationException("Should not get here");
+            break;
+        case SWAP:
+            gameBoard.swapTwoEqualCards(playerID, command.getPosition());
+            events.swapped(playerID, command.getPosition());
+            sendOwnCards(playerID);
+            break;
+        case PROTOCOL_BINARY:
+            switchToBinary(playerID);
+            sendOwnCards(playerID);
+            break;
+        default:
+            // not a setup phase request
+            rejectRequest(command, playerID, helpMessage);
         }
     }
     
@@ -306,14 +956,12 @@ public class LogicServer {
      * Handler for client input in the main game phase
      * @param in client message.   
      * @param playerID 0-3
-     * @param playerState "Inactive", "Pass", "Guess", or "Show"
      * @return message to client, or null
      * @throws InterruptedException 
      */
     private void handleRequestMainPhase(String in, int playerID) throws InterruptedException{
-        String playerState = status.get(playerID);
+        TurnState playerState = turns.stateOf(playerID);
         
-        String regex = "(view)|(help)|(pass [0-5])|(guess [0-3] [0-5] ([1-9]|1[0-2]))|(show [0-5])";
         String helpMessage = "Type 'view' to see your cards, "
                 + "'help' for help message, "
                 + "'pass x' to pass card x, " 
@@ -321,125 +969,119 @@ public class LogicServer {
                 + "and 'show x' to show card x. "
                 + "Type 'declare' to declare.";
         
-        if (!in.matches(regex)){
+        if (!parser.parse(in, command)){
             // invalid input
             // discard input and return help message
-            transmitter.informClient(playerID, true, helpMessage);
+            rejectRequest(command, playerID, helpMessage);
         }
-        else if (in.equals("view")){
-            transmitter.informClient(playerID, true, gameBoard.showPlayerViewOfBoard(playerID));
+        else if (handleViewRequest(command, playerID)){
+            // board view sent
         }
-        else if (in.equals("help")){
+        else if (command.getOp() == Op.HELP){
             transmitter.informClient(playerID, true, helpMessage);
         }
-        else if (in.matches("pass [0-5]")){
+        else if (command.getOp() == Op.PASS){
             // in is of form "pass x" for x in 0-5
             
             // player must be in "Pass" state
-            if (!playerState.equals("Pass")){
+            if (!turns.allows(playerID, Move.PASS)){
                 
-                transmitter.informClient(playerID, true, "Your state is: "+playerState+
-                        ". You cannot pass right now.");
+                refuseMove(playerID, playerState, "pass");
             }
             else{
                 // TODO enforce: this card cannot be already faceup
-                // parse input
-                Integer position = Character.getNumericValue(in.charAt(5));
+                int position = command.getPosition();
                 
                 // alters game state
                 gameBoard.revealCardToPartner(playerID, position);
-                gamestate.setState("pass", playerID, position);
+                events.passed(playerID, position);
+                Metrics.moved();
+                gamestate.setState(State.PASS, playerID, position);
                 
                 // announce result of action to players
-                transmitter.informAllClients(true, gamestate.getMessages());
+                announceState();
                 refreshAllClientsViews();
                 
                 // update and announce whose turn it is 
-                status.set(playerID, "Inactive");
-                int partnerID = (playerID+2)%4;
-                gamestate.setState("toguess", partnerID);
-                transmitter.informAllClients(true, gamestate.getMessages());
-                status.set(partnerID, "Guess");
+                int partnerID = turns.apply(playerID, Move.PASS, true);
+                gamestate.setState(State.TO_GUESS, partnerID);
+                announceState();
             }
         }
-        else if (in.matches("guess [0-3] [0-5] ([1-9]|1[0-2])")){
+        else if (command.getOp() == Op.GUESS){
             // in is of form guess x y z for x in 0-3, y in 0-5, z in 1-12
             
             // player must be in "Guess" state
-            if (!playerState.equals("Guess")){
-                transmitter.informClient(playerID, true, "Your state is: "+playerState+
-                        ". You cannot guess right now.");
+            if (!turns.allows(playerID, Move.GUESS)){
+                refuseMove(playerID, playerState, "guess");
             }     
             else{
                 // TODO enforce: player cannot guess unguessable card
-                // parse input
-                String[] tokenizedInput = in.split(" ");
-                int targetPlayer = Integer.valueOf(tokenizedInput[1]);
-                int guessPosition = Integer.valueOf(tokenizedInput[2]);
-                int guessRank = Integer.valueOf(tokenizedInput[3]);
+                int targetPlayer = command.getTarget();
+                int guessPosition = command.getPosition();
+                int guessRank = command.getRank();
                 
                 boolean guessCorrect = gameBoard.guess(playerID, targetPlayer, 
                         guessPosition, guessRank);
+                events.guessed(playerID, targetPlayer, guessPosition, guessRank, guessCorrect);
+                Metrics.moved();
                 
                 if (guessCorrect){
                     // alter game state
                     gameBoard.revealCardToAll(targetPlayer, guessPosition);
-                    gamestate.setState("guess", playerID, new int[] {targetPlayer, guessPosition, guessRank, 1});
+                    gamestate.setState(State.GUESS, playerID, new int[] {targetPlayer, guessPosition, guessRank, 1});
                     
                     // announce result of action to players
-                    transmitter.informAllClients(true, gamestate.getMessages());
+                    announceState();
                     refreshAllClientsViews();
                     
                     // update and announce whose turn it is
-                    status.set(playerID, "Inactive");
-                    int nextPlayerID = (playerID+3)%4;
-                    gamestate.setState("topass", nextPlayerID);
-                    transmitter.informAllClients(true, gamestate.getMessages());
-                    status.set(nextPlayerID, "Pass");
+                    int nextPlayerID = turns.apply(playerID, Move.GUESS, true);
+                    gamestate.setState(State.TO_PASS, nextPlayerID);
+                    announceState();
                 }
                 else{
-                	gamestate.setState("guess", playerID, new int[] {targetPlayer, guessPosition, guessRank, 0});
+                	gamestate.setState(State.GUESS, playerID, new int[] {targetPlayer, guessPosition, guessRank, 0});
                 	
                     // announce result of action to players
-                    transmitter.informAllClients(true, gamestate.getMessages());
+                    announceState();
                     refreshAllClientsViews();
                     
                     // update player's status, player must now show a card
-                    status.set(playerID, "Show");
-                    gamestate.setState("toshow", playerID);
-                    transmitter.informAllClients(true, gamestate.getMessages());
+                    turns.apply(playerID, Move.GUESS, false);
+                    gamestate.setState(State.TO_SHOW, playerID);
+                    announceState();
                 }
             }
         }
-        else if (in.matches("show [0-5]")){
+        else if (command.getOp() == Op.SHOW){
             // player must be in "Show" state
-            if (!playerState.equals("Show")){
-                transmitter.informClient(playerID, true, "Your state is: "+playerState+
-                        ". You cannot show right now.");
+            if (!turns.allows(playerID, Move.SHOW)){
+                refuseMove(playerID, playerState, "show");
             }            
             else{
                 // TODO enforce: this card cannot be already faceup
-                // parse input
-                Integer position = Character.getNumericValue(in.charAt(5));
+                int position = command.getPosition();
                 
                 // update game state
                 gameBoard.revealCardToAll(playerID, position);
-                gamestate.setState("show", playerID, position);
+                events.shown(playerID, position);
+                Metrics.moved();
+                gamestate.setState(State.SHOW, playerID, position);
                 
                 // announce result of action to players
-                transmitter.informAllClients(true, gamestate.getMessages());
+                announceState();
                 refreshAllClientsViews();
                 
                 // update and announce whose turn it is
-                status.set(playerID, "Inactive");
-                int nextPlayerID = (playerID+3)%4;
-                gamestate.setState("topass", nextPlayerID);
-                transmitter.informAllClients(true, gamestate.getMessages());
-                status.set(nextPlayerID, "Pass");
+                int nextPlayerID = turns.apply(playerID, Move.SHOW, true);
+                gamestate.setState(State.TO_PASS, nextPlayerID);
+                announceState();
             }
         }
         else{
-            throw new UnsupportedOperationException("Should not get here");            
+            // not a main phase request
+            rejectRequest(command, playerID, helpMessage);
         }
     }
     
@@ -451,42 +1093,42 @@ public class LogicServer {
      * @throws InterruptedException
      */
     private boolean handleRequestDeclarationPhase(String in, int playerID) throws InterruptedException {
-    	String playerState = status.get(playerID);
-    	String regex = "(view)|(help)|(declare [0-3] [0-5] ([1-9]|1[0-2]))";
+    	TurnState playerState = turns.stateOf(playerID);
         String helpMessage = "Type 'view' to see your cards, "
                 + "'help' for help message, "
                 + "'declare x y z' to declare card y of player x is z, if it is your turn to declare.";
         
-        if (!in.matches(regex)){
+        if (!parser.parse(in, command)){
             // invalid input
             // discard input and return help message
-            transmitter.informClient(playerID, true, helpMessage);
+            rejectRequest(command, playerID, helpMessage);
             return true;
         }
-        else if (in.equals("view")){
-            transmitter.informClient(playerID, true, gameBoard.showPlayerViewOfBoard(playerID));
+        else if (handleViewRequest(command, playerID)){
             return true;
         }
-        else if (in.equals("help")){
+        else if (command.getOp() == Op.HELP){
             transmitter.informClient(playerID, true, helpMessage);
             return true;
         }
-        else if (in.matches("declare [0-3] [0-5] ([1-9]|1[0-2])")) {
+        else if (command.getOp() == Op.DECLARE_CARD) {
         	// check that player can actually declare
-        	if (!playerState.equals("Declare")){
-        	    transmitter.informClient(playerID, true, "Your state is: "+playerState+
-                        ". You cannot declare right now.");
+        	if (!turns.allows(playerID, Move.DECLARE_CARD)){
+        	    refuseMove(playerID, playerState, "declare");
                 return true;
             }
         	
         	else {
-        		String[] tokenizedInput = in.split(" ");
-                int targetPlayer = Integer.valueOf(tokenizedInput[1]);
-                int guessPosition = Integer.valueOf(tokenizedInput[2]);
-                int guessRank = Integer.valueOf(tokenizedInput[3]);
+                int targetPlayer = command.getTarget();
+                int guessPosition = command.getPosition();
+                int guessRank = command.getRank();
                 
-                boolean guessCorrect = gameBoard.guess(playerID, targetPlayer, 
-                        guessPosition, guessRank);
+                // the partner's cards are declared too, but cannot be guessed
+                boolean guessCorrect = targetPlayer % 2 != playerID % 2
+                        ? gameBoard.guess(playerID, targetPlayer, guessPosition, guessRank)
+                        : gameBoard.hasRank(targetPlayer, guessPosition, guessRank);
+                events.declaredCard(playerID, targetPlayer, guessPosition, guessRank, guessCorrect);
+                Metrics.moved();
                 
                 if (!guessCorrect) {
                     transmitter.informAllClients(true, "Player " + playerID + " incorrectly declared card " + 
@@ -509,7 +1151,9 @@ public class LogicServer {
         }
         
         else{
-            throw new UnsupportedOperationException("Should not get here");            
+            // not a declaration phase request
+            rejectRequest(command, playerID, helpMessage);
+            return true;
         }
     }
     
@@ -524,6 +1168,7 @@ public class LogicServer {
         // GO HERE TO SET WHICH PLAYERS ARE AI AND WHICH ARE HUMAN 
         List<Boolean> isAI = Arrays.asList(false, false, false, false);
         
+        AdminConsole.start();
         try{
             runLogicServer(DEFAULT_PORT, isAI);
         } catch (IOException e){
@@ -542,8 +1187,13 @@ public class LogicServer {
     private static void runLogicServer(int port, List<Boolean> isAI) throws IOException, InterruptedException{
         assert(isAI.size() == 4);
         LogicServer server = new LogicServer(port, isAI);
+        Metrics.startEndpoint();
         // starts the main server thread
-        server.serve();
+        try{
+            server.serve();
+        } finally{
+            Metrics.stopEndpoint();
+        }
     }
 
 }
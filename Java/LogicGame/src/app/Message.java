@@ -1,53 +1,129 @@
 package app;
 
 /**
- * An immutable class representing messages sent internally between LogicServer 
- * and ClientHandlerThreads
+ * A class representing messages sent internally between LogicServer 
+ * and ClientHandlerThreads.  Endpoints are addressed by seat: 0-3 for the
+ * handler of a player, SERVER for the main server thread.  
+ * 
+ * Messages taken from a MessagePool are reused: the receiver calls 
+ * release() once it is done with a message, and must not touch it after.  
+ * A message is never changed while it is in flight.  
  */
 public class Message {
-    private final String sender;
-    private final String recipient;
     
-    private final boolean isExternal; // external messages are messages from
-    // the client or or to be sent to the client; internal messages are 
-    // messages between server and client handler to control gameflow
-    private final String content; 
+    /**
+     * Address of the main server thread
+     */
+    public static final int SERVER = -1;
+    
+    /**
+     * Kinds of messages.  External messages are messages from the client or 
+     * to be sent to the client; internal messages are messages between 
+     * server and client handler to control gameflow.  
+     */
+    public enum Kind { INTERNAL, EXTERNAL }
+    
+    private int sender;
+    private int recipient;
+    private Kind kind;
+    private String content; 
+    // encoded content, for messages to be relayed to a client; null if not
+    // encoded yet
+    private Frame frame;
+    
+    // System.nanoTime() when the message was sent, or 0 if metrics are off 
+    // (see Metrics).  Messages to the server are stamped when filled in; 
+    // messages to clients when they are queued, once per chain.  
+    private long sentAt;
+    
+    // next message of a chain of messages queued together (see 
+    // ServerTransmitter.flushClients), or null
+    Message next;
+    
+    // pool this message returns to when released, or null
+    private final MessagePool pool;
+    // true while the message sits in its pool (for asserts)
+    private boolean released = false;
     
     /**
-     * Constructor 
-     * @param sender message sender
-     * @param recipient message recipient
+     * Constructor of a message that is not pooled
+     * @param sender message sender, 0-3 or SERVER
+     * @param recipient message recipient, 0-3 or SERVER
+     * @param kind kind of message
      * @param content message content
      */
-    public Message(String sender, String recipient, boolean isExternal, String content){
+    public Message(int sender, int recipient, Kind kind, String content){
+        this.pool = null;
+        set(sender, recipient, kind, content);
+    }
+    
+    /**
+     * Constructor of a blank message of a pool
+     * @param pool pool the message belongs to
+     */
+    Message(MessagePool pool){
+        this.pool = pool;
+    }
+    
+    /**
+     * Fills in a message before it is sent
+     * @return this message
+     */
+    Message set(int sender, int recipient, Kind kind, String content){
         this.sender = sender;
         this.recipient = recipient;
-        this.isExternal = isExternal;
+        this.kind = kind;
         this.content = content;
+        this.frame = null;
+        this.next = null;
+        this.released = false;
+        this.sentAt = recipient == SERVER ? Metrics.now() : 0;
+        return this;
+    }
+    
+    /**
+     * Fills in a message with encoded content before it is sent
+     * @return this message
+     */
+    Message set(int sender, int recipient, Kind kind, Frame frame){
+        set(sender, recipient, kind, frame.getContent());
+        this.frame = frame;
+        return this;
     }
     
     /**
      * Get sender
-     * @return the sender of this message
+     * @return the sender of this message, 0-3 or SERVER
      */
-    public String getSender(){
+    public int getSender(){
+        assert(!released);
         return sender;
     }
     
     /**
      * Get recipient
-     * @return the recipient of this message
+     * @return the recipient of this message, 0-3 or SERVER
      */
-    public String getRecipient(){
+    public int getRecipient(){
+        assert(!released);
         return recipient;
     }
 
     /**
-     * Get content
-     * @return the content of this message
+     * Get kind
+     * @return the kind of this message
+     */
+    public Kind getKind(){
+        assert(!released);
+        return kind;
+    }
+
+    /**
+     * Get kind
+     * @return true iff this message is external
      */
     public boolean isExternal(){
-        return isExternal;
+        return getKind() == Kind.EXTERNAL;
     }
     
     /**
@@ -55,21 +131,70 @@ public class Message {
      * @return the content of this message
      */
     public String getContent(){
+        assert(!released);
         return content;
     }
+    
+    /**
+     * Get time sent
+     * @return System.nanoTime() when this message was sent, or 0 if metrics
+     * are off or it is not the first of its chain
+     */
+    public long getSentAt(){
+        assert(!released);
+        return sentAt;
+    }
+    
+    /**
+     * Stamps a message to a client with the time it is queued
+     */
+    void stamp(){
+        sentAt = Metrics.now();
+    }
+    
+    /**
+     * Get content, encoded
+     * @return the content of this message as a Frame, possibly shared with
+     * other messages
+     */
+    public Frame getFrame(){
+        assert(!released);
+        if (frame == null){
+            frame = new Frame(content);
+        }
+        return frame;
+    }
+    
+    /**
+     * Hands this message back to its pool, if it has one.  Called by the 
+     * receiver once it is done with the message.  
+     */
+    public void release(){
+        if (pool != null){
+            assert(!released);
+            released = true;
+            content = null;
+            frame = null;
+            pool.release(this);
+        }
+    }
 
     @Override
     public String toString(){
-        if (isExternal){
-            return "EXT/FROM: " + sender + "/TO: " + recipient 
+        if (isExternal()){
+            return "EXT/FROM: " + name(sender) + "/TO: " + name(recipient) 
                     + "/" + content;             
         }
         else{
-            return "INT/FROM: " + sender + "/TO: " + recipient 
+            return "INT/FROM: " + name(sender) + "/TO: " + name(recipient) 
                     + "/" + content;             
         }
     }
     
+    private static String name(int address){
+        return address == SERVER ? "Server" : "Client " + address;
+    }
+    
     /**
      * Asserts that a message is Internal and has a specified content
      * @param message a message
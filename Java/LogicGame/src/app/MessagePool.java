@@ -0,0 +1,61 @@
+package app;
+
+/**
+ * Reusable Messages for one direction of one transmitter, e.g. from the 
+ * main server thread to the handler of player 2.  One thread at a time 
+ * takes messages from the pool (the sender) and one thread at a time gives
+ * them back (the receiver, through Message.release), so the free messages 
+ * sit in a single-producer ring and taking or returning one allocates 
+ * nothing.  If the sender outruns the receiver, new messages are made; if
+ * the ring is full, released messages are left to the garbage collector.  
+ */
+public class MessagePool {
+    
+    private static final int CAPACITY = 256;
+    
+    // producer: the receiver releasing; consumer: the sender acquiring
+    private final MessageQueueSingleProducer<Message> free = 
+            new MessageQueueSingleProducer<>(CAPACITY, WaitStrategy.PARK);
+    
+    /**
+     * Gets a message to send
+     * @param sender message sender, 0-3 or Message.SERVER
+     * @param recipient message recipient, 0-3 or Message.SERVER
+     * @param kind kind of message
+     * @param content message content
+     * @return a message of this pool holding the given values
+     */
+    public Message acquire(int sender, int recipient, Message.Kind kind, String content){
+        Message message = free.poll();
+        if (message == null){
+            message = new Message(this);
+        }
+        return message.set(sender, recipient, kind, content);
+    }
+    
+    /**
+     * Gets a message to send, with encoded content
+     * @param sender message sender, 0-3 or Message.SERVER
+     * @param recipient message recipient, 0-3 or Message.SERVER
+     * @param kind kind of message
+     * @param frame message content, possibly shared with other messages
+     * @return a message of this pool holding the given values
+     */
+    public Message acquire(int sender, int recipient, Message.Kind kind, Frame frame){
+        Message message = free.poll();
+        if (message == null){
+            message = new Message(this);
+        }
+        return message.set(sender, recipient, kind, frame);
+    }
+    
+    /**
+     * Returns a message to the pool; see Message.release
+     * @param message a released message of this pool
+     */
+    void release(Message message){
+        // nobody waits on the ring, so there is no one to wake
+        free.enqueue(message);
+    }
+    
+}
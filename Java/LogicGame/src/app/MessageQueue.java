@@ -0,0 +1,79 @@
+package app;
+
+/**
+ * A queue that carries messages from one or more threads to a single 
+ * consumer thread, e.g. from the main server thread to a client handler.  
+ * 
+ * MessageQueue.create chooses the implementation from system properties: 
+ * logic.queue is "ring" (the default, preallocated lock-free ring buffers) 
+ * or "linked" (LinkedBlockingQueue); logic.queue.capacity is the capacity 
+ * of ring buffers (default 1024, rounded up to a power of two); and 
+ * logic.queue.wait is how ring buffer users wait, "spin", "yield" or "park"
+ * (the default; see WaitStrategy).  
+ * 
+ * @param <E> type of messages
+ */
+public interface MessageQueue<E> {
+    
+    /**
+     * Adds a message, waiting for room if the queue is full
+     * @param message message to be added, not null
+     * @throws InterruptedException
+     */
+    public void put(E message) throws InterruptedException;
+    
+    /**
+     * Adds a message if there is room, without waiting, e.g. on a thread 
+     * that must not block (see TwoWayChannel.Handler)
+     * @param message message to be added, not null
+     * @return true iff it was added
+     */
+    public boolean offer(E message);
+    
+    /**
+     * Removes the oldest message, waiting for one if the queue is empty.  
+     * Only called by the consumer thread.  
+     * @return oldest message
+     * @throws InterruptedException
+     */
+    public E take() throws InterruptedException;
+    
+    /**
+     * Removes the oldest message if there is one.  Only called by the 
+     * consumer thread.  
+     * @return oldest message, or null if the queue is empty
+     */
+    public E poll();
+    
+    /**
+     * Counts the messages waiting, e.g. for metrics.  May be called by any 
+     * thread; the count may be off by the messages being added or removed
+     * meanwhile.  
+     * @return number of messages in the queue
+     */
+    public int size();
+    
+    /**
+     * @return most messages the queue holds at once
+     */
+    public int capacity();
+    
+    /**
+     * Creates a queue as configured by the system properties
+     * @param multiProducer true iff more than one thread puts messages 
+     * @return a new queue
+     */
+    public static <E> MessageQueue<E> create(boolean multiProducer){
+        if ("linked".equals(System.getProperty("logic.queue", "ring"))){
+            return new MessageQueueLinked<E>();
+        }
+        int capacity = Integer.getInteger("logic.queue.capacity", 1024);
+        WaitStrategy wait = WaitStrategy.valueOf(
+                System.getProperty("logic.queue.wait", "park").toUpperCase());
+        if (multiProducer){
+            return new MessageQueueMultiProducer<E>(capacity, wait);
+        }
+        return new MessageQueueSingleProducer<E>(capacity, wait);
+    }
+
+}
@@ -0,0 +1,43 @@
+package app;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * An unbounded MessageQueue backed by a LinkedBlockingQueue 
+ * @param <E> type of messages
+ */
+public class MessageQueueLinked<E> implements MessageQueue<E> {
+    private final BlockingQueue<E> queue = new LinkedBlockingQueue<>();
+
+    @Override
+    public void put(E message) throws InterruptedException{
+        queue.put(message);
+    }
+
+    @Override
+    public boolean offer(E message){
+        return queue.offer(message);
+    }
+
+    @Override
+    public E take() throws InterruptedException{
+        return queue.take();
+    }
+
+    @Override
+    public E poll(){
+        return queue.poll();
+    }
+
+    @Override
+    public int size(){
+        return queue.size();
+    }
+
+    @Override
+    public int capacity(){
+        return Integer.MAX_VALUE;
+    }
+    
+}
@@ -0,0 +1,86 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free MessageQueue for any number of producer threads and 
+ * one consumer thread, e.g. from the client handlers to the main server 
+ * thread.  Adding and removing a message allocates nothing.  
+ * 
+ * Producers claim slots with a compare-and-set on tail; each slot has a 
+ * sequence number saying whether it is free for message n (n), holds 
+ * message n (n+1), or is still being filled (D. Vyukov's bounded queue).  
+ * @param <E> type of messages
+ */
+public class MessageQueueMultiProducer<E> extends MessageQueueRing<E> {
+    
+    private final AtomicLongArray sequence;
+    
+    // next message number to be claimed by a producer
+    private final AtomicLong tail = new AtomicLong();
+    
+    // next message number to be removed (only written by the consumer, and
+    // read by others only for size())
+    private final AtomicLong head = new AtomicLong();
+    
+    /**
+     * @param capacity minimum number of messages the queue holds
+     * @param wait how threads wait on the queue
+     */
+    public MessageQueueMultiProducer(int capacity, WaitStrategy wait){
+        super(capacity, wait);
+        sequence = new AtomicLongArray(buffer.length);
+        for (int i = 0; i < buffer.length; i++){
+            sequence.set(i, i);
+        }
+    }
+
+    @Override
+    protected boolean enqueue(E message){
+        long t = tail.get();
+        while (true){
+            int index = (int) t & mask;
+            long difference = sequence.get(index) - t;
+            if (difference == 0){
+                if (tail.compareAndSet(t, t + 1)){
+                    buffer[index] = message;
+                    sequence.set(index, t + 1);
+                    return true;
+                }
+                t = tail.get();
+            }
+            else if (difference < 0){
+                // slot still holds message t - capacity: full
+                return false;
+            }
+            else{
+                // another producer claimed t
+                t = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public E poll(){
+        long h = head.get();
+        int index = (int) h & mask;
+        if (sequence.get(index) != h + 1){
+            // empty, or a producer is still filling the slot
+            return null;
+        }
+        E message = slot(h);
+        buffer[index] = null;
+        sequence.lazySet(index, h + buffer.length);
+        head.lazySet(h + 1);
+        return message;
+    }
+    
+    @Override
+    public int size(){
+        long h = head.get();
+        // slots claimed but still being filled are counted
+        return (int) Math.max(0, tail.get() - h);
+    }
+    
+}
@@ -0,0 +1,110 @@
+package app;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared parts of the bounded ring-buffer MessageQueues: the preallocated 
+ * slots and waiting for the queue to become non-empty or non-full.  
+ * @param <E> type of messages
+ */
+abstract class MessageQueueRing<E> implements MessageQueue<E> {
+    
+    // slots of messages; slot of message number n is n & mask
+    protected final Object[] buffer;
+    protected final int mask;
+    
+    private final WaitStrategy wait;
+    
+    // consumer thread parked waiting for a message, or null
+    private volatile Thread waiter = null;
+    
+    /**
+     * @param capacity minimum number of messages the queue holds; rounded up
+     * to a power of two
+     * @param wait how threads wait on the queue
+     */
+    protected MessageQueueRing(int capacity, WaitStrategy wait){
+        if (capacity < 1 || capacity > (1 << 30)){
+            throw new IllegalArgumentException("Bad capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity){
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.wait = wait;
+    }
+    
+    /**
+     * Adds a message if there is room, without waking the consumer
+     * @param message message to be added
+     * @return true iff it was added
+     */
+    protected abstract boolean enqueue(E message);
+    
+    @Override
+    public boolean offer(E message){
+        if (!enqueue(message)){
+            return false;
+        }
+        wakeConsumer();
+        return true;
+    }
+    
+    @Override
+    public void put(E message) throws InterruptedException{
+        for (int attempt = 0; !enqueue(message); attempt++){
+            if (Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            wait.idle(attempt);
+        }
+        wakeConsumer();
+    }
+    
+    private void wakeConsumer(){
+        // the consumer sets waiter before checking the queue a last time,
+        // and the producer checks waiter after publishing, so one of them
+        // sees the other
+        Thread consumer = waiter;
+        if (consumer != null){
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    @Override
+    public E take() throws InterruptedException{
+        E message = poll();
+        for (int attempt = 0; message == null; attempt++){
+            if (Thread.interrupted()){
+                throw new InterruptedException();
+            }
+            if (wait == WaitStrategy.PARK && attempt >= WaitStrategy.SPINS){
+                waiter = Thread.currentThread();
+                message = poll();
+                if (message == null){
+                    LockSupport.park(this);
+                    message = poll();
+                }
+                waiter = null;
+            }
+            else{
+                wait.idle(attempt);
+                message = poll();
+            }
+        }
+        return message;
+    }
+    
+    @Override
+    public int capacity(){
+        return buffer.length;
+    }
+    
+    @SuppressWarnings("unchecked")
+    protected final E slot(long index){
+        return (E) buffer[(int) index & mask];
+    }
+    
+}
@@ -0,0 +1,62 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free MessageQueue for one producer thread and one consumer
+ * thread, e.g. from the main server thread to a client handler.  Adding and
+ * removing a message allocates nothing.  
+ * @param <E> type of messages
+ */
+public class MessageQueueSingleProducer<E> extends MessageQueueRing<E> {
+    
+    // number of messages ever removed (written only by the consumer) and 
+    // ever added (written only by the producer)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    // the producer's copy of head, refreshed only when the queue looks full
+    private long cachedHead = 0;
+    
+    /**
+     * @param capacity minimum number of messages the queue holds
+     * @param wait how threads wait on the queue
+     */
+    public MessageQueueSingleProducer(int capacity, WaitStrategy wait){
+        super(capacity, wait);
+    }
+
+    @Override
+    protected boolean enqueue(E message){
+        long t = tail.get();
+        if (t - cachedHead == buffer.length){
+            cachedHead = head.get();
+            if (t - cachedHead == buffer.length){
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = message;
+        // publishes the message (volatile, for the parked consumer check)
+        tail.set(t + 1);
+        return true;
+    }
+
+    @Override
+    public E poll(){
+        long h = head.get();
+        if (h == tail.get()){
+            return null;
+        }
+        E message = slot(h);
+        buffer[(int) h & mask] = null;
+        head.lazySet(h + 1);
+        return message;
+    }
+    
+    @Override
+    public int size(){
+        long h = head.get();
+        return (int) Math.max(0, tail.get() - h);
+    }
+    
+}
@@ -0,0 +1,214 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A trace of the messages passed between servers and client handlers, kept
+ * in a preallocated ring of fixed-size binary records.  Recording a message
+ * takes no lock and allocates nothing; the oldest records are overwritten
+ * once the ring is full.  Records are turned into text only when the trace
+ * is dumped (dump, e.g. by the "trace" command of AdminConsole) or 
+ * streamed to a file by a background thread.  
+ * 
+ * Configured with system properties: 
+ * logic.trace is the level, "off" (the default), "events" (who sent what 
+ * kind of message to whom, and its length) or "content" (also the first 
+ * CONTENT_CHARS characters of the message); 
+ * logic.trace.capacity is the number of records kept (default 65536); 
+ * logic.trace.file, if set, is a file the trace is streamed to.  
+ */
+public class MessageTrace {
+    
+    /**
+     * How much is recorded
+     */
+    public enum Level { OFF, EVENTS, CONTENT }
+    
+    public static final Level LEVEL = Level.valueOf(
+            System.getProperty("logic.trace", "off").toUpperCase());
+    
+    // characters of content recorded at level CONTENT
+    static final int CONTENT_CHARS = 32;
+    
+    /*
+     * Each record is RECORD_LONGS longs: 
+     * 0: number of the record, or BUSY while it is being written
+     * 1: System.nanoTime() when recorded
+     * 2: transmitter ID << 32 | (sender & 0xFF) << 16 | (recipient & 0xFF) << 8 | kind
+     * 3: length of content
+     * 4-7: first CONTENT_CHARS characters of content, one byte each
+     */
+    private static final int RECORD_LONGS = 8;
+    private static final long BUSY = -1;
+    
+    private static final int CAPACITY = capacity(Integer.getInteger("logic.trace.capacity", 65536));
+    private static final AtomicLongArray ring = 
+            new AtomicLongArray(LEVEL == Level.OFF ? 0 : CAPACITY * RECORD_LONGS);
+    
+    // number of records ever claimed
+    private static final AtomicLong next = new AtomicLong();
+    
+    static {
+        String file = System.getProperty("logic.trace.file");
+        if (file != null && LEVEL != Level.OFF){
+            Thread writer = new Thread(() -> stream(file), "trace-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+    
+    private MessageTrace(){
+    }
+    
+    private static int capacity(int requested){
+        int capacity = Integer.highestOneBit(Math.max(requested, 16));
+        return capacity < requested ? capacity << 1 : capacity;
+    }
+    
+    /**
+     * Records that a message was received
+     * @param transmitterID ID of the transmitter of the table, to tell tables apart
+     * @param message message received
+     */
+    public static void received(int transmitterID, Message message){
+        if (LEVEL == Level.OFF){
+            return;
+        }
+        String content = message.getContent();
+        long number = next.getAndIncrement();
+        int base = (int) (number & (CAPACITY - 1)) * RECORD_LONGS;
+        
+        ring.lazySet(base, BUSY);
+        // readers that see a field written below also see BUSY
+        VarHandle.storeStoreFence();
+        ring.lazySet(base + 1, System.nanoTime());
+        ring.lazySet(base + 2, (long) transmitterID << 32 
+                | (message.getSender() & 0xFF) << 16 
+                | (message.getRecipient() & 0xFF) << 8 
+                | message.getKind().ordinal());
+        ring.lazySet(base + 3, content.length());
+        if (LEVEL == Level.CONTENT){
+            for (int i = 0; i < CONTENT_CHARS / 8; i++){
+                ring.lazySet(base + 4 + i, pack(content, i * 8));
+            }
+        }
+        ring.lazySet(base, number);
+    }
+    
+    /**
+     * Packs 8 characters of a string into a long, one byte each, 0 past the
+     * end of the string, ' ' for control characters (so that a record is one
+     * line) and '?' for non-ASCII characters
+     */
+    private static long pack(String content, int from){
+        long packed = 0;
+        int to = Math.min(from + 8, content.length());
+        for (int i = to - 1; i >= from; i--){
+            char c = content.charAt(i);
+            packed = packed << 8 | (c < 0x20 ? ' ' : c < 0x80 ? c : '?');
+        }
+        return packed;
+    }
+    
+    /**
+     * Writes record number n as a line of text
+     * @return true iff the record was written; false if it has not been 
+     * written yet or has been overwritten
+     */
+    private static boolean format(long n, Appendable out) throws IOException{
+        int base = (int) (n & (CAPACITY - 1)) * RECORD_LONGS;
+        if (ring.get(base) != n){
+            return false;
+        }
+        long time = ring.get(base + 1);
+        long header = ring.get(base + 2);
+        long length = ring.get(base + 3);
+        long[] text = new long[CONTENT_CHARS / 8];
+        for (int i = 0; i < text.length; i++){
+            text[i] = ring.get(base + 4 + i);
+        }
+        VarHandle.loadLoadFence();
+        if (ring.get(base) != n){
+            return false;
+        }
+        
+        int transmitterID = (int) (header >>> 32);
+        int sender = (byte) (header >>> 16);
+        int recipient = (byte) (header >>> 8);
+        Message.Kind kind = Message.Kind.values()[(int) header & 0xFF];
+        out.append(Long.toString(time)).append(" #").append(Integer.toString(transmitterID))
+            .append(" Received:").append(kind == Message.Kind.EXTERNAL ? "EXT" : "INT")
+            .append("/FROM: ").append(name(sender)).append("/TO: ").append(name(recipient))
+            .append("/");
+        if (LEVEL == Level.CONTENT){
+            for (int i = 0; i < Math.min(length, CONTENT_CHARS); i++){
+                out.append((char) ((text[i / 8] >>> (8 * (i % 8))) & 0xFF));
+            }
+            if (length > CONTENT_CHARS){
+                out.append("...");
+            }
+        }
+        out.append(" (").append(Long.toString(length)).append(" chars)\n");
+        return true;
+    }
+    
+    private static String name(int address){
+        return address == Message.SERVER ? "Server" : "Client " + address;
+    }
+    
+    /**
+     * Writes the records in the ring, oldest first
+     * @param out where the records are written
+     */
+    public static void dump(PrintStream out){
+        long end = next.get();
+        StringBuilder text = new StringBuilder();
+        for (long n = Math.max(0, end - CAPACITY); n < end; n++){
+            try{
+                format(n, text);
+            } catch (IOException e){
+                throw new AssertionError(e); // StringBuilder does not throw
+            }
+        }
+        out.print(text);
+        out.flush();
+    }
+    
+    /**
+     * Writes records to a file as they are recorded, noting records that 
+     * were overwritten before they could be written.  Runs forever.  
+     * @param file name of file
+     */
+    private static void stream(String file){
+        try (Writer out = new BufferedWriter(new FileWriter(file))){
+            long cursor = 0;
+            while (true){
+                long end = next.get();
+                if (end - cursor > CAPACITY){
+                    out.write("# " + (end - CAPACITY - cursor) + " records lost\n");
+                    cursor = end - CAPACITY;
+                }
+                while (cursor < end && format(cursor, out)){
+                    cursor++;
+                }
+                if (cursor < end && ring.get((int) (cursor & (CAPACITY - 1)) * RECORD_LONGS) > cursor){
+                    // overwritten while we were reading; counted above next time
+                    continue;
+                }
+                out.flush();
+                LockSupport.parkNanos(10000000);
+            }
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import app.Command.Op;
+import history.EventLog;
+
+/**
+ * Metrics of the servers of this process: counters, latency histograms
+ * (see LatencyHistogram) and the depth of the message queues of every table
+ * being played.  Recording takes no lock and allocates nothing.
+ *
+ * Latencies are measured from when a message was sent (see
+ * Message.getSentAt): a request's latency is the time from its client
+ * handler sending it to the server being done with it, by phase and
+ * command; a queue's wait is the time messages spend in it before they are
+ * taken.  Phases are also timed as a whole, once per game.  The records the
+ * event logs of the games dropped (see EventLog.getDropped) are counted too.
+ *
+ * Configured with system properties: logic.metrics is "on" (the default)
+ * or "off", which records nothing; logic.metrics.port, if set, is a port on
+ * the loopback interface where GET /metrics returns the metrics in the
+ * Prometheus text format (see startEndpoint).
+ */
+public class Metrics {
+
+    /**
+     * The phases of a game
+     */
+    public enum Phase { CONNECTION, SETUP, MAIN, DECLARATION }
+
+    /**
+     * The message queues of a table: from the client handlers to the
+     * server, and from the server to each client handler
+     */
+    enum Queue { TO_SERVER, TO_CLIENT }
+
+    public static final boolean ENABLED = !"off".equals(System.getProperty("logic.metrics", "on"));
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Queue[] QUEUES = Queue.values();
+    private static final Op[] OPS = Op.values();
+
+    // quantiles exported for every histogram
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // requests.get(phase * (OPS.length + 1) + op) is the histogram of the
+    // requests of a command in a phase; op OPS.length stands for requests
+    // that could not be decoded.  Made when first recorded.
+    private static final AtomicReferenceArray<LatencyHistogram> requests =
+            new AtomicReferenceArray<>(PHASES.length * (OPS.length + 1));
+    private static final LatencyHistogram[] phases = histograms(PHASES.length);
+    private static final LatencyHistogram[] queueWaits = histograms(QUEUES.length);
+
+    private static final LongAdder moves = new LongAdder();
+    private static final LongAdder invalidCommands = new LongAdder();
+    private static final LongAdder gamesStarted = new LongAdder();
+    private static final LongAdder gamesFinished = new LongAdder();
+
+    // transmitters of the tables being played, for their queue depths
+    private static final Set<ServerTransmitter> transmitters = ConcurrentHashMap.newKeySet();
+    // event logs games have been recorded in, for the records they dropped
+    private static final Set<EventLog> eventLogs = ConcurrentHashMap.newKeySet();
+
+    private static final long startNanos = System.nanoTime();
+
+    // the endpoint, or null; guarded by Metrics.class
+    private static HttpServer endpoint = null;
+
+    private Metrics(){
+    }
+
+    private static LatencyHistogram[] histograms(int count){
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++){
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * @return System.nanoTime(), or 0 if metrics are off, for the time a
+     * message is sent
+     */
+    static long now(){
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a request the server is done with
+     * @param phase phase it was served in
+     * @param op its command, or null if it could not be decoded
+     * @param sentAt when its client handler sent it (see Message.getSentAt)
+     */
+    static void request(Phase phase, Op op, long sentAt){
+        if (!ENABLED){
+            return;
+        }
+        int index = phase.ordinal() * (OPS.length + 1) + (op != null ? op.ordinal() : OPS.length);
+        LatencyHistogram histogram = requests.get(index);
+        if (histogram == null){
+            requests.compareAndSet(index, null, new LatencyHistogram());
+            histogram = requests.get(index);
+        }
+        histogram.record(System.nanoTime() - sentAt);
+    }
+
+    /**
+     * Records the end of a phase
+     * @param ended the phase
+     * @param start when it started
+     * @return now, when the next phase starts
+     */
+    static long phase(Phase ended, long start){
+        if (!ENABLED){
+            return 0;
+        }
+        long now = System.nanoTime();
+        phases[ended.ordinal()].record(now - start);
+        return now;
+    }
+
+    /**
+     * Records a message taken off a queue
+     * @param queue the queue
+     * @param sentAt when the message was sent (see Message.getSentAt)
+     */
+    static void queueWait(Queue queue, long sentAt){
+        if (ENABLED){
+            queueWaits[queue.ordinal()].record(System.nanoTime() - sentAt);
+        }
+    }
+
+    /**
+     * Counts a move made: a card passed, guessed, shown or declared, or a
+     * declaration begun
+     */
+    static void moved(){
+        if (ENABLED){
+            moves.increment();
+        }
+    }
+
+    /**
+     * Counts a request refused: one that could not be decoded, or is not
+     * allowed in the phase or turn it was sent in
+     */
+    static void invalidCommand(){
+        if (ENABLED){
+            invalidCommands.increment();
+        }
+    }
+
+    /**
+     * Notes a game starting to be served, with the transmitter of its table
+     */
+    static void gameStarted(ServerTransmitter transmitter){
+        if (ENABLED){
+            gamesStarted.increment();
+            transmitters.add(transmitter);
+        }
+    }
+
+    /**
+     * Notes a game no longer being served
+     */
+    static void gameFinished(ServerTransmitter transmitter){
+        if (ENABLED){
+            gamesFinished.increment();
+            transmitters.remove(transmitter);
+        }
+    }
+
+    /**
+     * Notes an event log a game is recorded in, whose dropped records are
+     * counted from then on
+     */
+    static void recordedIn(EventLog log){
+        if (ENABLED){
+            eventLogs.add(log);
+        }
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text format
+     * @return the metrics
+     */
+    public static String export(){
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE logic_uptime_seconds gauge\n");
+        sample(out, "logic_uptime_seconds", "", seconds(System.nanoTime() - startNanos));
+        counter(out, "logic_games_started_total", gamesStarted.sum());
+        counter(out, "logic_games_finished_total", gamesFinished.sum());
+        counter(out, "logic_moves_total", moves.sum());
+        counter(out, "logic_invalid_commands_total", invalidCommands.sum());
+        long dropped = 0;
+        for (EventLog log : eventLogs){
+            dropped += log.getDropped();
+        }
+        counter(out, "logic_eventlog_dropped_total", dropped);
+
+        out.append("# TYPE logic_request_latency_seconds summary\n");
+        for (Phase phase : PHASES){
+            for (int op = 0; op <= OPS.length; op++){
+                LatencyHistogram histogram = requests.get(phase.ordinal() * (OPS.length + 1) + op);
+                if (histogram != null){
+                    summary(out, "logic_request_latency_seconds", "phase=\"" + name(phase)
+                            + "\",command=\"" + (op < OPS.length ? name(OPS[op]) : "invalid") + "\"", histogram);
+                }
+            }
+        }
+        out.append("# TYPE logic_phase_duration_seconds summary\n");
+        for (Phase phase : PHASES){
+            summary(out, "logic_phase_duration_seconds", "phase=\"" + name(phase) + "\"",
+                    phases[phase.ordinal()]);
+        }
+        out.append("# TYPE logic_queue_wait_seconds summary\n");
+        for (Queue queue : QUEUES){
+            summary(out, "logic_queue_wait_seconds", "queue=\"" + name(queue) + "\"",
+                    queueWaits[queue.ordinal()]);
+        }
+
+        out.append("# TYPE logic_queue_depth gauge\n");
+        for (ServerTransmitter transmitter : transmitters){
+            String table = "table=\"" + transmitter.getID() + "\",queue=\"";
+            sample(out, "logic_queue_depth", table + "to_server\"",
+                    transmitter.getQueueDepth(Message.SERVER));
+            for (int player = 0; player < 4; player++){
+                sample(out, "logic_queue_depth", table + "to_client_" + player + "\"",
+                        transmitter.getQueueDepth(player));
+            }
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, long value){
+        out.append("# TYPE ").append(name).append(" counter\n");
+        sample(out, name, "", value);
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram){
+        long[] values = histogram.getValuesAt(QUANTILES);
+        for (int q = 0; q < QUANTILES.length; q++){
+            sample(out, name, labels + ",quantile=\"" + QUANTILES[q] + "\"", seconds(values[q]));
+        }
+        sample(out, name + "_sum", labels, seconds(histogram.getSum()));
+        sample(out, name + "_count", labels, histogram.getCount());
+        sample(out, name + "_max", labels, seconds(histogram.getMax()));
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value){
+        out.append(name);
+        if (!labels.isEmpty()){
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static double seconds(long nanos){
+        return nanos / 1e9;
+    }
+
+    private static String name(Enum<?> constant){
+        return constant.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Starts serving the metrics on the loopback interface, at the port set
+     * by logic.metrics.port, unless it is not set or already started.  The
+     * endpoint runs on a thread of its own until stopEndpoint.
+     * @throws IOException if the port cannot be bound
+     */
+    public static synchronized void startEndpoint() throws IOException{
+        Integer port = Integer.getInteger("logic.metrics.port");
+        if (port == null || endpoint != null){
+            return;
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            try{
+                if (!"GET".equals(exchange.getRequestMethod())){
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                byte[] body = export().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream stream = exchange.getResponseBody()){
+                    stream.write(body);
+                }
+            } finally{
+                exchange.close();
+            }
+        });
+        server.start();
+        endpoint = server;
+    }
+
+    /**
+     * Stops serving the metrics, if they are served
+     */
+    public static synchronized void stopEndpoint(){
+        if (endpoint != null){
+            endpoint.stop(0);
+            endpoint = null;
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector thread that does the reading and writing of many 
+ * TwoWayChannelNios.  All I/O of a channel, and all changes to its 
+ * selection key, happen on the thread of its reactor; other threads hand
+ * work to the reactor with execute().  
+ */
+public class NioReactor implements Runnable {
+    
+    // size of the direct buffers shared by the channels of a reactor
+    private static final int BUFFER_SIZE = 16 * 1024;
+    
+    private final Selector selector;
+    private final Thread thread;
+    
+    // tasks to be run on the reactor thread
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    
+    // every channel of this reactor reads into and writes from these; only 
+    // one channel does I/O at a time, so they are never in use by two
+    final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    
+    /**
+     * Creates and starts a reactor
+     * @param name name of the reactor thread
+     * @throws IOException if a selector cannot be opened
+     */
+    public NioReactor(String name) throws IOException{
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Hands a connected socket to this reactor
+     * @param socket a connected socket channel
+     * @return a channel for sending and receiving lines through the socket
+     * @throws IOException if the socket cannot be made non-blocking
+     */
+    public TwoWayChannelNio register(SocketChannel socket) throws IOException{
+        socket.configureBlocking(false);
+        TwoWayChannelNio channel = new TwoWayChannelNio(this, socket);
+        execute(() -> {
+            try{
+                channel.setKey(socket.register(selector, SelectionKey.OP_READ, channel));
+            } catch (ClosedChannelException e){
+                channel.closeNow();
+            }
+        });
+        return channel;
+    }
+    
+    /**
+     * Runs a task on the reactor thread
+     * @param task task to run
+     */
+    void execute(Runnable task){
+        tasks.add(task);
+        selector.wakeup();
+    }
+    
+    /**
+     * @return true iff called on the reactor thread, e.g. by a handler
+     */
+    boolean inReactorThread(){
+        return Thread.currentThread() == thread;
+    }
+    
+    @Override
+    public void run(){
+        try{
+            while (true){
+                selector.select();
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()){
+                    try{
+                        task.run();
+                    } catch (RuntimeException e){
+                        // a bug in one task must not stop the reactor, which
+                        // serves every other connection too
+                        e.printStackTrace();
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    TwoWayChannelNio channel = (TwoWayChannelNio) key.attachment();
+                    if (!key.isValid()){
+                        continue;
+                    }
+                    try{
+                        if (key.isReadable()){
+                            channel.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()){
+                            channel.onWritable();
+                        }
+                    } catch (RuntimeException e){
+                        drop(channel, e);
+                    }
+                }
+            }
+        } catch (IOException e){
+            // the selector itself is broken
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Closes a channel whose I/O, or whose handler, failed, and keeps 
+     * serving the others
+     * @param channel channel of this reactor
+     * @param e what went wrong
+     */
+    private static void drop(TwoWayChannelNio channel, RuntimeException e){
+        System.err.println("Closing a connection after an error:");
+        e.printStackTrace();
+        try{
+            channel.closeNow();
+        } catch (RuntimeException again){
+            again.printStackTrace();
+        }
+    }
+    
+}
@@ -0,0 +1,88 @@
+package app;
+
+import java.io.IOException;
+
+/**
+ * A channel with a message in front of the messages still to be received,
+ * e.g. the first line of a client that was read to see whether it was
+ * coming back to a restored table (see LogicHost), and turned out to be its
+ * first request.  Everything else is done by the channel it wraps.
+ */
+class PushbackChannel implements TwoWayChannel {
+
+    private final TwoWayChannel channel;
+
+    // the message pushed back, until it is received; guarded by this
+    private String unread;
+
+    /**
+     * @param channel channel to wrap
+     * @param unread message to be received before the channel's
+     */
+    PushbackChannel(TwoWayChannel channel, String unread){
+        this.channel = channel;
+        this.unread = unread;
+    }
+
+    /**
+     * @return the message pushed back, once; then null
+     */
+    private synchronized String takeUnread(){
+        String message = unread;
+        unread = null;
+        return message;
+    }
+
+    @Override
+    public void send(String message) throws InterruptedException{
+        channel.send(message);
+    }
+
+    @Override
+    public void send(Frame frame) throws InterruptedException{
+        channel.send(frame);
+    }
+
+    @Override
+    public void flush(){
+        channel.flush();
+    }
+
+    @Override
+    public String listen() throws InterruptedException, IOException{
+        String message = takeUnread();
+        return message != null ? message : channel.listen();
+    }
+
+    @Override
+    public String poll() throws IOException{
+        String message = takeUnread();
+        return message != null ? message : channel.poll();
+    }
+
+    /**
+     * Forwards messages as the channel does, once the message pushed back
+     * has been received: until then, returns false, so that the message is
+     * received with listen() before any other
+     */
+    @Override
+    public synchronized boolean forwardTo(Handler handler){
+        return unread == null && channel.forwardTo(handler);
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    @Override
+    public void closeOut(){
+        channel.closeOut();
+    }
+
+    @Override
+    public void closeIn() throws IOException{
+        channel.closeIn();
+    }
+
+}
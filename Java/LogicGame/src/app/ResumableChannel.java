@@ -0,0 +1,439 @@
+package app;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The session of a player of a host: a TwoWayChannel that survives its
+ * connection dropping.  While the player is away, what is sent to it is
+ * kept in a bounded buffer, and listen() waits for the player to come back
+ * over a new connection with the session's token (see
+ * SessionRegistry.resume).  The buffer is then sent over the new connection,
+ * unless it overflowed or held frames of the binary protocol, in which case
+ * it is dropped and the player has to be sent a fresh view of the game (see
+ * Listener.resumed).  A player who is not back within the grace period is
+ * gone for good: listen() returns null, and a handler (see forwardTo) is
+ * handed null.
+ *
+ * A resumed connection starts in the text protocol.  Thread-safe.
+ */
+public class ResumableChannel implements TwoWayChannel {
+
+    /**
+     * Is told when the connection of the session drops and when the player
+     * comes back.  Called from the thread that noticed, holding the lock of
+     * the session, so that it is told in order, and told the player is back
+     * before any message the player sends over the new connection is 
+     * received.  Must not block; sending the server an internal message
+     * (see ClientTransmitter.informServer) does not.  
+     */
+    public interface Listener {
+        /**
+         * The connection dropped; the session waits for its player
+         * @throws InterruptedException
+         */
+        public void lost() throws InterruptedException;
+
+        /**
+         * The player is back over a new connection
+         * @param inSync true iff the player was sent everything it missed;
+         * if false, it needs a fresh view of the game
+         * @throws InterruptedException
+         */
+        public void resumed(boolean inSync) throws InterruptedException;
+    }
+
+    private enum State {
+        LIVE, // connected
+        AWAY, // connection dropped, waiting for the player
+        GONE  // closed, or the player did not come back
+    }
+
+    private final SessionRegistry registry;
+    private final String token;
+
+    // all guarded by this
+    private TwoWayChannel channel; // null unless LIVE
+    private State state;
+    private boolean ended = false; // no longer resumable (see endSession)
+    private String unread;
+    private final Frame[] buffer; // frames sent while AWAY
+    private int buffered = 0;
+    private boolean overflowed = false;
+    // true iff the player switched the current connection to the binary
+    // protocol; until then, binary frames cannot be sent over it
+    private boolean binaryPeer = false;
+    private Handler forward = null;
+    private boolean forwarding = false;
+    private Listener listener = null;
+    private ScheduledFuture<?> expiry = null;
+
+    /**
+     * Makes a session; see SessionRegistry.open and SessionRegistry.restore
+     * @param channel connection of the player, or null if it is away, in 
+     * which case it must be given the grace period (see awaitPlayer)
+     */
+    ResumableChannel(SessionRegistry registry, String token, TwoWayChannel channel,
+            String unread, int bufferFrames){
+        this.registry = registry;
+        this.token = token;
+        this.channel = channel;
+        this.state = channel != null ? State.LIVE : State.AWAY;
+        this.unread = unread;
+        this.buffer = new Frame[bufferFrames];
+    }
+    
+    /**
+     * Starts the grace period of a session made without a connection
+     */
+    synchronized void awaitPlayer(){
+        if (state == State.AWAY && expiry == null){
+            expiry = registry.expireLater(this);
+        }
+    }
+
+    /**
+     * @return token with which the player resumes the session
+     */
+    public String getToken(){
+        return token;
+    }
+
+    /**
+     * Sets who is told about the connection dropping and the player coming
+     * back
+     * @param listener the listener, or null
+     */
+    public synchronized void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Ends the session, e.g. once the game is over: from now on, a dropped
+     * connection is not waited for, and the token no longer resumes it
+     */
+    public void endSession(){
+        synchronized (this){
+            ended = true;
+            registry.remove(token);
+            if (state == State.AWAY){
+                giveUp();
+            }
+        }
+    }
+
+    @Override
+    public void send(String message){
+        send(new Frame(message));
+        flush();
+    }
+
+    @Override
+    public synchronized void send(Frame frame){
+        try{
+            switch (state){
+            case LIVE:
+                if (!frame.isBinary() || binaryPeer){
+                    channel.send(frame);
+                }
+                break;
+            case AWAY:
+                if (buffered == buffer.length){
+                    overflowed = true;
+                }
+                else{
+                    buffer[buffered++] = frame;
+                }
+                break;
+            default:
+                break;
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void flush(){
+        TwoWayChannel current = current();
+        if (current != null){
+            current.flush();
+        }
+    }
+
+    /**
+     * Listens for a message, waiting for the player to come back if the
+     * connection drops
+     * @return message sent by the player, or null if it is gone for good
+     */
+    @Override
+    public String listen() throws InterruptedException{
+        while (true){
+            TwoWayChannel current;
+            synchronized (this){
+                if (unread != null){
+                    String line = unread;
+                    unread = null;
+                    return line;
+                }
+                while (state == State.AWAY){
+                    wait();
+                }
+                if (state == State.GONE){
+                    return null;
+                }
+                current = channel;
+            }
+            String line;
+            try{
+                line = current.listen();
+            } catch (IOException e){
+                // e.g. connection reset
+                line = null;
+            }
+            if (line != null){
+                received(line);
+                return line;
+            }
+            lost(current);
+        }
+    }
+
+    @Override
+    public String poll() throws IOException{
+        TwoWayChannel current;
+        synchronized (this){
+            if (unread != null){
+                String line = unread;
+                unread = null;
+                return line;
+            }
+            current = channel;
+        }
+        String line = current != null ? current.poll() : null;
+        if (line != null){
+            received(line);
+        }
+        return line;
+    }
+
+    @Override
+    public boolean forwardTo(Handler handler){
+        TwoWayChannel current;
+        String line;
+        synchronized (this){
+            current = channel;
+            if (current == null && handler != null && !forwarding){
+                // the player is away, and it is not known whether its next 
+                // connection can forward; listen() reads it once it is back
+                return false;
+            }
+            forward = handler;
+            line = handler != null ? unread : null;
+            if (line != null){
+                unread = null;
+            }
+        }
+        if (line != null){
+            try{
+                handler.handle(line);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (current == null){
+            // installed when the player comes back, if it does
+            return forwarding;
+        }
+        boolean forwards = current.forwardTo(handler != null ? forwarder(current, handler) : null);
+        synchronized (this){
+            forwarding = forwards;
+            if (!forwards){
+                // read with listen() instead, on this and later connections
+                forward = null;
+            }
+        }
+        return forwards;
+    }
+
+    /**
+     * @return a handler that passes the messages of a connection on to
+     * handler, and notices the connection dropping
+     */
+    private Handler forwarder(TwoWayChannel connection, Handler handler){
+        return message -> {
+            if (message == null){
+                lost(connection);
+            }
+            else{
+                received(message);
+                handler.handle(message);
+            }
+        };
+    }
+
+    /**
+     * Notes a message received from the player
+     */
+    private synchronized void received(String message){
+        if (BinaryProtocol.NEGOTIATION.equals(message)){
+            binaryPeer = true;
+        }
+    }
+
+    /**
+     * @return the current connection, or null if there is none
+     */
+    private synchronized TwoWayChannel current(){
+        return channel;
+    }
+
+    /**
+     * Starts waiting for the player, once a connection dropped
+     * @param connection the connection that dropped
+     */
+    private void lost(TwoWayChannel connection){
+        synchronized (this){
+            if (channel != connection){
+                // already replaced
+                return;
+            }
+            channel = null;
+            if (ended){
+                state = State.GONE;
+                notifyAll();
+            }
+            else{
+                state = State.AWAY;
+                expiry = registry.expireLater(this);
+                if (listener != null){
+                    try{
+                        listener.lost();
+                    } catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+        try{
+            connection.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Takes a new connection of the player, if the session is waiting for it
+     * @param connection the new connection
+     * @return true iff the session was waiting
+     * @throws InterruptedException
+     */
+    boolean resume(TwoWayChannel connection) throws InterruptedException{
+        synchronized (this){
+            if (state != State.AWAY){
+                return false;
+            }
+            if (expiry != null){
+                expiry.cancel(false);
+            }
+            // frames of the binary protocol cannot go over a new connection
+            boolean inSync = !overflowed && !binaryPeer;
+            binaryPeer = false;
+            channel = connection;
+            state = State.LIVE;
+            connection.send("Resuming your game.");
+            if (inSync){
+                for (int i = 0; i < buffered; i++){
+                    connection.send(buffer[i]);
+                }
+            }
+            clearBuffer();
+            connection.flush();
+            if (listener != null){
+                listener.resumed(inSync);
+            }
+            // the player's messages are passed on, or listen() reads them, 
+            // only from here on
+            if (forward != null){
+                forwarding = connection.forwardTo(forwarder(connection, forward));
+            }
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Gives up on the player once the grace period is over
+     */
+    void expire(){
+        Handler told;
+        synchronized (this){
+            if (state != State.AWAY){
+                return;
+            }
+            giveUp();
+            // otherwise listen() returns null to the thread reading
+            told = forwarding ? forward : null;
+        }
+        if (told != null){
+            try{
+                told.handle(null);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops waiting for the player (holding the lock)
+     */
+    private void giveUp(){
+        state = State.GONE;
+        if (expiry != null){
+            expiry.cancel(false);
+        }
+        clearBuffer();
+        registry.remove(token);
+        notifyAll();
+    }
+
+    private void clearBuffer(){
+        Arrays.fill(buffer, 0, buffered, null);
+        buffered = 0;
+        overflowed = false;
+    }
+
+    @Override
+    public void close() throws IOException{
+        TwoWayChannel current;
+        synchronized (this){
+            ended = true;
+            current = channel;
+            channel = null;
+            if (state != State.GONE){
+                giveUp();
+            }
+        }
+        if (current != null){
+            current.close();
+        }
+    }
+
+    @Override
+    public void closeOut(){
+        TwoWayChannel current = current();
+        if (current != null){
+            current.closeOut();
+        }
+    }
+
+    @Override
+    public void closeIn() throws IOException{
+        TwoWayChannel current = current();
+        if (current != null){
+            current.closeIn();
+        }
+    }
+
+}
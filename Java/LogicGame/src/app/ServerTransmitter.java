@@ -1,9 +1,9 @@
 package app;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerTransmitter {
     // BlockingQueues are queues with the added functionality that if you
@@ -12,18 +12,58 @@ public class ServerTransmitter {
     // communication between asynchronous threads, especially when one thread
     // has to wait for another to get to some point before it proceeds
     
-    private final List<BlockingQueue<Message>> toClients = Arrays.asList(
-            new LinkedBlockingQueue<>(), 
-            new LinkedBlockingQueue<>(), 
-            new LinkedBlockingQueue<>(), 
-            new LinkedBlockingQueue<>());
+    // (MessageQueues do the same; see MessageQueue.create for the kinds)
     
-    // Blocking queue for transmission from clieht handler threads to server.  
-    // Each client's request is of the form "Client x: blah", so server knows 
-    // who to respond to.  
-    private final BlockingQueue<Message> fromClients = new LinkedBlockingQueue<>();
+    // only the main server thread writes to each client
+    private final List<MessageQueue<Message>> toClients = Arrays.asList(
+            MessageQueue.create(false), 
+            MessageQueue.create(false), 
+            MessageQueue.create(false), 
+            MessageQueue.create(false));
+    
+    // Queue for transmission from client handler threads to server.  Each 
+    // message carries the seat of the client it came from (see 
+    // Message.getSender), so server knows who to respond to.  
+    private final MessageQueue<Message> fromClients = MessageQueue.create(true);
+    
+    // messages to client x are taken from toClientPools.get(x)
+    private final List<MessagePool> toClientPools = Arrays.asList(
+            new MessagePool(), new MessagePool(), new MessagePool(), new MessagePool());
+    
+    // tells the messages of this table apart in the MessageTrace
+    private static final AtomicInteger nextID = new AtomicInteger();
+    private final int id = nextID.incrementAndGet();
+    
+    // most messages taken from clients at once
+    private static final int BATCH_SIZE = 64;
+    
+    // messages taken from fromClients and not yet returned by listenClients:
+    // batch[batchIndex] to batch[batchSize-1]
+    private final Message[] batch = new Message[BATCH_SIZE];
+    private int batchSize = 0;
+    private int batchIndex = 0;
+    
+    // once listenClients has been called, messages to client x are held back
+    // as a chain (see Message.next) from pendingHeads[x] to pendingTails[x], 
+    // and put on toClients.get(x) all at once by flushClients
+    private boolean holdBack = false;
+    private final Message[] pendingHeads = new Message[4];
+    private final Message[] pendingTails = new Message[4];
+    
+    // spectators of the table, who are sent what every client is sent as a 
+    // single message (see informAllClients(boolean, String)), or null
+    private final SpectatorHub spectators;
     
     public ServerTransmitter(){
+        this(null);
+    }
+    
+    /**
+     * Makes a transmitter whose broadcasts are also published to spectators
+     * @param spectators spectators of the table, or null
+     */
+    public ServerTransmitter(SpectatorHub spectators){
+        this.spectators = spectators;
     }
     
     /**
@@ -36,21 +76,33 @@ public class ServerTransmitter {
      * @throws InterruptedException 
      */
     public void informClient(int clientID, boolean isExternal, String message) throws InterruptedException{
-        toClients.get(clientID).put(
-                new Message("Server", "Client "+clientID, isExternal, message));
+        send(toClientPools.get(clientID).acquire(Message.SERVER, clientID, 
+                isExternal ? Message.Kind.EXTERNAL : Message.Kind.INTERNAL, message));
     }
 
     /**
-     * Sends all clients a message
+     * Sends all clients a message.  A message to be relayed also goes to the
+     * spectators, as the same frame.  
      * @param isExternal true if message should be relayed to client, false if
      * message is directed to client handler to maintain gamestate
      * @param message message to be sent, in an appropriate 
      * protocol
-     * @throws InterruptedExceptionj
+     * @throws InterruptedException
      */
     public void informAllClients(boolean isExternal, String message) throws InterruptedException{
+        if (!isExternal){
+            for (int i=0; i<4; i++){
+                informClient(i, isExternal, message);
+            }
+            return;
+        }
+        // encoded once, and shared by the four messages and the spectators
+        Frame frame = new Frame(message);
         for (int i=0; i<4; i++){
-            informClient(i, isExternal, message);
+            informClient(i, frame);
+        }
+        if (spectators != null){
+            spectators.publish(frame);
         }
     }
     
@@ -62,31 +114,156 @@ public class ServerTransmitter {
      * @throws InterruptedException
      */
     public void informAllClients(boolean isExternal, ArrayList<String> messages) throws InterruptedException {
-    	for (int i=0; i<4; i++){
-            informClient(i, isExternal, messages.get(i));
+        if (!isExternal){
+            for (int i=0; i<4; i++){
+                informClient(i, isExternal, messages.get(i));
+            }
+            return;
+        }
+        informAllClients(messages, null, null);
+    }
+    
+    /**
+     * Sends all clients a message to be relayed to them depending on the 
+     * type of player (client/AI), except for some clients that get a frame 
+     * instead, e.g. clients of the binary protocol
+     * @param messages ArrayList of messages to be sent
+     * @param getsFrame array such that client x gets frame iff getsFrame[x],
+     * or null if none does
+     * @param frame frame for those clients
+     * @throws InterruptedException
+     */
+    public void informAllClients(ArrayList<String> messages, boolean[] getsFrame, Frame frame) throws InterruptedException {
+        // players of the same type get the same String; each is encoded once
+        Frame[] frames = new Frame[4];
+        for (int i=0; i<4; i++){
+            if (getsFrame != null && getsFrame[i]){
+                informClient(i, frame);
+                continue;
+            }
+            for (int j=0; j<i && frames[i]==null; j++){
+                if (messages.get(j) == messages.get(i)){
+                    frames[i] = frames[j];
+                }
+            }
+            if (frames[i] == null){
+                frames[i] = new Frame(messages.get(i));
+            }
+            informClient(i, frames[i]);
+        }
+    }
+    
+    /**
+     * Sends a client an encoded message to be relayed to it
+     * @param clientID ID of client (0-3)
+     * @param frame message to be sent, possibly shared with other clients
+     * @throws InterruptedException
+     */
+    public void informClient(int clientID, Frame frame) throws InterruptedException{
+        send(toClientPools.get(clientID).acquire(
+                Message.SERVER, clientID, Message.Kind.EXTERNAL, frame));
+    }
+    
+    /**
+     * Sends a message to its recipient, or holds it back until flushClients
+     * @param message message to a client
+     * @throws InterruptedException
+     */
+    private void send(Message message) throws InterruptedException{
+        int clientID = message.getRecipient();
+        if (!holdBack){
+            message.stamp();
+            toClients.get(clientID).put(message);
+        }
+        else if (pendingHeads[clientID] == null){
+            pendingHeads[clientID] = message;
+            pendingTails[clientID] = message;
+        }
+        else{
+            pendingTails[clientID].next = message;
+            pendingTails[clientID] = message;
+        }
+    }
+    
+    /**
+     * Hands every message held back to its client, as one chain per client,
+     * so each client handler wakes up once for all of its messages.  Called
+     * by listenClients before it waits for more requests, and by the server
+     * when it is done.  
+     * @throws InterruptedException
+     */
+    public void flushClients() throws InterruptedException{
+        for (int i=0; i<4; i++){
+            if (pendingHeads[i] != null){
+                Message chain = pendingHeads[i];
+                pendingHeads[i] = null;
+                pendingTails[i] = null;
+                chain.stamp();
+                toClients.get(i).put(chain);
+            }
         }
     }
     
     /**
-     * Listens for messages from clients
-     * @return message from client
+     * Listens for messages from clients.  Requests are taken from the clients
+     * in batches of all that are waiting, and replies sent while a batch is 
+     * being served are held back until the batch is done (see flushClients).  
+     * @return message from client, to be released (see Message.release) when
+     * the server is done with it
      * @throws InterruptedException
      */
     public Message listenClients() throws InterruptedException{
-        Message message = fromClients.take();
-        System.err.println("Received:" + message.toString());
-        assert(message.getSender().matches("Client [0-3]"));
-        assert(message.getRecipient().equals("Server"));
+        if (batchIndex == batchSize){
+            // the replies to the last batch go out together, then every 
+            // request that has arrived is taken at once
+            holdBack = true;
+            flushClients();
+            batch[0] = fromClients.take();
+            batchSize = 1;
+            for (Message next = fromClients.poll(); next != null; next = fromClients.poll()){
+                batch[batchSize++] = next;
+                if (batchSize == BATCH_SIZE){
+                    break;
+                }
+            }
+            batchIndex = 0;
+        }
+        Message message = batch[batchIndex];
+        batch[batchIndex++] = null;
+        MessageTrace.received(id, message);
+        Metrics.queueWait(Metrics.Queue.TO_SERVER, message.getSentAt());
+        assert(message.getSender() >= 0 && message.getSender() < 4);
+        assert(message.getRecipient() == Message.SERVER);
         return message;
     }
     
+    /**
+     * @return ID of this transmitter, which tells its table's messages apart
+     * in the MessageTrace and the Metrics
+     */
+    int getID(){
+        return id;
+    }
+    
+    /**
+     * Counts the messages waiting in a queue; see MessageQueue.size.  
+     * Messages held back (see flushClients) are not counted, and messages 
+     * queued together count as one.  
+     * @param clientID ID of a client (0-3) for the queue to its handler, or
+     * Message.SERVER for the queue to the server
+     * @return number of messages in the queue
+     */
+    int getQueueDepth(int clientID){
+        return clientID == Message.SERVER ? fromClients.size() : toClients.get(clientID).size();
+    }
+    
     /**
      * Get the ClientTransmitter of a certain player's handler
      * @param playerID ID of player
      * @return player playerID's client transmitter 
      */
     public ClientTransmitter getClientTransmitter(int playerID){
-        return new ClientTransmitter(playerID, toClients.get(playerID), fromClients);
+        return new ClientTransmitter(playerID, toClients.get(playerID), fromClients, id);
     }
     
     
@@ -0,0 +1,132 @@
+package app;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sessions of the players of a host (see ResumableChannel), by their
+ * reconnect tokens.  A session whose connection dropped is kept for a grace
+ * period, during which a new connection can take it over with the session's
+ * token; after that, the player's seat is given up.
+ */
+public class SessionRegistry {
+
+    private final long graceMillis;
+    private final int bufferFrames;
+
+    private final ConcurrentHashMap<String, ResumableChannel> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    // gives up sessions whose grace period is over
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "session-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Makes a registry
+     * @param graceMillis milliseconds a dropped session waits for its player
+     * to come back
+     * @param bufferFrames most frames kept for a dropped session; if more are
+     * sent, the player is sent a fresh view of the game instead when it comes
+     * back
+     */
+    public SessionRegistry(long graceMillis, int bufferFrames){
+        if (graceMillis <= 0 || bufferFrames <= 0){
+            throw new IllegalArgumentException("Bad session settings: grace " + graceMillis
+                    + " ms, " + bufferFrames + " frames buffered");
+        }
+        this.graceMillis = graceMillis;
+        this.bufferFrames = bufferFrames;
+    }
+
+    /**
+     * Starts the session of a new player
+     * @param channel connection of the player
+     * @param unread line the player already sent, to be received first, or
+     * null
+     * @return the session, with a new token (see ResumableChannel.getToken)
+     */
+    public ResumableChannel open(TwoWayChannel channel, String unread){
+        while (true){
+            long value = random.nextLong();
+            if (value == 0){
+                // stands for no token in a TableSnapshot
+                continue;
+            }
+            String token = String.format("%016x", value);
+            ResumableChannel session = new ResumableChannel(this, token, channel, unread, bufferFrames);
+            if (sessions.putIfAbsent(token, session) == null){
+                return session;
+            }
+        }
+    }
+
+    /**
+     * Starts the session of a player of a restored table (see TableSnapshot)
+     * with the player away: the seat is the player's again only once it 
+     * resumes the session, and is given up after the grace period like a 
+     * dropped one
+     * @param token token the player had, or null if it had none, in which 
+     * case nobody can resume the session
+     * @return the session
+     */
+    public ResumableChannel restore(String token){
+        ResumableChannel session = null;
+        if (token != null){
+            session = new ResumableChannel(this, token, null, null, bufferFrames);
+            if (sessions.putIfAbsent(token, session) != null){
+                session = null;
+            }
+        }
+        if (session == null){
+            session = open(null, null);
+        }
+        session.awaitPlayer();
+        return session;
+    }
+
+    /**
+     * Hands a new connection to the session of a player whose connection
+     * dropped
+     * @param token token of the session
+     * @param channel new connection of the player
+     * @return true iff the session was waiting for its player; if not, the
+     * channel is not used
+     * @throws InterruptedException
+     */
+    public boolean resume(String token, TwoWayChannel channel) throws InterruptedException{
+        ResumableChannel session = sessions.get(token);
+        return session != null && session.resume(channel);
+    }
+
+    /**
+     * @return number of sessions that can be resumed or are connected
+     */
+    public int getSessionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * Gives up a dropped session once its grace period is over
+     * @param session the session
+     * @return the scheduled expiry, to be cancelled if the player comes back
+     */
+    ScheduledFuture<?> expireLater(ResumableChannel session){
+        return reaper.schedule(session::expire, graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forgets a session, which can no longer be resumed
+     * @param token token of the session
+     */
+    void remove(String token){
+        sessions.remove(token);
+    }
+
+}
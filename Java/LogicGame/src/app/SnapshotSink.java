@@ -0,0 +1,30 @@
+package app;
+
+/**
+ * Keeps the latest snapshot of one table (see TableSnapshot).  Called by
+ * the thread that runs the table after every change, so implementations
+ * must not block.
+ */
+public interface SnapshotSink {
+
+    /**
+     * A sink that keeps nothing
+     */
+    public static final SnapshotSink NONE = new SnapshotSink(){
+        public void save(TableSnapshot snapshot){}
+        public void discard(){}
+    };
+
+    /**
+     * Saves the state of the table, replacing the state saved before
+     * @param snapshot state of the table; reused by the caller once this
+     * returns
+     */
+    public void save(TableSnapshot snapshot);
+
+    /**
+     * The table's game is over, so it is not to be restored
+     */
+    public void discard();
+
+}
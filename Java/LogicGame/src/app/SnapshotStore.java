@@ -0,0 +1,233 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory of the snapshots of the tables in play, from which a host
+ * restores its games after a crash or a restart, or another host takes
+ * them over.  Each table has a file table-NNNNNN.snap, deleted once its
+ * game is over; a restored table goes on in the file it was restored
+ * from, so that a table is never without a file, and is restored again if
+ * its host stops before its game is over.
+ *
+ * A file holds two snapshots, written in turn, so a save that is cut short
+ * leaves the one before intact.  The file is memory-mapped, so a save is a
+ * copy of TableSnapshot.SIZE bytes into memory: it takes no lock and does
+ * no I/O, and survives the process being killed.  Saves are not forced to
+ * disk, so a crash of the machine may lose the latest ones.
+ *
+ * The default store (see getDefault) is in the directory given by the
+ * system property logic.snapshots (default "tables"), or is off if it is
+ * "off".
+ */
+public class SnapshotStore {
+
+    private static final String DIRECTORY = System.getProperty("logic.snapshots", "tables");
+
+    private static final String PREFIX = "table-";
+    private static final String SUFFIX = ".snap";
+
+    private static SnapshotStore defaultStore;
+    private static boolean defaultOpened = false;
+
+    private final Path directory;
+    private final AtomicLong nextTable;
+
+    // the file each snapshot returned by restore was read from; guarded by
+    // this
+    private final Map<TableSnapshot, Path> restoredFiles = new IdentityHashMap<>();
+
+    /**
+     * Opens a store, creating its directory if there is none
+     * @param directory directory of the snapshots
+     * @throws IOException if the directory cannot be created or read
+     */
+    public SnapshotStore(Path directory) throws IOException{
+        this.directory = directory;
+        Files.createDirectories(directory);
+        long lastTable = 0;
+        for (Path file : files()){
+            lastTable = Math.max(lastTable, number(file));
+        }
+        nextTable = new AtomicLong(lastTable + 1);
+    }
+
+    /**
+     * Gets the default store, opening it the first time
+     * @return the default store, or null if it is off or cannot be opened
+     */
+    public static synchronized SnapshotStore getDefault(){
+        if (!defaultOpened){
+            defaultOpened = true;
+            if (!DIRECTORY.equals("off")){
+                try{
+                    defaultStore = new SnapshotStore(Paths.get(DIRECTORY));
+                } catch (IOException e){
+                    System.err.println("Snapshot directory " + DIRECTORY + " cannot be opened; tables are not saved.");
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultStore;
+    }
+
+    /**
+     * @return the snapshot files in the directory, in order of their numbers
+     * @throws IOException
+     */
+    private List<Path> files() throws IOException{
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)){
+            for (Path file : stream){
+                if (number(file) >= 0){
+                    files.add(file);
+                }
+            }
+        }
+        // names have the same number of digits
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * @return number of a snapshot file, or -1 if the path is not one
+     */
+    private static long number(Path file){
+        String name = file.getFileName().toString();
+        String digits = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+        if (digits.length() != 6 || !digits.chars().allMatch(Character::isDigit)){
+            return -1;
+        }
+        return Long.parseLong(digits);
+    }
+
+    /**
+     * Takes the latest snapshot of every table left in the directory, e.g.
+     * by a host that crashed.  Their files are kept until the restored
+     * tables go on in them (see reopen); files of tables that were never
+     * saved, or that are damaged, are deleted.
+     * @return the snapshots, in the order the tables were opened
+     * @throws IOException if the directory cannot be read
+     */
+    public synchronized List<TableSnapshot> restore() throws IOException{
+        List<TableSnapshot> snapshots = new ArrayList<>();
+        for (Path file : files()){
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            TableSnapshot latest = null;
+            boolean saved = false;
+            for (int slot = 0; slot < 2; slot++){
+                TableSnapshot snapshot = new TableSnapshot();
+                buffer.position(Math.min(slot * TableSnapshot.SIZE, buffer.limit()));
+                saved |= buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == TableSnapshot.MAGIC;
+                if (snapshot.read(buffer)
+                        && (latest == null || snapshot.getVersion() > latest.getVersion())){
+                    latest = snapshot;
+                }
+            }
+            if (latest != null){
+                snapshots.add(latest);
+                restoredFiles.put(latest, file);
+                continue;
+            }
+            if (saved){
+                System.err.println("Snapshot " + file + " is not valid; its table is lost.");
+            }
+            Files.delete(file);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Goes on saving a restored table in the file its snapshot was read
+     * from, overwriting the older of its two snapshots first
+     * @param snapshot snapshot returned by restore
+     * @return sink for the snapshots of the table, to be used by one
+     * thread; SnapshotSink.NONE if the file cannot be opened
+     */
+    public SnapshotSink reopen(TableSnapshot snapshot){
+        Path file;
+        synchronized (this){
+            file = restoredFiles.remove(snapshot);
+        }
+        if (file == null){
+            throw new IllegalArgumentException("Not a restored snapshot: " + snapshot);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            return new TableFile(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * TableSnapshot.SIZE),
+                    snapshot.getVersion());
+        } catch (IOException e){
+            System.err.println("Snapshot " + file + " cannot be opened; its table is not saved.");
+            e.printStackTrace();
+            return SnapshotSink.NONE;
+        }
+    }
+
+    /**
+     * Creates the file of a new table
+     * @return sink for the snapshots of the table, to be used by one
+     * thread; SnapshotSink.NONE if the file cannot be created
+     */
+    public SnapshotSink newTable(){
+        Path file = directory.resolve(String.format("%s%06d%s", PREFIX, nextTable.getAndIncrement(), SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            // the mapping stays valid once the channel is closed
+            return new TableFile(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * TableSnapshot.SIZE), 0);
+        } catch (IOException e){
+            System.err.println("Snapshot " + file + " cannot be created; its table is not saved.");
+            e.printStackTrace();
+            return SnapshotSink.NONE;
+        }
+    }
+
+    /**
+     * Saves the snapshots of one table into its mapped file
+     */
+    private static final class TableFile implements SnapshotSink {
+
+        private final Path file;
+        private final MappedByteBuffer mapped;
+        // number of the last save; the snapshot of a save is in slot
+        // version & 1
+        private int version;
+
+        TableFile(Path file, MappedByteBuffer mapped, int version){
+            this.file = file;
+            this.mapped = mapped;
+            this.version = version;
+        }
+
+        @Override
+        public void save(TableSnapshot snapshot){
+            version++;
+            // overwrite the older of the two
+            mapped.position((version & 1) * TableSnapshot.SIZE);
+            snapshot.write(mapped, version);
+        }
+
+        @Override
+        public void discard(){
+            try{
+                Files.deleteIfExists(file);
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+}
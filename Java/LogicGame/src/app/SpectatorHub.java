@@ -0,0 +1,253 @@
+package app;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import game.BoardState;
+
+/**
+ * The spectators of a table.  The server publishes what everyone may know
+ * of the game: announcements as frames, and states of the board, whose 
+ * public view (see BoardState.showPublicViewOfBoard) is rendered into a 
+ * frame by the delivery thread.  Each frame is written as it is to every
+ * spectator's channel: a spectator costs a reference in each channel's 
+ * queue, not a message or an encoding of its own.
+ *
+ * Frames reach the spectators after a broadcast delay (system property
+ * logic.spectator.delay, in milliseconds, default 0), so that watching a
+ * table tells its players nothing they could use.  Delivery is done by one
+ * thread shared by every table, never by the server's thread, and the 
+ * spectators are only added and removed by that thread too, so no caller
+ * ever waits for a delivery.  A spectator who joins is sent the latest view
+ * of the board it would have seen.
+ *
+ * Spectators' channels should not block (see TwoWayChannelNio): one that
+ * does holds up every spectator.  Thread-safe.
+ */
+public class SpectatorHub {
+
+    private static final long DEFAULT_DELAY_MILLIS = Long.getLong("logic.spectator.delay", 0);
+
+    // delivers the frames of every hub
+    private static final ScheduledExecutorService DELIVERY = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "spectators");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A frame or a state of the board waiting for its delivery time, or, if
+     * both are null, the end of the game
+     */
+    private static final class Pending {
+        final long due;
+        final Frame frame;
+        final BoardState view;
+
+        Pending(long due, Frame frame, BoardState view){
+            this.due = due;
+            this.frame = frame;
+            this.view = view;
+        }
+    }
+
+    private final long delayNanos;
+
+    // frames published and not yet delivered, in order; guarded by pending.
+    // scheduled is true iff a delivery is scheduled, and closed once the end
+    // of the game is published.
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private boolean scheduled = false;
+    private boolean closed = false;
+
+    // the rest is only used by the delivery thread
+    private final ArrayList<TwoWayChannel> spectators = new ArrayList<>();
+    private Frame latestView = null;
+    private boolean over = false;
+    // frames being delivered, and the states of the board they are 
+    // rendered from
+    private Frame[] due = new Frame[16];
+    private BoardState[] dueViews = new BoardState[16];
+    
+    // spectators.size(), for other threads
+    private volatile int spectatorCount = 0;
+
+    /**
+     * Makes a hub with the default broadcast delay
+     */
+    public SpectatorHub(){
+        this(DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Makes a hub
+     * @param delayMillis broadcast delay in milliseconds, >= 0
+     */
+    public SpectatorHub(long delayMillis){
+        if (delayMillis < 0){
+            throw new IllegalArgumentException("Negative broadcast delay: " + delayMillis);
+        }
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * Publishes an announcement
+     * @param frame the announcement, possibly shared with players
+     */
+    public void publish(Frame frame){
+        enqueue(frame, null);
+    }
+
+    /**
+     * Publishes a state of the board.  Its public view is sent to the 
+     * spectators, and to spectators who join after it is delivered; it is 
+     * rendered by the delivery thread, not the caller's.  
+     * @param view the state (see GameBoard.getState)
+     */
+    public void publishView(BoardState view){
+        enqueue(null, view);
+    }
+
+    /**
+     * Publishes the end of the game: once the delay is over, spectators are
+     * told and let go, and nothing more is published
+     */
+    public void close(){
+        enqueue(null, null);
+    }
+
+    /**
+     * Queues a frame or a view for delivery, and schedules it unless a 
+     * delivery is already scheduled, which schedules the next one
+     */
+    private void enqueue(Frame frame, BoardState view){
+        synchronized (pending){
+            if (closed){
+                return;
+            }
+            closed = frame == null && view == null;
+            pending.add(new Pending(System.nanoTime() + delayNanos, frame, view));
+            if (scheduled){
+                return;
+            }
+            scheduled = true;
+        }
+        DELIVERY.schedule(this::deliverDue, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Delivers every frame whose delivery time has come, spectator by
+     * spectator so each channel is flushed once, and schedules the next
+     * delivery
+     */
+    private void deliverDue(){
+        long now = System.nanoTime();
+        int count = 0;
+        boolean ends = false;
+        long next = -1;
+        synchronized (pending){
+            for (Pending head = pending.peek(); head != null && head.due - now <= 0; head = pending.peek()){
+                pending.poll();
+                if (head.frame == null && head.view == null){
+                    ends = true;
+                    break;
+                }
+                if (count == due.length){
+                    due = Arrays.copyOf(due, count * 2);
+                    dueViews = Arrays.copyOf(dueViews, count * 2);
+                }
+                due[count] = head.frame;
+                dueViews[count++] = head.view;
+            }
+            if (pending.isEmpty()){
+                scheduled = false;
+            }
+            else{
+                next = pending.peek().due - now;
+            }
+        }
+        // views are rendered outside the lock, so the server never waits
+        // for them
+        for (int i = 0; i < count; i++){
+            if (dueViews[i] != null){
+                due[i] = latestView = new Frame(dueViews[i].showPublicViewOfBoard());
+                dueViews[i] = null;
+            }
+        }
+        if (ends){
+            if (count == due.length){
+                due = Arrays.copyOf(due, count + 1);
+            }
+            due[count++] = new Frame("The game is over.");
+        }
+        for (TwoWayChannel spectator : spectators){
+            try{
+                for (int i = 0; i < count; i++){
+                    spectator.send(due[i]);
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            spectator.flush();
+        }
+        Arrays.fill(due, 0, count, null);
+        if (ends){
+            over = true;
+            spectators.clear();
+            spectatorCount = 0;
+        }
+        if (next >= 0){
+            DELIVERY.schedule(this::deliverDue, next, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Adds a spectator, who is sent the latest view of the board delivered,
+     * or told the game is over.  Returns at once; the spectator is added by
+     * the delivery thread.  
+     * @param channel channel to the spectator
+     */
+    public void watch(TwoWayChannel channel){
+        DELIVERY.execute(() -> {
+            try{
+                if (over){
+                    channel.send("The game is over.");
+                    return;
+                }
+                spectators.add(channel);
+                spectatorCount = spectators.size();
+                if (latestView != null){
+                    channel.send(latestView);
+                    channel.flush();
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Removes a spectator; nothing sent after the delivery being made, if 
+     * any, reaches it.  Returns at once.  
+     * @param channel channel to the spectator
+     */
+    public void unwatch(TwoWayChannel channel){
+        DELIVERY.execute(() -> {
+            spectators.remove(channel);
+            spectatorCount = spectators.size();
+        });
+    }
+
+    /**
+     * @return number of spectators, as of the last change the delivery 
+     * thread made
+     */
+    public int getSpectatorCount(){
+        return spectatorCount;
+    }
+
+}
@@ -0,0 +1,134 @@
+package app;
+
+import game.GameBoard;
+
+/**
+ * Plays for a player who left the game (see ResumableChannel), so that the
+ * others can finish it.  It makes a legal move whenever it is the seat's
+ * turn, using only what the seat can see.  It declares only once it sees
+ * every card of the opponents, when there is nothing left to guess and the
+ * cards of the partner it cannot see follow from the rest (see 
+ * declaration).  
+ */
+class StandIn {
+
+    private static final int MAX_RANK = 12;
+
+    private StandIn(){
+    }
+
+    /**
+     * Chooses the move of a seat
+     * @param board board of the game
+     * @param playerID 0-3, the seat
+     * @param state turn state of the seat: PASS, GUESS or SHOW
+     * @return the move, as a client would send it
+     */
+    static String move(GameBoard board, int playerID, TurnState state){
+        switch (state){
+        case PASS:
+            // a card the partner cannot see yet
+            return "pass " + hiddenCard(board, playerID, (playerID + 2) % 4);
+        case GUESS:
+            if (!board.hasGuessableCard(playerID)){
+                // nothing left to guess
+                return "declare";
+            }
+            // the first card of an opponent the seat cannot see, guessed
+            // to be one above the closest card it can see before it (hands
+            // are in order of rank)
+            int target = (playerID + 1) % 4;
+            int hidden = hiddenCard(board, target, playerID);
+            if (board.isVisible(playerID, target, hidden)){
+                target = (playerID + 3) % 4;
+                hidden = hiddenCard(board, target, playerID);
+            }
+            return "guess " + target + " " + hidden + " "
+                    + Math.min(rankBefore(board, playerID, target, hidden) + 1, MAX_RANK);
+        case SHOW:
+            // a card not everyone can see yet
+            for (int position = 0; position < GameBoard.HAND_SIZE; position++){
+                if ((board.getPublicCards() & bit(playerID, position)) == 0){
+                    return "show " + position;
+                }
+            }
+            return "show 0";
+        default:
+            throw new IllegalArgumentException("Not a move of the main phase: " + state);
+        }
+    }
+
+    /**
+     * Chooses the next card a seat declares, once it declared (see move):
+     * every card it cannot see is then its partner's, and is the lowest 
+     * rank of its suit the seat has not seen, since hands are in order of 
+     * rank and are declared from the first card on
+     * @param board board of the game
+     * @param playerID 0-3, the declarer
+     * @return the declaration, as a client would send it, or null if the
+     * seat sees every card
+     */
+    static String declaration(GameBoard board, int playerID){
+        int partner = (playerID + 2) % 4;
+        for (int position = 0; position < GameBoard.HAND_SIZE; position++){
+            if (!board.isVisible(playerID, partner, position)){
+                String suit = board.getSuit(partner, position);
+                return "declare " + partner + " " + position + " " 
+                        + lowestUnseenRank(board, playerID, suit);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the lowest rank of a suit viewer sees no card of
+     */
+    private static int lowestUnseenRank(GameBoard board, int viewerID, String suit){
+        boolean[] seen = new boolean[MAX_RANK + 1];
+        for (int owner = 0; owner < GameBoard.NUM_PLAYERS; owner++){
+            for (int position = 0; position < GameBoard.HAND_SIZE; position++){
+                int rank = board.getVisibleRank(viewerID, owner, position);
+                if (rank > 0 && board.getSuit(owner, position).equals(suit)){
+                    seen[rank] = true;
+                }
+            }
+        }
+        int rank = 1;
+        while (rank < MAX_RANK && seen[rank]){
+            rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * @return the first card of owner's hand viewer cannot see, or 0 if it
+     * sees them all
+     */
+    private static int hiddenCard(GameBoard board, int owner, int viewerID){
+        for (int position = 0; position < GameBoard.HAND_SIZE; position++){
+            if (!board.isVisible(viewerID, owner, position)){
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return rank of the closest card before a position in owner's hand that
+     * viewer can see, or 0 if there is none
+     */
+    private static int rankBefore(GameBoard board, int viewerID, int owner, int position){
+        for (int before = position - 1; before >= 0; before--){
+            int rank = board.getVisibleRank(viewerID, owner, before);
+            if (rank > 0){
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    private static int bit(int owner, int position){
+        return 1 << (owner * GameBoard.HAND_SIZE + position);
+    }
+
+}
@@ -0,0 +1,263 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import game.GameBoard;
+
+/**
+ * The state of a table, as saved after every change so that its game can be
+ * restored after a crash or on another host (see SnapshotStore).  Snapshots
+ * are SIZE bytes, big-endian:
+ *
+ *   0  magic     int   MAGIC
+ *   4  version   int   number of the save, so the latest can be told apart
+ *   8  game      long  ID of the game in the event log, or -1
+ *  16  events    int   number of events of the game recorded so far
+ *  20  phase     byte  ordinal of Phase
+ *  21  declarer  byte  player who declared, or -1
+ *  22  ai        byte  bit x set iff player x is an AI
+ *  23  zero
+ *  24  turns     4 bytes, ordinal of the TurnState of player 0 to 3
+ *  28  cards     24 bytes, codes of the cards (see Card.encode), for player
+ *                0 position 0 to player 3 position 5
+ *  52  visible   4 x 3 bytes, bitboard of the cards player 0 to 3 can see
+ *                (see GameBoard.getVisibleCards)
+ *  64  tokens    4 x 8 bytes, seat token of player 0 to 3 (16 hex digits),
+ *                or 0 if the player has none
+ *  96  checksum  int   CRC-32C of bytes 0-95
+ *
+ * A restored seat goes only to the client that sends its token (see
+ * LogicHost); the cards of a seat are not for whoever connects first.
+ *
+ * Instances are reused: capture and read overwrite every field.
+ */
+public class TableSnapshot {
+
+    /**
+     * The phases a game is restored into; a table is only saved once all
+     * its players are connected
+     */
+    public enum Phase {
+        SETUP, MAIN, DECLARATION
+    }
+
+    public static final int SIZE = 100;
+
+    static final int MAGIC = 0x4C475431; // "LGT1"
+    private static final int CHECKED_BYTES = 96;
+    private static final int CARDS = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final TurnState[] TURN_STATES = TurnState.values();
+
+    private int version;
+    private long gameID = -1;
+    private int eventCount;
+    private Phase phase = Phase.SETUP;
+    private int declarer = -1;
+    private int aiPlayers;
+    private final TurnState[] turns = new TurnState[GameBoard.NUM_PLAYERS];
+    private final byte[] codes = new byte[CARDS];
+    private final int[] visibleTo = new int[GameBoard.NUM_PLAYERS];
+    private final String[] tokens = new String[GameBoard.NUM_PLAYERS];
+
+    private final CRC32C checksum = new CRC32C();
+
+    /**
+     * Copies the state of a table
+     * @param gameID ID of the game in the event log, or -1
+     * @param eventCount number of events of the game recorded so far
+     * @param phase phase of the game
+     * @param declarer player who declared, or -1
+     * @param isAI isAI.get(x) is true iff player x is an AI
+     * @param turns turn states of the players
+     * @param board board of the table
+     * @param tokens tokens[x] is the seat token of player x, or null
+     */
+    void capture(long gameID, int eventCount, Phase phase, int declarer,
+            List<Boolean> isAI, TurnStateMachine turns, GameBoard board, String[] tokens){
+        this.gameID = gameID;
+        this.eventCount = eventCount;
+        this.phase = phase;
+        this.declarer = declarer;
+        aiPlayers = 0;
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            if (isAI.get(player)){
+                aiPlayers |= 1 << player;
+            }
+            this.turns[player] = turns.stateOf(player);
+            this.tokens[player] = tokens[player];
+            visibleTo[player] = board.getVisibleCards(player);
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                codes[player * GameBoard.HAND_SIZE + card] = (byte) board.getCardCode(player, card);
+            }
+        }
+    }
+
+    /**
+     * Encodes the snapshot at the position of a buffer, and moves the
+     * position past it
+     * @param buffer buffer with at least SIZE bytes remaining
+     * @param version number of the save
+     */
+    public void write(ByteBuffer buffer, int version){
+        int start = buffer.position();
+        this.version = version;
+        buffer.putInt(MAGIC);
+        buffer.putInt(version);
+        buffer.putLong(gameID);
+        buffer.putInt(eventCount);
+        buffer.put((byte) phase.ordinal());
+        buffer.put((byte) declarer);
+        buffer.put((byte) aiPlayers);
+        buffer.put((byte) 0);
+        for (TurnState state : turns){
+            buffer.put((byte) state.ordinal());
+        }
+        buffer.put(codes);
+        for (int visible : visibleTo){
+            buffer.put((byte) (visible >>> 16));
+            buffer.putShort((short) visible);
+        }
+        for (String token : tokens){
+            buffer.putLong(token != null ? Long.parseUnsignedLong(token, 16) : 0);
+        }
+        // checksum bytes 0-95 without allocating a view of them
+        int limit = buffer.limit();
+        buffer.position(start).limit(start + CHECKED_BYTES);
+        checksum.reset();
+        checksum.update(buffer);
+        buffer.limit(limit);
+        buffer.putInt((int) checksum.getValue());
+    }
+
+    /**
+     * Decodes the snapshot at the position of a buffer, and moves the
+     * position past it
+     * @param buffer buffer holding a saved snapshot
+     * @return true iff a whole, valid snapshot was there; if not, the
+     * fields are unchanged
+     */
+    public boolean read(ByteBuffer buffer){
+        int start = buffer.position();
+        if (buffer.remaining() < SIZE || buffer.getInt(start) != MAGIC){
+            return false;
+        }
+        checksum.reset();
+        checksum.update(buffer.duplicate().limit(start + CHECKED_BYTES));
+        if ((int) checksum.getValue() != buffer.getInt(start + CHECKED_BYTES)){
+            return false;
+        }
+        int phaseOrdinal = buffer.get(start + 20);
+        if (phaseOrdinal < 0 || phaseOrdinal >= PHASES.length){
+            return false;
+        }
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            int state = buffer.get(start + 24 + player);
+            if (state < 0 || state >= TURN_STATES.length){
+                return false;
+            }
+        }
+
+        buffer.getInt();
+        version = buffer.getInt();
+        gameID = buffer.getLong();
+        eventCount = buffer.getInt();
+        phase = PHASES[buffer.get()];
+        declarer = buffer.get();
+        aiPlayers = buffer.get();
+        buffer.get();
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            turns[player] = TURN_STATES[buffer.get()];
+        }
+        buffer.get(codes);
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            visibleTo[player] = (buffer.get() & 0xFF) << 16 | (buffer.getShort() & 0xFFFF);
+        }
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            long token = buffer.getLong();
+            tokens[player] = token != 0 ? String.format("%016x", token) : null;
+        }
+        buffer.getInt();
+        return true;
+    }
+
+    public int getVersion(){
+        return version;
+    }
+
+    /**
+     * @return ID of the game in the event log, or -1 if it was not recorded
+     */
+    public long getGameID(){
+        return gameID;
+    }
+
+    /**
+     * @return number of events of the game recorded so far (see
+     * history.EventLog.resumeGame)
+     */
+    public int getEventCount(){
+        return eventCount;
+    }
+
+    public Phase getPhase(){
+        return phase;
+    }
+
+    /**
+     * @return player who declared, or -1
+     */
+    public int getDeclarer(){
+        return declarer;
+    }
+
+    /**
+     * @return list such that get(x) is true iff player x is an AI
+     */
+    public List<Boolean> getIsAI(){
+        Boolean[] isAI = new Boolean[GameBoard.NUM_PLAYERS];
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            isAI[player] = (aiPlayers & 1 << player) != 0;
+        }
+        return Arrays.asList(isAI);
+    }
+
+    /**
+     * @param playerID 0-3
+     * @return turn state of player playerID
+     */
+    public TurnState getTurnState(int playerID){
+        return turns[playerID];
+    }
+
+    /**
+     * @param playerID 0-3
+     * @return seat token of player playerID, with which it takes its seat
+     * back, or null if it has none
+     */
+    public String getToken(int playerID){
+        return tokens[playerID];
+    }
+
+    /**
+     * @return a new board with the cards and visibility of the snapshot
+     */
+    public GameBoard getBoard(){
+        return new GameBoard(codes, visibleTo);
+    }
+
+    /**
+     * @return the snapshot as text, e.g. "game 12 MAIN declarer -1 turns
+     * Inactive Inactive Pass Inactive"
+     */
+    @Override
+    public String toString(){
+        return "game " + gameID + " " + phase + " declarer " + declarer + " turns "
+                + turns[0] + " " + turns[1] + " " + turns[2] + " " + turns[3];
+    }
+
+}
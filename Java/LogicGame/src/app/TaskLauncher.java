@@ -0,0 +1,24 @@
+package app;
+
+/**
+ * Starts the threads that serve a game: client handlers, their relays, AI
+ * players and tables.  Which kind of thread they get is chosen with the 
+ * system property logic.threads: "platform" (the default) or "virtual".  
+ */
+public interface TaskLauncher {
+    
+    /**
+     * The launcher chosen by the system property logic.threads
+     */
+    public static final TaskLauncher DEFAULT = 
+            "virtual".equals(System.getProperty("logic.threads", "platform")) 
+            ? new TaskLauncherVirtual() : new TaskLauncherPlatform();
+    
+    /**
+     * Runs a task in a new thread
+     * @param task task to run
+     * @param name name of the thread
+     */
+    public void launch(Runnable task, String name);
+
+}
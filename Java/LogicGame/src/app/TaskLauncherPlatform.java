@@ -0,0 +1,29 @@
+package app;
+
+/**
+ * A TaskLauncher that starts an ordinary thread per task
+ */
+public class TaskLauncherPlatform implements TaskLauncher {
+    
+    // stack size of threads, in bytes, or 0 for the JVM's default
+    private final long stackSize;
+    
+    public TaskLauncherPlatform(){
+        this(0);
+    }
+    
+    /**
+     * Creates a launcher of threads with a given stack size
+     * @param stackSize stack size of threads in bytes, or 0 for the JVM's
+     * default (see Thread(ThreadGroup, Runnable, String, long))
+     */
+    public TaskLauncherPlatform(long stackSize){
+        this.stackSize = stackSize;
+    }
+
+    @Override
+    public void launch(Runnable task, String name){
+        new Thread(null, task, name, stackSize).start();
+    }
+    
+}
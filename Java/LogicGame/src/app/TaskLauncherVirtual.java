@@ -0,0 +1,58 @@
+package app;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A TaskLauncher that starts a virtual thread per task, so that tasks that 
+ * spend their life blocked on a queue or a socket cost little memory.  
+ * 
+ * Virtual threads exist from Java 21 on; the code is compiled for older 
+ * Javas, so they are started through a method handle.  On a Java without 
+ * them, tasks get platform threads with small stacks instead.  
+ */
+public class TaskLauncherVirtual implements TaskLauncher {
+    
+    // stack size of the fallback platform threads; handlers and AIs never 
+    // recurse deeply
+    private static final long FALLBACK_STACK_SIZE = 256 * 1024;
+    
+    // Thread.startVirtualThread(Runnable), or null if there is none
+    private static final MethodHandle START_VIRTUAL_THREAD = findStartVirtualThread();
+    
+    private final TaskLauncher fallback = new TaskLauncherPlatform(FALLBACK_STACK_SIZE);
+    
+    private static MethodHandle findStartVirtualThread(){
+        try{
+            return MethodHandles.publicLookup().findStatic(Thread.class, 
+                    "startVirtualThread", MethodType.methodType(Thread.class, Runnable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e){
+            System.err.println("Virtual threads need Java 21; using platform threads.");
+            return null;
+        }
+    }
+    
+    /**
+     * @return true iff this Java has virtual threads
+     */
+    public static boolean isSupported(){
+        return START_VIRTUAL_THREAD != null;
+    }
+
+    @Override
+    public void launch(Runnable task, String name){
+        if (START_VIRTUAL_THREAD == null){
+            fallback.launch(task, name);
+            return;
+        }
+        Thread thread;
+        try{
+            thread = (Thread) START_VIRTUAL_THREAD.invokeExact(task);
+        } catch (Throwable e){
+            throw new IllegalStateException("Could not start a virtual thread", e);
+        }
+        thread.setName(name);
+    }
+    
+}
@@ -0,0 +1,23 @@
+package app;
+
+/**
+ * The turn state of a player in the main and declaration phases
+ */
+public enum TurnState {
+    INACTIVE("Inactive"), // not player's turn
+    PASS("Pass"),         // player's turn to pass
+    GUESS("Guess"),       // player's turn to guess
+    SHOW("Show"),         // player has to reveal a card
+    DECLARE("Declare");   // player is declaring all cards
+    
+    private final String name;
+    
+    private TurnState(String name){
+        this.name = name;
+    }
+    
+    @Override
+    public String toString(){
+        return name;
+    }
+}
@@ -0,0 +1,155 @@
+package app;
+
+/**
+ * Mutable class.  Keeps track of the turn state of each of the four players
+ * of a game, and which moves each of them may make.  
+ * 
+ * Both the moves allowed in each state and the effect of each move are 
+ * looked up in tables, and the four states are packed into a single int, so
+ * validating and applying a move takes constant time and a table costs 
+ * one int.  
+ */
+public class TurnStateMachine {
+    
+    /**
+     * Moves that change whose turn it is
+     */
+    public enum Move {
+        PASS,         // reveal a card to partner
+        GUESS,        // guess a card of an opponent
+        SHOW,         // reveal a card to everyone after a wrong guess
+        DECLARE,      // start declaring
+        DECLARE_CARD  // declare one card
+    }
+    
+    private static final TurnState[] STATES = TurnState.values();
+    private static final int BITS_PER_PLAYER = 4;
+    private static final int STATE_MASK = (1 << BITS_PER_PLAYER) - 1;
+    
+    // ALLOWED[state] has bit m set iff move m can be made in that state
+    private static final int[] ALLOWED = new int[STATES.length];
+    static {
+        ALLOWED[TurnState.INACTIVE.ordinal()] = bit(Move.DECLARE);
+        ALLOWED[TurnState.PASS.ordinal()] = bit(Move.PASS) | bit(Move.DECLARE);
+        ALLOWED[TurnState.GUESS.ordinal()] = bit(Move.GUESS) | bit(Move.DECLARE);
+        ALLOWED[TurnState.SHOW.ordinal()] = bit(Move.SHOW) | bit(Move.DECLARE);
+        ALLOWED[TurnState.DECLARE.ordinal()] = bit(Move.DECLARE_CARD);
+    }
+    
+    /**
+     * What happens after a move: the mover's new state, and which player 
+     * (given by seats after the mover) moves next and in which state
+     */
+    private static final class Transition {
+        private final TurnState moverState;
+        private final int nextOffset; // -1 if nobody else becomes active
+        private final TurnState nextState;
+        private final boolean othersInactive; // true if all other players become Inactive
+        
+        private Transition(TurnState moverState, int nextOffset, TurnState nextState, 
+                boolean othersInactive){
+            this.moverState = moverState;
+            this.nextOffset = nextOffset;
+            this.nextState = nextState;
+            this.othersInactive = othersInactive;
+        }
+    }
+    
+    // TRANSITIONS[2*move + (successful ? 0 : 1)] is the transition after move
+    private static final Transition[] TRANSITIONS = new Transition[2 * Move.values().length];
+    static {
+        // the partner of the passer guesses next
+        setTransition(Move.PASS, true, new Transition(TurnState.INACTIVE, 2, TurnState.GUESS, false));
+        // a right guess passes the turn on to the player before the guesser
+        setTransition(Move.GUESS, true, new Transition(TurnState.INACTIVE, 3, TurnState.PASS, false));
+        // a wrong guess means the guesser has to show a card
+        setTransition(Move.GUESS, false, new Transition(TurnState.SHOW, -1, null, false));
+        // after showing, the player before the shower passes
+        setTransition(Move.SHOW, true, new Transition(TurnState.INACTIVE, 3, TurnState.PASS, false));
+        // the declarer is the only active player until the end of the game
+        setTransition(Move.DECLARE, true, new Transition(TurnState.DECLARE, -1, null, true));
+        setTransition(Move.DECLARE_CARD, true, new Transition(TurnState.DECLARE, -1, null, false));
+    }
+    
+    private static int bit(Move move){
+        return 1 << move.ordinal();
+    }
+    
+    private static void setTransition(Move move, boolean successful, Transition transition){
+        TRANSITIONS[2 * move.ordinal() + (successful ? 0 : 1)] = transition;
+        if (successful && TRANSITIONS[2 * move.ordinal() + 1] == null){
+            TRANSITIONS[2 * move.ordinal() + 1] = transition;
+        }
+    }
+    
+    // state of player x is in bits 4x to 4x+3, as the ordinal of a TurnState
+    private int states = 0;
+    
+    /**
+     * Creates a state machine with every player Inactive
+     */
+    public TurnStateMachine(){
+    }
+    
+    /**
+     * Gets the state of a player
+     * @param playerID 0-3
+     * @return state of player playerID
+     */
+    public TurnState stateOf(int playerID){
+        return STATES[(states >>> (BITS_PER_PLAYER * playerID)) & STATE_MASK];
+    }
+    
+    /**
+     * Sets the state of a player, e.g. to start the game
+     * @param playerID 0-3
+     * @param state new state of player playerID
+     */
+    public void setState(int playerID, TurnState state){
+        int shift = BITS_PER_PLAYER * playerID;
+        states = (states & ~(STATE_MASK << shift)) | (state.ordinal() << shift);
+    }
+    
+    /**
+     * Checks whether a player may make a move
+     * @param playerID 0-3
+     * @param move a move
+     * @return true iff the state of player playerID allows move
+     */
+    public boolean allows(int playerID, Move move){
+        int state = (states >>> (BITS_PER_PLAYER * playerID)) & STATE_MASK;
+        return (ALLOWED[state] & bit(move)) != 0;
+    }
+    
+    /**
+     * Updates the states of all players after a move.  The move must be
+     * allowed.  
+     * @param playerID 0-3, player making the move
+     * @param move the move
+     * @param successful false if the move was a wrong guess, else true
+     * @return ID of the player whose turn it now is, or -1 if the turn did
+     * not pass to another player
+     */
+    public int apply(int playerID, Move move, boolean successful){
+        if (!allows(playerID, move)){
+            throw new IllegalStateException("Player " + playerID + " in state " 
+                    + stateOf(playerID) + " cannot " + move);
+        }
+        Transition transition = TRANSITIONS[2 * move.ordinal() + (successful ? 0 : 1)];
+        
+        // all changes are made to a copy and written at once, so no two 
+        // players are ever active at the same time
+        int next = transition.othersInactive ? 0 : states;
+        int shift = BITS_PER_PLAYER * playerID;
+        next = (next & ~(STATE_MASK << shift)) | (transition.moverState.ordinal() << shift);
+        
+        int nextPlayerID = -1;
+        if (transition.nextOffset >= 0){
+            nextPlayerID = (playerID + transition.nextOffset) % 4;
+            shift = BITS_PER_PLAYER * nextPlayerID;
+            next = (next & ~(STATE_MASK << shift)) | (transition.nextState.ordinal() << shift);
+        }
+        states = next;
+        return nextPlayerID;
+    }
+}
@@ -4,12 +4,42 @@ import java.io.IOException;
 
 public interface TwoWayChannel {
 
+    /**
+     * Receives the messages of a channel as they arrive
+     */
+    public interface Handler {
+        /**
+         * Handles a message.  Called from a thread of the channel, so must 
+         * not block.  
+         * @param message message sent by other end of the two-way channel, 
+         * or null once the other end is gone for good
+         * @throws InterruptedException
+         */
+        public void handle(String message) throws InterruptedException;
+    }
+
     /**
      * Sends a message
      * @param message message to be sent
      * @throws InterruptedException
      */
     public void send(String message) throws InterruptedException;
+    
+    /**
+     * Sends an encoded line.  Unlike send(String), the line may be held back
+     * until flush(), so that several lines can be written at once.  
+     * @param frame line to be sent
+     * @throws InterruptedException
+     */
+    public default void send(Frame frame) throws InterruptedException{
+        send(frame.getContent());
+    }
+    
+    /**
+     * Sends any lines held back by send(Frame)
+     */
+    public default void flush(){
+    }
 
     /**
      * Listens for a message 
@@ -18,6 +48,29 @@ public interface TwoWayChannel {
      */
     public String listen() throws InterruptedException, IOException;
     
+    /**
+     * Takes a message that has already arrived, if there is one, e.g. the 
+     * next of several commands a client sent at once
+     * @return message sent by other end of the two-way channel, or null if 
+     * none has arrived (or the channel cannot tell without waiting)
+     * @throws IOException
+     */
+    public default String poll() throws IOException{
+        return null;
+    }
+    
+    /**
+     * Hands every message that arrives from now on to a handler, instead of
+     * queueing it for listen().  Channels that have no thread of their own 
+     * to do this return false, and must still be read with listen().  
+     * @param handler receiver of messages, or null to queue them for listen()
+     * again
+     * @return true iff messages will be handed to the handler
+     */
+    public default boolean forwardTo(Handler handler){
+        return false;
+    }
+    
     /**
      * Closes connection
      */
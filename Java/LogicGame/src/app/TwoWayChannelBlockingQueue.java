@@ -39,6 +39,11 @@ public class TwoWayChannelBlockingQueue implements TwoWayChannel {
         return this.in.take();
     }
     
+    @Override
+    public String poll(){
+        return this.in.poll();
+    }
+    
     @Override
     public void close() throws IOException {
         // TODO 
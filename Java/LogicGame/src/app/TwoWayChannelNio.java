@@ -0,0 +1,416 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A TwoWayChannel over a non-blocking socket.  Reads and writes are done by
+ * the channel's NioReactor, so a connection needs no thread of its own: 
+ * send() queues a line and returns at once, and lines received are queued 
+ * for listen() or handed to a handler (see forwardTo).  Frames are queued 
+ * as they are, without copying, and lines queued between flushes are 
+ * written together.  
+ * 
+ * Messages are lines.  A line longer than MAX_LINE bytes closes the 
+ * connection, as does a client that lets more than MAX_PENDING bytes of 
+ * output pile up unread.  A client that sends the line "protocol binary" 
+ * is answered with the same line, and from then on its messages are 
+ * frames of the binary protocol (see BinaryProtocol) both ways.  
+ */
+public class TwoWayChannelNio implements TwoWayChannel {
+    
+    // longest line accepted from a client, in bytes
+    static final int MAX_LINE = 1024;
+    
+    // most bytes queued for a client before it is considered dead
+    static final int MAX_PENDING = 1024 * 1024;
+    
+    // returned by the inbox when the client has disconnected
+    private static final String END_OF_STREAM = new String("end of stream");
+    
+    private final NioReactor reactor;
+    private final SocketChannel socket;
+    private SelectionKey key; // set on the reactor thread once registered
+    
+    // lines received, for listen()
+    private final BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+    // if not null, lines received are handed to this instead (only used by
+    // the reactor thread)
+    private Handler handler = null;
+    
+    // line being received, and whether the last byte ended a line with \r
+    // (only used by the reactor thread)
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength = 0;
+    private boolean afterCarriageReturn = false;
+    
+    // true once the client switched to the binary protocol; input is only 
+    // used by the reactor thread, output is guarded by pendingLock
+    private boolean binaryInput = false;
+    private boolean binaryOutput = false;
+    
+    // encoded lines sent and not yet handed to the reactor (shared with 
+    // other channels; never changed), and the number of bytes queued in total
+    private final Queue<byte[]> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private int pendingBytes = 0; // guarded by pendingLock
+    private final Object pendingLock = new Object();
+    
+    // lines taken from the outbox but not yet fully written, and how much of
+    // the first one is written (only used by the reactor thread)
+    private final ArrayDeque<byte[]> unsent = new ArrayDeque<>();
+    private int unsentOffset = 0;
+    
+    private volatile boolean closing = false;
+    private volatile boolean closed = false;
+    // true once the handler has been told the client is gone (only used by
+    // the reactor thread)
+    private boolean dropReported = false;
+    
+    /**
+     * Creates a channel; see NioReactor.register
+     */
+    TwoWayChannelNio(NioReactor reactor, SocketChannel socket){
+        this.reactor = reactor;
+        this.socket = socket;
+    }
+    
+    void setKey(SelectionKey key){
+        this.key = key;
+        if (closing){
+            reactor.execute(this::writeQueued);
+        }
+    }
+
+    @Override
+    public void send(String message){
+        send(new Frame(message));
+        flush();
+    }
+    
+    @Override
+    public void send(Frame frame){
+        if (closed || closing){
+            return;
+        }
+        synchronized (pendingLock){
+            if (binaryOutput){
+                frame = BinaryProtocol.text(frame);
+            }
+            byte[] bytes = frame.bytes();
+            if (pendingBytes + bytes.length > MAX_PENDING){
+                // client is not reading
+                reactor.execute(this::closeNow);
+                closed = true;
+                inbox.add(END_OF_STREAM);
+                return;
+            }
+            pendingBytes += bytes.length;
+            // queued in the order the frames were wrapped
+            outbox.add(bytes);
+        }
+    }
+    
+    @Override
+    public void flush(){
+        if (!outbox.isEmpty()){
+            scheduleFlush();
+        }
+    }
+    
+    @Override
+    public String listen() throws InterruptedException{
+        if (closed && inbox.isEmpty()){
+            return null;
+        }
+        String message = inbox.take();
+        if (message == END_OF_STREAM){
+            // leave it for later calls
+            inbox.add(END_OF_STREAM);
+            return null;
+        }
+        return message;
+    }
+    
+    @Override
+    public String poll(){
+        String message = inbox.peek();
+        if (message == null || message == END_OF_STREAM){
+            return null;
+        }
+        return inbox.poll();
+    }
+    
+    @Override
+    public boolean forwardTo(Handler handler){
+        // swapped on the reactor thread, so that no line received is queued
+        // after the queue is handed over; at once if called there, so that a
+        // handler swapping itself out gets no more lines
+        Runnable swap = () -> {
+            this.handler = handler;
+            // lines already queued go first, until the handler swaps itself
+            // out (the handler it swaps in gets the rest)
+            if (handler != null){
+                for (String message = inbox.peek(); this.handler == handler && message != null 
+                        && message != END_OF_STREAM; message = inbox.peek()){
+                    inbox.poll();
+                    deliver(handler, message);
+                }
+                if (this.handler == handler && inbox.peek() == END_OF_STREAM 
+                        && !closing && !dropReported){
+                    dropReported = true;
+                    deliver(handler, null);
+                }
+            }
+        };
+        if (reactor.inReactorThread()){
+            swap.run();
+        }
+        else{
+            reactor.execute(swap);
+        }
+        return true;
+    }
+    
+    /**
+     * Closes the connection once everything sent has been written
+     */
+    @Override
+    public void close(){
+        closing = true;
+        scheduleFlush();
+    }
+
+    @Override
+    public void closeOut(){
+        close();
+    }
+
+    @Override
+    public void closeIn(){
+        // lines that arrive from now on are queued, and never read
+        forwardTo(null);
+    }
+    
+    private void scheduleFlush(){
+        if (flushScheduled.compareAndSet(false, true)){
+            reactor.execute(this::writeQueued);
+        }
+    }
+    
+    /**
+     * Called by the reactor when the socket has input
+     */
+    void onReadable(){
+        ByteBuffer buffer = reactor.readBuffer;
+        buffer.clear();
+        int read;
+        try{
+            read = socket.read(buffer);
+        } catch (IOException e){
+            read = -1;
+        }
+        if (read < 0){
+            closeNow();
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            byte b = buffer.get();
+            if (b == '\n' && afterCarriageReturn){
+                // second half of \r\n
+                afterCarriageReturn = false;
+                continue;
+            }
+            if (binaryInput){
+                afterCarriageReturn = false;
+                if (!receiveFrameByte(b)){
+                    return;
+                }
+                continue;
+            }
+            afterCarriageReturn = b == '\r';
+            if (b == '\n' || b == '\r'){
+                String message = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+                lineLength = 0;
+                if (BinaryProtocol.NEGOTIATION.equals(message)){
+                    switchToBinary();
+                }
+                receive(message);
+            }
+            else if (lineLength == MAX_LINE){
+                System.err.println("Line too long from " + socket + "; closing.");
+                closeNow();
+                return;
+            }
+            else{
+                line[lineLength++] = b;
+            }
+        }
+    }
+    
+    /**
+     * Adds a byte to the binary frame being received, and passes the frame 
+     * on once it is complete
+     * @param b byte received
+     * @return false iff the frame is too long, and the connection closed
+     */
+    private boolean receiveFrameByte(byte b){
+        line[lineLength++] = b;
+        if (lineLength < 2){
+            return true;
+        }
+        int length = (line[0] & 0xFF) << 8 | (line[1] & 0xFF);
+        if (length + 2 > BinaryProtocol.MAX_FRAME){
+            System.err.println("Frame too long from " + socket + "; closing.");
+            closeNow();
+            return false;
+        }
+        if (lineLength == length + 2){
+            receive(BinaryProtocol.decode(line, 2, length));
+            lineLength = 0;
+        }
+        return true;
+    }
+    
+    /**
+     * Answers "protocol binary" and switches both ways to the binary 
+     * protocol (on the reactor thread)
+     */
+    private void switchToBinary(){
+        synchronized (pendingLock){
+            // the answer is the last line of text the client is sent
+            send(new Frame(BinaryProtocol.NEGOTIATION));
+            binaryOutput = true;
+        }
+        binaryInput = true;
+        writeQueued();
+    }
+    
+    private void receive(String message){
+        if (handler == null){
+            inbox.add(message);
+        }
+        else{
+            deliver(handler, message);
+        }
+    }
+    
+    private static void deliver(Handler handler, String message){
+        try{
+            handler.handle(message);
+        } catch (InterruptedException e){
+            // the reactor is never interrupted; handlers must not block
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Called by the reactor when the socket can take more output
+     */
+    void onWritable(){
+        writeQueued();
+    }
+    
+    /**
+     * Writes as much queued output as the socket takes, and waits for the 
+     * socket to become writable if some is left
+     */
+    private void writeQueued(){
+        flushScheduled.set(false);
+        if (key == null || closed){
+            // not registered yet (setKey writes), or gone
+            return;
+        }
+        for (byte[] bytes = outbox.poll(); bytes != null; bytes = outbox.poll()){
+            unsent.add(bytes);
+        }
+        
+        ByteBuffer buffer = reactor.writeBuffer;
+        while (!unsent.isEmpty()){
+            // gather as many queued lines as fit into the direct buffer, and
+            // write them with one call
+            buffer.clear();
+            int offset = unsentOffset;
+            for (byte[] bytes : unsent){
+                int n = Math.min(bytes.length - offset, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                offset = 0;
+                if (!buffer.hasRemaining()){
+                    break;
+                }
+            }
+            buffer.flip();
+            int written;
+            try{
+                written = socket.write(buffer);
+            } catch (IOException e){
+                closeNow();
+                return;
+            }
+            consume(written);
+            if (buffer.hasRemaining()){
+                // socket is full; continue when it is writable
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closing && outbox.isEmpty()){
+            closeNow();
+        }
+    }
+    
+    /**
+     * Drops written bytes from the front of unsent
+     * @param written number of bytes written
+     */
+    private void consume(int written){
+        synchronized (pendingLock){
+            pendingBytes -= written;
+        }
+        while (written > 0){
+            byte[] first = unsent.peek();
+            int n = Math.min(first.length - unsentOffset, written);
+            written -= n;
+            unsentOffset += n;
+            if (unsentOffset == first.length){
+                unsent.poll();
+                unsentOffset = 0;
+            }
+        }
+    }
+    
+    /**
+     * Closes the socket at once (on the reactor thread)
+     */
+    void closeNow(){
+        closed = true;
+        if (key != null){
+            key.cancel();
+        }
+        try{
+            socket.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+        unsent.clear();
+        outbox.clear();
+        inbox.add(END_OF_STREAM);
+        if (handler != null && !closing && !dropReported){
+            // the client dropped the connection
+            dropReported = true;
+            deliver(handler, null);
+        }
+    }
+
+}
@@ -1,30 +1,169 @@
 package app;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * A TwoWayChannel over a blocking socket.  Messages are lines, until the
+ * client switches to the binary protocol (see BinaryProtocol): the line 
+ * "protocol binary" is answered with the same line, after which input is 
+ * read as binary frames, decoded to the equivalent text commands, and 
+ * output is written as binary frames.  
+ */
 public class TwoWayChannelSocket implements TwoWayChannel{
     private final Socket socket;
-    private final BufferedReader in;
-    private final PrintWriter out;
+    private final InputStream in;
+    private final OutputStream out;
+    
+    // set once writing fails; like a PrintWriter, the channel then drops 
+    // what it is sent
+    private boolean outputError = false;
+    
+    // line being read, and whether a \n right after it is to be skipped 
+    // because it ended with \r (only used by the reading thread)
+    private byte[] line = new byte[128];
+    private boolean skipLineFeed = false;
+    
+    // true once the client switched to the binary protocol; input is only 
+    // read by one thread, output is guarded by out
+    private boolean binaryInput = false;
+    private boolean binaryOutput = false;
     
     public TwoWayChannelSocket(Socket socket) throws IOException{
         this.socket = socket;
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.out = new PrintWriter(socket.getOutputStream(), true);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
     }
 
     @Override
     public void send(String message){
-        this.out.println(message);
+        send(new Frame(message));
+        flush();
+    }
+    
+    @Override
+    public void send(Frame frame){
+        synchronized (out){
+            if (outputError){
+                return;
+            }
+            if (binaryOutput){
+                frame = BinaryProtocol.text(frame);
+            }
+            try{
+                out.write(frame.bytes());
+            } catch (IOException e){
+                outputError = true;
+            }
+        }
+    }
+    
+    @Override
+    public void flush(){
+        synchronized (out){
+            if (outputError){
+                return;
+            }
+            try{
+                out.flush();
+            } catch (IOException e){
+                outputError = true;
+            }
+        }
     }
     
     @Override
     public String listen() throws IOException{
-        return this.in.readLine();
+        if (binaryInput){
+            return readFrame();
+        }
+        String message = readLine();
+        if (BinaryProtocol.NEGOTIATION.equals(message)){
+            // the answer is the last line of text the client is sent
+            synchronized (out){
+                send(new Frame(BinaryProtocol.NEGOTIATION));
+                flush();
+                binaryOutput = true;
+            }
+            binaryInput = true;
+        }
+        return message;
+    }
+
+    @Override
+    public String poll() throws IOException{
+        // a client sends whole lines (or frames), so if some input is 
+        // buffered, one is (nearly) there
+        if (skipLineFeed && in.available() == 1){
+            // only the rest of the last line
+            return null;
+        }
+        return in.available() > 0 ? listen() : null;
+    }
+    
+    /**
+     * Reads a line, ended by \n, \r or \r\n 
+     * @return the line, or null at the end of the stream
+     * @throws IOException
+     */
+    private String readLine() throws IOException{
+        int length = 0;
+        int b = in.read();
+        if (b == '\n' && skipLineFeed){
+            b = in.read();
+        }
+        skipLineFeed = false;
+        if (b < 0){
+            return null;
+        }
+        while (b >= 0 && b != '\n' && b != '\r'){
+            if (length == line.length){
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = (byte) b;
+            b = in.read();
+        }
+        skipLineFeed = b == '\r';
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Reads a frame of the binary protocol
+     * @return the equivalent text command, or null at the end of the stream
+     * @throws IOException if the frame is too long
+     */
+    private String readFrame() throws IOException{
+        int b = in.read();
+        if (b == '\n' && skipLineFeed){
+            // the rest of the line "protocol binary"
+            b = in.read();
+        }
+        skipLineFeed = false;
+        int low = in.read();
+        if (b < 0 || low < 0){
+            return null;
+        }
+        int length = b << 8 | low;
+        if (length + 2 > BinaryProtocol.MAX_FRAME){
+            throw new IOException("Frame too long: " + length);
+        }
+        if (length > line.length){
+            line = new byte[BinaryProtocol.MAX_FRAME];
+        }
+        for (int n = 0; n < length; ){
+            int read = in.read(line, n, length - n);
+            if (read < 0){
+                return null;
+            }
+            n += read;
+        }
+        return BinaryProtocol.decode(line, 0, length);
     }
 
     @Override
@@ -34,7 +173,13 @@ public class TwoWayChannelSocket implements TwoWayChannel{
 
     @Override
     public void closeOut() {
-        out.close();
+        synchronized (out){
+            try{
+                out.close();
+            } catch (IOException e){
+                outputError = true;
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,46 @@
+package app;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for a ring-buffer MessageQueue to become non-empty 
+ * (consumer) or non-full (producer)
+ */
+public enum WaitStrategy {
+    /**
+     * Busy-waits.  Lowest latency, but burns a core per waiting thread.  
+     */
+    SPIN,
+    /**
+     * Spins briefly, then yields the core between checks
+     */
+    YIELD,
+    /**
+     * Spins briefly, then parks.  A parked consumer is unparked by the next
+     * producer; a parked producer checks again after a short while.  
+     */
+    PARK;
+    
+    // number of checks spent spinning before yielding/parking
+    static final int SPINS = 100;
+    
+    // how long a producer waiting for room parks between checks
+    private static final long PARK_NANOS = 10000;
+    
+    /**
+     * Waits a little before checking a queue again
+     * @param attempt number of times the queue has been checked already
+     */
+    void idle(int attempt){
+        if (this == SPIN || attempt < SPINS){
+            Thread.onSpinWait();
+        }
+        else if (this == YIELD){
+            Thread.yield();
+        }
+        else{
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+    
+}
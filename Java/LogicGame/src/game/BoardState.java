@@ -0,0 +1,137 @@
+package game;
+
+/**
+ * Immutable class.  The cards of a GameBoard and who can see them, as they
+ * were at one point of the game (see GameBoard.getState).  A GameBoard may
+ * only be used by its game's thread, but a state never changes, so it can be
+ * handed to any number of other threads (e.g. through a volatile field the
+ * game's thread sets after each move) and read by them without locks.
+ */
+public final class BoardState {
+
+    private static final int NUM_PLAYERS = GameBoard.NUM_PLAYERS;
+    private static final int HAND_SIZE = GameBoard.HAND_SIZE;
+
+    // codes[6*owner + position] is the code of that card (see Card.encode)
+    private final byte[] codes;
+    // visibleTo[p] is a bitboard of the cards player p can see (see
+    // GameBoard.getVisibleCards)
+    private final int[] visibleTo;
+    private final long version;
+
+    /**
+     * Makes a state; the arrays are kept, and must not be changed after
+     * @param codes codes of the cards
+     * @param visibleTo bitboards of the cards each player can see
+     * @param version version of the board
+     */
+    BoardState(byte[] codes, int[] visibleTo, long version) {
+    	this.codes = codes;
+    	this.visibleTo = visibleTo;
+    	this.version = version;
+    }
+
+    /**
+     * @return version of the board this is the state of, which only ever
+     * increases as the board changes; two states of a board with the same
+     * version are equal
+     */
+    public long getVersion() {
+    	return version;
+    }
+
+    /**
+     * Gets a card's code, whoever can see it
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return code of the card (see Card.encode)
+     */
+    public int getCardCode(int playerID, int card) {
+    	return codes[playerID * HAND_SIZE + card];
+    }
+
+    /**
+     * Returns true if a card is visible to a certain player
+     * @param viewerID 0-3, ID of player looking at the card
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return true if viewerID can see card card of playerID
+     */
+    public boolean isVisible(int viewerID, int playerID, int card) {
+    	return (visibleTo[viewerID] & 1 << (playerID * HAND_SIZE + card)) != 0;
+    }
+
+    /**
+     * @param viewerID 0-3, ID of player
+     * @return bitboard with bit (6*owner + position) set for each card viewerID can see
+     */
+    public int getVisibleCards(int viewerID) {
+    	return visibleTo[viewerID];
+    }
+
+    /**
+     * @return bitboard of the cards every player can see
+     */
+    public int getPublicCards() {
+    	return visibleTo[0] & visibleTo[1] & visibleTo[2] & visibleTo[3];
+    }
+
+    /**
+     * Shows the state as a player would see it, as in
+     * GameBoard.showPlayerViewOfBoard
+     * @param playerID 0-3, ID of player
+     * @return a String representing the state
+     */
+    public String showPlayerViewOfBoard(int playerID) {
+    	return render(playerID);
+    }
+
+    /**
+     * Shows the state as someone who plays no part in the game would see it,
+     * as in GameBoard.showPublicViewOfBoard
+     * @return a String representing the state
+     */
+    public String showPublicViewOfBoard() {
+    	return render(-1);
+    }
+
+    /**
+     * @return a new board in this state, e.g. for an AI to try moves on
+     */
+    public GameBoard toBoard() {
+    	return new GameBoard(codes, visibleTo);
+    }
+
+    /**
+     * Renders the board
+     * @param viewerID 0-3, ID of the player looking, or -1 for the public view
+     */
+    private String render(int viewerID) {
+    	StringBuilder board = new StringBuilder(128);
+    	for (int owner = 0; owner < NUM_PLAYERS; owner++) {
+    		board.append(owner).append('\t');
+    		for (int card = 0; card < HAND_SIZE; card++) {
+    			Card printed = Card.fromCode(getCardCode(owner, card));
+    			int viewers = viewersOf(owner, card);
+    			board.append(viewerID < 0 ? printed.printPublicCard(viewers)
+    					: printed.printCard(viewers, viewerID)).append(' ');
+    		}
+    		board.append("\r\n");
+    	}
+    	return board.toString();
+    }
+
+    /**
+     * @return bitmask with bit p set iff player p can see the card
+     */
+    private int viewersOf(int playerID, int card) {
+    	int viewers = 0;
+    	for (int p = 0; p < NUM_PLAYERS; p++) {
+    		if (isVisible(p, playerID, card)) {
+    			viewers |= 1 << p;
+    		}
+    	}
+    	return viewers;
+    }
+
+}
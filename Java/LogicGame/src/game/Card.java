@@ -1,22 +1,41 @@
 package game;
 
 /**
- * Mutable class.  Represents a card in Logic.   
+ * Immutable class.  Represents a card in Logic.  Which players can see a card
+ * is tracked by the GameBoard, not by the card itself.  
  */
 public class Card {
 	
 	/* 
 	 * suit = "S" (spades) or "D" (diamonds) 
 	 * rank = 1, ..., 12
-	 * show = true if face up, false if face down (0,1,2,3 refer to different players)
 	 */
 	private final String suit; 
 	private final int rank;
-	private boolean[] show = new boolean[4];
+	private final int code;
+	
+	// the ways this card can be printed, built once so printing never allocates
+	private final String publicRep;       // S5
+	private final String partnersRep;     // (S5)
+	private final String partnersHiddenRep; // (S)
+	private final String privateRep;      // [S5]
+	
 	/*
-	 * TODO maybe implement visibility control at the gameboard level instead of at the card
-	 * level? idk mutable cards make me queasy -Brice
-	*/
+	 * A card can also be encoded as a small int, code = (suit index << 4) | rank,
+	 * where the suit index is the position of the suit in SUITS.  Decks and hands
+	 * store these codes, and hand out the shared Card for each code.  
+	 */
+	private static final String[] SUITS = {"C", "D", "H", "S"};
+	private static final int RANK_MASK = 0xF;
+	private static final int SUIT_SHIFT = 4;
+	private static final Card[] CARDS = new Card[SUITS.length << SUIT_SHIFT];
+	static {
+		for (int s = 0; s < SUITS.length; s++) {
+			for (int r = 1; r <= 13; r++) {
+				CARDS[(s << SUIT_SHIFT) | r] = new Card(SUITS[s], r);
+			}
+		}
+	}
 	
 	/**
 	 * Constructs a Card of a given suit and rank
@@ -28,27 +47,11 @@ public class Card {
         assert (1 <= rank && rank <= 13); 
 		this.suit = suit;
 		this.rank = rank;
-		show[0] = false;
-		show[1] = false;
-		show[2] = false;
-		show[3] = false;
-	}
-	
-	/**
-	 * Mutator.  Makes a Card visible to a certain player.  
-	 * @param playerID 0-3, ID of player
-	 */
-	public void makeVisible(int playerID) {
-		show[playerID] = true;
-	}
-	
-	/**
-	 * Shows if Card is visible to a certain player
-	 * @param playerID 0-3, ID of player
-	 * @return true if the card is visible to player, else false
-	 */
-	public boolean isVisible(int playerID) {
-		return show[playerID];
+		this.code = encode(suit, rank);
+		this.publicRep = suit + rank;
+		this.partnersRep = "(" + suit + rank + ")";
+		this.partnersHiddenRep = "(" + suit + ")";
+		this.privateRep = "[" + suit + rank + "]";
 	}
 	
 	/**
@@ -57,41 +60,106 @@ public class Card {
 	 * If not visible to player, then only suit is displayed
 	 * If visible to just card owner and card owner's partner, then card String is parenthesized ()
 	 * If visible to just player, then card String is bracketed []
+	 * @param visibility bitmask of the players who can see this card (bit p set iff player p can)
 	 * @param playerID 0-3, ID of player
 	 * @return String containing suit and rank if face up for player, else just the suit
 	 */
-	public String printCard(int playerID) {
+	public String printCard(int visibility, int playerID) {
 	    assert(playerID >= 0 && playerID <= 3);
 	    
-	    int numPlayersVisible = 0;
-	    for (int i = 0; i < 4; i++) {
-	    	if (show[i]) {
-	    		numPlayersVisible++;
-	    	}
-	    }
+	    int numPlayersVisible = Integer.bitCount(visibility);
+	    boolean visibleToPlayer = (visibility & (1 << playerID)) != 0;
 	    
 	    //visible to everyone
 		if (numPlayersVisible == 4) {
-			return suit + rank;
+			return publicRep;
 		}
 		
 		//visible to only card owner and card owner's partner
 		if (numPlayersVisible == 2) {
-			if (show[playerID]) {
-				return "(" + suit + rank + ")";
+			if (visibleToPlayer) {
+				return partnersRep;
 			}
-			return "(" + suit + ")";
+			return partnersHiddenRep;
 		}
 		
 		//visible to only player
-		if (show[playerID]) {
-			return "[" + suit + rank + "]";
+		if (visibleToPlayer) {
+			return privateRep;
 		}
 		
 		//not visible to anyone but card owner (who's not player)
 		return suit;
 	}
 	
+	/**
+	 * Returns the card as seen by someone who plays no part in the game, 
+	 * e.g. a spectator: like a player who cannot see it unless everyone can
+	 * @param visibility bitmask of the players who can see this card (bit p set iff player p can)
+	 * @return String containing suit and rank if everyone can see the card, else just the suit
+	 */
+	public String printPublicCard(int visibility) {
+		if (Integer.bitCount(visibility) == 4) {
+			return publicRep;
+		}
+		if (Integer.bitCount(visibility) == 2) {
+			return partnersHiddenRep;
+		}
+		return suit;
+	}
+	
+	/**
+	 * Encodes a suit and rank as an int
+	 * @param suit "S", "D", "H" or "C"
+	 * @param rank an int in the range 1-13
+	 * @return the code of the card
+	 */
+	public static int encode(String suit, int rank) {
+		for (int s = 0; s < SUITS.length; s++) {
+			if (SUITS[s].equals(suit)) {
+				return (s << SUIT_SHIFT) | rank;
+			}
+		}
+		throw new IllegalArgumentException("Unknown suit: " + suit);
+	}
+	
+	/**
+	 * Gets the rank of an encoded card
+	 * @param code code of a card
+	 * @return rank rank of the card (1-13)
+	 */
+	public static int rankOf(int code) {
+		return code & RANK_MASK;
+	}
+	
+	/**
+	 * Gets the suit of an encoded card
+	 * @param code code of a card
+	 * @return suit of the card ("S", "D", "H" or "C")
+	 */
+	public static String suitOf(int code) {
+		return SUITS[code >>> SUIT_SHIFT];
+	}
+	
+	/**
+	 * Gets the shared Card for a code.  Does not allocate.  
+	 * @param code code of a card, as returned by encode
+	 * @return the Card with that code
+	 */
+	public static Card fromCode(int code) {
+		Card c = CARDS[code];
+		assert (c != null);
+		return c;
+	}
+	
+	/**
+	 * Getter method for code
+	 * @return code the int encoding of this card
+	 */
+	public int getCode() {
+		return code;
+	}
+	
 	/**
 	 * Getter method for suit
 	 * @return suit suit of this card ("S" for spades or "D" for diamonds)
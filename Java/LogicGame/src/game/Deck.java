@@ -1,13 +1,37 @@
 package game;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Deck {
 	
-	protected ArrayList<Card> deck = new ArrayList<Card>();
+	/*
+	 * Card codes (see Card.encode) in deck order.  Only the first size
+	 * entries are cards in the deck.
+	 */
+	protected byte[] cards;
+	protected int size = 0;
+
+	// card codes of the two kinds of deck, in the order they are created
+	private static final byte[] CLASSIC_DECK = new byte[52];
+	private static final byte[] LOGIC_DECK = new byte[24];
+	static {
+		int c = 0;
+		for (int i = 1; i <= 13; i++) {
+			CLASSIC_DECK[c++] = (byte) Card.encode("C", i);
+			CLASSIC_DECK[c++] = (byte) Card.encode("D", i);
+			CLASSIC_DECK[c++] = (byte) Card.encode("H", i);
+			CLASSIC_DECK[c++] = (byte) Card.encode("S", i);
+		}
+		c = 0;
+		for (int i = 1; i <= 12; i++) {
+			LOGIC_DECK[c++] = (byte) Card.encode("D", i);
+			LOGIC_DECK[c++] = (byte) Card.encode("S", i);
+		}
+	}
 	
 	public Deck() {
-		
+		cards = new byte[8];
 	}
 	
 	/**
@@ -15,7 +39,10 @@ public class Deck {
 	 * @param d ArrayList of Cards, ArrayList containing Cards in deck
 	 */
 	public Deck(ArrayList<Card> d) {
-		deck = d;
+		cards = new byte[Math.max(d.size(), 8)];
+		for (Card c : d) {
+			addCard(c);
+		}
 	}
 	
 	/** 
@@ -26,27 +53,20 @@ public class Deck {
 	 */
 	public Deck (String type) {
 		assert (type.equals("Classic") || type.equals("Logic"));
-		if (type.equals("Classic")) {
-			for (int i = 1; i <= 13; i++) {
-				addCard(new Card("C", i));
-				addCard(new Card("D", i));
-				addCard(new Card("H", i));
-				addCard(new Card("S", i));
-			}
-		}
-		else if (type.equals("Logic")) {
-			for (int i = 1; i <= 12; i++) {
-				addCard(new Card("D", i));
-				addCard(new Card("S", i));
-			}
-		}
+		byte[] template = type.equals("Classic") ? CLASSIC_DECK : LOGIC_DECK;
+		cards = template.clone();
+		size = template.length;
 	}
 	
 	/**
 	 * Getter method for ArrayList of Cards in the deck
-	 * @return ArrayList of Cards in deck
+	 * @return new ArrayList of the Cards in deck; changing it does not change the deck
 	 */
 	public ArrayList<Card> getDeck() {
+		ArrayList<Card> deck = new ArrayList<Card>(size);
+		for (int i = 0; i < size; i++) {
+			deck.add(Card.fromCode(cards[i]));
+		}
 		return deck;
 	}
 	
@@ -55,28 +75,34 @@ public class Deck {
 	 * @param c Card to be added to deck
 	 */
 	public void addCard(Card c) {
-		deck.add(c);
+		addCardCode(c.getCode());
 	}
-	
+
 	/**
-	 * Removes Card from deck
-	 * @param c Card to be removed from deck
+	 * Adds a card to deck by its code
+	 * @param code code of card to be added to deck, as returned by Card.encode
 	 */
-	public boolean removeCard(Card c) {
-		return deck.remove(c);
+	public void addCardCode(int code) {
+		if (size == cards.length) {
+			cards = Arrays.copyOf(cards, cards.length * 2);
+		}
+		cards[size++] = (byte) code;
 	}
 	
 	/**
-	 * Gets card information (suit, maybe rank) a player can see
-	 * @param playerID 0-3, number of player
-	 * @return String with card information that a player can see
+	 * Removes Card from deck
+	 * @param c Card to be removed from deck
 	 */
-	public String printDeck(int playerID) {
-		String rep = "";
-		for (Card c : deck) {
-			rep += c.printCard(playerID) + " ";
+	public boolean removeCard(Card c) {
+		byte code = (byte) c.getCode();
+		for (int i = 0; i < size; i++) {
+			if (cards[i] == code) {
+				System.arraycopy(cards, i+1, cards, i, size-i-1);
+				size--;
+				return true;
+			}
 		}
-		return rep;
+		return false;
 	}
 	
 	/**
@@ -84,7 +110,7 @@ public class Deck {
 	 * @return size of deck
 	 */
 	public int size() {
-		return deck.size();
+		return size;
 	}
 	
 	/**
@@ -92,15 +118,9 @@ public class Deck {
 	 * @param h ArrayList of hands, to which cards from the deck are going be dealt
 	 */
 	public void deal(ArrayList<Hand> h) {
-		try {
-			int sizeOfDeck = size(); // sizeOfDeck = number of cards in deck
-			int numDecks = h.size(); // numDecks = number of decks dealing to
-			for (int i = 0; i < sizeOfDeck; i++) {
-				h.get(i%numDecks).addCard(deck.get(i));
-			}
-		}
-		catch (IndexOutOfBoundsException e){
-			throw new RuntimeException(e);
+		int numDecks = h.size(); // numDecks = number of decks dealing to
+		for (int i = 0; i < size; i++) {
+			h.get(i%numDecks).addCardCode(cards[i]);
 		}
 	}
 	
@@ -108,37 +128,38 @@ public class Deck {
 	 * Randomizes/shuffles deck
 	 */
 	public void shuffle() {
-		Collections.shuffle(deck);
+		shuffle(ThreadLocalRandom.current());
 	}
 	
 	/**
-	 * Sorts deck by rank (min to max)
+	 * Randomizes/shuffles deck using a given source of randomness
+	 * @param random source of randomness, e.g. seeded to repeat a shuffle
 	 */
-	public void sortByRank() {
-		ArrayList<Card> newDeck = new ArrayList<Card>();
-		while (deck.size() > 0) {
-			Card card = minCard(deck);
-			newDeck.add(card);
-			deck.remove(card);
+	public void shuffle(Random random) {
+		// Fisher-Yates
+		for (int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			byte c = cards[i];
+			cards[i] = cards[j];
+			cards[j] = c;
 		}
-		deck = newDeck;
 	}
 	
 	/**
-	 * Finds index of lowest ranked card in deck
-	 * @param tempDeck ArrayList of Cards
-	 * @return index of card of lowest rank in tempDeck
+	 * Sorts deck by rank (min to max).  Cards of equal rank keep their order.
 	 */
-	private Card minCard(ArrayList<Card> tempDeck) {
-		Card card = tempDeck.get(0);
-		int r = card.getRank();
-		for (Card c : tempDeck) {
-			if (c.getRank() < r) {
-				r = c.getRank();
-				card = c;
+	public void sortByRank() {
+		// insertion sort; decks are small
+		for (int i = 1; i < size; i++) {
+			byte c = cards[i];
+			int rank = Card.rankOf(c);
+			int j = i - 1;
+			while (j >= 0 && Card.rankOf(cards[j]) > rank) {
+				cards[j+1] = cards[j];
+				j--;
 			}
+			cards[j+1] = c;
 		}
-		return card;
 	}
 	
 	
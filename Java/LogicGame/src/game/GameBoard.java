@@ -1,38 +1,347 @@
 package game;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * The cards of a game of Logic and who can see them.  Not thread-safe: a 
+ * board is used by its game's thread only, and other threads read its 
+ * states instead (see getState).  
+ */
 public class GameBoard {
     
+    public static final int NUM_PLAYERS = 4;
+    public static final int HAND_SIZE = 6;
+    
+    // mask with one bit set for each of the six positions in a hand
+    private static final int HAND_MASK = (1 << HAND_SIZE) - 1;
+    // mask with one bit set for each of the 24 cards on the board
+    private static final int ALL_CARDS = (1 << (NUM_PLAYERS * HAND_SIZE)) - 1;
+    // mask with one bit set for each of the four players
+    private static final int ALL_PLAYERS = (1 << NUM_PLAYERS) - 1;
+    // index of the public view of the board (see showPublicViewOfBoard) in 
+    // the arrays of views, after the views of the players
+    private static final int PUBLIC_VIEW = NUM_PLAYERS;
+    
     private final ArrayList<Hand> hands;
     private final Deck deck;
     
+    // visibleTo[p] is a bitboard of the cards player p can see: bit 
+    // (6*owner + position) is set iff player p can see card position of owner
+    private final int[] visibleTo = new int[NUM_PLAYERS];
+    
+    // viewTokens[p][6*owner + position] is that card as printed for player p
+    // (or, for p = PUBLIC_VIEW, as printed in the public view)
+    private final String[][] viewTokens = new String[NUM_PLAYERS + 1][NUM_PLAYERS * HAND_SIZE];
+    
+    // last rendering of each player's view of the board / of their own cards, 
+    // or null if one of its cards has been printed differently since
+    private final String[] viewCache = new String[NUM_PLAYERS + 1];
+    private final String[] ownCardsCache = new String[NUM_PLAYERS];
+    
+    // viewVersion[p] is increased every time player p's view of the board changes
+    private final long[] viewVersion = new long[NUM_PLAYERS + 1];
+    
+    // cardVersion[p][i] is the version of player p's view in which card i 
+    // was last printed differently
+    private final long[][] cardVersion = new long[NUM_PLAYERS + 1][NUM_PLAYERS * HAND_SIZE];
+    
+    // number of times cards moved or changed visibility, and the state of
+    // the board after the last time, or null if it was not asked for yet
+    private long changes = 0;
+    private BoardState state = null;
+    
     /**
      * Creates a gameboard
      */
     public GameBoard(){
+    	this(ThreadLocalRandom.current());
+    }
+    
+    /**
+     * Creates a gameboard, shuffling the deck with a given source of randomness
+     * @param random source of randomness; a Random with a given seed always
+     * deals the same cards
+     */
+    public GameBoard(Random random){
     	// makes deck and hands, deals deck to hands
     	deck = new Deck("Logic");
     	hands = new ArrayList<Hand>();
     	for (int player = 0; player < 4; player++) {
     		hands.add(new Hand());
     	}
-    	deck.shuffle();
+    	deck.shuffle(random);
     	deck.deal(hands);
     	
 		// makes each player's own cards visible to them
 		// also sorts each player's cards by rank
 		for (int i = 0; i < 4; i++) {
-			for (Card c : hands.get(i).getDeck()) {
-				c.makeVisible(i);
-			}
+			visibleTo[i] = HAND_MASK << (i * HAND_SIZE);
 			hands.get(i).sortByRank();
 		}
+		refreshCards(ALL_CARDS);
     	
 		//TODO other constructor stuff??
     	//throw new RuntimeException("Unimplemented");
     }
     
+    /**
+     * Creates a gameboard with given cards and visibility, e.g. to restore a
+     * recorded game
+     * @param codes codes[6*owner + position] is the code of that card (see
+     * Card.encode)
+     * @param visibleTo visibleTo[p] is a bitboard of the cards player p can
+     * see (see getVisibleCards)
+     */
+    public GameBoard(byte[] codes, int[] visibleTo){
+    	assert (codes.length == NUM_PLAYERS * HAND_SIZE && visibleTo.length == NUM_PLAYERS);
+    	deck = new Deck();
+    	hands = new ArrayList<Hand>(NUM_PLAYERS);
+    	for (int player = 0; player < NUM_PLAYERS; player++) {
+    		Hand hand = new Hand();
+    		for (int card = 0; card < HAND_SIZE; card++) {
+    			hand.addCardCode(codes[player * HAND_SIZE + card]);
+    		}
+    		hands.add(hand);
+    		this.visibleTo[player] = visibleTo[player] & ALL_CARDS;
+    	}
+    	refreshCards(ALL_CARDS);
+    }
+    
+    /**
+     * Bit of a card in the visibility bitboards
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return mask with only the card's bit set
+     */
+    private static int cardBit(int playerID, int card) {
+    	return 1 << (playerID * HAND_SIZE + card);
+    }
+    
+    /**
+     * Returns true if a card is visible to a certain player
+     * @param viewerID 0-3, ID of player looking at the card
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return true if viewerID can see card card of playerID
+     */
+    public boolean isVisible(int viewerID, int playerID, int card) {
+    	return (visibleTo[viewerID] & cardBit(playerID, card)) != 0;
+    }
+    
+    /**
+     * Gets every card a player can see
+     * @param viewerID 0-3, ID of player
+     * @return bitboard with bit (6*owner + position) set for each card viewerID can see
+     */
+    public int getVisibleCards(int viewerID) {
+    	return visibleTo[viewerID];
+    }
+    
+    /**
+     * Gets every card all players can see
+     * @return bitboard with bit (6*owner + position) set for each card visible to all
+     */
+    public int getPublicCards() {
+    	return visibleTo[0] & visibleTo[1] & visibleTo[2] & visibleTo[3];
+    }
+    
+    /**
+     * Checks whether a player has anything left to guess.  A player who 
+     * sees every card of the opponents knows every card, since the ranks of
+     * his partner's hidden cards follow from the rest, and has to declare.  
+     * @param playerID 0-3, ID of player
+     * @return true iff some card of an opponent of playerID is hidden from him
+     */
+    public boolean hasGuessableCard(int playerID) {
+    	int opponentCards = 0;
+    	for (int opponent = (playerID + 1) % 2; opponent < NUM_PLAYERS; opponent += 2) {
+    		opponentCards |= HAND_MASK << (opponent * HAND_SIZE);
+    	}
+    	return (opponentCards & ~visibleTo[playerID]) != 0;
+    }
+    
+    /**
+     * Gets the rank of a card, if a certain player can see it
+     * @param viewerID 0-3, ID of player looking at the card
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return rank of the card (1-12) if viewerID can see it, else -1
+     */
+    public int getVisibleRank(int viewerID, int playerID, int card) {
+    	if (!isVisible(viewerID, playerID, card)) {
+    		return -1;
+    	}
+    	return hands.get(playerID).getCardAt(card).getRank();
+    }
+    
+    /**
+     * Gets the suit of a card, which everyone can see
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return suit of the card ("S" or "D")
+     */
+    public String getSuit(int playerID, int card) {
+    	return hands.get(playerID).getCardAt(card).getSuit();
+    }
+    
+    /**
+     * Gets the code of a card, whoever can see it
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return code of the card (see Card.encode)
+     */
+    public int getCardCode(int playerID, int card) {
+    	return hands.get(playerID).getCodeAt(card);
+    }
+    
+    /**
+     * Gets a card as a certain player sees it, in a compact form
+     * @param viewerID 0-3, ID of player looking at the card
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return viewers << 8 | code, where viewers has bit p set iff player p 
+     * can see the card, and code is the card's code (see Card.encode), with 
+     * the rank left 0 if viewerID cannot see it
+     */
+    public int getCardView(int viewerID, int playerID, int card) {
+    	int code = hands.get(playerID).getCodeAt(card);
+    	if (!isVisible(viewerID, playerID, card)) {
+    		code &= ~0xF;
+    	}
+    	return viewersOf(playerID, card) << 8 | code;
+    }
+    
+    /**
+     * Gets the players a card is visible to
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return bitmask with bit p set iff player p can see the card
+     */
+    private int viewersOf(int playerID, int card) {
+    	int shift = playerID * HAND_SIZE + card;
+    	return ((visibleTo[0] >>> shift) & 1)
+    			| (((visibleTo[1] >>> shift) & 1) << 1)
+    			| (((visibleTo[2] >>> shift) & 1) << 2)
+    			| (((visibleTo[3] >>> shift) & 1) << 3);
+    }
+    
+    /**
+     * Makes cards visible to players, and updates the views of the board
+     * @param viewers bitmask of players (bit p for player p) who get to see the cards
+     * @param cards bitboard of the cards to be revealed
+     */
+    private void reveal(int viewers, int cards) {
+    	int changed = 0;
+    	for (int p = 0; p < NUM_PLAYERS; p++) {
+    		if ((viewers & (1 << p)) != 0) {
+    			changed |= cards & ~visibleTo[p];
+    			visibleTo[p] |= cards;
+    		}
+    	}
+    	if (changed != 0) {
+    		refreshCards(changed);
+    	}
+    }
+    
+    /**
+     * Reprints cards in every player's view of the board, and in the public
+     * view.  A view whose printed cards actually changed is invalidated and
+     * gets a new version.
+     * @param cards bitboard of the cards that moved or changed visibility
+     */
+    private void refreshCards(int cards) {
+    	changes++;
+    	state = null;
+    	for (int viewer = 0; viewer <= PUBLIC_VIEW; viewer++) {
+    		int changed = 0;
+    		for (int rest = cards; rest != 0; rest &= rest - 1) {
+    			int i = Integer.numberOfTrailingZeros(rest);
+    			int owner = i / HAND_SIZE;
+    			int card = i % HAND_SIZE;
+    			// cards print to shared Strings, so a changed card prints to a different object
+    			Card printed = hands.get(owner).getCardAt(card);
+    			String token = viewer == PUBLIC_VIEW 
+    					? printed.printPublicCard(viewersOf(owner, card))
+    					: printed.printCard(viewersOf(owner, card), viewer);
+    			if (token != viewTokens[viewer][i]) {
+    				viewTokens[viewer][i] = token;
+    				changed |= 1 << i;
+    				if (owner == viewer) {
+    					ownCardsCache[viewer] = null;
+    				}
+    			}
+    		}
+    		if (changed != 0) {
+    			viewCache[viewer] = null;
+    			long version = ++viewVersion[viewer];
+    			for (int rest = changed; rest != 0; rest &= rest - 1) {
+    				cardVersion[viewer][Integer.numberOfTrailingZeros(rest)] = version;
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Appends the cards of a hand, as seen by a certain player
+     * @param rep where the hand is appended
+     * @param playerID 0-3, ID of hand owner
+     * @param viewerID 0-3, ID of player looking at the hand
+     */
+    private void appendHand(StringBuilder rep, int playerID, int viewerID) {
+    	String[] tokens = viewTokens[viewerID];
+    	for (int i = playerID * HAND_SIZE; i < (playerID + 1) * HAND_SIZE; i++) {
+    		rep.append(tokens[i]).append(' ');
+    	}
+    }
+    
+    /**
+     * Gets the cards of a player's view that changed after a given version
+     * @param playerID 0-3, ID of player
+     * @param version a version of the player's view
+     * @return bitboard with bit (6*owner + position) set for each card that is
+     * printed differently now than in that version
+     */
+    public int getViewChangesSince(int playerID, long version) {
+    	int changes = 0;
+    	long[] versions = cardVersion[playerID];
+    	for (int i = 0; i < versions.length; i++) {
+    		if (versions[i] > version) {
+    			changes |= 1 << i;
+    		}
+    	}
+    	return changes;
+    }
+    
+    /**
+     * Gets the version of a player's view of the board.  The version changes
+     * exactly when showPlayerViewOfBoard would return something different.  
+     * @param playerID 0-3, ID of player
+     * @return version of the player's view, which only ever increases
+     */
+    public long getViewVersion(int playerID) {
+    	return viewVersion[playerID];
+    }
+    
+    /**
+     * Swaps the visibility of two cards of the same player, so that 
+     * visibility follows the cards when they move
+     * @param playerID 0-3, ID of player
+     * @param card1 0-5, position of first card
+     * @param card2 0-5, position of second card
+     */
+    private void swapVisibility(int playerID, int card1, int card2) {
+    	int bit1 = cardBit(playerID, card1);
+    	int bit2 = cardBit(playerID, card2);
+    	for (int p = 0; p < NUM_PLAYERS; p++) {
+    		int v = visibleTo[p];
+    		// swap only if exactly one of the two bits is set
+    		if (((v & bit1) == 0) != ((v & bit2) == 0)) {
+    			visibleTo[p] = v ^ (bit1 | bit2);
+    		}
+    	}
+    }
+    
     /********************************
      *      SETUP PHASE OF GAME     *
      ********************************/
@@ -52,11 +361,15 @@ public class GameBoard {
     	if (card > 0) {
     		if (playerHand.getCardAt(card-1).getRank() == rankOfCard) {
     			playerHand.swapTwoCards(card-1, card);
+    			swapVisibility(playerID, card-1, card);
+    			refreshCards(cardBit(playerID, card-1) | cardBit(playerID, card));
     		}
     	}
     	else if (card < playerHand.size()-1) {
     		if (playerHand.getCardAt(card+1).getRank() == rankOfCard) {
     			playerHand.swapTwoCards(card, card+1);
+    			swapVisibility(playerID, card, card+1);
+    			refreshCards(cardBit(playerID, card) | cardBit(playerID, card+1));
     		}
     	}
     }
@@ -68,8 +381,14 @@ public class GameBoard {
      * separated by spaces
      */
     public String showPlayerOwnCards(int playerID){
-    	Hand playerHand = hands.get(playerID);
-    	return playerHand.printDeck(playerID);
+    	String rep = ownCardsCache[playerID];
+    	if (rep == null) {
+    		StringBuilder cards = new StringBuilder(32);
+    		appendHand(cards, playerID, playerID);
+    		rep = cards.toString();
+    		ownCardsCache[playerID] = rep;
+    	}
+    	return rep;
     }
     
     /********************************
@@ -82,13 +401,7 @@ public class GameBoard {
      * @param card 0-5, position of card to be revealed
      */
     public void revealCardToPartner(int playerID, int card){
-    	Card c = hands.get(playerID).getCardAt(card);
-    	if (playerID == 0 || playerID == 1) {
-    		c.makeVisible(playerID+2);
-    	}
-    	else if (playerID == 2 || playerID == 3) {
-    		c.makeVisible(playerID-2);
-    	}
+    	reveal(1 << ((playerID+2)%4), cardBit(playerID, card));
     }
 
     /**
@@ -97,10 +410,7 @@ public class GameBoard {
      * @param card 0-5, representing position of card to be revealed
      */
     public void revealCardToAll(int playerID, int card){
-    	Card c = hands.get(playerID).getCardAt(card);
-    	for (int i = 0; i < 4; i++) {
-    		c.makeVisible(i);
-    	}
+    	reveal(ALL_PLAYERS, cardBit(playerID, card));
     }
     
 
@@ -117,7 +427,7 @@ public class GameBoard {
         //TODO make sure player cannot click unguessable card, or right now the program will throw an exception
     	Card c = hands.get(playerTarget).getCardAt(card);
     	assert (playerGuesser%2 != playerTarget%2);
-    	assert (!c.isVisible(playerGuesser));
+    	assert (!isVisible(playerGuesser, playerTarget, card));
     	
     	if (c.getRank() == rank) {
     		return true;
@@ -128,20 +438,101 @@ public class GameBoard {
     }
     
     /**
-     * Shows a player the game state, as he would currently see it
+     * Returns true if a card has a certain rank.  Unlike guess, makes no
+     * assumption about who is asking, e.g. a declarer declaring his 
+     * partner's cards.  
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @param rank 1-12, the rank declared
+     * @return true if the card has rank rank
+     */
+    public boolean hasRank(int playerID, int card, int rank) {
+    	return hands.get(playerID).getCardAt(card).getRank() == rank;
+    }
+    
+    /**
+     * Shows a player the game state, as he would currently see it.  Rendered
+     * only if the view changed since it was last shown.  
      * @param playerID 0-3, ID of player
      * @return a String representing the game state
      */
     public String showPlayerViewOfBoard(int playerID){
-    	String rep = "";
-    	for (int viewPlayer = 0; viewPlayer < 4; viewPlayer++) {
-    		rep += viewPlayer + "\t";
-    		rep += hands.get(viewPlayer).printDeck(playerID);
-    		rep += "\r\n";
+    	String rep = viewCache[playerID];
+    	if (rep == null) {
+    		StringBuilder board = new StringBuilder(128);
+    		for (int viewPlayer = 0; viewPlayer < 4; viewPlayer++) {
+    			board.append(viewPlayer).append('\t');
+    			appendHand(board, viewPlayer, playerID);
+    			board.append("\r\n");
+    		}
+    		rep = board.toString();
+    		viewCache[playerID] = rep;
     	}
     	return rep;
     }
     
+    /**
+     * Gets the state of the board, which unlike the board can be read by any
+     * thread.  Built at most once per change of the board.  
+     * @return the state of the board, with version the number of changes
+     * made to the board so far
+     */
+    public BoardState getState() {
+    	if (state == null) {
+    		byte[] codes = new byte[NUM_PLAYERS * HAND_SIZE];
+    		for (int player = 0; player < NUM_PLAYERS; player++) {
+    			for (int card = 0; card < HAND_SIZE; card++) {
+    				codes[player * HAND_SIZE + card] = (byte) getCardCode(player, card);
+    			}
+    		}
+    		state = new BoardState(codes, visibleTo.clone(), changes);
+    	}
+    	return state;
+    }
+    
+    /**
+     * Shows the game state as someone who plays no part in the game, e.g. a
+     * spectator, would see it: only cards every player can see are shown, 
+     * in the same layout as showPlayerViewOfBoard
+     * @return a String representing the game state
+     */
+    public String showPublicViewOfBoard(){
+    	return showPlayerViewOfBoard(PUBLIC_VIEW);
+    }
+    
+    /**
+     * Gets the version of the public view of the board, which changes 
+     * exactly when showPublicViewOfBoard would return something different
+     * @return version of the public view, which only ever increases
+     */
+    public long getPublicViewVersion() {
+    	return viewVersion[PUBLIC_VIEW];
+    }
+    
+    /**
+     * Shows a player only the cards of his view that changed since a given 
+     * version of it, as a single line of the form
+     * "update [from version] [to version] [owner]:[position]:[card] ..."
+     * where each card is printed as in showPlayerViewOfBoard
+     * @param playerID 0-3, ID of player
+     * @param version version of the player's view the update starts from
+     * @return a String with the changed cards, or null if nothing changed
+     */
+    public String showPlayerViewDelta(int playerID, long version){
+    	int changes = getViewChangesSince(playerID, version);
+    	if (changes == 0) {
+    		return null;
+    	}
+    	StringBuilder update = new StringBuilder(64);
+    	update.append("update ").append(version).append(' ').append(viewVersion[playerID]);
+    	for (int rest = changes; rest != 0; rest &= rest - 1) {
+    		int i = Integer.numberOfTrailingZeros(rest);
+    		update.append(' ').append(i / HAND_SIZE).append(':').append(i % HAND_SIZE)
+    				.append(':').append(viewTokens[playerID][i]);
+    	}
+    	return update.toString();
+    }
+    
     /********************************
      *    DECLARE PHASE OF GAME     *
      ********************************/
@@ -153,24 +544,14 @@ public class GameBoard {
      * @param playerID int 0-3, ID of player declaring cards
      */
     public void makePlayerGameViewPublic(int playerID) {
-    	for (int p = 0; p < 4; p++) {
-    		for (int i = 0; i < 6; i++) {
-    			if (hands.get(p).getCardAt(i).isVisible(playerID)) {
-    				revealCardToAll(p, i);
-    			}
-    		}
-    	}
+    	reveal(ALL_PLAYERS, visibleTo[playerID]);
     }
     
     /**
      * Makes all cards visible to all players. To be used at end of game.
      */
     public void makeAllCardsPublic() {
-    	for (int p = 0; p < 4; p++) {
-    		for (int i = 0; i < 6; i++) {
-    			revealCardToAll(p, i);
-    		}
-    	}
+    	reveal(ALL_PLAYERS, ALL_CARDS);
     }
     
     /**
@@ -178,15 +559,8 @@ public class GameBoard {
      * @return true if there are still cards undeclared (invisible to players)
      */
     public boolean isMoreToDeclare() {
-    	for (int p = 0; p < 4; p++) {
-    		for (int i = 0; i < 6; i++) {
-    			// selects random player (0) to check if card is visible to
-    			if (!hands.get(p).getCardAt(i).isVisible(0)) {
-    				return true;
-    			}
-    		}
-    	}
-    	return false;
+    	// a card is declared once every player can see it
+    	return getPublicCards() != ALL_CARDS;
     }
     
     /**
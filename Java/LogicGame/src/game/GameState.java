@@ -7,21 +7,76 @@ import java.util.List;
 // only for messages to be sent to everyone
 public class GameState {
 	
+	/**
+	 * The states of the game that are announced to everyone
+	 */
+	public enum State {
+		// instructions
+		SETUP, BEGIN_GAME,
+		// turns
+		TO_PASS, TO_SHOW, TO_GUESS,
+		// moves
+		PASS, SHOW, GUESS,
+		// declare
+		DECLARE,
+		// final
+		DISCONNECT
+	}
+
 	/*
-	 * can equal --
-	 * instructions: "setup" "begingame" 
-	 * turns: "topass", "toshow", "toguess"
-	 * moves: "pass" "show" "guess" 
-	 * declare: "declare"
-	 * final: "disconnect"
+	 * Messages that do not depend on the move are built once, indexed by
+	 * playerID (and position of card for passes and shows)
 	 */
-	String gamestate;
+	private static final String SETUP_CLIENT = "Please set up your cards.  \r\n"
+            + "Type 'view' to see your cards, "
+            + "'help' for help message, "
+            + "and 'swap x' to swap card x.  "
+            + "Type 'done' to finish.";
+	private static final String BEGIN_GAME_CLIENT = "Game has begun! \r\n"
+            + "Type 'view' to see your cards, "
+            + "'help' for help message, "
+            + "'pass x' to pass card x, "
+            + "'guess x y z' to guess card y of player x is z,"
+            + "and 'show x' to show card x. "
+            + "Type 'declare' to declare.";
+	private static final String[] TO_PASS_AI = new String[4];
+	private static final String[] TO_SHOW_AI = new String[4];
+	private static final String[] TO_GUESS_AI = new String[4];
+	private static final String[] DECLARE_AI = new String[4];
+	private static final String[] TO_PASS_CLIENT = new String[4];
+	private static final String[] TO_SHOW_CLIENT = new String[4];
+	private static final String[] TO_GUESS_CLIENT = new String[4];
+	private static final String[] DECLARE_CLIENT = new String[4];
+	private static final String[][] PASS_AI = new String[4][6];
+	private static final String[][] SHOW_AI = new String[4][6];
+	private static final String[][] PASS_CLIENT = new String[4][6];
+	private static final String[][] SHOW_CLIENT = new String[4][6];
+	static {
+		for (int p = 0; p < 4; p++) {
+			TO_PASS_AI[p] = "topass " + p;
+			TO_SHOW_AI[p] = "toshow " + p;
+			TO_GUESS_AI[p] = "toguess " + p;
+			DECLARE_AI[p] = "declare " + p;
+			TO_PASS_CLIENT[p] = "Player " + p + " to pass.";
+			TO_SHOW_CLIENT[p] = "Player " + p + " must show a card.";
+			TO_GUESS_CLIENT[p] = "Player " + p + " to guess.";
+			DECLARE_CLIENT[p] = "Player " + p + " is declaring!";
+			for (int x = 0; x < 6; x++) {
+				PASS_AI[p][x] = "pass " + p + " " + x;
+				SHOW_AI[p][x] = "show " + p + " " + x;
+				PASS_CLIENT[p][x] = "Player " + p + " passed card " + x + "!";
+				SHOW_CLIENT[p][x] = "Player " + p + " revealed card " + x + "!";
+			}
+		}
+	}
+
+	State gamestate;
 	
 	// stores guess information
 	// xyz = {target player x, position of card y, rank guessed z, 1 if guess was correct and 0 if not}
 	private int[] xyz;
 	
-	// Stores move information ("pass"/"show")
+	// Stores move information (State.PASS/State.SHOW)
 	// x is the position of the card passed or showed.
 	int x;
 	
@@ -31,147 +86,198 @@ public class GameState {
 	// array of length 4 containing whether each player is an AI -
 	protected List<Boolean> isAI;
 	
+	// messages for the current state, built at most once per state
+	private String messageAI;
+	private String messageClient;
+
 	public GameState(List<Boolean> isAI) {
 		this.isAI = isAI;
 	}
 	
 	/**
 	 * Sets the state of the game
-	 * @param gamestate String associated with proper gamestate
+	 * @param gamestate an instruction state (SETUP/BEGIN_GAME) or DISCONNECT
 	 */
-	public void setState(String gamestate) {
+	public void setState(State gamestate) {
 		this.gamestate = gamestate;
+		messageAI = null;
+		messageClient = null;
 	}
 	
 	/**
 	 * Sets state of game to a turn or declare gamestate
-	 * @param toMoveOrDeclare "topass"/"toshow"/"toguess"/"declare"
-	 * @param playerID if a turn gamestate, the playerID of the player who is supposed to move / if "declare", playerID of player declaring
+	 * @param toMoveOrDeclare TO_PASS/TO_SHOW/TO_GUESS/DECLARE
+	 * @param playerID if a turn gamestate, the playerID of the player who is supposed to move / if DECLARE, playerID of player declaring
 	 */
-	public void setState(String toMoveOrDeclare, int playerID) {
-		this.gamestate = toMoveOrDeclare;
+	public void setState(State toMoveOrDeclare, int playerID) {
+		assert (toMoveOrDeclare == State.TO_PASS || toMoveOrDeclare == State.TO_SHOW
+				|| toMoveOrDeclare == State.TO_GUESS || toMoveOrDeclare == State.DECLARE);
+		setState(toMoveOrDeclare);
 		this.playerID = playerID;
 	}
 	
 	/**
-	 * Sets state of the game to "pass" or "show"
-	 * @param move String, either "pass" or "show"
+	 * Sets state of the game to PASS or SHOW
+	 * @param move either PASS or SHOW
 	 * @param playerID playerID of player who moved
 	 * @param x the position of the card passed or showed
 	 */
-	public void setState(String move, int playerID, int x) {
-		assert (move.equals("pass") || move.equals("show"));
-		this.gamestate = move;
+	public void setState(State move, int playerID, int x) {
+		assert (move == State.PASS || move == State.SHOW);
+		setState(move);
 		this.x = x;
 		this.playerID = playerID;
 	}
 	
 	/**
-	 * Sets state of the game to "guess"
-	 * @param guess "guess"
+	 * Sets state of the game to GUESS
+	 * @param guess GUESS
 	 * @param playerID the player who's guessing
 	 * @param xyz {target player x, position of card y, rank guessed z, 1 if guess was correct and 0 if not}
 	 */
-	public void setState(String guess, int playerID, int[] xyz) {
-		assert (guess.equals("guess"));
-		this.gamestate = "guess";
+	public void setState(State guess, int playerID, int[] xyz) {
+		assert (guess == State.GUESS);
+		setState(State.GUESS);
 		this.playerID = playerID;
 		this.xyz = xyz;
 	}
 	
+	/**
+	 * @return the current state
+	 */
+	public State getState() {
+		return gamestate;
+	}
+
+	/**
+	 * @return the player who is to move, moved, guessed or is declaring, 
+	 * in states that have one
+	 */
+	public int getPlayerID() {
+		return playerID;
+	}
+
+	/**
+	 * @return the position of the card passed or shown (PASS/SHOW) or 
+	 * guessed (GUESS)
+	 */
+	public int getPosition() {
+		return gamestate == State.GUESS ? xyz[1] : x;
+	}
+
+	/**
+	 * @return the player whose card was guessed (GUESS)
+	 */
+	public int getGuessTarget() {
+		return xyz[0];
+	}
+
+	/**
+	 * @return the rank guessed (GUESS)
+	 */
+	public int getGuessRank() {
+		return xyz[2];
+	}
+
+	/**
+	 * @return true iff the guess was correct (GUESS)
+	 */
+	public boolean isGuessCorrect() {
+		return xyz[3] == 1;
+	}
+
+	/**
+	 * Gets the message of the current state for each player.  The message
+	 * for AIs and the message for clients are each built once, and shared by
+	 * every player of that kind.
+	 * @return list such that element x is the message for player x
+	 */
 	public ArrayList<String> getMessages() {
-		ArrayList<String> messages = new ArrayList<String>();
+		ArrayList<String> messages = new ArrayList<String>(4);
 		for (int i = 0; i < 4; i++) {
 			if (isAI.get(i)) {
-				messages.add(getMessageAI());
+				if (messageAI == null) {
+					messageAI = getMessageAI();
+				}
+				messages.add(messageAI);
 			}
 			else {
-				messages.add(getMessageClient());
+				if (messageClient == null) {
+					messageClient = getMessageClient();
+				}
+				messages.add(messageClient);
 			}
 		}
 		return messages;
 	}
 	
+	/**
+	 * Gets the message of the current state for human players, which is
+	 * also what anyone watching the game is told
+	 * @return the message, shared with getMessages
+	 */
+	public String getClientMessage() {
+		if (messageClient == null) {
+			messageClient = getMessageClient();
+		}
+		return messageClient;
+	}
+	
 	private String getMessageAI() {
+		switch (gamestate) {
 		// instructions
-		if (gamestate.equals("setup")) {
+		case SETUP:
 			return "setup";
-		}
-		if (gamestate.equals("begingame")) {
+		case BEGIN_GAME:
 			return "begingame";
-		}
 		// turn
-		if (gamestate.equals("topass")) {
-			return "topass " + playerID;
-		}
-		if (gamestate.equals("toshow")) {
-			return "toshow " + playerID;
-		}
-		if (gamestate.equals("toguess")) {
-			return "toguess " + playerID;
-		}
+		case TO_PASS:
+			return TO_PASS_AI[playerID];
+		case TO_SHOW:
+			return TO_SHOW_AI[playerID];
+		case TO_GUESS:
+			return TO_GUESS_AI[playerID];
 		// move
-		if (gamestate.equals("pass")) {
-			return "pass " + playerID + " " + x;
-		}
-		if (gamestate.equals("show")) {
-			return "show " + playerID + " " + x;
-		}
-		if (gamestate.equals("guess")) {
+		case PASS:
+			return PASS_AI[playerID][x];
+		case SHOW:
+			return SHOW_AI[playerID][x];
+		case GUESS:
 			String rep = "guess " + playerID + " " + xyz[0] + " " + xyz[1] + " " + xyz[2] + " ";
 			if (xyz[3] == 1) {
-				rep += "correct";
-				return rep;
+				return rep + "correct";
 			}
-			rep += "incorrect";
-			return rep;
-		}
-		if (gamestate.equals("declare")) {
-			return "declare " + playerID;
-		}
+			return rep + "incorrect";
+		case DECLARE:
+			return DECLARE_AI[playerID];
 		// final
-		if (gamestate.equals("disconnect")) {
+		case DISCONNECT:
 			return "disconnect";
+		default:
+			return "";
 		}
-		return "";
 	}
 	
 	private String getMessageClient() {
+		switch (gamestate) {
 		// instructions
-		if (gamestate.equals("setup")) {
-			return "Please set up your cards.  \r\n"
-	                + "Type 'view' to see your cards, "
-	                + "'help' for help message, "
-	                + "and 'swap x' to swap card x.  "
-	                + "Type 'done' to finish.";
-		}
-		if (gamestate.equals("begingame")) {
-			return "Game has begun! \r\n" 
-	                + "Type 'view' to see your cards, "
-	                + "'help' for help message, "
-	                + "'pass x' to pass card x, " 
-	                + "'guess x y z' to guess card y of player x is z," 
-	                + "and 'show x' to show card x. "
-	                + "Type 'declare' to declare.";
-		}
-		//turn
-		if (gamestate.equals("topass")) {
-			return "Player " + playerID + " to pass.";
-		}
-		if (gamestate.equals("toshow")) {
-			return "Player " + playerID + " must show a card.";
-		}
-		if (gamestate.equals("toguess")) {
-			return ("Player " + playerID + " to guess.");
-		}
+		case SETUP:
+			return SETUP_CLIENT;
+		case BEGIN_GAME:
+			return BEGIN_GAME_CLIENT;
+		// turn
+		case TO_PASS:
+			return TO_PASS_CLIENT[playerID];
+		case TO_SHOW:
+			return TO_SHOW_CLIENT[playerID];
+		case TO_GUESS:
+			return TO_GUESS_CLIENT[playerID];
 		// move
-		if (gamestate.equals("pass")) {
-			return "Player " + playerID + " passed card " + x + "!";
-		}
-		if (gamestate.equals("show")) {
-			return "Player " + playerID + " revealed card " + x + "!";
-		}
-		if (gamestate.equals("guess")) {
+		case PASS:
+			return PASS_CLIENT[playerID][x];
+		case SHOW:
+			return SHOW_CLIENT[playerID][x];
+		case GUESS:
 			// guess is correct
 			if (xyz[3] == 1) {
 				return "Player " + playerID + " correctly guessed card " + 
@@ -180,14 +286,13 @@ public class GameState {
 			// guess is incorrect
 			return "Player " + playerID + " incorrectly guessed card "+
             		xyz[1] + " of player " + xyz[0] +": " + xyz[2] + "!";
-		}
-		if (gamestate.equals("declare")) {
-			return "Player " + playerID + " is declaring!";
-		}
-		if (gamestate.equals("disconnect")) {
+		case DECLARE:
+			return DECLARE_CLIENT[playerID];
+		case DISCONNECT:
 			return "Disconnect.";
+		default:
+			return "";
 		}
-		return "";
 	}
 	
 	
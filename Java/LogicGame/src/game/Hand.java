@@ -13,7 +13,7 @@ public class Hand extends Deck {
 	 * @param d ArrayList of Cards in hand
 	 */
 	public Hand(ArrayList<Card> d) {
-		deck = d;
+		super(d);
 	}
 	
 	/**
@@ -22,7 +22,19 @@ public class Hand extends Deck {
 	 * @return Card at position card
 	 */
 	public Card getCardAt(int card) {
-		return deck.get(card);
+		return Card.fromCode(getCodeAt(card));
+	}
+
+	/**
+	 * Retrieves code of the card at desired position in hand
+	 * @param card 0-(size of hand), position of card to be retrived
+	 * @return code of card at position card (see Card.encode)
+	 */
+	public int getCodeAt(int card) {
+		if (card < 0 || card >= size) {
+			throw new IndexOutOfBoundsException("Index: " + card + ", Size: " + size);
+		}
+		return cards[card];
 	}
 	
 	/**
@@ -31,9 +43,9 @@ public class Hand extends Deck {
 	 * @param card2 0-(size of hand), index of second card to be swapped
 	 */
 	public void swapTwoCards(int card1, int card2) {
-		Card c1 = deck.get(card1);
-		deck.set(card1, deck.get(card2));
-		deck.set(card2, c1);
+		byte c1 = (byte) getCodeAt(card1);
+		cards[card1] = (byte) getCodeAt(card2);
+		cards[card2] = c1;
 	}
 	
 }
@@ -0,0 +1,546 @@
+package history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+import game.GameBoard;
+
+/**
+ * An append-only log of the events of every game (see EventRecord), for
+ * settling disputes and replaying games.  Records go to files of fixed
+ * size, "segments", named events-NNNNNN.log, which are memory-mapped and
+ * filled in order; a full segment is closed and the next one created.
+ *
+ * Recording an event takes no lock, does no I/O and allocates nothing: the
+ * game's thread puts the record into a bounded in-memory ring, and a
+ * background thread copies records from the ring into the mapped segment.
+ * Every COMMIT milliseconds at most, that thread forces what it copied to
+ * disk, so one write to disk commits the records of every table at once.
+ * If the ring is full, because the disk cannot keep up, records are
+ * dropped and counted (see getDropped) rather than stalling the game; the
+ * next record of the game that is written is preceded by a LOST record
+ * saying how many of its records are missing.
+ *
+ * A log is written by one process at a time.  Each time it is opened, it
+ * continues in a new segment, numbering records and games on from the last
+ * ones it finds.
+ *
+ * The default log (see getDefault) is configured with system properties:
+ * logic.eventlog is its directory, e.g. "events", or "off" (the default);
+ * logic.eventlog.segment is the number of records per segment (default
+ * 1048576, i.e. 64 MiB);
+ * logic.eventlog.capacity is the number of records the ring holds
+ * (default 16384);
+ * logic.eventlog.commit is the number of milliseconds between commits
+ * (default 10).
+ */
+public class EventLog implements Closeable {
+
+    private static final String DIRECTORY = System.getProperty("logic.eventlog", "off");
+    private static final int SEGMENT_RECORDS = Integer.getInteger("logic.eventlog.segment", 1 << 20);
+    private static final int CAPACITY = Integer.getInteger("logic.eventlog.capacity", 1 << 14);
+    private static final int COMMIT = Integer.getInteger("logic.eventlog.commit", 10);
+
+    private static final String PREFIX = "events-";
+    private static final String SUFFIX = ".log";
+
+    private static EventLog defaultLog;
+    private static boolean defaultOpened = false;
+
+    /*
+     * Records waiting to be written, RECORD_LONGS longs per slot: longs 1-6
+     * of the record (bytes 8-55, see EventRecord).  The writer fills in the
+     * sequence number, magic and checksum.  Slots are claimed as in
+     * MessageQueueMultiProducer: sequence.get(i) is n while slot i is free
+     * for record n, and n+1 once record n is in it.
+     */
+    private static final int RECORD_LONGS = 8;
+    private final long[] slots;
+    private final AtomicLongArray sequence;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // only used by the writer
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong nextGameID;
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long commitNanos;
+
+    // segment being written and its number, sequence number of the next
+    // record written (only used by the writer)
+    private FileChannel segment;
+    private MappedByteBuffer mapped;
+    private int segmentNumber;
+    private long nextSequence;
+    private final ByteBuffer record = ByteBuffer.allocate(EventRecord.SIZE);
+    private final CRC32C checksum = new CRC32C();
+
+    // sequence number of the first record not yet known to be on disk
+    private volatile long committed;
+
+    private final Thread writer;
+    private volatile boolean closing = false;
+
+    /**
+     * Opens a log, creating its directory when the first record is written
+     * @param directory directory of the segments
+     * @param segmentRecords number of records per segment
+     * @param capacity minimum number of records waiting to be written
+     * before records are dropped
+     * @param commitMillis milliseconds between commits
+     * @throws IOException if the segments already in the directory cannot
+     * be read
+     */
+    public EventLog(Path directory, int segmentRecords, int capacity, int commitMillis) throws IOException{
+        if (segmentRecords <= 0 || capacity <= 0 || commitMillis <= 0){
+            throw new IllegalArgumentException("Bad event log settings: " + segmentRecords
+                    + " records per segment, " + capacity + " buffered, commit every "
+                    + commitMillis + " ms");
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(commitMillis);
+
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity){
+            slotCount <<= 1;
+        }
+        slots = new long[slotCount * RECORD_LONGS];
+        sequence = new AtomicLongArray(slotCount);
+        for (int i = 0; i < slotCount; i++){
+            sequence.set(i, i);
+        }
+        mask = slotCount - 1;
+
+        // go on from the last record of earlier runs
+        List<Path> segments = segments(directory);
+        segmentNumber = segments.isEmpty() ? 0 : number(segments.get(segments.size() - 1));
+        long lastGameID = 0;
+        nextSequence = 0;
+        EventRecord last = new EventRecord();
+        for (int i = segments.size() - 1; i >= 0; i--){
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)){
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                boolean found = false;
+                while (last.read(buffer)){
+                    found = true;
+                    lastGameID = Math.max(lastGameID, last.getGameID());
+                    nextSequence = last.getSequence() + 1;
+                }
+                if (found){
+                    break;
+                }
+            }
+        }
+        nextGameID = new AtomicLong(lastGameID + 1);
+        committed = nextSequence;
+
+        writer = new Thread(this::write, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Gets the default log, opening it the first time; it is closed when
+     * the JVM shuts down
+     * @return the default log, or null if it is off or cannot be opened
+     */
+    public static synchronized EventLog getDefault(){
+        if (!defaultOpened){
+            defaultOpened = true;
+            if (!DIRECTORY.equals("off")){
+                try{
+                    EventLog log = new EventLog(Paths.get(DIRECTORY), SEGMENT_RECORDS, CAPACITY, COMMIT);
+                    Runtime.getRuntime().addShutdownHook(new Thread(log::close, "event-log-close"));
+                    defaultLog = log;
+                } catch (IOException e){
+                    System.err.println("Event log " + DIRECTORY + " cannot be opened; games are not recorded.");
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultLog;
+    }
+
+    /**
+     * Lists the segments of a log
+     * @param directory directory of the log
+     * @return paths of the segments, oldest first; empty if there is no
+     * such directory
+     * @throws IOException
+     */
+    public static List<Path> segments(Path directory) throws IOException{
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)){
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)){
+            for (Path file : files){
+                if (number(file) >= 0){
+                    segments.add(file);
+                }
+            }
+        }
+        // names have the same number of digits
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * @return number of a segment, or -1 if the path is not a segment
+     */
+    private static int number(Path file){
+        String name = file.getFileName().toString();
+        String digits = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+        if (digits.length() != 6 || !digits.chars().allMatch(Character::isDigit)){
+            return -1;
+        }
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * Starts recording a new game
+     * @return sink for the events of the game, to be used by one thread
+     */
+    public GameEventSink newGame(){
+        return new Recorder(nextGameID.getAndIncrement(), 0);
+    }
+
+    /**
+     * Goes on recording a game after it was restored, e.g. by another
+     * process
+     * @param gameID ID of the game
+     * @param eventCount number of events of the game recorded before
+     * @return sink for the rest of the events of the game, to be used by
+     * one thread
+     */
+    public GameEventSink resumeGame(long gameID, int eventCount){
+        // the game's last records may not have been committed
+        nextGameID.accumulateAndGet(gameID + 1, Math::max);
+        return new Recorder(gameID, eventCount);
+    }
+
+    /**
+     * @return number of records dropped because the ring was full or the
+     * log could not be written
+     */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * @return number of records on disk, counting from the first record of
+     * the log: records with lower sequence numbers survive a crash
+     */
+    public long getCommitted(){
+        return committed;
+    }
+
+    /**
+     * Writes and commits every record put so far, and stops the writer.
+     * Records put from now on are dropped.
+     */
+    @Override
+    public void close(){
+        closing = true;
+        LockSupport.unpark(writer);
+        try{
+            writer.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Puts a record into the ring, or counts it as dropped if the ring is
+     * full
+     * @param gameID ID of game
+     * @param header long 3 of the record: move, type, player, target, position
+     * @param payload0 long 4 of the record
+     * @param payload1 long 5 of the record
+     * @param payload2 long 6 of the record
+     * @return true iff the record was put
+     */
+    private boolean put(long gameID, long header, long payload0, long payload1, long payload2){
+        if (closing){
+            dropped.incrementAndGet();
+            return false;
+        }
+        long time = System.currentTimeMillis();
+        long t = tail.get();
+        while (true){
+            int index = (int) t & mask;
+            long difference = sequence.get(index) - t;
+            if (difference == 0){
+                if (tail.compareAndSet(t, t + 1)){
+                    int base = index * RECORD_LONGS;
+                    slots[base + 1] = time;
+                    slots[base + 2] = gameID;
+                    slots[base + 3] = header;
+                    slots[base + 4] = payload0;
+                    slots[base + 5] = payload1;
+                    slots[base + 6] = payload2;
+                    sequence.set(index, t + 1);
+                    return true;
+                }
+                t = tail.get();
+            }
+            else if (difference < 0){
+                // full: the writer is behind, or gone
+                dropped.incrementAndGet();
+                return false;
+            }
+            else{
+                // another thread claimed t
+                t = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Body of the writer thread: copies records from the ring to the
+     * segment, and commits them every commitNanos
+     */
+    private void write(){
+        long lastCommit = System.nanoTime();
+        boolean uncommitted = false;
+        try{
+            while (true){
+                // records put before close() are seen by the drain below
+                boolean last = closing;
+                int written = drain();
+                uncommitted |= written > 0;
+                long now = System.nanoTime();
+                if (uncommitted && (last || now - lastCommit >= commitNanos)){
+                    mapped.force();
+                    committed = nextSequence;
+                    uncommitted = false;
+                    lastCommit = now;
+                }
+                if (last){
+                    break;
+                }
+                if (written == 0){
+                    LockSupport.parkNanos(this, commitNanos);
+                }
+            }
+        } catch (IOException e){
+            // from now on, the ring fills up and records are dropped
+            System.err.println("Event log " + directory + " cannot be written; games are no longer recorded.");
+            e.printStackTrace();
+        } finally{
+            closeSegment();
+        }
+    }
+
+    /**
+     * Copies every record in the ring to the segment
+     * @return number of records copied
+     * @throws IOException if a segment cannot be created
+     */
+    private int drain() throws IOException{
+        int count = 0;
+        while (true){
+            int index = (int) head & mask;
+            if (sequence.get(index) != head + 1){
+                // empty, or a record is still being put
+                return count;
+            }
+            if (mapped == null || !mapped.hasRemaining()){
+                nextSegment();
+            }
+            int base = index * RECORD_LONGS;
+            record.clear();
+            record.putLong(nextSequence);
+            for (int i = 1; i <= 6; i++){
+                record.putLong(slots[base + i]);
+            }
+            record.putInt(EventRecord.MAGIC);
+            checksum.reset();
+            checksum.update(record.array(), 0, EventRecord.CHECKED_BYTES);
+            record.putInt((int) checksum.getValue());
+            record.flip();
+            mapped.put(record);
+
+            sequence.lazySet(index, head + mask + 1);
+            head++;
+            nextSequence++;
+            count++;
+        }
+    }
+
+    /**
+     * Commits and closes the segment being written, if any, and creates
+     * and maps the next one
+     * @throws IOException
+     */
+    private void nextSegment() throws IOException{
+        if (mapped != null){
+            mapped.force();
+            committed = nextSequence;
+        }
+        closeSegment();
+        Files.createDirectories(directory);
+        segmentNumber++;
+        Path file = directory.resolve(String.format("%s%06d%s", PREFIX, segmentNumber, SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = segment.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * EventRecord.SIZE);
+    }
+
+    private void closeSegment(){
+        if (segment == null){
+            return;
+        }
+        try{
+            segment.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+        segment = null;
+        mapped = null;
+    }
+
+    /**
+     * Records the events of one game; used by the thread running the game
+     */
+    private final class Recorder implements GameEventSink {
+
+        private final long gameID;
+        private int move;
+        
+        // records of this game dropped since the last one put
+        private long lost = 0;
+
+        Recorder(long gameID, int move){
+            this.gameID = gameID;
+            this.move = move;
+        }
+
+        /**
+         * @return long 3 of a record of the next move
+         */
+        private long header(EventRecord.Type type, int playerID, int target, int position){
+            return (long) move++ << 32
+                    | type.ordinal() << 24
+                    | (playerID & 0xFF) << 16
+                    | (target & 0xFF) << 8
+                    | (position & 0xFF);
+        }
+
+        /**
+         * @return long 4 of a record of a guess or declaration
+         */
+        private long result(int rank, boolean correct){
+            return (long) (rank & 0xFF) << 56 | (long) (correct ? EventRecord.CORRECT : 0) << 48;
+        }
+
+        /**
+         * Puts a record of the game, after a LOST record if records of the
+         * game were dropped before it.  A record is never put after a gap
+         * without such a marker.  
+         */
+        private void record(EventRecord.Type type, int playerID, int target, int position, 
+                long payload0, long payload1, long payload2){
+            if (lost > 0){
+                if (!put(gameID, header(EventRecord.Type.LOST, -1, -1, -1), lost, 0, 0)){
+                    lost++;
+                    return;
+                }
+                lost = 0;
+            }
+            if (!put(gameID, header(type, playerID, target, position), payload0, payload1, payload2)){
+                lost++;
+            }
+        }
+
+        private void move(EventRecord.Type type, int playerID, int position){
+            record(type, playerID, -1, position, result(-1, false), 0, 0);
+        }
+
+        /**
+         * @return codes of cards from to from+7 (numbered 6*owner+position)
+         * of a board, packed as bytes of a record
+         */
+        private long codes(GameBoard board, int from){
+            long codes = 0;
+            for (int i = from; i < from + 8; i++){
+                codes = codes << 8 | board.getCardCode(i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE);
+            }
+            return codes;
+        }
+
+        @Override
+        public void dealt(GameBoard board){
+            record(EventRecord.Type.DEAL, -1, -1, -1,
+                    codes(board, 0), codes(board, 8), codes(board, 16));
+        }
+
+        @Override
+        public void swapped(int playerID, int position){
+            move(EventRecord.Type.SWAP, playerID, position);
+        }
+
+        @Override
+        public void passed(int playerID, int position){
+            move(EventRecord.Type.PASS, playerID, position);
+        }
+
+        @Override
+        public void guessed(int playerID, int target, int position, int rank, boolean correct){
+            record(EventRecord.Type.GUESS, playerID, target, position,
+                    result(rank, correct), 0, 0);
+        }
+
+        @Override
+        public void shown(int playerID, int position){
+            move(EventRecord.Type.SHOW, playerID, position);
+        }
+
+        @Override
+        public void declared(int playerID){
+            move(EventRecord.Type.DECLARE, playerID, -1);
+        }
+
+        @Override
+        public void declaredCard(int playerID, int target, int position, int rank, boolean correct){
+            record(EventRecord.Type.DECLARE_CARD, playerID, target, position,
+                    result(rank, correct), 0, 0);
+        }
+
+        @Override
+        public void ended(int winnerID){
+            move(EventRecord.Type.END, winnerID, -1);
+        }
+
+        @Override
+        public long getGameID(){
+            return gameID;
+        }
+
+        @Override
+        public int getEventCount(){
+            return move;
+        }
+
+    }
+
+}
@@ -0,0 +1,230 @@
+package history;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+import game.GameBoard;
+
+/**
+ * A record of the event log (see EventLog), decoded.  Records are SIZE
+ * bytes, big-endian:
+ *
+ *   0  sequence  long  number of the record in the log
+ *   8  time      long  System.currentTimeMillis() when the event happened
+ *  16  game      long  ID of the game, unique within the log
+ *  24  move      int   number of the event within the game, from 0
+ *  28  type      byte  ordinal of Type
+ *  29  player    byte  player who moved, or -1
+ *  30  target    byte  owner of the card guessed or declared, or -1
+ *  31  position  byte  position of the card, or -1
+ *  32  rank      byte  rank guessed or declared, or -1
+ *  33  flags     byte  CORRECT if the guess or declaration was right
+ *  34  zero
+ *
+ * except that for DEAL, bytes 32-55 are the codes of the 24 cards as dealt
+ * (see Card.encode), for player 0 position 0 to player 3 position 5, and 
+ * for LOST, bytes 32-39 are the number of records of the game that were 
+ * dropped (see EventLog) just before it, a long.
+ *
+ *  56  magic     int   MAGIC
+ *  60  checksum  int   CRC-32C of bytes 0-59
+ *
+ * A record whose magic or checksum is wrong was never written completely,
+ * and ends the segment it is in.
+ *
+ * Instances are reused: read overwrites every field.
+ */
+public class EventRecord {
+
+    /**
+     * The kinds of events
+     */
+    public enum Type {
+        DEAL, SWAP, PASS, GUESS, SHOW, DECLARE, DECLARE_CARD, END, 
+        /** records of the game are missing before this one */
+        LOST
+    }
+
+    public static final int SIZE = 64;
+
+    static final int MAGIC = 0x4C474531; // "LGE1"
+    static final int CHECKED_BYTES = 60;
+    static final int CARDS = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+
+    // flags
+    static final int CORRECT = 1;
+
+    private static final Type[] TYPES = Type.values();
+
+    private long sequence;
+    private long time;
+    private long gameID;
+    private int move;
+    private Type type;
+    private int playerID;
+    private int target;
+    private int position;
+    private int rank;
+    private boolean correct;
+    private long lost;
+    private final byte[] codes = new byte[CARDS];
+
+    private final CRC32C checksum = new CRC32C();
+
+    /**
+     * Decodes the record at the position of a buffer, and moves the
+     * position past it if it is valid
+     * @param buffer buffer of a segment of the log
+     * @return true iff a whole, valid record was there
+     */
+    public boolean read(ByteBuffer buffer){
+        int start = buffer.position();
+        if (buffer.remaining() < SIZE || buffer.getInt(start + CHECKED_BYTES - 4) != MAGIC){
+            return false;
+        }
+        checksum.reset();
+        checksum.update(buffer.duplicate().limit(start + CHECKED_BYTES));
+        if ((int) checksum.getValue() != buffer.getInt(start + CHECKED_BYTES)){
+            return false;
+        }
+        int typeOrdinal = buffer.get(start + 28);
+        if (typeOrdinal < 0 || typeOrdinal >= TYPES.length){
+            return false;
+        }
+
+        sequence = buffer.getLong(start);
+        time = buffer.getLong(start + 8);
+        gameID = buffer.getLong(start + 16);
+        move = buffer.getInt(start + 24);
+        type = TYPES[typeOrdinal];
+        playerID = buffer.get(start + 29);
+        target = buffer.get(start + 30);
+        position = buffer.get(start + 31);
+        lost = 0;
+        if (type == Type.DEAL){
+            buffer.get(start + 32, codes);
+            rank = -1;
+            correct = false;
+        }
+        else if (type == Type.LOST){
+            lost = buffer.getLong(start + 32);
+            rank = -1;
+            correct = false;
+        }
+        else{
+            rank = buffer.get(start + 32);
+            correct = (buffer.get(start + 33) & CORRECT) != 0;
+        }
+        buffer.position(start + SIZE);
+        return true;
+    }
+
+    public long getSequence(){
+        return sequence;
+    }
+
+    /**
+     * @return System.currentTimeMillis() when the event happened
+     */
+    public long getTime(){
+        return time;
+    }
+
+    public long getGameID(){
+        return gameID;
+    }
+
+    /**
+     * @return number of the event within its game, from 0 (the deal)
+     */
+    public int getMove(){
+        return move;
+    }
+
+    public Type getType(){
+        return type;
+    }
+
+    /**
+     * @return player who moved, or -1 (DEAL); for END, one of the winners
+     */
+    public int getPlayerID(){
+        return playerID;
+    }
+
+    /**
+     * @return owner of the card guessed or declared (GUESS, DECLARE_CARD),
+     * or -1
+     */
+    public int getTarget(){
+        return target;
+    }
+
+    /**
+     * @return position of the card (SWAP, PASS, GUESS, SHOW, DECLARE_CARD),
+     * or -1
+     */
+    public int getPosition(){
+        return position;
+    }
+
+    /**
+     * @return rank guessed or declared (GUESS, DECLARE_CARD), or -1
+     */
+    public int getRank(){
+        return rank;
+    }
+
+    /**
+     * @return true iff the guess or declaration was right
+     */
+    public boolean isCorrect(){
+        return correct;
+    }
+
+    /**
+     * @return number of records of the game dropped just before this one 
+     * (LOST), or 0
+     */
+    public long getLost(){
+        return lost;
+    }
+
+    /**
+     * Gets a card as dealt (DEAL)
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return code of the card (see Card.encode)
+     */
+    public int getDealtCode(int playerID, int card){
+        return codes[playerID * GameBoard.HAND_SIZE + card];
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder text = new StringBuilder();
+        text.append('#').append(sequence).append(" game ").append(gameID)
+            .append(" move ").append(move).append(' ').append(type);
+        if (type == Type.DEAL){
+            for (byte code : codes){
+                text.append(' ').append(Integer.toHexString(code & 0xFF));
+            }
+            return text.toString();
+        }
+        if (type == Type.LOST){
+            return text.append(' ').append(lost).append(" records").toString();
+        }
+        text.append(" player ").append(playerID);
+        if (target >= 0){
+            text.append(" target ").append(target);
+        }
+        if (position >= 0){
+            text.append(" position ").append(position);
+        }
+        if (rank >= 0){
+            text.append(" rank ").append(rank).append(correct ? " correct" : " incorrect");
+        }
+        return text.toString();
+    }
+
+}
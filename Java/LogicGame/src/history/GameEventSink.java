@@ -0,0 +1,100 @@
+package history;
+
+import game.GameBoard;
+
+/**
+ * Receives the events of one game as they happen: the deal, and every
+ * move that changes the board.  Called by the thread that runs the game,
+ * so implementations must not block.
+ */
+public interface GameEventSink {
+
+    /**
+     * A sink that records nothing
+     */
+    public static final GameEventSink NONE = new GameEventSink(){
+        public void dealt(GameBoard board){}
+        public void swapped(int playerID, int position){}
+        public void passed(int playerID, int position){}
+        public void guessed(int playerID, int target, int position, int rank, boolean correct){}
+        public void shown(int playerID, int position){}
+        public void declared(int playerID){}
+        public void declaredCard(int playerID, int target, int position, int rank, boolean correct){}
+        public void ended(int winnerID){}
+        public long getGameID(){ return -1; }
+        public int getEventCount(){ return 0; }
+    };
+
+    /**
+     * The cards have been dealt
+     * @param board board as dealt, before any swap
+     */
+    public void dealt(GameBoard board);
+
+    /**
+     * A player asked to swap a card during setup (see
+     * GameBoard.swapTwoEqualCards; the swap may have changed nothing)
+     * @param playerID 0-3
+     * @param position 0-5, position of card
+     */
+    public void swapped(int playerID, int position);
+
+    /**
+     * A player passed a card to its partner
+     * @param playerID 0-3
+     * @param position 0-5, position of card
+     */
+    public void passed(int playerID, int position);
+
+    /**
+     * A player guessed a card
+     * @param playerID 0-3, player who guessed
+     * @param target 0-3, owner of card
+     * @param position 0-5, position of card
+     * @param rank 1-12, rank guessed
+     * @param correct true iff the guess was right
+     */
+    public void guessed(int playerID, int target, int position, int rank, boolean correct);
+
+    /**
+     * A player showed a card to everyone
+     * @param playerID 0-3
+     * @param position 0-5, position of card
+     */
+    public void shown(int playerID, int position);
+
+    /**
+     * A player declared
+     * @param playerID 0-3
+     */
+    public void declared(int playerID);
+
+    /**
+     * The declarer declared a card
+     * @param playerID 0-3, declarer
+     * @param target 0-3, owner of card
+     * @param position 0-5, position of card
+     * @param rank 1-12, rank declared
+     * @param correct true iff the declaration was right
+     */
+    public void declaredCard(int playerID, int target, int position, int rank, boolean correct);
+
+    /**
+     * The game is over
+     * @param winnerID 0-3, one of the two winners; the other is its partner.
+     * -1 if every player left before the end.
+     */
+    public void ended(int winnerID);
+
+    /**
+     * @return ID of the game in its log, or -1 if it is not recorded
+     */
+    public long getGameID();
+
+    /**
+     * @return number of events received so far, counting the deal; a game
+     * restored from a snapshot goes on from there (see EventLog.resumeGame)
+     */
+    public int getEventCount();
+
+}
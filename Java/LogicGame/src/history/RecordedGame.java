@@ -0,0 +1,338 @@
+package history;
+
+import java.util.Arrays;
+
+import game.GameBoard;
+
+/**
+ * A game read from the event log, which can rebuild its board as it was
+ * after any move.  The board is snapshotted every SNAPSHOT_INTERVAL moves
+ * while the game is read, so rebuilding it re-applies fewer than
+ * SNAPSHOT_INTERVAL moves, wherever in the game it is.
+ *
+ * Moves are numbered as in the log: move 0 is the deal, and every later
+ * event (swap, pass, guess, show, declaration, end) is a move.  If records
+ * of the game were dropped from the log (see EventRecord.Type.LOST), the
+ * game is read up to the first gap and is not complete.
+ *
+ * Not thread-safe.
+ */
+public class RecordedGame {
+
+    public static final int SNAPSHOT_INTERVAL = 16;
+
+    /*
+     * Each move is packed into an int: type << 24 | player << 16 | target
+     * << 12 | position << 8 | rank << 1 | correct, with 0xF standing for -1
+     * in the 4-bit fields (see pack).  Only moves[0] to moves[moveCount-1]
+     * are moves.
+     */
+    private int[] moves = new int[64];
+    private int moveCount = 0;
+
+    /*
+     * Snapshot s is the board after move s*SNAPSHOT_INTERVAL, as
+     * SNAPSHOT_LONGS longs from snapshots[s*SNAPSHOT_LONGS]: the 24 card
+     * codes, 8 to a long, then the four visibility bitboards, two to a long
+     */
+    private static final int SNAPSHOT_LONGS = 5;
+    private long[] snapshots = new long[4 * SNAPSHOT_LONGS];
+
+    private static final EventRecord.Type[] TYPES = EventRecord.Type.values();
+    private static final int CARDS = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+
+    private final long gameID;
+
+    // number of records missing after the last move read, if a gap was found
+    private long lost = 0;
+
+    // board after the last move added, for snapshots (null once the game
+    // is over)
+    private GameBoard board;
+    private final byte[] codes = new byte[CARDS];
+    private final int[] visibleTo = new int[GameBoard.NUM_PLAYERS];
+
+    /**
+     * Starts a game from its deal
+     * @param deal DEAL record of the game
+     */
+    RecordedGame(EventRecord deal){
+        assert (deal.getType() == EventRecord.Type.DEAL && deal.getMove() == 0);
+        this.gameID = deal.getGameID();
+        board = dealtBoard(deal);
+        moves[moveCount++] = pack(deal);
+        snapshot();
+    }
+
+    /**
+     * Creates the board of a deal
+     * @param deal DEAL record
+     * @return board as dealt: every player sees their own cards
+     */
+    static GameBoard dealtBoard(EventRecord deal){
+        byte[] codes = new byte[CARDS];
+        int[] visibleTo = new int[GameBoard.NUM_PLAYERS];
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                codes[player * GameBoard.HAND_SIZE + card] = (byte) deal.getDealtCode(player, card);
+            }
+            visibleTo[player] = ((1 << GameBoard.HAND_SIZE) - 1) << (player * GameBoard.HAND_SIZE);
+        }
+        return new GameBoard(codes, visibleTo);
+    }
+
+    /**
+     * Adds the next move of the game
+     * @param event record of the move
+     */
+    void add(EventRecord event){
+        assert (event.getGameID() == gameID && event.getMove() == moveCount);
+        if (moveCount == moves.length){
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        int move = pack(event);
+        moves[moveCount++] = move;
+        apply(board, move);
+        if ((moveCount - 1) % SNAPSHOT_INTERVAL == 0){
+            snapshot();
+        }
+        if (event.getType() == EventRecord.Type.END){
+            board = null;
+        }
+    }
+
+    /**
+     * Ends the game at a gap in its records: the moves after the last one
+     * added cannot be replayed
+     * @param records number of records missing
+     */
+    void lost(long records){
+        assert (records > 0);
+        lost = records;
+        board = null;
+    }
+
+    /**
+     * Saves the board after the last move as the next snapshot
+     */
+    private void snapshot(){
+        int base = (moveCount - 1) / SNAPSHOT_INTERVAL * SNAPSHOT_LONGS;
+        if (base + SNAPSHOT_LONGS > snapshots.length){
+            snapshots = Arrays.copyOf(snapshots, snapshots.length * 2);
+        }
+        for (int i = 0; i < 3; i++){
+            long packed = 0;
+            for (int j = 8 * i; j < 8 * i + 8; j++){
+                packed = packed << 8 | board.getCardCode(j / GameBoard.HAND_SIZE, j % GameBoard.HAND_SIZE);
+            }
+            snapshots[base + i] = packed;
+        }
+        snapshots[base + 3] = (long) board.getVisibleCards(1) << 32 | board.getVisibleCards(0);
+        snapshots[base + 4] = (long) board.getVisibleCards(3) << 32 | board.getVisibleCards(2);
+    }
+
+    /**
+     * Rebuilds a board from a snapshot
+     * @param snapshot number of snapshot
+     * @return board as it was after move snapshot*SNAPSHOT_INTERVAL
+     */
+    private GameBoard restore(int snapshot){
+        int base = snapshot * SNAPSHOT_LONGS;
+        for (int j = 0; j < CARDS; j++){
+            codes[j] = (byte) (snapshots[base + j / 8] >>> (56 - 8 * (j % 8)));
+        }
+        visibleTo[0] = (int) snapshots[base + 3];
+        visibleTo[1] = (int) (snapshots[base + 3] >>> 32);
+        visibleTo[2] = (int) snapshots[base + 4];
+        visibleTo[3] = (int) (snapshots[base + 4] >>> 32);
+        return new GameBoard(codes, visibleTo);
+    }
+
+    public long getGameID(){
+        return gameID;
+    }
+
+    /**
+     * @return number of moves read, counting the deal
+     */
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * @return true iff the game's END was read
+     */
+    public boolean isOver(){
+        return getType(moveCount - 1) == EventRecord.Type.END;
+    }
+
+    /**
+     * @return true iff every move of the game was read, from its deal to
+     * its END
+     */
+    public boolean isComplete(){
+        return lost == 0 && isOver();
+    }
+
+    /**
+     * @return number of records of the game missing right after the last
+     * move read, or 0 if no gap was found
+     */
+    public long getLost(){
+        return lost;
+    }
+
+    /**
+     * Rebuilds the board as it was after a move
+     * @param move 0 to getMoveCount()-1
+     * @return a new board, after the move; changing it changes nothing else
+     */
+    public GameBoard boardAt(int move){
+        if (move < 0 || move >= moveCount){
+            throw new IndexOutOfBoundsException("Move: " + move + ", Moves: " + moveCount);
+        }
+        int snapshot = move / SNAPSHOT_INTERVAL;
+        GameBoard board = restore(snapshot);
+        for (int m = snapshot * SNAPSHOT_INTERVAL + 1; m <= move; m++){
+            apply(board, moves[m]);
+        }
+        return board;
+    }
+
+    /**
+     * Applies a move to a board, e.g. to step forward from boardAt(move-1)
+     * @param board board after the move before
+     * @param move 1 to getMoveCount()-1
+     */
+    public void applyMove(GameBoard board, int move){
+        if (move <= 0 || move >= moveCount){
+            throw new IndexOutOfBoundsException("Move: " + move + ", Moves: " + moveCount);
+        }
+        apply(board, moves[move]);
+    }
+
+    public EventRecord.Type getType(int move){
+        return TYPES[moves[move] >>> 24];
+    }
+
+    /**
+     * @return player who made a move, or -1 (DEAL); for END, one of the 
+     * winners, or -1 if the game was abandoned
+     */
+    public int getPlayerID(int move){
+        return field(moves[move] >>> 16);
+    }
+
+    /**
+     * @return owner of the card guessed or declared, or -1
+     */
+    public int getTarget(int move){
+        return field(moves[move] >>> 12);
+    }
+
+    /**
+     * @return position of the card of a move, or -1
+     */
+    public int getPosition(int move){
+        return field(moves[move] >>> 8);
+    }
+
+    /**
+     * @return rank guessed or declared, or -1
+     */
+    public int getRank(int move){
+        int rank = (moves[move] >>> 1) & 0x7F;
+        return rank == 0x7F ? -1 : rank;
+    }
+
+    /**
+     * @return true iff a guess or declaration was right
+     */
+    public boolean isCorrect(int move){
+        return (moves[move] & 1) != 0;
+    }
+
+    /**
+     * @return a move as text, e.g. "GUESS player 0 target 1 position 3 rank
+     * 7 correct"
+     */
+    public String describeMove(int move){
+        StringBuilder text = new StringBuilder(getType(move).toString());
+        if (getPlayerID(move) >= 0){
+            text.append(" player ").append(getPlayerID(move));
+        }
+        if (getTarget(move) >= 0){
+            text.append(" target ").append(getTarget(move));
+        }
+        if (getPosition(move) >= 0){
+            text.append(" position ").append(getPosition(move));
+        }
+        if (getRank(move) >= 0){
+            text.append(" rank ").append(getRank(move))
+                .append(isCorrect(move) ? " correct" : " incorrect");
+        }
+        return text.toString();
+    }
+
+    private static int field(int bits){
+        bits &= 0xF;
+        return bits == 0xF ? -1 : bits;
+    }
+
+    private static int pack(EventRecord event){
+        return event.getType().ordinal() << 24
+                | (event.getPlayerID() & 0xF) << 16
+                | (event.getTarget() & 0xF) << 12
+                | (event.getPosition() & 0xF) << 8
+                | (event.getRank() & 0x7F) << 1
+                | (event.isCorrect() ? 1 : 0);
+    }
+
+    /**
+     * Applies a packed move to a board
+     */
+    private static void apply(GameBoard board, int move){
+        apply(board, TYPES[move >>> 24], field(move >>> 16), field(move >>> 12),
+                field(move >>> 8), (move & 1) != 0);
+    }
+
+    /**
+     * Applies an event to a board, as LogicServer did when it happened
+     * @param board board before the event
+     * @param event any event but DEAL
+     */
+    static void apply(GameBoard board, EventRecord event){
+        apply(board, event.getType(), event.getPlayerID(), event.getTarget(),
+                event.getPosition(), event.isCorrect());
+    }
+
+    private static void apply(GameBoard board, EventRecord.Type type, int playerID,
+            int target, int position, boolean correct){
+        switch (type){
+        case SWAP:
+            board.swapTwoEqualCards(playerID, position);
+            break;
+        case PASS:
+            board.revealCardToPartner(playerID, position);
+            break;
+        case GUESS:
+        case DECLARE_CARD:
+            if (correct){
+                board.revealCardToAll(target, position);
+            }
+            break;
+        case SHOW:
+            board.revealCardToAll(playerID, position);
+            break;
+        case DECLARE:
+            board.makePlayerGameViewPublic(playerID);
+            break;
+        case END:
+            board.makeAllCardsPublic();
+            break;
+        default:
+            throw new IllegalArgumentException("Not a move: " + type);
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+package history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import game.GameBoard;
+
+/**
+ * Reads the games recorded in an event log (see EventLog), either one at a
+ * time for random access (load), or all of them in one sequential pass for
+ * analysis (stream).  Either way, a game whose records were dropped from
+ * the log is only replayed up to the gap, and is reported as incomplete.
+ *
+ * The segments are memory-mapped when the engine is created; records
+ * appended after that are not seen.  Not thread-safe.
+ */
+public class ReplayEngine {
+
+    /**
+     * Receives the events of a log in bulk (see stream)
+     */
+    public interface Visitor {
+        /**
+         * Handles an event, after it has been applied to its game's board
+         * @param event the event; reused for the next event
+         * @param board board of the event's game after the event; changes
+         * with the next event of the game, and is not used again after END.
+         * For a LOST event, which ends the replay of its game, null.
+         */
+        public void visit(EventRecord event, GameBoard board);
+    }
+
+    // the mapped segments, oldest first
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    // location of the DEAL record of each game: segment << 32 | offset (null
+    // until the first load)
+    private Map<Long, Long> index = null;
+
+    private final EventRecord record = new EventRecord();
+
+    /**
+     * Opens the segments of a log for reading
+     * @param directory directory of the log
+     * @throws IOException if a segment cannot be read
+     */
+    public ReplayEngine(Path directory) throws IOException{
+        for (Path file : EventLog.segments(directory)){
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+    }
+
+    /**
+     * Loads a game
+     * @param gameID ID of game
+     * @return the game, as far as it was recorded (see
+     * RecordedGame.isComplete), or null if its deal is not in the log
+     */
+    public RecordedGame load(long gameID){
+        if (index == null){
+            buildIndex();
+        }
+        Long location = index.get(gameID);
+        if (location == null){
+            return null;
+        }
+        int segment = (int) (location >>> 32);
+        ByteBuffer buffer = segments.get(segment).duplicate();
+        buffer.position((int) (long) location);
+        record.read(buffer);
+        RecordedGame game = new RecordedGame(record);
+
+        // the records of other tables are interleaved with the game's
+        while (true){
+            while (record.read(buffer)){
+                if (record.getGameID() != gameID){
+                    continue;
+                }
+                if (record.getType() == EventRecord.Type.LOST){
+                    // records were dropped: the rest cannot be replayed
+                    game.lost(record.getLost());
+                    return game;
+                }
+                if (record.getMove() < game.getMoveCount()){
+                    // recorded again by a host that restored the game from
+                    // a snapshot saved before the first record was (see
+                    // EventLog.resumeGame); the first one stands
+                    continue;
+                }
+                if (record.getMove() != game.getMoveCount()){
+                    // the log always marks a gap, but a gap is a gap
+                    game.lost(record.getMove() - game.getMoveCount());
+                    return game;
+                }
+                game.add(record);
+                if (record.getType() == EventRecord.Type.END){
+                    return game;
+                }
+            }
+            if (++segment == segments.size()){
+                return game;
+            }
+            buffer = segments.get(segment).duplicate();
+        }
+    }
+
+    /**
+     * Finds the deal of every game
+     */
+    private void buildIndex(){
+        index = new HashMap<>();
+        for (int segment = 0; segment < segments.size(); segment++){
+            ByteBuffer buffer = segments.get(segment).duplicate();
+            for (int offset = 0; record.read(buffer); offset = buffer.position()){
+                if (record.getType() == EventRecord.Type.DEAL){
+                    index.put(record.getGameID(), (long) segment << 32 | offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays every game of the log in one pass, in the order the events
+     * were recorded.  Games whose deal is not in the log are skipped, and a
+     * game stops at its first LOST record, which is visited.
+     * @param visitor receiver of every event
+     * @return number of events visited
+     */
+    public long stream(Visitor visitor){
+        // boards of the games in progress
+        Map<Long, GameBoard> boards = new HashMap<>();
+        long count = 0;
+        for (ByteBuffer segment : segments){
+            ByteBuffer buffer = segment.duplicate();
+            while (record.read(buffer)){
+                GameBoard board;
+                if (record.getType() == EventRecord.Type.DEAL){
+                    board = RecordedGame.dealtBoard(record);
+                    boards.put(record.getGameID(), board);
+                }
+                else{
+                    board = boards.get(record.getGameID());
+                    if (board == null){
+                        continue;
+                    }
+                    if (record.getType() == EventRecord.Type.LOST){
+                        boards.remove(record.getGameID());
+                        board = null;
+                    }
+                    else{
+                        RecordedGame.apply(board, record);
+                        if (record.getType() == EventRecord.Type.END){
+                            boards.remove(record.getGameID());
+                        }
+                    }
+                }
+                visitor.visit(record, board);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prints a recorded game, and every player's view of its board after a
+     * move; or, without a game, replays the whole log and prints how long
+     * it took
+     * @param args directory of log, ID of game, move (default: the last)
+     */
+    public static void main(String[] args) throws IOException{
+        if (args.length < 1 || args.length > 3){
+            System.err.println("Usage: ReplayEngine directory [gameID [move]]");
+            System.exit(1);
+        }
+        ReplayEngine engine = new ReplayEngine(Paths.get(args[0]));
+        if (args.length == 1){
+            // games ended, games cut short by lost records
+            int[] games = new int[2];
+            long start = System.nanoTime();
+            long events = engine.stream((event, board) -> {
+                if (event.getType() == EventRecord.Type.END){
+                    games[0]++;
+                }
+                else if (event.getType() == EventRecord.Type.LOST){
+                    games[1]++;
+                }
+            });
+            long elapsed = System.nanoTime() - start;
+            System.out.println(games[0] + " games, " + games[1] + " incomplete, " + events
+                    + " events in " + elapsed / 1000000 + " ms");
+            return;
+        }
+
+        RecordedGame game = engine.load(Long.parseLong(args[1]));
+        if (game == null){
+            System.err.println("No game " + args[1] + " in " + args[0]);
+            System.exit(1);
+        }
+        int move = args.length == 3 ? Integer.parseInt(args[2]) : game.getMoveCount() - 1;
+        for (int m = 0; m < game.getMoveCount(); m++){
+            System.out.println((m == move ? "> " : "  ") + m + " " + game.describeMove(m));
+        }
+        if (game.getLost() > 0){
+            System.out.println("Incomplete: " + game.getLost() + " records lost after move "
+                    + (game.getMoveCount() - 1));
+        }
+        GameBoard board = game.boardAt(move);
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            System.out.println("Player " + player + " after move " + move + ":");
+            System.out.println(board.showPlayerViewOfBoard(player));
+        }
+    }
+
+}
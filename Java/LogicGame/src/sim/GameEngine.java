@@ -0,0 +1,167 @@
+package sim;
+
+import java.util.Random;
+
+import app.TurnState;
+import app.TurnStateMachine;
+import app.TurnStateMachine.Move;
+import game.GameBoard;
+
+/**
+ * Plays complete games of Logic in the calling thread, with the moves of 
+ * each player decided by a PlayerStrategy: no server, sockets, queues or 
+ * messages.  The rules are those of LogicServer: player 2 passes first, a
+ * pass is followed by a guess of the passer's partner, a right guess or a
+ * show by a pass of the player before, and any player may declare before 
+ * any move.  
+ * 
+ * Not thread-safe; use one engine per thread.  
+ */
+public class GameEngine {
+    
+    // games that last longer are stopped without a winner
+    public static final int MAX_MOVES = 1000;
+    
+    // most swaps a player may make during setup
+    public static final int MAX_SWAPS = 24;
+    
+    private final PlayerStrategy[] strategies;
+    private final PlayerView[] views = new PlayerView[4];
+    
+    /**
+     * Creates an engine
+     * @param strategies strategies[x] decides the moves of player x
+     */
+    public GameEngine(PlayerStrategy[] strategies){
+        if (strategies.length != 4){
+            throw new IllegalArgumentException("Need 4 strategies, got " + strategies.length);
+        }
+        this.strategies = strategies.clone();
+        for (int player = 0; player < 4; player++){
+            views[player] = new PlayerView(player);
+        }
+    }
+    
+    /**
+     * Encodes a guess, for PlayerStrategy.chooseGuess
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @param rank 1-12, rank guessed
+     * @return the guess as an int
+     */
+    public static int encodeGuess(int playerID, int card, int rank){
+        return (playerID << 8) | (card << 4) | rank;
+    }
+    
+    /**
+     * Plays a game
+     * @param random source of randomness for the deal and the strategies; a
+     * Random with a given seed always plays the same game
+     * @return outcome of the game
+     */
+    public GameResult play(Random random){
+        GameBoard board = new GameBoard(random);
+        for (PlayerView view : views){
+            view.attach(board, random);
+        }
+        
+        // SETUP
+        for (int player = 0; player < 4; player++){
+            for (int swaps = 0; swaps < MAX_SWAPS; swaps++){
+                int card = strategies[player].chooseSwap(views[player]);
+                if (card < 0){
+                    break;
+                }
+                checkPosition(player, card);
+                board.swapTwoEqualCards(player, card);
+            }
+        }
+        
+        // MAIN
+        TurnStateMachine turns = new TurnStateMachine();
+        // Player 0 is first to guess, so Player 2 passes first
+        turns.setState(2, TurnState.PASS);
+        int current = 2;
+        for (int moves = 0; moves < MAX_MOVES; moves++){
+            for (int i = 0; i < 4; i++){
+                int player = (current + i) % 4;
+                if (strategies[player].shouldDeclare(views[player])){
+                    return declare(board, player, moves);
+                }
+            }
+            
+            switch (turns.stateOf(current)){
+            case PASS:{
+                int card = strategies[current].choosePass(views[current]);
+                checkPosition(current, card);
+                board.revealCardToPartner(current, card);
+                current = turns.apply(current, Move.PASS, true);
+                break;
+            }
+            case GUESS:{
+                if (!board.hasGuessableCard(current)){
+                    // nothing left to guess, so the guesser knows every card
+                    return declare(board, current, moves);
+                }
+                int guess = strategies[current].chooseGuess(views[current]);
+                int target = guess >>> 8;
+                int card = (guess >>> 4) & 0xF;
+                int rank = guess & 0xF;
+                if (target > 3 || target % 2 == current % 2 || card > 5 
+                        || board.isVisible(current, target, card) || rank < 1 || rank > 12){
+                    throw new IllegalStateException("Player " + current + " cannot guess card " 
+                            + card + " of player " + target + ": " + rank);
+                }
+                boolean correct = board.guess(current, target, card, rank);
+                if (correct){
+                    board.revealCardToAll(target, card);
+                    current = turns.apply(current, Move.GUESS, true);
+                }
+                else{
+                    // guesser stays on to show a card
+                    turns.apply(current, Move.GUESS, false);
+                }
+                break;
+            }
+            case SHOW:{
+                int card = strategies[current].chooseShow(views[current]);
+                checkPosition(current, card);
+                board.revealCardToAll(current, card);
+                current = turns.apply(current, Move.SHOW, true);
+                break;
+            }
+            default:
+                throw new IllegalStateException("No player to move");
+            }
+        }
+        return new GameResult(-1, -1, false, MAX_MOVES);
+    }
+    
+    /**
+     * Lets a player declare every card.  All cards the declarer can see are 
+     * made public first, then the declarer declares each remaining card.  
+     * @return outcome of the game
+     */
+    private GameResult declare(GameBoard board, int declarer, int moves){
+        board.makePlayerGameViewPublic(declarer);
+        int hidden = ~board.getPublicCards() & ((1 << (GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE)) - 1);
+        for (; hidden != 0; hidden &= hidden - 1){
+            int i = Integer.numberOfTrailingZeros(hidden);
+            int target = i / GameBoard.HAND_SIZE;
+            int card = i % GameBoard.HAND_SIZE;
+            int rank = strategies[declarer].declareRank(views[declarer], target, card);
+            if (!board.hasRank(target, card, rank)){
+                // declarer and partner lose
+                return new GameResult((declarer + 1) % 2, declarer, false, moves);
+            }
+            board.revealCardToAll(target, card);
+        }
+        return new GameResult(declarer % 2, declarer, true, moves);
+    }
+    
+    private static void checkPosition(int player, int card){
+        if (card < 0 || card >= GameBoard.HAND_SIZE){
+            throw new IllegalStateException("Player " + player + " chose card " + card);
+        }
+    }
+}
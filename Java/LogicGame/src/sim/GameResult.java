@@ -0,0 +1,61 @@
+package sim;
+
+/**
+ * Immutable class.  The outcome of a game played by a GameEngine.
+ */
+public class GameResult {
+    
+    private final int winningTeam;
+    private final int declarer;
+    private final boolean declaredCorrectly;
+    private final int moves;
+    
+    /**
+     * @param winningTeam 0 if players 0 and 2 won, 1 if players 1 and 3 won,
+     * -1 if the game was stopped before anyone declared
+     * @param declarer ID of the player who declared, or -1
+     * @param declaredCorrectly true iff the declarer declared every card right
+     * @param moves number of passes, guesses and shows made
+     */
+    public GameResult(int winningTeam, int declarer, boolean declaredCorrectly, int moves){
+        this.winningTeam = winningTeam;
+        this.declarer = declarer;
+        this.declaredCorrectly = declaredCorrectly;
+        this.moves = moves;
+    }
+    
+    /**
+     * @return 0 if players 0 and 2 won, 1 if players 1 and 3 won, -1 if the 
+     * game was stopped before anyone declared
+     */
+    public int getWinningTeam(){
+        return winningTeam;
+    }
+    
+    /**
+     * @return ID of the player who declared, or -1
+     */
+    public int getDeclarer(){
+        return declarer;
+    }
+    
+    /**
+     * @return true iff the declarer declared every card right
+     */
+    public boolean isDeclaredCorrectly(){
+        return declaredCorrectly;
+    }
+    
+    /**
+     * @return number of passes, guesses and shows made
+     */
+    public int getMoves(){
+        return moves;
+    }
+    
+    @Override
+    public String toString(){
+        return "winners: " + winningTeam + ", declarer: " + declarer 
+                + (declaredCorrectly ? " (correct)" : " (wrong)") + ", moves: " + moves;
+    }
+}
@@ -0,0 +1,55 @@
+package sim;
+
+/**
+ * Decides the moves of one player in a game played by a GameEngine.  A 
+ * strategy only sees the game through the PlayerView it is given.  Moves 
+ * that are not allowed (e.g. guessing one's partner's card) make the engine 
+ * throw an IllegalStateException.  
+ */
+public interface PlayerStrategy {
+    
+    /**
+     * Chooses a card to swap with the adjacent card of equal rank during setup
+     * @param view what the player can see
+     * @return position of the card (0-5), or -1 if done setting up
+     */
+    public int chooseSwap(PlayerView view);
+    
+    /**
+     * Chooses whether to declare now, before the next move.  
+     * @param view what the player can see
+     * @return true to declare
+     */
+    public boolean shouldDeclare(PlayerView view);
+    
+    /**
+     * Chooses an own card to reveal to the partner
+     * @param view what the player can see
+     * @return position of the card (0-5)
+     */
+    public int choosePass(PlayerView view);
+    
+    /**
+     * Chooses a card of an opponent, which the player cannot see, and a 
+     * rank for it
+     * @param view what the player can see
+     * @return the guess, as returned by GameEngine.encodeGuess
+     */
+    public int chooseGuess(PlayerView view);
+    
+    /**
+     * Chooses an own card to reveal to everyone after a wrong guess
+     * @param view what the player can see
+     * @return position of the card (0-5)
+     */
+    public int chooseShow(PlayerView view);
+    
+    /**
+     * Declares the rank of a card the player cannot see
+     * @param view what the player can see
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return rank (1-12)
+     */
+    public int declareRank(PlayerView view, int playerID, int card);
+}
@@ -0,0 +1,111 @@
+package sim;
+
+import java.util.Random;
+
+import game.GameBoard;
+
+/**
+ * What one player of a simulated game is allowed to know: the suit of every
+ * card, and the rank of the cards visible to that player.  Given to a 
+ * PlayerStrategy in place of the GameBoard itself.  
+ */
+public class PlayerView {
+    
+    private final int playerID;
+    private GameBoard board;
+    private Random random;
+    
+    /**
+     * Creates the view of a player, to be attached to a board
+     * @param playerID 0-3, ID of player
+     */
+    PlayerView(int playerID){
+        this.playerID = playerID;
+    }
+    
+    /**
+     * Points this view at the board of a new game
+     * @param board board of the game
+     * @param random source of randomness of the game
+     */
+    void attach(GameBoard board, Random random){
+        this.board = board;
+        this.random = random;
+    }
+    
+    /**
+     * @return ID of the player (0-3)
+     */
+    public int getPlayerID(){
+        return playerID;
+    }
+    
+    /**
+     * @return ID of the player's partner (0-3)
+     */
+    public int getPartnerID(){
+        return (playerID + 2) % 4;
+    }
+    
+    /**
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return true iff this player can see the card
+     */
+    public boolean isVisible(int playerID, int card){
+        return board.isVisible(this.playerID, playerID, card);
+    }
+    
+    /**
+     * @param viewerID 0-3, another player
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return true iff this player knows that viewerID can see the card
+     */
+    public boolean isVisibleTo(int viewerID, int playerID, int card){
+        // a player knows who can see a card from how it is printed
+        return board.isVisible(viewerID, playerID, card);
+    }
+    
+    /**
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return rank of the card (1-12) if this player can see it, else -1
+     */
+    public int getRank(int playerID, int card){
+        return board.getVisibleRank(this.playerID, playerID, card);
+    }
+    
+    /**
+     * @param playerID 0-3, ID of card owner
+     * @param card 0-5, position of card
+     * @return suit of the card ("S" or "D")
+     */
+    public String getSuit(int playerID, int card){
+        return board.getSuit(playerID, card);
+    }
+    
+    /**
+     * @return bitboard with bit (6*owner + position) set for each card this
+     * player cannot see
+     */
+    public int getHiddenCards(){
+        return ~board.getVisibleCards(playerID) & ((1 << (GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE)) - 1);
+    }
+    
+    /**
+     * @return bitboard with bit (6*owner + position) set for each card 
+     * everyone can see
+     */
+    public int getPublicCards(){
+        return board.getPublicCards();
+    }
+    
+    /**
+     * @return source of randomness of this game, so that a game played with 
+     * a given seed always plays out the same way
+     */
+    public Random getRandom(){
+        return random;
+    }
+}
@@ -0,0 +1,127 @@
+package sim;
+
+import java.util.Random;
+
+import game.GameBoard;
+
+/**
+ * A strategy that plays at random, but never contradicts what it can see: 
+ * hands are sorted by rank, and each card appears once, so a hidden card can
+ * only have a rank between the visible ranks around it that is not visible 
+ * anywhere else in its suit.  Declares as soon as that leaves a single rank 
+ * for every card it cannot see.  Stateless, so one instance can be shared.  
+ */
+public class RandomStrategy implements PlayerStrategy {
+    
+    private static final int NUM_CARDS = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+    
+    @Override
+    public int chooseSwap(PlayerView view){
+        return -1;
+    }
+
+    @Override
+    public boolean shouldDeclare(PlayerView view){
+        for (int hidden = view.getHiddenCards(); hidden != 0; hidden &= hidden - 1){
+            int i = Integer.numberOfTrailingZeros(hidden);
+            if (Integer.bitCount(possibleRanks(view, i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE)) != 1){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int choosePass(PlayerView view){
+        int me = view.getPlayerID();
+        int partner = view.getPartnerID();
+        int cards = 0;
+        for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+            if (!view.isVisibleTo(partner, me, card)){
+                cards |= 1 << card;
+            }
+        }
+        return randomBit(cards, GameBoard.HAND_SIZE, view.getRandom());
+    }
+
+    @Override
+    public int chooseGuess(PlayerView view){
+        int me = view.getPlayerID();
+        int opponentCards = 0;
+        for (int opponent = (me + 1) % 2; opponent < 4; opponent += 2){
+            opponentCards |= ((1 << GameBoard.HAND_SIZE) - 1) << (opponent * GameBoard.HAND_SIZE);
+        }
+        int i = randomBit(view.getHiddenCards() & opponentCards, NUM_CARDS, view.getRandom());
+        int target = i / GameBoard.HAND_SIZE;
+        int card = i % GameBoard.HAND_SIZE;
+        return GameEngine.encodeGuess(target, card, declareRank(view, target, card));
+    }
+
+    @Override
+    public int chooseShow(PlayerView view){
+        int me = view.getPlayerID();
+        int hand = (1 << GameBoard.HAND_SIZE) - 1;
+        int cards = ((view.getPublicCards() >>> (me * GameBoard.HAND_SIZE)) & hand) ^ hand;
+        return randomBit(cards, GameBoard.HAND_SIZE, view.getRandom());
+    }
+
+    @Override
+    public int declareRank(PlayerView view, int playerID, int card){
+        int ranks = possibleRanks(view, playerID, card);
+        if (ranks == 0){
+            // cannot happen if every player sees the truth; guess anything
+            return 1 + view.getRandom().nextInt(12);
+        }
+        return randomBit(ranks, 13, view.getRandom());
+    }
+    
+    /**
+     * @return bitmask with bit r set for each rank r the card may have
+     */
+    private static int possibleRanks(PlayerView view, int playerID, int card){
+        // ranks are sorted within a hand, so the card is between its 
+        // nearest visible neighbours
+        int low = 1;
+        for (int c = card - 1; c >= 0; c--){
+            int rank = view.getRank(playerID, c);
+            if (rank > 0){
+                low = rank;
+                break;
+            }
+        }
+        int high = 12;
+        for (int c = card + 1; c < GameBoard.HAND_SIZE; c++){
+            int rank = view.getRank(playerID, c);
+            if (rank > 0){
+                high = rank;
+                break;
+            }
+        }
+        int ranks = ((1 << (high + 1)) - 1) & ~((1 << low) - 1);
+        
+        // ranks of visible cards of the same suit are taken
+        String suit = view.getSuit(playerID, card);
+        for (int i = 0; i < NUM_CARDS; i++){
+            int rank = view.getRank(i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE);
+            if (rank > 0 && view.getSuit(i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE).equals(suit)){
+                ranks &= ~(1 << rank);
+            }
+        }
+        return ranks;
+    }
+    
+    /**
+     * @return index of a random set bit of bits, or a random index below 
+     * limit if no bit is set
+     */
+    private static int randomBit(int bits, int limit, Random random){
+        if (bits == 0){
+            return random.nextInt(limit);
+        }
+        int n = random.nextInt(Integer.bitCount(bits));
+        for (; n > 0; n--){
+            bits &= bits - 1;
+        }
+        return Integer.numberOfTrailingZeros(bits);
+    }
+}
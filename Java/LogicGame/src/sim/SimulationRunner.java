@@ -0,0 +1,100 @@
+package sim;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Plays many games on a ForkJoinPool and totals their outcomes.  Game i of
+ * a run with a given seed is always the same game, however the run is split 
+ * between threads.  
+ */
+public class SimulationRunner {
+    
+    // games played by one task before it stops splitting
+    private static final long GAMES_PER_TASK = 1024;
+    
+    private final ForkJoinPool pool;
+    private final Supplier<PlayerStrategy[]> strategies;
+    
+    /**
+     * Creates a runner
+     * @param pool pool the games are played on
+     * @param strategies makes the four strategies of an engine; called once
+     * per task, so strategies with state are never shared between threads
+     */
+    public SimulationRunner(ForkJoinPool pool, Supplier<PlayerStrategy[]> strategies){
+        this.pool = pool;
+        this.strategies = strategies;
+    }
+    
+    /**
+     * Plays games
+     * @param games number of games to play
+     * @param seed seed of the run
+     * @return totals of the outcomes of the games
+     */
+    public SimulationStats run(long games, long seed){
+        return pool.invoke(new Games(seed, 0, games));
+    }
+    
+    /**
+     * Task playing games from (inclusive) to to (exclusive) of a run
+     */
+    private final class Games extends RecursiveTask<SimulationStats> {
+        private static final long serialVersionUID = 1L;
+        
+        private final long seed;
+        private final long from;
+        private final long to;
+        
+        private Games(long seed, long from, long to){
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationStats compute(){
+            if (to - from > GAMES_PER_TASK){
+                long middle = (from + to) >>> 1;
+                Games first = new Games(seed, from, middle);
+                first.fork();
+                SimulationStats stats = new Games(seed, middle, to).compute();
+                stats.merge(first.join());
+                return stats;
+            }
+            GameEngine engine = new GameEngine(strategies.get());
+            Random random = new Random();
+            SimulationStats stats = new SimulationStats();
+            for (long game = from; game < to; game++){
+                random.setSeed(seed + game);
+                stats.add(engine.play(random));
+            }
+            return stats;
+        }
+    }
+    
+    /**
+     * Plays games between four RandomStrategy players on all cores
+     * @param args number of games (default 100000), then seed (default 0)
+     */
+    public static void main(String[] args){
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        final PlayerStrategy strategy = new RandomStrategy();
+        SimulationRunner runner = new SimulationRunner(ForkJoinPool.commonPool(), 
+                new Supplier<PlayerStrategy[]>(){
+                    public PlayerStrategy[] get(){
+                        return new PlayerStrategy[] {strategy, strategy, strategy, strategy};
+                    }
+                });
+        
+        long start = System.nanoTime();
+        SimulationStats stats = runner.run(games, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(stats);
+        System.out.println((long) (games / seconds) + " games per second");
+    }
+}
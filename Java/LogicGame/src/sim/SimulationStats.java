@@ -0,0 +1,86 @@
+package sim;
+
+/**
+ * Mutable class.  Totals of the outcomes of many simulated games.  
+ */
+public class SimulationStats {
+    
+    private long games = 0;
+    private final long[] wins = new long[2];
+    private long unfinished = 0;
+    private long wrongDeclarations = 0;
+    private long moves = 0;
+    
+    /**
+     * Adds the outcome of a game
+     * @param result outcome of a game
+     */
+    public void add(GameResult result){
+        games++;
+        moves += result.getMoves();
+        if (result.getWinningTeam() < 0){
+            unfinished++;
+            return;
+        }
+        wins[result.getWinningTeam()]++;
+        if (!result.isDeclaredCorrectly()){
+            wrongDeclarations++;
+        }
+    }
+    
+    /**
+     * Adds the totals of other games
+     * @param other totals of other games
+     */
+    public void merge(SimulationStats other){
+        games += other.games;
+        wins[0] += other.wins[0];
+        wins[1] += other.wins[1];
+        unfinished += other.unfinished;
+        wrongDeclarations += other.wrongDeclarations;
+        moves += other.moves;
+    }
+    
+    /**
+     * @return number of games
+     */
+    public long getGames(){
+        return games;
+    }
+    
+    /**
+     * @param team 0 for players 0 and 2, 1 for players 1 and 3
+     * @return number of games won by team
+     */
+    public long getWins(int team){
+        return wins[team];
+    }
+    
+    /**
+     * @return number of games stopped after GameEngine.MAX_MOVES moves
+     */
+    public long getUnfinished(){
+        return unfinished;
+    }
+    
+    /**
+     * @return number of games lost by a wrong declaration
+     */
+    public long getWrongDeclarations(){
+        return wrongDeclarations;
+    }
+    
+    /**
+     * @return number of moves in all games
+     */
+    public long getMoves(){
+        return moves;
+    }
+    
+    @Override
+    public String toString(){
+        return "games: " + games + ", team 0 wins: " + wins[0] + ", team 1 wins: " + wins[1]
+                + ", unfinished: " + unfinished + ", wrong declarations: " + wrongDeclarations
+                + ", moves per game: " + (games == 0 ? 0 : (double) moves / games);
+    }
+}
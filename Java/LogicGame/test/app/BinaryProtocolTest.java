@@ -0,0 +1,151 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import game.GameBoard;
+import game.GameState;
+import game.GameState.State;
+
+/**
+ * Tests the frames of the binary protocol: decoding client frames into the
+ * text commands they stand for, and encoding text, events, boards and
+ * board updates.
+ */
+public class BinaryProtocolTest {
+
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+
+    private static String decode(int... frame){
+        byte[] bytes = new byte[frame.length];
+        for (int i = 0; i < frame.length; i++){
+            bytes[i] = (byte) frame[i];
+        }
+        return BinaryProtocol.decode(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void decodesEveryCommand(){
+        assertEquals("view", decode(0x01));
+        assertEquals("help", decode(0x02));
+        assertEquals("done", decode(0x03));
+        assertEquals("swap 4", decode(0x04, 4));
+        assertEquals("pass 0", decode(0x05, 0));
+        assertEquals("show 5", decode(0x06, 5));
+        assertEquals("guess 1 3 7", decode(0x07, 0x13, 7));
+        assertEquals("declare", decode(0x08));
+        assertEquals("declare 3 0 12", decode(0x09, 0x30, 12));
+        assertEquals("mode delta", decode(0x0A));
+        assertEquals("mode full", decode(0x0B));
+        assertEquals("sync 258", decode(0x0C, 0, 0, 0, 0, 0, 0, 1, 2));
+    }
+
+    @Test
+    public void decodedCommandsParse(){
+        assertTrue(parser.parse(decode(0x07, 0x13, 7), command));
+        assertEquals(Command.Op.GUESS, command.getOp());
+        assertEquals(1, command.getTarget());
+        assertEquals(3, command.getPosition());
+        assertEquals(7, command.getRank());
+        assertTrue(parser.parse(decode(0x0C, 0, 0, 0, 0, 0, 0, 1, 2), command));
+        assertEquals(Command.Op.SYNC, command.getOp());
+        assertEquals(258, command.getVersion());
+    }
+
+    @Test
+    public void decodesFromOffset(){
+        byte[] bytes = {9, 9, 0x05, 2, 9};
+        assertEquals("pass 2", BinaryProtocol.decode(bytes, 2, 2));
+    }
+
+    @Test
+    public void badFramesDecodeToRejectedLines(){
+        String[] bad = {
+            decode(),
+            decode(0x01, 0),             // VIEW takes no payload
+            decode(0x04),                // SWAP needs a position
+            decode(0x07, 0x13),          // GUESS needs a rank
+            decode(0x0C, 0, 0, 1),       // SYNC needs 8 bytes
+            decode(0x0C, 0xFF, 0, 0, 0, 0, 0, 0, 0), // negative version
+            decode(0x42),                // no such opcode
+            decode(0x80, 'h', 'i'),      // server to client only
+            decode(0x06, 6),             // no position 6
+        };
+        for (String line : bad){
+            assertFalse(line, parser.parse(line, command));
+        }
+    }
+
+    @Test
+    public void wrapsTextInTextFrame(){
+        Frame frame = BinaryProtocol.text(new Frame("hi"));
+        assertTrue(frame.isBinary());
+        assertEquals("hi", frame.getContent());
+        assertArrayEquals(new byte[]{0, 3, (byte) 0x80, 'h', 'i'}, frame.bytes());
+        // a frame is not wrapped twice
+        assertSame(frame, BinaryProtocol.text(frame));
+    }
+
+    @Test
+    public void encodesEvents(){
+        GameState gamestate = new GameState(Arrays.asList(false, false, false, false));
+        gamestate.setState(State.GUESS, 1, new int[]{2, 3, 7, 1});
+        byte[] bytes = BinaryProtocol.event(gamestate).bytes();
+        assertArrayEquals(new byte[]{0, 7, (byte) 0x81, (byte) State.GUESS.ordinal(), 1, 3, 2, 7, 1},
+                bytes);
+
+        gamestate.setState(State.PASS, 2, 4);
+        bytes = BinaryProtocol.event(gamestate).bytes();
+        assertArrayEquals(new byte[]{0, 7, (byte) 0x81, (byte) State.PASS.ordinal(), 2, 4, 0, 0, 0},
+                bytes);
+    }
+
+    @Test
+    public void encodesBoards(){
+        GameBoard board = new GameBoard(new Random(24601));
+        board.revealCardToAll(1, 3);
+        byte[] bytes = BinaryProtocol.board(board, 0).bytes();
+        int cards = GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE;
+        assertEquals(2 + 1 + 8 + 2 * cards, bytes.length);
+        assertEquals(1 + 8 + 2 * cards, (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF));
+        assertEquals(0x82, bytes[2] & 0xFF);
+        assertEquals(board.getViewVersion(0), getLong(bytes, 3));
+        for (int i = 0; i < cards; i++){
+            int view = board.getCardView(0, i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE);
+            assertEquals(view & 0xFF, bytes[11 + 2 * i] & 0xFF);
+            assertEquals(view >>> 8, bytes[12 + 2 * i] & 0xFF);
+        }
+    }
+
+    @Test
+    public void encodesOnlyChangedCards(){
+        GameBoard board = new GameBoard(new Random(24601));
+        long version = board.getViewVersion(0);
+        assertNull(BinaryProtocol.update(board, 0, version));
+
+        board.revealCardToAll(1, 3);
+        byte[] bytes = BinaryProtocol.update(board, 0, version).bytes();
+        assertEquals(0x83, bytes[2] & 0xFF);
+        assertEquals(version, getLong(bytes, 3));
+        assertEquals(board.getViewVersion(0), getLong(bytes, 11));
+        assertEquals(1, bytes[19]);
+        assertEquals(2 + 1 + 17 + 3, bytes.length);
+        assertEquals(1 * GameBoard.HAND_SIZE + 3, bytes[20]);
+        int view = board.getCardView(0, 1, 3);
+        assertEquals(view & 0xFF, bytes[21] & 0xFF);
+        assertEquals(0xF, bytes[22] & 0xFF);
+    }
+
+    private static long getLong(byte[] bytes, int offset){
+        long value = 0;
+        for (int i = 0; i < 8; i++){
+            value = value << 8 | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,126 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import app.Command.Error;
+import app.Command.Op;
+
+/**
+ * Tests decoding lines of the text protocol, valid and not, from strings 
+ * and from slices of buffers.
+ */
+public class CommandParserTest {
+
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+
+    @Test
+    public void decodesWords(){
+        assertTrue(parser.parse("view", command));
+        assertEquals(Op.VIEW, command.getOp());
+        assertTrue(parser.parse("help", command));
+        assertEquals(Op.HELP, command.getOp());
+        assertTrue(parser.parse("done", command));
+        assertEquals(Op.DONE, command.getOp());
+        assertTrue(parser.parse("declare", command));
+        assertEquals(Op.DECLARE, command.getOp());
+        assertTrue(parser.parse("mode delta", command));
+        assertEquals(Op.MODE_DELTA, command.getOp());
+        assertTrue(parser.parse("mode full", command));
+        assertEquals(Op.MODE_FULL, command.getOp());
+    }
+
+    @Test
+    public void decodesPositions(){
+        assertTrue(parser.parse("swap 0", command));
+        assertEquals(Op.SWAP, command.getOp());
+        assertEquals(0, command.getPosition());
+        assertTrue(parser.parse("pass 5", command));
+        assertEquals(Op.PASS, command.getOp());
+        assertEquals(5, command.getPosition());
+        assertTrue(parser.parse("show 3", command));
+        assertEquals(Op.SHOW, command.getOp());
+        assertEquals(3, command.getPosition());
+    }
+
+    @Test
+    public void decodesCards(){
+        assertTrue(parser.parse("guess 1 3 7", command));
+        assertEquals(Op.GUESS, command.getOp());
+        assertEquals(1, command.getTarget());
+        assertEquals(3, command.getPosition());
+        assertEquals(7, command.getRank());
+        assertTrue(parser.parse("declare 3 0 12", command));
+        assertEquals(Op.DECLARE_CARD, command.getOp());
+        assertEquals(3, command.getTarget());
+        assertEquals(0, command.getPosition());
+        assertEquals(12, command.getRank());
+        assertTrue(parser.parse("guess 0 5 10", command));
+        assertEquals(10, command.getRank());
+    }
+
+    @Test
+    public void decodesVersions(){
+        assertTrue(parser.parse("sync 0", command));
+        assertEquals(Op.SYNC, command.getOp());
+        assertEquals(0, command.getVersion());
+        assertTrue(parser.parse("sync 123456789012345678", command));
+        assertEquals(123456789012345678L, command.getVersion());
+        assertFalse(parser.parse("sync 1234567890123456789", command));
+        assertEquals(Error.BAD_VERSION, command.getError());
+    }
+
+    @Test
+    public void rejectsBadLines(){
+        assertInvalid("", Error.EMPTY, 0);
+        assertInvalid("jump", Error.UNKNOWN_COMMAND, 0);
+        assertInvalid("views", Error.UNKNOWN_COMMAND, 0);
+        assertInvalid("view now", Error.TRAILING_INPUT, 4);
+        assertInvalid("pass", Error.MISSING_ARGUMENT, 4);
+        assertInvalid("pass ", Error.MISSING_ARGUMENT, 4);
+        assertInvalid("pass 6", Error.BAD_POSITION, 5);
+        assertInvalid("pass 12", Error.BAD_POSITION, 5);
+        assertInvalid("guess 4 0 1", Error.BAD_PLAYER, 6);
+        assertInvalid("guess 1 0", Error.MISSING_ARGUMENT, 9);
+        assertInvalid("guess 1 0 0", Error.BAD_RANK, 10);
+        assertInvalid("guess 1 0 13", Error.BAD_RANK, 10);
+        assertInvalid("guess 1 0 01", Error.BAD_RANK, 10);
+        assertInvalid("guess 1 0 7 2", Error.TRAILING_INPUT, 11);
+        assertInvalid("mode fast", Error.BAD_MODE, 5);
+        assertInvalid("sync x", Error.BAD_VERSION, 5);
+    }
+
+    @Test
+    public void isReusedAfterBadLine(){
+        assertFalse(parser.parse("guess 9 9 9", command));
+        assertTrue(parser.parse("pass 2", command));
+        assertTrue(command.isValid());
+        assertEquals(Error.NONE, command.getError());
+        assertEquals(Op.PASS, command.getOp());
+    }
+
+    @Test
+    public void decodesSliceOfBuffer(){
+        ByteBuffer buffer = ByteBuffer.wrap("xxguess 2 1 11\r\nyy".getBytes(StandardCharsets.US_ASCII));
+        buffer.position(1);
+        assertTrue(parser.parse(buffer, 2, 12, command));
+        assertEquals(Op.GUESS, command.getOp());
+        assertEquals(2, command.getTarget());
+        assertEquals(1, command.getPosition());
+        assertEquals(11, command.getRank());
+        assertEquals(1, buffer.position());
+        assertFalse(parser.parse(buffer, 2, 13, command));
+    }
+
+    private void assertInvalid(String line, Error error, int column){
+        assertFalse(line, parser.parse(line, command));
+        assertEquals(line, error, command.getError());
+        assertEquals(line, column, command.getErrorColumn());
+    }
+
+}
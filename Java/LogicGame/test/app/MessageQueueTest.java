@@ -0,0 +1,175 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests the MessageQueues: order, full and empty queues, wraparound of the
+ * ring buffers, and producers and a consumer on threads of their own with
+ * each WaitStrategy.
+ */
+public class MessageQueueTest {
+
+    private static final int MESSAGES = 4000;
+
+    private static List<MessageQueue<Integer>> rings(int capacity, WaitStrategy wait){
+        List<MessageQueue<Integer>> queues = new ArrayList<>();
+        queues.add(new MessageQueueSingleProducer<>(capacity, wait));
+        queues.add(new MessageQueueMultiProducer<>(capacity, wait));
+        return queues;
+    }
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo(){
+        for (MessageQueue<Integer> queue : rings(1000, WaitStrategy.PARK)){
+            assertEquals(1024, queue.capacity());
+        }
+        for (MessageQueue<Integer> queue : rings(1, WaitStrategy.PARK)){
+            assertEquals(1, queue.capacity());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoCapacity(){
+        new MessageQueueSingleProducer<Integer>(0, WaitStrategy.PARK);
+    }
+
+    @Test
+    public void offerFailsWhenFull(){
+        for (MessageQueue<Integer> queue : rings(4, WaitStrategy.PARK)){
+            assertNull(queue.poll());
+            for (int i = 0; i < 4; i++){
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            assertEquals(4, queue.size());
+            assertEquals(Integer.valueOf(0), queue.poll());
+            assertTrue(queue.offer(4));
+            for (int i = 1; i <= 4; i++){
+                assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            assertNull(queue.poll());
+            assertEquals(0, queue.size());
+        }
+    }
+
+    @Test
+    public void wrapsAround() throws InterruptedException{
+        for (MessageQueue<Integer> queue : rings(4, WaitStrategy.PARK)){
+            // the slots are reused many times over, at every offset
+            int next = 0;
+            for (int i = 0; i < 1000; i++){
+                queue.put(2 * i);
+                queue.put(2 * i + 1);
+                assertEquals(Integer.valueOf(next++), queue.take());
+                assertEquals(Integer.valueOf(next++), queue.poll());
+                assertEquals(0, queue.size());
+            }
+        }
+    }
+
+    @Test
+    public void linkedQueueIsUnbounded() throws InterruptedException{
+        MessageQueue<Integer> queue = new MessageQueueLinked<>();
+        assertEquals(Integer.MAX_VALUE, queue.capacity());
+        for (int i = 0; i < 5000; i++){
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(5000, queue.size());
+        assertEquals(Integer.valueOf(0), queue.take());
+    }
+
+    @Test(timeout = 60000)
+    public void singleProducerKeepsOrderWithEachWaitStrategy() throws Exception{
+        for (WaitStrategy wait : WaitStrategy.values()){
+            transfer(new MessageQueueSingleProducer<>(16, wait), 1);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void multiProducerKeepsOrderOfEachProducerWithEachWaitStrategy() throws Exception{
+        for (WaitStrategy wait : WaitStrategy.values()){
+            transfer(new MessageQueueMultiProducer<>(16, wait), 4);
+        }
+    }
+
+    /**
+     * Puts MESSAGES messages through a small queue, from producer threads to
+     * this thread, so that both sides wait on the queue many times
+     * @param queue an empty queue
+     * @param producers number of producer threads
+     */
+    private static void transfer(MessageQueue<Integer> queue, int producers) throws Exception{
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        int each = MESSAGES / producers;
+        for (int p = 0; p < producers; p++){
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try{
+                    for (int i = 0; i < each; i++){
+                        queue.put(producer * each + i);
+                    }
+                } catch (Throwable e){
+                    failure.set(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        // messages of a producer arrive in the order it put them
+        int[] expected = new int[producers];
+        for (int i = 0; i < each * producers; i++){
+            int message = queue.take();
+            int producer = message / each;
+            assertEquals(producer * each + expected[producer], message);
+            expected[producer]++;
+        }
+        for (Thread thread : threads){
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertNull(queue.poll());
+    }
+
+    @Test(timeout = 10000)
+    public void putWaitsForRoom() throws Exception{
+        MessageQueue<Integer> queue = new MessageQueueSingleProducer<>(1, WaitStrategy.PARK);
+        queue.put(1);
+        Thread producer = new Thread(() -> {
+            try{
+                queue.put(2);
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertEquals(Integer.valueOf(1), queue.take());
+        producer.join();
+        assertEquals(Integer.valueOf(2), queue.take());
+    }
+
+    @Test(timeout = 10000)
+    public void takeCanBeInterrupted() throws Exception{
+        MessageQueue<Integer> queue = new MessageQueueMultiProducer<>(4, WaitStrategy.PARK);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try{
+                queue.take();
+            } catch (Throwable e){
+                thrown.set(e);
+            }
+        });
+        consumer.start();
+        consumer.interrupt();
+        consumer.join();
+        assertTrue(thrown.get() instanceof InterruptedException);
+    }
+}
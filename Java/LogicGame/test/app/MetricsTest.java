@@ -0,0 +1,61 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import game.GameBoard;
+import history.EventLog;
+import history.GameEventSink;
+
+/**
+ * Tests LatencyHistogram and the export of Metrics.
+ */
+public class MetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void quantilesAreWithinTheBucketPrecision(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 us to 10 ms, evenly
+        for (long nanos = 1000; nanos <= 10_000_000; nanos += 1000){
+            histogram.record(nanos);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        long[] values = histogram.getValuesAt(0.5, 0.9, 0.99);
+        assertEquals(5_000_000, values[0], 5_000_000 * 0.04);
+        assertEquals(9_000_000, values[1], 9_000_000 * 0.04);
+        assertEquals(9_900_000, values[2], 9_900_000 * 0.04);
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertArrayEquals(new long[]{0}, histogram.getValuesAt(0.5));
+        assertEquals(0, new LatencyHistogram().getValuesAt(0.99)[0]);
+    }
+
+    @Test(timeout = 10000)
+    public void exportsTheRecordsEventLogsDropped() throws IOException{
+        // a ring of two records cannot keep up with a game recording as
+        // fast as it can
+        EventLog log = new EventLog(folder.getRoot().toPath(), 1024, 2, 1);
+        GameEventSink game = log.newGame();
+        game.dealt(new GameBoard(new Random(1)));
+        while (log.getDropped() == 0){
+            game.passed(0, 0);
+        }
+        log.close();
+        Metrics.recordedIn(log);
+        assertTrue(Metrics.export().contains("\nlogic_eventlog_dropped_total " + log.getDropped() + "\n"));
+    }
+}
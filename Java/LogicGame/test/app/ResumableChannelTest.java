@@ -0,0 +1,212 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ResumableChannel and SessionRegistry over loopback connections
+ * served by one reactor: sessions that drop and resume, with and without
+ * what was sent meanwhile, sessions that expire, and sessions of a restored
+ * table.
+ */
+public class ResumableChannelTest {
+
+    private static final String DROPPED = "(dropped)";
+    private static final String TOKEN = "00000000000000aa";
+
+    private ServerSocketChannel server;
+    private NioReactor reactor;
+
+    @Before
+    public void setUp() throws IOException{
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        reactor = new NioReactor("test reactor");
+    }
+
+    @After
+    public void tearDown() throws IOException{
+        server.close();
+    }
+
+    /**
+     * A client connected to the server socket, and the reactor's end of it
+     */
+    private class Connection {
+        final Socket client;
+        final TwoWayChannelNio channel;
+        final BufferedReader in;
+
+        Connection() throws IOException{
+            client = new Socket(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+            client.setSoTimeout(5000);
+            channel = reactor.register(server.accept());
+            in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        void write(String text) throws IOException{
+            OutputStream out = client.getOutputStream();
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        /**
+         * Greets the connection as a host does (see LogicHost): its first
+         * line, "resume [token]", hands it to the session of the token,
+         * and whether it did is added to resumed
+         */
+        void greet(SessionRegistry registry, BlockingQueue<Boolean> resumed){
+            channel.forwardTo(line -> {
+                channel.forwardTo(null);
+                if (line != null){
+                    resumed.add(registry.resume(line.substring("resume ".length()), channel));
+                }
+            });
+        }
+    }
+
+    /**
+     * @return a handler that adds the lines it is handed to received
+     */
+    private static TwoWayChannel.Handler into(BlockingQueue<String> received){
+        return line -> received.add(line != null ? line : DROPPED);
+    }
+
+    /**
+     * @return a listener that adds what it is told to events
+     */
+    private static ResumableChannel.Listener listener(BlockingQueue<String> events){
+        return new ResumableChannel.Listener(){
+            @Override
+            public void lost(){
+                events.add("lost");
+            }
+
+            @Override
+            public void resumed(boolean inSync){
+                events.add("resumed " + inSync);
+            }
+        };
+    }
+
+    @Test(timeout = 20000)
+    public void replaysWhatWasSentWhileAway() throws Exception{
+        SessionRegistry registry = new SessionRegistry(5000, 16);
+        Connection first = new Connection();
+        ResumableChannel session = registry.open(first.channel, null);
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        session.setListener(listener(events));
+        assertTrue(session.forwardTo(into(received)));
+
+        first.client.close();
+        assertEquals("lost", events.poll(5, TimeUnit.SECONDS));
+        session.send("one");
+        session.send("two");
+
+        // the first line after resuming comes with the resume line, so it
+        // most likely is queued before the session takes the connection;
+        // either way it reaches the session's handler, and only that
+        Connection second = new Connection();
+        BlockingQueue<Boolean> resumed = new LinkedBlockingQueue<>();
+        second.greet(registry, resumed);
+        second.write("resume " + session.getToken() + "\nview\n");
+        assertEquals(Boolean.TRUE, resumed.poll(5, TimeUnit.SECONDS));
+        assertEquals("resumed true", events.poll(5, TimeUnit.SECONDS));
+        assertEquals("view", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("Resuming your game.", second.in.readLine());
+        assertEquals("one", second.in.readLine());
+        assertEquals("two", second.in.readLine());
+
+        session.send("three");
+        assertEquals("three", second.in.readLine());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 20000)
+    public void dropsWhatOverflowedTheBuffer() throws Exception{
+        SessionRegistry registry = new SessionRegistry(5000, 2);
+        Connection first = new Connection();
+        ResumableChannel session = registry.open(first.channel, null);
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        session.setListener(listener(events));
+        session.forwardTo(into(new LinkedBlockingQueue<>()));
+
+        first.client.close();
+        assertEquals("lost", events.poll(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++){
+            session.send("missed " + i);
+        }
+
+        Connection second = new Connection();
+        assertTrue(registry.resume(session.getToken(), second.channel));
+        assertEquals("resumed false", events.poll(5, TimeUnit.SECONDS));
+        // the player is sent a fresh view instead
+        session.send("fresh");
+        assertEquals("Resuming your game.", second.in.readLine());
+        assertEquals("fresh", second.in.readLine());
+    }
+
+    @Test(timeout = 20000)
+    public void givesUpAfterTheGracePeriod() throws Exception{
+        SessionRegistry registry = new SessionRegistry(200, 16);
+        Connection first = new Connection();
+        ResumableChannel session = registry.open(first.channel, null);
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        session.forwardTo(into(received));
+        assertEquals(1, registry.getSessionCount());
+
+        first.client.close();
+        assertEquals(DROPPED, received.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, registry.getSessionCount());
+        Connection second = new Connection();
+        assertFalse(registry.resume(session.getToken(), second.channel));
+    }
+
+    @Test(timeout = 20000)
+    public void restoredSessionWaitsForItsPlayer() throws Exception{
+        SessionRegistry registry = new SessionRegistry(5000, 16);
+        ResumableChannel session = registry.restore(TOKEN);
+        assertEquals(TOKEN, session.getToken());
+        // the table listens for its player as soon as it is restored
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        Thread table = new Thread(() -> {
+            try{
+                String line = session.listen();
+                received.add(line != null ? line : DROPPED);
+            } catch (InterruptedException e){
+                // the test is over
+            }
+        });
+        table.start();
+        session.send("sent before the player was back");
+
+        Connection connection = new Connection();
+        connection.write("resume " + TOKEN + "\nhello\n");
+        assertEquals("resume " + TOKEN, connection.channel.listen());
+        assertTrue(registry.resume(TOKEN, connection.channel));
+        assertEquals("hello", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("Resuming your game.", connection.in.readLine());
+        assertEquals("sent before the player was back", connection.in.readLine());
+
+        // a token can only be restored once
+        assertNotEquals(TOKEN, registry.restore(TOKEN).getToken());
+        table.join(5000);
+    }
+}
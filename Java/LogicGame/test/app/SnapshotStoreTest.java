@@ -0,0 +1,211 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import game.GameBoard;
+
+/**
+ * Tests TableSnapshot and SnapshotStore: snapshots as written and read
+ * back, damaged snapshots, and the two slots of a table's file.
+ */
+public class SnapshotStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<Boolean> IS_AI = Arrays.asList(false, true, false, false);
+    private static final String[] TOKENS = {"0123456789abcdef", null, "00000000000000ff", "8000000000000000"};
+
+    private final GameBoard board = new GameBoard(new Random(24601));
+    private final TurnStateMachine turns = new TurnStateMachine();
+
+    /**
+     * @return a snapshot of the board and turns, with a given declarer to
+     * tell snapshots apart
+     */
+    private TableSnapshot snapshot(int declarer){
+        TableSnapshot snapshot = new TableSnapshot();
+        snapshot.capture(12, 34, TableSnapshot.Phase.MAIN, declarer, IS_AI, turns, board, TOKENS);
+        return snapshot;
+    }
+
+    @Test
+    public void readsBackWhatWasWritten(){
+        board.revealCardToAll(2, 4);
+        board.revealCardToPartner(3, 1);
+        turns.setState(2, TurnState.PASS);
+        ByteBuffer buffer = ByteBuffer.allocate(TableSnapshot.SIZE);
+        snapshot(1).write(buffer, 5);
+        assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        TableSnapshot read = new TableSnapshot();
+        assertTrue(read.read(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertEquals(5, read.getVersion());
+        assertEquals(12, read.getGameID());
+        assertEquals(34, read.getEventCount());
+        assertEquals(TableSnapshot.Phase.MAIN, read.getPhase());
+        assertEquals(1, read.getDeclarer());
+        assertEquals(IS_AI, read.getIsAI());
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            assertEquals(turns.stateOf(player), read.getTurnState(player));
+            assertEquals(TOKENS[player], read.getToken(player));
+        }
+        GameBoard restored = read.getBoard();
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            assertEquals(board.getVisibleCards(player), restored.getVisibleCards(player));
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                assertEquals(board.getCardCode(player, card), restored.getCardCode(player, card));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsDamagedSnapshots(){
+        ByteBuffer buffer = ByteBuffer.allocate(TableSnapshot.SIZE);
+        snapshot(1).write(buffer, 5);
+        TableSnapshot read = new TableSnapshot();
+
+        // a flipped bit anywhere fails the checksum, and the snapshot read
+        // into is left as it was
+        for (int i = 4; i < TableSnapshot.SIZE; i++){
+            buffer.put(i, (byte) (buffer.get(i) ^ 0x10));
+            buffer.position(0);
+            assertFalse("byte " + i, read.read(buffer));
+            assertEquals(0, buffer.position());
+            assertEquals(-1, read.getGameID());
+            buffer.put(i, (byte) (buffer.get(i) ^ 0x10));
+        }
+        // so does a snapshot cut short
+        buffer.position(0).limit(TableSnapshot.SIZE - 1);
+        assertFalse(read.read(buffer));
+        buffer.limit(TableSnapshot.SIZE);
+        assertTrue(read.read(buffer.position(0)));
+    }
+
+    /**
+     * @return the file of the one table of a store
+     */
+    private Path onlyFile() throws IOException{
+        Path[] files = Files.list(folder.getRoot().toPath()).toArray(Path[]::new);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    /**
+     * @return version of the snapshot in a slot of a file, or -1 if it is
+     * not valid
+     */
+    private static int versionIn(Path file, int slot) throws IOException{
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        buffer.position(slot * TableSnapshot.SIZE);
+        TableSnapshot snapshot = new TableSnapshot();
+        return snapshot.read(buffer) ? snapshot.getVersion() : -1;
+    }
+
+    @Test
+    public void savesIntoTheTwoSlotsInTurn() throws IOException{
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath());
+        SnapshotSink sink = store.newTable();
+        Path file = onlyFile();
+        sink.save(snapshot(0));
+        assertEquals(-1, versionIn(file, 0));
+        assertEquals(1, versionIn(file, 1));
+        sink.save(snapshot(1));
+        assertEquals(2, versionIn(file, 0));
+        assertEquals(1, versionIn(file, 1));
+        sink.save(snapshot(2));
+        assertEquals(2, versionIn(file, 0));
+        assertEquals(3, versionIn(file, 1));
+
+        List<TableSnapshot> restored = new SnapshotStore(folder.getRoot().toPath()).restore();
+        assertEquals(1, restored.size());
+        assertEquals(3, restored.get(0).getVersion());
+        assertEquals(2, restored.get(0).getDeclarer());
+
+        sink.discard();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void restoresTheSnapshotBeforeATornSave() throws IOException{
+        SnapshotSink sink = new SnapshotStore(folder.getRoot().toPath()).newTable();
+        sink.save(snapshot(0));
+        sink.save(snapshot(1));
+        sink.save(snapshot(2));
+        // the latest save, in slot 1, was cut short
+        Path file = onlyFile();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)){
+            channel.write(ByteBuffer.wrap(new byte[8]), TableSnapshot.SIZE + 40);
+        }
+
+        List<TableSnapshot> restored = new SnapshotStore(folder.getRoot().toPath()).restore();
+        assertEquals(1, restored.size());
+        assertEquals(2, restored.get(0).getVersion());
+        assertEquals(1, restored.get(0).getDeclarer());
+    }
+
+    @Test
+    public void deletesTablesThatCannotBeRestored() throws IOException{
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath());
+        // never saved
+        store.newTable();
+        assertEquals(0, store.restore().size());
+        assertEquals(0, Files.list(folder.getRoot().toPath()).count());
+
+        // both slots damaged
+        SnapshotSink sink = store.newTable();
+        sink.save(snapshot(0));
+        sink.save(snapshot(1));
+        Path file = onlyFile();
+        Files.write(file, new byte[2 * TableSnapshot.SIZE], StandardOpenOption.WRITE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)){
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, TableSnapshot.MAGIC);
+            channel.write(magic, 0);
+        }
+        assertEquals(0, new SnapshotStore(folder.getRoot().toPath()).restore().size());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void restoredTableGoesOnInItsFile() throws IOException{
+        SnapshotSink sink = new SnapshotStore(folder.getRoot().toPath()).newTable();
+        sink.save(snapshot(0));
+        sink.save(snapshot(1));
+        Path file = onlyFile();
+
+        // a host that stops before saving the restored table leaves it be
+        SnapshotStore store = new SnapshotStore(folder.getRoot().toPath());
+        List<TableSnapshot> restored = store.restore();
+        assertEquals(1, restored.size());
+        assertTrue(Files.exists(file));
+
+        // and one that goes on overwrites the older slot first
+        SnapshotSink reopened = store.reopen(restored.get(0));
+        assertEquals(file, onlyFile());
+        reopened.save(snapshot(3));
+        assertEquals(2, versionIn(file, 0));
+        assertEquals(3, versionIn(file, 1));
+        restored = new SnapshotStore(folder.getRoot().toPath()).restore();
+        assertEquals(3, restored.get(0).getDeclarer());
+
+        // a new table gets a file of its own
+        store.newTable();
+        assertEquals(2, Files.list(folder.getRoot().toPath()).count());
+    }
+}
@@ -0,0 +1,109 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import game.GameBoard;
+
+/**
+ * Tests the moves StandIn makes for a seat: legal, made only with what the
+ * seat can see, and a declaration that is right.
+ */
+public class StandInTest {
+
+    private static final int SEAT = 0;
+    private static final int PARTNER = 2;
+
+    /**
+     * @return the numbers of a move, after its name
+     */
+    private static int[] argumentsOf(String move, String name){
+        String[] words = move.split(" ");
+        assertEquals(move, name, words[0]);
+        int[] arguments = new int[words.length - 1];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = Integer.parseInt(words[i + 1]);
+        }
+        return arguments;
+    }
+
+    /**
+     * Shows every card of the seat's opponents to everyone
+     */
+    private static void revealOpponents(GameBoard board){
+        for (int opponent = 1; opponent < GameBoard.NUM_PLAYERS; opponent += 2){
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                board.revealCardToAll(opponent, card);
+            }
+        }
+    }
+
+    @Test
+    public void passesACardThePartnerCannotSee(){
+        GameBoard board = new GameBoard(new Random(1));
+        board.revealCardToPartner(SEAT, 0);
+        board.revealCardToPartner(SEAT, 1);
+        board.revealCardToAll(SEAT, 3);
+        int[] pass = argumentsOf(StandIn.move(board, SEAT, TurnState.PASS), "pass");
+        assertFalse(board.isVisible(PARTNER, SEAT, pass[0]));
+    }
+
+    @Test
+    public void guessesAnOpponentCardItCannotSee(){
+        GameBoard board = new GameBoard(new Random(2));
+        // every card of the first opponent is known, so the guess is about
+        // the other one's
+        for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+            board.revealCardToAll(1, card);
+        }
+        board.revealCardToAll(3, 0);
+        int[] guess = argumentsOf(StandIn.move(board, SEAT, TurnState.GUESS), "guess");
+        assertEquals(3, guess[0]);
+        assertFalse(board.isVisible(SEAT, 3, guess[1]));
+        assertTrue(guess[2] >= 1 && guess[2] <= 12);
+        // a rank below the card it can see before the guessed one is never
+        // guessed
+        assertTrue(guess[2] >= board.getVisibleRank(SEAT, 3, 0));
+    }
+
+    @Test
+    public void declaresOnceNothingIsLeftToGuess(){
+        GameBoard board = new GameBoard(new Random(3));
+        revealOpponents(board);
+        assertEquals("declare", StandIn.move(board, SEAT, TurnState.GUESS));
+    }
+
+    @Test
+    public void declaresThePartnersCardsRight(){
+        for (int seed = 0; seed < 50; seed++){
+            GameBoard board = new GameBoard(new Random(seed));
+            revealOpponents(board);
+            board.revealCardToPartner(PARTNER, seed % GameBoard.HAND_SIZE);
+            int declared = 0;
+            for (String move = StandIn.declaration(board, SEAT); move != null;
+                    move = StandIn.declaration(board, SEAT)){
+                int[] declaration = argumentsOf(move, "declare");
+                assertEquals(PARTNER, declaration[0]);
+                assertFalse(board.isVisible(SEAT, PARTNER, declaration[1]));
+                assertTrue("seed " + seed + ": " + move,
+                        board.hasRank(PARTNER, declaration[1], declaration[2]));
+                // as the server does once a declared card is right
+                board.revealCardToPartner(PARTNER, declaration[1]);
+                declared++;
+            }
+            assertEquals(GameBoard.HAND_SIZE - 1, declared);
+        }
+    }
+
+    @Test
+    public void showsACardNotEveryoneSees(){
+        GameBoard board = new GameBoard(new Random(4));
+        for (int card = 0; card < GameBoard.HAND_SIZE - 1; card++){
+            board.revealCardToAll(SEAT, card);
+        }
+        assertEquals("show " + (GameBoard.HAND_SIZE - 1), StandIn.move(board, SEAT, TurnState.SHOW));
+    }
+}
@@ -0,0 +1,87 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import app.TurnStateMachine.Move;
+
+/**
+ * Tests the turn state machine against the turn order of a game of Logic:
+ * pass, the partner guesses, a wrong guess means showing, and the turn then
+ * goes to the player before.
+ */
+public class TurnStateMachineTest {
+
+    @Test
+    public void startsInactive(){
+        TurnStateMachine turns = new TurnStateMachine();
+        for (int player = 0; player < 4; player++){
+            assertEquals(TurnState.INACTIVE, turns.stateOf(player));
+            assertFalse(turns.allows(player, Move.PASS));
+            assertTrue(turns.allows(player, Move.DECLARE));
+        }
+    }
+
+    @Test
+    public void passGoesToPartner(){
+        TurnStateMachine turns = new TurnStateMachine();
+        turns.setState(2, TurnState.PASS);
+        assertEquals(0, turns.apply(2, Move.PASS, true));
+        assertEquals(TurnState.INACTIVE, turns.stateOf(2));
+        assertEquals(TurnState.GUESS, turns.stateOf(0));
+    }
+
+    @Test
+    public void rightGuessGoesToPlayerBefore(){
+        TurnStateMachine turns = new TurnStateMachine();
+        turns.setState(0, TurnState.GUESS);
+        assertEquals(3, turns.apply(0, Move.GUESS, true));
+        assertEquals(TurnState.INACTIVE, turns.stateOf(0));
+        assertEquals(TurnState.PASS, turns.stateOf(3));
+    }
+
+    @Test
+    public void wrongGuessMeansShowing(){
+        TurnStateMachine turns = new TurnStateMachine();
+        turns.setState(1, TurnState.GUESS);
+        assertEquals(-1, turns.apply(1, Move.GUESS, false));
+        assertEquals(TurnState.SHOW, turns.stateOf(1));
+        assertTrue(turns.allows(1, Move.SHOW));
+        assertFalse(turns.allows(1, Move.GUESS));
+        assertEquals(0, turns.apply(1, Move.SHOW, true));
+        assertEquals(TurnState.PASS, turns.stateOf(0));
+        assertEquals(TurnState.INACTIVE, turns.stateOf(1));
+    }
+
+    @Test
+    public void declaringMakesEveryoneElseInactive(){
+        TurnStateMachine turns = new TurnStateMachine();
+        turns.setState(3, TurnState.PASS);
+        assertEquals(-1, turns.apply(1, Move.DECLARE, true));
+        for (int player = 0; player < 4; player++){
+            assertEquals(player == 1 ? TurnState.DECLARE : TurnState.INACTIVE, turns.stateOf(player));
+        }
+        assertFalse(turns.allows(1, Move.DECLARE));
+        assertEquals(-1, turns.apply(1, Move.DECLARE_CARD, true));
+        assertEquals(TurnState.DECLARE, turns.stateOf(1));
+    }
+
+    @Test
+    public void statesOfPlayersAreIndependent(){
+        TurnStateMachine turns = new TurnStateMachine();
+        TurnState[] states = TurnState.values();
+        for (int player = 0; player < 4; player++){
+            turns.setState(player, states[player + 1]);
+        }
+        for (int player = 0; player < 4; player++){
+            assertEquals(states[player + 1], turns.stateOf(player));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesMoveOutOfTurn(){
+        new TurnStateMachine().apply(0, Move.GUESS, true);
+    }
+
+}
@@ -0,0 +1,173 @@
+package app;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests TwoWayChannelNio over loopback connections served by one reactor.
+ */
+public class TwoWayChannelNioTest {
+
+    private ServerSocketChannel server;
+    private NioReactor reactor;
+
+    @Before
+    public void setUp() throws IOException{
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        reactor = new NioReactor("test reactor");
+    }
+
+    @After
+    public void tearDown() throws IOException{
+        server.close();
+    }
+
+    /**
+     * A client connected to the server socket, and the reactor's end of it
+     */
+    private class Connection {
+        final Socket client;
+        final TwoWayChannelNio channel;
+
+        Connection() throws IOException{
+            client = new Socket(InetAddress.getLoopbackAddress(), server.socket().getLocalPort());
+            client.setSoTimeout(5000);
+            channel = reactor.register(server.accept());
+        }
+
+        void write(String text) throws IOException{
+            OutputStream out = client.getOutputStream();
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    // what into() passes on for a dropped connection
+    private static final String DROPPED = "(dropped)";
+
+    /**
+     * @return a handler that adds the lines it is handed to received
+     */
+    private static TwoWayChannel.Handler into(BlockingQueue<String> received){
+        return line -> received.add(line != null ? line : DROPPED);
+    }
+
+    @Test
+    public void queuesLinesForListen() throws Exception{
+        Connection connection = new Connection();
+        connection.write("view\r\npass 3\n");
+        assertEquals("view", connection.channel.listen());
+        assertEquals("pass 3", connection.channel.listen());
+    }
+
+    @Test
+    public void sendsLines() throws Exception{
+        Connection connection = new Connection();
+        connection.channel.send("Player 1 to pass.");
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                connection.client.getInputStream(), StandardCharsets.UTF_8));
+        assertEquals("Player 1 to pass.", in.readLine());
+    }
+
+    @Test
+    public void forwardsQueuedLinesFirst() throws Exception{
+        Connection connection = new Connection();
+        connection.write("first\n");
+        assertEquals("first", connection.channel.listen());
+        // whether the reactor has queued the second line by the time the
+        // handler is set or not, it reaches the handler before the third
+        connection.write("second\n");
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        assertTrue(connection.channel.forwardTo(into(received)));
+        connection.write("third\n");
+        assertEquals("second", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("third", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void handlerSwappingItselfOutGetsNoMoreLines() throws Exception{
+        // the first lines come right behind the connection, as from a client
+        // greeted by its first line (see LogicHost), so they are most likely
+        // queued before the handler is set; either way only the first one
+        // reaches it
+        Connection connection = new Connection();
+        connection.write("first\nsecond\nthird\n");
+        Thread.sleep(100);
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.channel.forwardTo(line -> {
+            received.add(line);
+            connection.channel.forwardTo(null);
+        });
+        assertEquals("first", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", connection.channel.listen());
+        assertEquals("third", connection.channel.listen());
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void handlerIsToldOfADroppedConnection() throws Exception{
+        Connection connection = new Connection();
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        connection.channel.forwardTo(into(received));
+        connection.write("last\n");
+        connection.client.close();
+        assertEquals("last", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(DROPPED, received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failingHandlerClosesOnlyItsConnection() throws Exception{
+        Connection failing = new Connection();
+        Connection healthy = new Connection();
+        failing.channel.forwardTo(line -> {
+            throw new IllegalStateException("handler bug");
+        });
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        healthy.channel.forwardTo(into(received));
+
+        failing.write("boom\n");
+        // the reactor closes the failing connection...
+        assertEquals(-1, failing.client.getInputStream().read());
+        // ...and goes on serving the other one
+        healthy.write("still here\n");
+        assertEquals("still here", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void switchesToBinaryProtocol() throws Exception{
+        Connection connection = new Connection();
+        // the negotiation line, then frames right behind it: VIEW, GUESS
+        connection.write("protocol binary\n");
+        connection.client.getOutputStream().write(new byte[]{0, 1, 0x01, 0, 3, 0x07, 0x13, 7});
+        assertEquals("protocol binary", connection.channel.listen());
+        assertEquals("view", connection.channel.listen());
+        assertEquals("guess 1 3 7", connection.channel.listen());
+
+        // the answer is the last line of text; then text goes out in frames
+        connection.channel.send("hi");
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                connection.client.getInputStream(), StandardCharsets.ISO_8859_1));
+        assertEquals("protocol binary", in.readLine());
+        char[] frame = new char[5];
+        assertEquals(5, in.read(frame));
+        assertArrayEquals(new char[]{0, 3, 0x80, 'h', 'i'}, frame);
+    }
+}
@@ -0,0 +1,53 @@
+package game;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests BoardState: states that show what their board showed, that are
+ * built once per change, and that stay as they were while the board goes on.
+ */
+public class BoardStateTest {
+
+    private static void assertSameView(GameBoard board, BoardState state){
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            assertEquals(board.getVisibleCards(player), state.getVisibleCards(player));
+            assertEquals(board.showPlayerViewOfBoard(player), state.showPlayerViewOfBoard(player));
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                assertEquals(board.getCardCode(player, card), state.getCardCode(player, card));
+            }
+        }
+        assertEquals(board.getPublicCards(), state.getPublicCards());
+        assertEquals(board.showPublicViewOfBoard(), state.showPublicViewOfBoard());
+    }
+
+    @Test
+    public void showsWhatItsBoardShowed(){
+        GameBoard board = new GameBoard(new Random(1));
+        assertSameView(board, board.getState());
+        board.revealCardToPartner(0, 2);
+        board.revealCardToPartner(3, 5);
+        board.revealCardToAll(1, 0);
+        board.revealCardToAll(0, 2);
+        assertSameView(board, board.getState());
+        assertSameView(board, board.getState().toBoard().getState());
+    }
+
+    @Test
+    public void isBuiltOncePerChange(){
+        GameBoard board = new GameBoard(new Random(2));
+        BoardState before = board.getState();
+        assertSame(before, board.getState());
+
+        board.revealCardToAll(2, 3);
+        BoardState after = board.getState();
+        assertNotSame(before, after);
+        assertTrue(after.getVersion() > before.getVersion());
+        // the earlier state is as the board was
+        assertFalse(before.isVisible(0, 2, 3));
+        assertTrue(after.isVisible(0, 2, 3));
+    }
+}
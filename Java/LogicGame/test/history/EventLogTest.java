@@ -0,0 +1,168 @@
+package history;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import game.GameBoard;
+
+/**
+ * Tests the EventLog: records as written and read back, segments filling
+ * up and the log going on after being reopened, and records dropped when
+ * the ring is full.
+ */
+public class EventLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Reads every record of a log
+     * @param directory directory of the log
+     * @return the records, oldest first
+     */
+    private static List<EventRecord> readAll(Path directory) throws IOException{
+        List<EventRecord> records = new ArrayList<>();
+        for (Path segment : EventLog.segments(directory)){
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)){
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                EventRecord record = new EventRecord();
+                while (record.read(buffer)){
+                    records.add(record);
+                    record = new EventRecord();
+                }
+            }
+        }
+        return records;
+    }
+
+    @Test
+    public void readsBackWhatWasRecorded() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        GameBoard board = new GameBoard(new Random(24601));
+        EventLog log = new EventLog(directory, 64, 16, 1);
+        GameEventSink game = log.newGame();
+        game.dealt(board);
+        game.passed(1, 4);
+        game.guessed(2, 3, 5, 11, true);
+        game.declaredCard(0, 2, 1, 7, false);
+        game.ended(0);
+        log.close();
+        assertEquals(0, log.getDropped());
+        assertEquals(5, log.getCommitted());
+
+        List<EventRecord> records = readAll(directory);
+        assertEquals(5, records.size());
+        for (int i = 0; i < records.size(); i++){
+            assertEquals(i, records.get(i).getSequence());
+            assertEquals(i, records.get(i).getMove());
+            assertEquals(records.get(0).getGameID(), records.get(i).getGameID());
+        }
+        EventRecord deal = records.get(0);
+        assertEquals(EventRecord.Type.DEAL, deal.getType());
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                assertEquals(board.getCardCode(player, card), deal.getDealtCode(player, card));
+            }
+        }
+        EventRecord pass = records.get(1);
+        assertEquals(EventRecord.Type.PASS, pass.getType());
+        assertEquals(1, pass.getPlayerID());
+        assertEquals(4, pass.getPosition());
+        EventRecord guess = records.get(2);
+        assertEquals(EventRecord.Type.GUESS, guess.getType());
+        assertEquals(3, guess.getTarget());
+        assertEquals(11, guess.getRank());
+        assertTrue(guess.isCorrect());
+        EventRecord declared = records.get(3);
+        assertEquals(EventRecord.Type.DECLARE_CARD, declared.getType());
+        assertEquals(7, declared.getRank());
+        assertFalse(declared.isCorrect());
+        assertEquals(EventRecord.Type.END, records.get(4).getType());
+        assertEquals(0, records.get(4).getPlayerID());
+    }
+
+    @Test
+    public void fillsSegmentsInOrderAndGoesOnAfterReopening() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        EventLog log = new EventLog(directory, 4, 64, 1);
+        GameEventSink first = log.newGame();
+        for (int i = 0; i < 10; i++){
+            first.passed(0, i % GameBoard.HAND_SIZE);
+        }
+        log.close();
+        // 10 records in segments of 4
+        assertEquals(3, EventLog.segments(directory).size());
+
+        log = new EventLog(directory, 4, 64, 1);
+        GameEventSink second = log.newGame();
+        second.passed(1, 0);
+        log.close();
+        // a reopened log starts a segment of its own
+        assertEquals(4, EventLog.segments(directory).size());
+
+        List<EventRecord> records = readAll(directory);
+        assertEquals(11, records.size());
+        for (int i = 0; i < records.size(); i++){
+            assertEquals(i, records.get(i).getSequence());
+        }
+        assertEquals(records.get(0).getGameID() + 1, records.get(10).getGameID());
+        assertEquals(0, records.get(10).getMove());
+    }
+
+    @Test
+    public void dropsRecordsAfterClose() throws IOException{
+        EventLog log = new EventLog(folder.getRoot().toPath(), 4, 4, 1);
+        GameEventSink game = log.newGame();
+        log.close();
+        game.passed(0, 1);
+        assertEquals(1, log.getDropped());
+        assertTrue(EventLog.segments(folder.getRoot().toPath()).isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void marksRecordsLostWhenTheRingIsFull() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        // a ring of two records cannot keep up with a game recording as
+        // fast as it can
+        EventLog log = new EventLog(directory, 1024, 2, 1);
+        GameEventSink game = log.newGame();
+        int moves = 0;
+        while (log.getDropped() == 0){
+            game.passed(0, 0);
+            moves++;
+        }
+        // once the writer has caught up, the next record marks the gap
+        // before it
+        while (log.getCommitted() < moves - 1){
+            Thread.yield();
+        }
+        game.ended(0);
+        log.close();
+        assertEquals(1, log.getDropped());
+
+        List<EventRecord> records = readAll(directory);
+        assertEquals(moves + 1, records.size());
+        for (int i = 0; i < moves - 1; i++){
+            assertEquals(i, records.get(i).getMove());
+        }
+        EventRecord marker = records.get(moves - 1);
+        assertEquals(EventRecord.Type.LOST, marker.getType());
+        assertEquals(1, marker.getLost());
+        // the move number of the dropped record is skipped
+        assertEquals(moves, marker.getMove());
+        assertEquals(EventRecord.Type.END, records.get(moves).getType());
+        assertEquals(moves + 1, records.get(moves).getMove());
+    }
+}
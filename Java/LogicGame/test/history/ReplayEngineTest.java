@@ -0,0 +1,194 @@
+package history;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import game.GameBoard;
+
+/**
+ * Tests the ReplayEngine and RecordedGame against logs written by an
+ * EventLog: boards rebuilt after any move, games interleaved with other
+ * tables' games, and games whose records were dropped.
+ */
+public class ReplayEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Plays moves on a board and records them
+     * @param board board of the game, which the moves are applied to
+     * @param game sink of the game
+     * @param move number of the move, 1 and up
+     */
+    private static void play(GameBoard board, GameEventSink game, int move){
+        int player = move % GameBoard.NUM_PLAYERS;
+        int position = move / GameBoard.NUM_PLAYERS % GameBoard.HAND_SIZE;
+        if (move % 3 == 0){
+            board.revealCardToAll(player, position);
+            game.shown(player, position);
+        }
+        else{
+            board.revealCardToPartner(player, position);
+            game.passed(player, position);
+        }
+    }
+
+    private static void assertSameBoard(GameBoard expected, GameBoard actual){
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            assertEquals(expected.getVisibleCards(player), actual.getVisibleCards(player));
+            for (int card = 0; card < GameBoard.HAND_SIZE; card++){
+                assertEquals(expected.getCardCode(player, card), actual.getCardCode(player, card));
+            }
+        }
+    }
+
+    @Test
+    public void rebuildsTheBoardAfterEveryMove() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        EventLog log = new EventLog(directory, 16, 1024, 1);
+        GameBoard first = new GameBoard(new Random(1));
+        GameBoard second = new GameBoard(new Random(2));
+        GameEventSink firstGame = log.newGame();
+        GameEventSink secondGame = log.newGame();
+        firstGame.dealt(first);
+        secondGame.dealt(second);
+        // the boards of the first game after each move, across several
+        // snapshots and segments, with the other game's records in between
+        List<GameBoard> boards = new ArrayList<>();
+        boards.add(new GameBoard(codes(first), visibility(first)));
+        for (int move = 1; move <= 2 * RecordedGame.SNAPSHOT_INTERVAL + 3; move++){
+            play(first, firstGame, move);
+            play(second, secondGame, move);
+            boards.add(new GameBoard(codes(first), visibility(first)));
+        }
+        first.makeAllCardsPublic();
+        firstGame.ended(1);
+        boards.add(first);
+        log.close();
+        assertEquals(0, log.getDropped());
+
+        ReplayEngine engine = new ReplayEngine(directory);
+        RecordedGame game = engine.load(firstGameID(directory));
+        assertEquals(boards.size(), game.getMoveCount());
+        assertTrue(game.isOver());
+        assertTrue(game.isComplete());
+        for (int move = 0; move < boards.size(); move++){
+            assertSameBoard(boards.get(move), game.boardAt(move));
+        }
+        assertEquals(EventRecord.Type.SHOW, game.getType(3));
+        assertEquals(EventRecord.Type.END, game.getType(boards.size() - 1));
+        assertEquals(1, game.getPlayerID(boards.size() - 1));
+
+        // stepping forward gives the same boards as seeking
+        GameBoard board = game.boardAt(0);
+        for (int move = 1; move < boards.size(); move++){
+            game.applyMove(board, move);
+            assertSameBoard(boards.get(move), board);
+        }
+
+        // the second game never ended
+        RecordedGame unfinished = engine.load(game.getGameID() + 1);
+        assertFalse(unfinished.isOver());
+        assertFalse(unfinished.isComplete());
+        assertEquals(0, unfinished.getLost());
+        assertNull(engine.load(game.getGameID() + 2));
+    }
+
+    @Test
+    public void streamsEveryEventWithItsBoard() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        EventLog log = new EventLog(directory, 16, 1024, 1);
+        GameBoard board = new GameBoard(new Random(3));
+        GameEventSink game = log.newGame();
+        game.dealt(board);
+        for (int move = 1; move <= 20; move++){
+            play(board, game, move);
+        }
+        board.makeAllCardsPublic();
+        game.ended(0);
+        log.close();
+
+        int[] ends = new int[1];
+        long events = new ReplayEngine(directory).stream((event, replayed) -> {
+            if (event.getType() == EventRecord.Type.END){
+                ends[0]++;
+                assertSameBoard(board, replayed);
+            }
+        });
+        assertEquals(22, events);
+        assertEquals(1, ends[0]);
+    }
+
+    @Test(timeout = 10000)
+    public void reportsGamesWithLostRecordsAsIncomplete() throws IOException{
+        Path directory = folder.getRoot().toPath();
+        // a ring of two records cannot keep up with a game recording as
+        // fast as it can
+        EventLog log = new EventLog(directory, 1024, 2, 1);
+        GameEventSink game = log.newGame();
+        game.dealt(new GameBoard(new Random(4)));
+        int moves = 1;
+        while (log.getDropped() == 0){
+            game.passed(0, 0);
+            moves++;
+        }
+        // once the writer has caught up, the marker and END get through
+        while (log.getCommitted() < moves - 1){
+            Thread.yield();
+        }
+        game.ended(0);
+        log.close();
+
+        ReplayEngine engine = new ReplayEngine(directory);
+        RecordedGame recorded = engine.load(firstGameID(directory));
+        assertEquals(moves - 1, recorded.getMoveCount());
+        assertEquals(1, recorded.getLost());
+        assertFalse(recorded.isOver());
+        assertFalse(recorded.isComplete());
+
+        // the stream visits the marker, and nothing of the game after it
+        List<EventRecord.Type> types = new ArrayList<>();
+        engine.stream((event, board) -> {
+            types.add(event.getType());
+            assertEquals(event.getType() == EventRecord.Type.LOST, board == null);
+        });
+        assertEquals(moves, types.size());
+        assertEquals(EventRecord.Type.LOST, types.get(moves - 1));
+    }
+
+    private static long firstGameID(Path directory) throws IOException{
+        long[] gameID = {-1};
+        new ReplayEngine(directory).stream((event, board) -> {
+            if (gameID[0] < 0){
+                gameID[0] = event.getGameID();
+            }
+        });
+        return gameID[0];
+    }
+
+    private static byte[] codes(GameBoard board){
+        byte[] codes = new byte[GameBoard.NUM_PLAYERS * GameBoard.HAND_SIZE];
+        for (int i = 0; i < codes.length; i++){
+            codes[i] = (byte) board.getCardCode(i / GameBoard.HAND_SIZE, i % GameBoard.HAND_SIZE);
+        }
+        return codes;
+    }
+
+    private static int[] visibility(GameBoard board){
+        int[] visibleTo = new int[GameBoard.NUM_PLAYERS];
+        for (int player = 0; player < GameBoard.NUM_PLAYERS; player++){
+            visibleTo[player] = board.getVisibleCards(player);
+        }
+        return visibleTo;
+    }
+}